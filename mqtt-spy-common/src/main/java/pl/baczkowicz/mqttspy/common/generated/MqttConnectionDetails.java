@@ -31,6 +31,7 @@ import org.jvnet.jaxb2_commons.lang.ToStringStrategy;
 import org.jvnet.jaxb2_commons.locator.ObjectLocator;
 import org.jvnet.jaxb2_commons.locator.util.LocatorUtils;
 import pl.baczkowicz.spy.common.generated.ConnectionDetails;
+import pl.baczkowicz.spy.common.generated.IngestQueueSettings;
 import pl.baczkowicz.spy.common.generated.ReconnectionSettings;
 import pl.baczkowicz.spy.common.generated.UserCredentials;
 
@@ -56,6 +57,8 @@ import pl.baczkowicz.spy.common.generated.UserCredentials;
  *         &lt;element name="KeepAliveInterval" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
  *         &lt;element name="SSL" type="{http://baczkowicz.pl/mqtt-spy/common}SecureSocketSettings" minOccurs="0"/&gt;
  *         &lt;element name="ReconnectionSettings" type="{http://baczkowicz.pl/spy/common}ReconnectionSettings" minOccurs="0"/&gt;
+ *         &lt;element name="IngestQueue" type="{http://baczkowicz.pl/spy/common}IngestQueueSettings" minOccurs="0"/&gt;
+ *         &lt;element name="TopicMatchCacheSize" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
  *       &lt;/sequence&gt;
  *     &lt;/extension&gt;
  *   &lt;/complexContent&gt;
@@ -76,7 +79,9 @@ import pl.baczkowicz.spy.common.generated.UserCredentials;
     "connectionTimeout",
     "keepAliveInterval",
     "ssl",
-    "reconnectionSettings"
+    "reconnectionSettings",
+    "ingestQueue",
+    "topicMatchCacheSize"
 })
 public class MqttConnectionDetails
     extends ConnectionDetails
@@ -107,6 +112,10 @@ public class MqttConnectionDetails
     protected SecureSocketSettings ssl;
     @XmlElement(name = "ReconnectionSettings")
     protected ReconnectionSettings reconnectionSettings;
+    @XmlElement(name = "IngestQueue")
+    protected IngestQueueSettings ingestQueue;
+    @XmlElement(name = "TopicMatchCacheSize")
+    protected Integer topicMatchCacheSize;
 
     /**
      * Default no-arg constructor
@@ -120,7 +129,7 @@ public class MqttConnectionDetails
      * Fully-initialising value constructor
      * 
      */
-    public MqttConnectionDetails(final ProtocolVersionEnum protocol, final List<String> serverURI, final Boolean webSocket, final String clientID, final UserCredentials userCredentials, final SimpleMqttMessage lastWillAndTestament, final Boolean cleanSession, final Integer connectionTimeout, final Integer keepAliveInterval, final SecureSocketSettings ssl, final ReconnectionSettings reconnectionSettings) {
+    public MqttConnectionDetails(final ProtocolVersionEnum protocol, final List<String> serverURI, final Boolean webSocket, final String clientID, final UserCredentials userCredentials, final SimpleMqttMessage lastWillAndTestament, final Boolean cleanSession, final Integer connectionTimeout, final Integer keepAliveInterval, final SecureSocketSettings ssl, final ReconnectionSettings reconnectionSettings, final IngestQueueSettings ingestQueue, final Integer topicMatchCacheSize) {
         this.protocol = protocol;
         this.serverURI = serverURI;
         this.webSocket = webSocket;
@@ -132,6 +141,8 @@ public class MqttConnectionDetails
         this.keepAliveInterval = keepAliveInterval;
         this.ssl = ssl;
         this.reconnectionSettings = reconnectionSettings;
+        this.ingestQueue = ingestQueue;
+        this.topicMatchCacheSize = topicMatchCacheSize;
     }
 
     /**
@@ -403,6 +414,54 @@ public class MqttConnectionDetails
         this.reconnectionSettings = value;
     }
 
+    /**
+     * Gets the value of the ingestQueue property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link IngestQueueSettings }
+     *     
+     */
+    public IngestQueueSettings getIngestQueue() {
+        return ingestQueue;
+    }
+
+    /**
+     * Sets the value of the ingestQueue property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link IngestQueueSettings }
+     *     
+     */
+    public void setIngestQueue(IngestQueueSettings value) {
+        this.ingestQueue = value;
+    }
+
+    /**
+     * Gets the value of the topicMatchCacheSize property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getTopicMatchCacheSize() {
+        return topicMatchCacheSize;
+    }
+
+    /**
+     * Sets the value of the topicMatchCacheSize property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setTopicMatchCacheSize(Integer value) {
+        this.topicMatchCacheSize = value;
+    }
+
     public String toString() {
         final ToStringStrategy strategy = JAXBToStringStrategy.INSTANCE;
         final StringBuilder buffer = new StringBuilder();
@@ -474,6 +533,16 @@ public class MqttConnectionDetails
             theReconnectionSettings = this.getReconnectionSettings();
             strategy.appendField(locator, this, "reconnectionSettings", buffer, theReconnectionSettings);
         }
+        {
+            IngestQueueSettings theIngestQueue;
+            theIngestQueue = this.getIngestQueue();
+            strategy.appendField(locator, this, "ingestQueue", buffer, theIngestQueue);
+        }
+        {
+            Integer theTopicMatchCacheSize;
+            theTopicMatchCacheSize = this.getTopicMatchCacheSize();
+            strategy.appendField(locator, this, "topicMatchCacheSize", buffer, theTopicMatchCacheSize);
+        }
         return buffer;
     }
 
@@ -587,6 +656,24 @@ public class MqttConnectionDetails
                 return false;
             }
         }
+        {
+            IngestQueueSettings lhsIngestQueue;
+            lhsIngestQueue = this.getIngestQueue();
+            IngestQueueSettings rhsIngestQueue;
+            rhsIngestQueue = that.getIngestQueue();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "ingestQueue", lhsIngestQueue), LocatorUtils.property(thatLocator, "ingestQueue", rhsIngestQueue), lhsIngestQueue, rhsIngestQueue)) {
+                return false;
+            }
+        }
+        {
+            Integer lhsTopicMatchCacheSize;
+            lhsTopicMatchCacheSize = this.getTopicMatchCacheSize();
+            Integer rhsTopicMatchCacheSize;
+            rhsTopicMatchCacheSize = that.getTopicMatchCacheSize();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "topicMatchCacheSize", lhsTopicMatchCacheSize), LocatorUtils.property(thatLocator, "topicMatchCacheSize", rhsTopicMatchCacheSize), lhsTopicMatchCacheSize, rhsTopicMatchCacheSize)) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -652,6 +739,16 @@ public class MqttConnectionDetails
             theReconnectionSettings = this.getReconnectionSettings();
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "reconnectionSettings", theReconnectionSettings), currentHashCode, theReconnectionSettings);
         }
+        {
+            IngestQueueSettings theIngestQueue;
+            theIngestQueue = this.getIngestQueue();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "ingestQueue", theIngestQueue), currentHashCode, theIngestQueue);
+        }
+        {
+            Integer theTopicMatchCacheSize;
+            theTopicMatchCacheSize = this.getTopicMatchCacheSize();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "topicMatchCacheSize", theTopicMatchCacheSize), currentHashCode, theTopicMatchCacheSize);
+        }
         return currentHashCode;
     }
 
@@ -767,6 +864,22 @@ public class MqttConnectionDetails
             } else {
                 copy.reconnectionSettings = null;
             }
+            if (this.ingestQueue!= null) {
+                IngestQueueSettings sourceIngestQueue;
+                sourceIngestQueue = this.getIngestQueue();
+                IngestQueueSettings copyIngestQueue = ((IngestQueueSettings) strategy.copy(LocatorUtils.property(locator, "ingestQueue", sourceIngestQueue), sourceIngestQueue));
+                copy.setIngestQueue(copyIngestQueue);
+            } else {
+                copy.ingestQueue = null;
+            }
+            if (this.topicMatchCacheSize!= null) {
+                Integer sourceTopicMatchCacheSize;
+                sourceTopicMatchCacheSize = this.getTopicMatchCacheSize();
+                Integer copyTopicMatchCacheSize = ((Integer) strategy.copy(LocatorUtils.property(locator, "topicMatchCacheSize", sourceTopicMatchCacheSize), sourceTopicMatchCacheSize));
+                copy.setTopicMatchCacheSize(copyTopicMatchCacheSize);
+            } else {
+                copy.topicMatchCacheSize = null;
+            }
         }
         return draftCopy;
     }
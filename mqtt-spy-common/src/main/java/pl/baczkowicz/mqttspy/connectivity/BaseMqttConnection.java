@@ -90,7 +90,8 @@ public abstract class BaseMqttConnection implements IMqttConnection
 	public BaseMqttConnection(final MqttConnectionDetailsWithOptions connectionDetails)
 	{
 		this.connectionDetails = connectionDetails;
-		this.topicMatcher = new TopicMatcher();		
+		this.topicMatcher = connectionDetails.getTopicMatchCacheSize() != null 
+				? new TopicMatcher(connectionDetails.getTopicMatchCacheSize()) : new TopicMatcher();
 	}
 	
 	/**
@@ -234,8 +235,6 @@ public abstract class BaseMqttConnection implements IMqttConnection
 		try
 		{
 			client.subscribe(topic, qos);
-			
-			topicMatcher.addSubscriptionToStore(topic, "subscription");
 		}
 		catch (MqttException e)
 		{
@@ -329,10 +328,16 @@ public abstract class BaseMqttConnection implements IMqttConnection
 	public void addSubscription(final BaseMqttSubscription subscription)
 	{
 		// Add it to the store if it hasn't been created before
-		if (subscriptions.put(subscription.getTopic(), subscription) == null)
+		final BaseMqttSubscription previous = subscriptions.put(subscription.getTopic(), subscription);
+		if (previous == null)
 		{
 			subscription.setId(lastUsedSubscriptionId++);				
 		}
+		else if (previous != subscription)
+		{
+			// Only one subscription per topic should be matched
+			removeSubscriptionFromMatcher(previous);
+		}
 		
 		logger.debug("Adding topic " + subscription.getTopic() + " to the subsciption store");
 		addSubscriptionToMatcher(subscription);
@@ -346,12 +351,12 @@ public abstract class BaseMqttConnection implements IMqttConnection
 	
 	public void addSubscriptionToMatcher(final BaseMqttSubscription subscription)
 	{
-		getTopicMatcher().addSubscriptionToStore(subscription.getTopic(), "subscription" + subscription.getId());
+		getTopicMatcher().addSubscriptionToStore(subscription);
 	}
 	
 	public void removeSubscriptionFromMatcher(final BaseMqttSubscription subscription)
 	{
-		getTopicMatcher().removeSubscriptionFromStore(subscription.getTopic(), "subscription" + subscription.getId());
+		getTopicMatcher().removeSubscriptionFromStore(subscription);
 	}
 	
 	public int getLastUsedSubscriptionId()
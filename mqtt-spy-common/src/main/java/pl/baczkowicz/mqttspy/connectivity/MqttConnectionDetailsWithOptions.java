@@ -71,6 +71,8 @@ public class MqttConnectionDetailsWithOptions extends MqttConnectionDetails
 		this.setLastWillAndTestament(details.getLastWillAndTestament());
 		this.setUserCredentials(details.getUserCredentials());
 		this.setReconnectionSettings(details.getReconnectionSettings());
+		this.setIngestQueue(details.getIngestQueue());
+		this.setTopicMatchCacheSize(details.getTopicMatchCacheSize());
 		
 		this.setSSL(details.getSSL());
 		final boolean sslEnabled = details.getSSL() != null 
@@ -19,42 +19,70 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.topicmatching;
 
-import io.moquette.spi.ISessionsStore.ClientTopicCouple;
-import io.moquette.spi.impl.subscriptions.Subscription;
-import io.moquette.spi.impl.subscriptions.SubscriptionsStore;
-
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.mqttspy.connectivity.BaseMqttSubscription;
+
 /**
  * This class is responsible for matching topics against subscriptions, and
  * figure out which subscription the message has been received for. It uses
- * moquette's SubscriptionStore to achieve that.
+ * a topic trie to achieve that, so that matching can run concurrently with
+ * subscriptions being added or removed. Results for recently seen topics are
+ * cached without locking, with clock (second chance) eviction. The cache is
+ * replaced with an empty one whenever subscriptions change.
  */
 public class TopicMatcher
 {
 	/** Diagnostic logger. */
 	private static final Logger logger = LoggerFactory.getLogger(TopicMatcher.class);
 	
-	/** Subscription store - used to matching topics against subscriptions - from moquette. */
-	private SubscriptionsStore subscriptionsStore;
+	/** Default maximum number of topics with cached matching results. */
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+	
+	/** Subscriptions by their topic filters - used for matching topics against subscriptions. */
+	private final TopicTrie<BaseMqttSubscription> subscriptionsStore = new TopicTrie<>();
+	
+	/** Maximum number of topics with cached matching results. */
+	private final int cacheSize;
+	
+	/** Matching subscriptions per topic - replaced on every change to the subscriptions. */
+	private volatile Map<String, CachedMatch> matchCache = new ConcurrentHashMap<>();
 	
-	/** All topics that are in the store. */
-	private Set<String> topics = new HashSet<>();
+	/** Set while a thread is evicting entries from the cache. */
+	private final AtomicBoolean evicting = new AtomicBoolean();
+	
+	/** Number of cache hits. */
+	private final LongAdder cacheHits = new LongAdder();
+	
+	/** Number of cache misses. */
+	private final LongAdder cacheMisses = new LongAdder();
 	
 	/**
-	 * Creates the topic matcher.
+	 * Creates the topic matcher with the default cache size.
 	 */
 	public TopicMatcher()
 	{
-		// Manage subscriptions, uses moquette's SubscriptionsStore
-		subscriptionsStore = new SubscriptionsStore();
-		subscriptionsStore.init(new MapBasedSubscriptionStore());
+		this(DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates the topic matcher.
+	 * 
+	 * @param cacheSize Maximum number of topics with cached matching results (0 to disable caching)
+	 */
+	public TopicMatcher(final int cacheSize)
+	{
+		this.cacheSize = cacheSize;
 	}
 	
 	/**
@@ -62,51 +90,176 @@ public class TopicMatcher
 	 * 
 	 * @param topic The topic to get active subscriptions for
 	 * 
-	 * @return List of subscription topics matching the given topic
+	 * @return Unmodifiable list of subscriptions matching the given topic
 	 */
-	public List<String> getMatchingSubscriptions(final String topic)
+	public List<BaseMqttSubscription> getMatchingSubscriptions(final String topic)
 	{		
-		// Check matching subscription
-		final List<Subscription> matchingSubscriptions = subscriptionsStore.matches(topic);
+		// Results are only ever added to the cache they were matched against
+		final Map<String, CachedMatch> cache = matchCache;
+		final CachedMatch cached = cache.get(topic);
+		
+		if (cached != null)
+		{
+			cacheHits.increment();
+			
+			// Avoid writing to the entry if already marked
+			if (!cached.referenced)
+			{
+				cached.referenced = true;
+			}
+			
+			return cached.subscriptions;
+		}
+		
+		cacheMisses.increment();
 		
-		final List<String> matchingSubscriptionTopics = new ArrayList<String>();
+		final List<BaseMqttSubscription> matchingSubscriptions = new ArrayList<>(2);
+		subscriptionsStore.match(topic, matchingSubscriptions);
 		
-		// For all found subscriptions
-		for (final Subscription matchingSubscription : matchingSubscriptions)
-		{						
-			matchingSubscriptionTopics.add(matchingSubscription.getTopicFilter());
-		}		
+		final List<BaseMqttSubscription> result = matchingSubscriptions.isEmpty() 
+				? Collections.<BaseMqttSubscription>emptyList() : Collections.unmodifiableList(matchingSubscriptions);
+		
+		if (cacheSize > 0)
+		{
+			// If subscriptions have changed while matching, this goes into the discarded cache
+			cache.put(topic, new CachedMatch(result));
+			
+			if (cache.size() > cacheSize)
+			{
+				evict(cache);
+			}
+		}
 
-		return matchingSubscriptionTopics;
+		return result;
+	}
+	
+	/**
+	 * Evicts entries from the given cache until it is back within its size,
+	 * skipping (once) those used since the last pass. Only one thread evicts
+	 * at a time - others carry on without waiting.
+	 * 
+	 * @param cache The cache to evict from
+	 */
+	private void evict(final Map<String, CachedMatch> cache)
+	{
+		if (!evicting.compareAndSet(false, true))
+		{
+			return;
+		}
+		
+		try
+		{
+			while (cache.size() > cacheSize)
+			{
+				for (final Iterator<CachedMatch> iterator = cache.values().iterator(); iterator.hasNext() && cache.size() > cacheSize;)
+				{
+					final CachedMatch entry = iterator.next();
+					
+					if (entry.referenced)
+					{
+						entry.referenced = false;
+					}
+					else
+					{
+						iterator.remove();
+					}
+				}
+			}
+		}
+		finally
+		{
+			evicting.set(false);
+		}
 	}
 
 	/**
-	 * Adds the given topic to the subscription store - used for topic to subscription matching.
+	 * Adds the given subscription to the subscription store - used for topic to subscription matching.
 	 *  
-	 * @param topic Topic to add
+	 * @param subscription Subscription to add
 	 */
-	public void addSubscriptionToStore(final String topic, final String clientId)
+	public void addSubscriptionToStore(final BaseMqttSubscription subscription)
 	{
-		final ClientTopicCouple subscription = new ClientTopicCouple(clientId, topic);
-		
-		if (!topics.contains(subscription))
+		if (subscriptionsStore.add(subscription.getTopic(), subscription))
 		{
-			logger.debug("Added subscription " + topic + " (" + clientId + ") to store");
-			// Store the subscription topic for further matching
-			subscriptionsStore.add(subscription);
-			topics.add(topic);
+			invalidateCache();
+			logger.debug("Added subscription " + subscription.getTopic() + " (" + subscription.getId() + ") to store");
 		}
 	}
 	
 	/**
-	 * Removes the given topic from the subscription store - used for topic to subscription matching.
+	 * Removes the given subscription from the subscription store - used for topic to subscription matching.
 	 *  
-	 * @param topic Topic to remove
+	 * @param subscription Subscription to remove
 	 */
-	public void removeSubscriptionFromStore(final String topic, final String clientId)
+	public void removeSubscriptionFromStore(final BaseMqttSubscription subscription)
 	{
-		subscriptionsStore.removeSubscription(topic, clientId);
+		if (subscriptionsStore.remove(subscription.getTopic(), subscription))
+		{
+			invalidateCache();
+		}
+	}
+	
+	/**
+	 * Discards all cached matching results - to be called after the subscriptions have changed.
+	 */
+	private void invalidateCache()
+	{
+		matchCache = new ConcurrentHashMap<>();
+	}
+	
+	/**
+	 * Gets the number of matches served from the cache.
+	 * 
+	 * @return Number of cache hits
+	 */
+	public long getCacheHits()
+	{
+		return cacheHits.sum();
+	}
+	
+	/**
+	 * Gets the number of matches that had to be computed.
+	 * 
+	 * @return Number of cache misses
+	 */
+	public long getCacheMisses()
+	{
+		return cacheMisses.sum();
+	}
+	
+	/**
+	 * Gets the number of topics with cached matching results.
+	 * 
+	 * @return Number of cached topics
+	 */
+	public int getCacheSize()
+	{
+		return matchCache.size();
+	}
+	
+	/**
+	 * Gets the maximum number of topics with cached matching results.
+	 * 
+	 * @return Maximum number of cached topics (0 if caching is disabled)
+	 */
+	public int getMaxCacheSize()
+	{
+		return cacheSize;
+	}
+	
+	/**
+	 * Matching subscriptions cached for a topic.
+	 */
+	private static class CachedMatch
+	{
+		private final List<BaseMqttSubscription> subscriptions;
+		
+		/** Whether used since the last eviction pass. */
+		private volatile boolean referenced;
 		
-		topics.remove(topic);
+		private CachedMatch(final List<BaseMqttSubscription> subscriptions)
+		{
+			this.subscriptions = subscriptions;
+		}
 	}
 }
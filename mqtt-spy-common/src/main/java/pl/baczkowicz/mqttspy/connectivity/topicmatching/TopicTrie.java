@@ -0,0 +1,342 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.connectivity.topicmatching;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trie of MQTT topic filters (supporting the '+' and '#' wildcards), used for
+ * matching concrete topics against subscriptions. 
+ * 
+ * Reads are lock-free and can run concurrently with modifications - node
+ * children are held in concurrent maps and values in copy-on-write arrays.
+ * Modifications are serialised.
+ * 
+ * @param <T> Type of the values stored against topic filters
+ */
+public class TopicTrie<T>
+{
+	/** Topic level separator. */
+	public static final char SEPARATOR = '/';
+	
+	/** Single level wildcard. */
+	public static final String SINGLE_LEVEL_WILDCARD = "+";
+	
+	/** Multi level wildcard. */
+	public static final String MULTI_LEVEL_WILDCARD = "#";
+	
+	/** Root of the trie (represents no topic levels). */
+	private final Node root = new Node(null, null);
+	
+	/** Number of stored values. */
+	private volatile int size;
+	
+	/**
+	 * Adds the given value for the given topic filter.
+	 * 
+	 * @param topicFilter The topic filter (can contain wildcards)
+	 * @param value The value to store
+	 * 
+	 * @return True if the value has been added; false if already present
+	 */
+	public synchronized boolean add(final String topicFilter, final T value)
+	{
+		Node node = root;
+		
+		int start = 0;
+		while (start <= topicFilter.length())
+		{
+			final int end = endOfLevel(topicFilter, start);
+			node = node.getOrCreateChild(topicFilter.substring(start, end));
+			start = end + 1;
+		}
+		
+		if (node.addValue(value))
+		{
+			size++;
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Removes the given value from the given topic filter.
+	 * 
+	 * @param topicFilter The topic filter
+	 * @param value The value to remove
+	 * 
+	 * @return True if the value has been removed; false if not found
+	 */
+	public synchronized boolean remove(final String topicFilter, final T value)
+	{
+		Node node = root;
+		
+		int start = 0;
+		while (start <= topicFilter.length())
+		{
+			final int end = endOfLevel(topicFilter, start);
+			node = node.getChild(topicFilter.substring(start, end));
+			
+			if (node == null)
+			{
+				return false;
+			}
+			
+			start = end + 1;
+		}
+		
+		if (!node.removeValue(value))
+		{
+			return false;
+		}
+		
+		size--;
+		
+		// Prune empty branches
+		while (node != root && node.isEmpty())
+		{
+			node.parent.removeChild(node);
+			node = node.parent;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Finds all values stored against topic filters matching the given topic.
+	 * 
+	 * @param topic The concrete topic (no wildcards)
+	 * @param matches Collection to which all matching values are added
+	 */
+	public void match(final String topic, final Collection<? super T> matches)
+	{
+		// Topics starting with '$' are not matched by wildcards on the first level
+		final boolean wildcardsAllowed = topic.isEmpty() || topic.charAt(0) != '$';
+		
+		match(root, topic, 0, wildcardsAllowed, matches);
+	}
+	
+	/**
+	 * Matches the remaining levels of the topic, starting from the given node.
+	 * 
+	 * @param node The node representing already matched levels
+	 * @param topic The topic
+	 * @param start Index where the remaining levels start (beyond topic's length when all matched)
+	 * @param wildcardsAllowed Whether wildcards are allowed on the current level
+	 * @param matches Collection to which all matching values are added
+	 */
+	private void match(final Node node, final String topic, final int start, final boolean wildcardsAllowed, final Collection<? super T> matches)
+	{
+		final Node multiLevel = node.multiLevelChild;
+		
+		// All levels matched
+		if (start > topic.length())
+		{
+			node.collectValues(matches);
+			
+			// The multi level wildcard also matches the parent level
+			if (multiLevel != null)
+			{
+				multiLevel.collectValues(matches);
+			}
+			return;
+		}
+		
+		if (wildcardsAllowed && multiLevel != null)
+		{
+			multiLevel.collectValues(matches);
+		}
+		
+		final int end = endOfLevel(topic, start);
+		
+		final Node child = node.children.get(topic.substring(start, end));
+		if (child != null)
+		{
+			match(child, topic, end + 1, true, matches);
+		}
+		
+		final Node singleLevel = node.singleLevelChild;
+		if (wildcardsAllowed && singleLevel != null)
+		{
+			match(singleLevel, topic, end + 1, true, matches);
+		}
+	}
+	
+	/**
+	 * Gets the number of stored values.
+	 * 
+	 * @return Number of stored values
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Finds the end of the topic level starting at the given index.
+	 */
+	private static int endOfLevel(final String topic, final int start)
+	{
+		final int end = topic.indexOf(SEPARATOR, start);
+		return end < 0 ? topic.length() : end;
+	}
+	
+	/**
+	 * Trie node - represents a single topic level.
+	 */
+	private final class Node
+	{
+		/** Parent node (null for root). */
+		private final Node parent;
+		
+		/** Topic level represented by this node. */
+		private final String level;
+		
+		/** Children for non-wildcard levels. */
+		private final Map<String, Node> children = new ConcurrentHashMap<>();
+		
+		/** Child for the '+' level. */
+		private volatile Node singleLevelChild;
+		
+		/** Child for the '#' level. */
+		private volatile Node multiLevelChild;
+		
+		/** Values stored for the topic filter ending at this node (replaced on every modification). */
+		private volatile Object[] values = new Object[0];
+		
+		private Node(final Node parent, final String level)
+		{
+			this.parent = parent;
+			this.level = level;
+		}
+		
+		private Node getChild(final String level)
+		{
+			if (SINGLE_LEVEL_WILDCARD.equals(level))
+			{
+				return singleLevelChild;
+			}
+			else if (MULTI_LEVEL_WILDCARD.equals(level))
+			{
+				return multiLevelChild;
+			}
+			
+			return children.get(level);
+		}
+		
+		private Node getOrCreateChild(final String level)
+		{
+			Node child = getChild(level);
+			
+			if (child == null)
+			{
+				child = new Node(this, level);
+				
+				if (SINGLE_LEVEL_WILDCARD.equals(level))
+				{
+					singleLevelChild = child;
+				}
+				else if (MULTI_LEVEL_WILDCARD.equals(level))
+				{
+					multiLevelChild = child;
+				}
+				else
+				{
+					children.put(level, child);
+				}
+			}
+			
+			return child;
+		}
+		
+		private void removeChild(final Node child)
+		{
+			if (singleLevelChild == child)
+			{
+				singleLevelChild = null;
+			}
+			else if (multiLevelChild == child)
+			{
+				multiLevelChild = null;
+			}
+			else
+			{
+				children.remove(child.level);
+			}
+		}
+		
+		private boolean addValue(final T value)
+		{
+			final Object[] current = values;
+			
+			for (final Object existing : current)
+			{
+				if (existing.equals(value))
+				{
+					return false;
+				}
+			}
+			
+			final Object[] updated = new Object[current.length + 1];
+			System.arraycopy(current, 0, updated, 0, current.length);
+			updated[current.length] = value;
+			values = updated;
+			
+			return true;
+		}
+		
+		private boolean removeValue(final T value)
+		{
+			final Object[] current = values;
+			
+			for (int i = 0; i < current.length; i++)
+			{
+				if (current[i].equals(value))
+				{
+					final Object[] updated = new Object[current.length - 1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					values = updated;
+					
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private void collectValues(final Collection<? super T> matches)
+		{
+			for (final Object value : values)
+			{
+				matches.add((T) value);
+			}
+		}
+		
+		private boolean isEmpty()
+		{
+			return values.length == 0 && children.isEmpty() && singleLevelChild == null && multiLevelChild == null;
+		}
+	}
+}
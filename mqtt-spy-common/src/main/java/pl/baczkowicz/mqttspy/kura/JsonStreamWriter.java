@@ -0,0 +1,339 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.kura;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes JSON straight into a reusable buffer, either compact or indented.
+ * 
+ * Only objects are supported, which is all the Kura payload needs. The writer
+ * is not thread-safe - it is meant to be reset and reused by one thread.
+ */
+public class JsonStreamWriter
+{
+	/** Initial buffer size. */
+	private static final int INITIAL_CAPACITY = 512;
+	
+	/** Buffers bigger than this are not kept between documents. */
+	private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+	
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	
+	private final StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+	
+	/** Number of spaces per indentation level; 0 for compact output. */
+	private final int indent;
+	
+	/** Current nesting level. */
+	private int depth;
+	
+	/** Whether nothing has been written in the current object yet. */
+	private boolean first = true;
+	
+	/** Whether a name has just been written, and its value is expected. */
+	private boolean afterName;
+	
+	/**
+	 * Creates the writer.
+	 * 
+	 * @param indent Number of spaces per indentation level; 0 for compact output
+	 */
+	public JsonStreamWriter(final int indent)
+	{
+		this.indent = indent;
+	}
+	
+	/**
+	 * Clears the buffer, so that a new document can be written.
+	 * 
+	 * @return This writer
+	 */
+	public JsonStreamWriter reset()
+	{
+		builder.setLength(0);
+		
+		if (builder.capacity() > MAX_RETAINED_CAPACITY)
+		{
+			builder.trimToSize();
+			builder.ensureCapacity(INITIAL_CAPACITY);
+		}
+		
+		depth = 0;
+		first = true;
+		afterName = false;
+		
+		return this;
+	}
+	
+	public JsonStreamWriter beginObject()
+	{
+		beforeValue();
+		builder.append('{');
+		depth++;
+		first = true;
+		
+		return this;
+	}
+	
+	public JsonStreamWriter endObject()
+	{
+		depth--;
+		
+		if (!first)
+		{
+			newLine();
+		}
+		
+		builder.append('}');
+		first = false;
+		
+		return this;
+	}
+	
+	public JsonStreamWriter name(final String name)
+	{
+		beforeValue();
+		appendString(name);
+		afterName();
+		
+		return this;
+	}
+	
+	/**
+	 * Writes a name, given as UTF-8 bytes.
+	 * 
+	 * @param utf8 Buffer with the name
+	 * @param offset Start of the name
+	 * @param length Length of the name
+	 * 
+	 * @return This writer
+	 */
+	public JsonStreamWriter name(final byte[] utf8, final int offset, final int length)
+	{
+		beforeValue();
+		appendString(utf8, offset, length);
+		afterName();
+		
+		return this;
+	}
+	
+	public JsonStreamWriter value(final String value)
+	{
+		beforeValue();
+		appendString(value);
+		
+		return this;
+	}
+	
+	/**
+	 * Writes a string value, given as UTF-8 bytes.
+	 * 
+	 * @param utf8 Buffer with the value
+	 * @param offset Start of the value
+	 * @param length Length of the value
+	 * 
+	 * @return This writer
+	 */
+	public JsonStreamWriter value(final byte[] utf8, final int offset, final int length)
+	{
+		beforeValue();
+		appendString(utf8, offset, length);
+		
+		return this;
+	}
+	
+	public JsonStreamWriter value(final long value)
+	{
+		beforeValue();
+		builder.append(value);
+		
+		return this;
+	}
+	
+	public JsonStreamWriter value(final boolean value)
+	{
+		beforeValue();
+		builder.append(value);
+		
+		return this;
+	}
+	
+	/**
+	 * Writes a double value. NaN and infinity, which JSON numbers can't
+	 * represent, are written as strings.
+	 * 
+	 * @param value The value to write
+	 * 
+	 * @return This writer
+	 */
+	public JsonStreamWriter value(final double value)
+	{
+		if (Double.isNaN(value) || Double.isInfinite(value))
+		{
+			return value(Double.toString(value));
+		}
+		
+		beforeValue();
+		builder.append(value);
+		
+		return this;
+	}
+	
+	/**
+	 * Writes a float value, keeping its shortest representation (e.g. 0.1
+	 * rather than 0.10000000149011612). NaN and infinity are written as strings.
+	 * 
+	 * @param value The value to write
+	 * 
+	 * @return This writer
+	 */
+	public JsonStreamWriter value(final float value)
+	{
+		if (Float.isNaN(value) || Float.isInfinite(value))
+		{
+			return value(Float.toString(value));
+		}
+		
+		beforeValue();
+		builder.append(value);
+		
+		return this;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return builder.toString();
+	}
+	
+	private void beforeValue()
+	{
+		if (afterName)
+		{
+			afterName = false;
+			return;
+		}
+		
+		if (!first)
+		{
+			builder.append(',');
+		}
+		
+		if (depth > 0)
+		{
+			newLine();
+		}
+		
+		first = false;
+	}
+	
+	private void afterName()
+	{
+		builder.append(indent > 0 ? ": " : ":");
+		afterName = true;
+	}
+	
+	private void newLine()
+	{
+		if (indent > 0)
+		{
+			builder.append('\n');
+			
+			for (int i = depth * indent; i > 0; i--)
+			{
+				builder.append(' ');
+			}
+		}
+	}
+	
+	private void appendString(final String value)
+	{
+		builder.append('"');
+		
+		for (int i = 0; i < value.length(); i++)
+		{
+			appendCharacter(value.charAt(i));
+		}
+		
+		builder.append('"');
+	}
+	
+	private void appendString(final byte[] utf8, final int offset, final int length)
+	{
+		final int end = offset + length;
+		
+		// Most names and values are ASCII, which doesn't need decoding
+		for (int i = offset; i < end; i++)
+		{
+			if (utf8[i] < 0)
+			{
+				appendString(new String(utf8, offset, length, StandardCharsets.UTF_8));
+				return;
+			}
+		}
+		
+		builder.append('"');
+		
+		for (int i = offset; i < end; i++)
+		{
+			appendCharacter((char) utf8[i]);
+		}
+		
+		builder.append('"');
+	}
+	
+	private void appendCharacter(final char c)
+	{
+		switch (c)
+		{
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			case '\b':
+				builder.append("\\b");
+				break;
+			case '\f':
+				builder.append("\\f");
+				break;
+			default:
+				if (c < 0x20)
+				{
+					builder.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+				}
+				else
+				{
+					builder.append(c);
+				}
+		}
+	}
+}
@@ -0,0 +1,406 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.kura;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.formatting.FormattingUtils;
+import pl.baczkowicz.spy.formatting.NativeFormatter;
+
+/**
+ * Formats Eclipse Kura payloads as JSON, decoding the Protocol Buffer format
+ * straight into a JSON writer, without creating a KuraPayload or any other
+ * intermediate objects.
+ * 
+ * Output is in the order fields have been encoded, e.g.
+ * {"kuraPayload":{"timestamp":1454624652237,"metrics":{"temperature":21.5}}}.
+ * Timestamps are in milliseconds since the epoch; bytes metrics and binary
+ * bodies are Base64-encoded.
+ */
+public class KuraNativeFormatter implements NativeFormatter
+{
+	public static final String ID = FormattingUtils.DEFAULT_PREFIX + FormattingUtils.NATIVE_PREFIX + "-eclipse-kura";
+	
+	/** Number of spaces per indentation level of the pretty output. */
+	private static final int PRETTY_INDENT = 4;
+	
+	// KuraPayload fields
+	
+	private static final int PAYLOAD_TIMESTAMP = 1;
+	
+	private static final int PAYLOAD_POSITION = 2;
+	
+	private static final int PAYLOAD_METRIC = 5000;
+	
+	private static final int PAYLOAD_BODY = 5001;
+	
+	// KuraMetric fields
+	
+	private static final int METRIC_NAME = 1;
+	
+	private static final int METRIC_TYPE = 2;
+	
+	private static final int METRIC_DOUBLE = 3;
+	
+	private static final int METRIC_FLOAT = 4;
+	
+	private static final int METRIC_LONG = 5;
+	
+	private static final int METRIC_INT = 6;
+	
+	private static final int METRIC_BOOL = 7;
+	
+	private static final int METRIC_STRING = 8;
+	
+	private static final int METRIC_BYTES = 9;
+	
+	// KuraMetric value types
+	
+	private static final int TYPE_DOUBLE = 0;
+	
+	private static final int TYPE_FLOAT = 1;
+	
+	private static final int TYPE_INT64 = 2;
+	
+	private static final int TYPE_INT32 = 3;
+	
+	private static final int TYPE_BOOL = 4;
+	
+	private static final int TYPE_STRING = 5;
+	
+	private static final int TYPE_BYTES = 6;
+	
+	/** Names of the KuraPosition fields, by field number; the first six are doubles, the rest integers. */
+	private static final String[] POSITION_FIELDS = {null, 
+			"latitude", "longitude", "altitude", "precision", "heading", "speed", 
+			"timestamp", "satellites", "status"};
+	
+	private static final int POSITION_LAST_DOUBLE = 6;
+	
+	private static final int POSITION_TIMESTAMP = 7;
+	
+	private final ThreadLocal<JsonStreamWriter> compactWriter = ThreadLocal.withInitial(() -> new JsonStreamWriter(0));
+	
+	private final ThreadLocal<JsonStreamWriter> prettyWriter = ThreadLocal.withInitial(() -> new JsonStreamWriter(PRETTY_INDENT));
+	
+	@Override
+	public FormatterDetails getFormatterDetails()
+	{
+		final FormatterDetails formatter = new FormatterDetails();
+		
+		formatter.setID(ID);
+		formatter.setName("Eclipse Kura (native)");
+		formatter.setDescription("Decodes the Eclipse Kura Protocol Buffer format and converts it to JSON, without using scripts.");
+		
+		return formatter;
+	}
+	
+	@Override
+	public String format(final byte[] payload)
+	{
+		return format(payload, compactWriter.get());
+	}
+
+	@Override
+	public String formatPretty(final byte[] payload)
+	{
+		return format(payload, prettyWriter.get());
+	}
+	
+	/**
+	 * Decodes the given payload into the given writer.
+	 * 
+	 * @param payload The Kura payload, optionally compressed
+	 * @param writer The writer to use
+	 * 
+	 * @return JSON representation of the payload, or the error message if it cannot be decoded
+	 */
+	public static String format(final byte[] payload, final JsonStreamWriter writer)
+	{
+		try
+		{
+			writePayload(new ProtoBufReader(decompress(payload)), writer.reset());
+			return writer.toString();
+		}
+		catch (IOException e)
+		{
+			return "Invalid Kura payload: " + e.getLocalizedMessage();
+		}
+	}
+	
+	/**
+	 * Decompresses the payload if it is GZIP-compressed, as done by the Kura decoder.
+	 * 
+	 * @param payload The received payload
+	 * 
+	 * @return The decompressed payload, or the original payload if it's not compressed
+	 */
+	private static byte[] decompress(final byte[] payload)
+	{
+		if (payload.length < 2 || payload[0] != (byte) 0x1f || payload[1] != (byte) 0x8b)
+		{
+			return payload;
+		}
+		
+		try (final GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(payload)))
+		{
+			final ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length * 4);
+			final byte[] buffer = new byte[4096];
+			
+			int read;
+			while ((read = input.read(buffer)) > 0)
+			{
+				output.write(buffer, 0, read);
+			}
+			
+			return output.toByteArray();
+		}
+		catch (IOException e)
+		{
+			// Like the Kura decoder, try to decode it as it is
+			return payload;
+		}
+	}
+	
+	private static void writePayload(final ProtoBufReader reader, final JsonStreamWriter writer) throws IOException
+	{
+		writer.beginObject().name("kuraPayload").beginObject();
+		
+		boolean inMetrics = false;
+		
+		while (reader.hasMore())
+		{
+			final int tag = reader.readTag();
+			final int field = ProtoBufReader.getFieldNumber(tag);
+			
+			// Metrics are encoded one after another - close them when another field follows
+			if (inMetrics && field != PAYLOAD_METRIC)
+			{
+				writer.endObject();
+				inMetrics = false;
+			}
+			
+			switch (field)
+			{
+				case PAYLOAD_TIMESTAMP:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+					writer.name("timestamp").value(reader.readVarint());
+					break;
+					
+				case PAYLOAD_POSITION:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					writer.name("position").beginObject();
+					writePosition(reader, writer);
+					writer.endObject();
+					break;
+					
+				case PAYLOAD_METRIC:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					if (!inMetrics)
+					{
+						writer.name("metrics").beginObject();
+						inMetrics = true;
+					}
+					writeMetric(reader, writer);
+					break;
+					
+				case PAYLOAD_BODY:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					final int length = reader.readLength();
+					writer.name("body");
+					writeText(reader.getData(), reader.getPosition(), length, writer);
+					reader.skip(length);
+					break;
+					
+				default:
+					// Extensions and unknown fields
+					reader.skipField(tag);
+			}
+		}
+		
+		if (inMetrics)
+		{
+			writer.endObject();
+		}
+		
+		writer.endObject().endObject();
+	}
+	
+	private static void writePosition(final ProtoBufReader reader, final JsonStreamWriter writer) throws IOException
+	{
+		final int oldLimit = reader.pushLimit(reader.readLength());
+		
+		while (reader.hasMore())
+		{
+			final int tag = reader.readTag();
+			final int field = ProtoBufReader.getFieldNumber(tag);
+			
+			if (field >= POSITION_FIELDS.length)
+			{
+				reader.skipField(tag);
+			}
+			else if (field <= POSITION_LAST_DOUBLE)
+			{
+				reader.checkWireType(tag, ProtoBufReader.WIRE_FIXED64);
+				writer.name(POSITION_FIELDS[field]).value(Double.longBitsToDouble(reader.readFixed64()));
+			}
+			else
+			{
+				reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+				final long value = reader.readVarint();
+				
+				// Timestamp is an int64; satellites and status are int32
+				writer.name(POSITION_FIELDS[field]).value(field == POSITION_TIMESTAMP ? value : (int) value);
+			}
+		}
+		
+		reader.popLimit(oldLimit);
+	}
+	
+	private static void writeMetric(final ProtoBufReader reader, final JsonStreamWriter writer) throws IOException
+	{
+		final int oldLimit = reader.pushLimit(reader.readLength());
+		final byte[] data = reader.getData();
+		
+		int nameOffset = 0;
+		int nameLength = 0;
+		long type = -1;
+		
+		// Values are stored until the type is known
+		long fixed64 = 0;
+		int fixed32 = 0;
+		long int64 = 0;
+		int int32 = 0;
+		boolean bool = false;
+		int stringOffset = 0;
+		int stringLength = 0;
+		int bytesOffset = 0;
+		int bytesLength = 0;
+		
+		while (reader.hasMore())
+		{
+			final int tag = reader.readTag();
+			
+			switch (ProtoBufReader.getFieldNumber(tag))
+			{
+				case METRIC_NAME:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					nameLength = reader.readLength();
+					nameOffset = reader.getPosition();
+					reader.skip(nameLength);
+					break;
+				case METRIC_TYPE:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+					type = reader.readVarint();
+					break;
+				case METRIC_DOUBLE:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_FIXED64);
+					fixed64 = reader.readFixed64();
+					break;
+				case METRIC_FLOAT:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_FIXED32);
+					fixed32 = reader.readFixed32();
+					break;
+				case METRIC_LONG:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+					int64 = reader.readVarint();
+					break;
+				case METRIC_INT:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+					int32 = (int) reader.readVarint();
+					break;
+				case METRIC_BOOL:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_VARINT);
+					bool = reader.readVarint() != 0;
+					break;
+				case METRIC_STRING:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					stringLength = reader.readLength();
+					stringOffset = reader.getPosition();
+					reader.skip(stringLength);
+					break;
+				case METRIC_BYTES:
+					reader.checkWireType(tag, ProtoBufReader.WIRE_LENGTH_DELIMITED);
+					bytesLength = reader.readLength();
+					bytesOffset = reader.getPosition();
+					reader.skip(bytesLength);
+					break;
+				default:
+					reader.skipField(tag);
+			}
+		}
+		
+		reader.popLimit(oldLimit);
+		
+		writer.name(data, nameOffset, nameLength);
+		
+		switch ((int) type)
+		{
+			case TYPE_DOUBLE:
+				writer.value(Double.longBitsToDouble(fixed64));
+				break;
+			case TYPE_FLOAT:
+				writer.value(Float.intBitsToFloat(fixed32));
+				break;
+			case TYPE_INT64:
+				writer.value(int64);
+				break;
+			case TYPE_INT32:
+				writer.value(int32);
+				break;
+			case TYPE_BOOL:
+				writer.value(bool);
+				break;
+			case TYPE_STRING:
+				writer.value(data, stringOffset, stringLength);
+				break;
+			case TYPE_BYTES:
+				writer.value(Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, bytesOffset, bytesOffset + bytesLength)));
+				break;
+			default:
+				throw new IOException("Unknown metric type " + type);
+		}
+	}
+	
+	/**
+	 * Writes the given bytes as a string if they are valid UTF-8, or Base64-encoded otherwise.
+	 */
+	private static void writeText(final byte[] data, final int offset, final int length, final JsonStreamWriter writer)
+	{
+		try
+		{
+			StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(data, offset, length));
+			writer.value(data, offset, length);
+		}
+		catch (CharacterCodingException e)
+		{
+			writer.value(Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, offset, offset + length)));
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.kura;
+
+import java.io.IOException;
+
+/**
+ * Minimal reader of the Protocol Buffers wire format, reading fields straight
+ * from the encoded bytes without creating any message objects.
+ */
+final class ProtoBufReader
+{
+	static final int WIRE_VARINT = 0;
+	
+	static final int WIRE_FIXED64 = 1;
+	
+	static final int WIRE_LENGTH_DELIMITED = 2;
+	
+	static final int WIRE_FIXED32 = 5;
+	
+	private final byte[] data;
+	
+	private int position;
+	
+	/** End of the message currently being read. */
+	private int limit;
+	
+	ProtoBufReader(final byte[] data)
+	{
+		this.data = data;
+		this.limit = data.length;
+	}
+	
+	static int getFieldNumber(final int tag)
+	{
+		return tag >>> 3;
+	}
+	
+	static int getWireType(final int tag)
+	{
+		return tag & 7;
+	}
+	
+	byte[] getData()
+	{
+		return data;
+	}
+	
+	int getPosition()
+	{
+		return position;
+	}
+	
+	boolean hasMore()
+	{
+		return position < limit;
+	}
+	
+	int readTag() throws IOException
+	{
+		final long tag = readVarint();
+		
+		if (getFieldNumber((int) tag) == 0 || tag > Integer.MAX_VALUE)
+		{
+			throw new IOException("Invalid field tag " + tag);
+		}
+		
+		return (int) tag;
+	}
+	
+	/**
+	 * Checks the given tag has the expected wire type.
+	 * 
+	 * @param tag The field tag
+	 * @param wireType The expected wire type
+	 * 
+	 * @throws IOException Thrown if the wire type is different
+	 */
+	void checkWireType(final int tag, final int wireType) throws IOException
+	{
+		if (getWireType(tag) != wireType)
+		{
+			throw new IOException("Unexpected wire type " + getWireType(tag) + " for field " + getFieldNumber(tag));
+		}
+	}
+	
+	long readVarint() throws IOException
+	{
+		long value = 0;
+		
+		for (int shift = 0; shift < 64; shift += 7)
+		{
+			checkAvailable(1);
+			final byte b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			
+			if (b >= 0)
+			{
+				return value;
+			}
+		}
+		
+		throw new IOException("Malformed varint");
+	}
+	
+	long readFixed64() throws IOException
+	{
+		checkAvailable(8);
+		
+		long value = 0;
+		for (int i = 0; i < 8; i++)
+		{
+			value |= (data[position++] & 0xFFL) << (8 * i);
+		}
+		
+		return value;
+	}
+	
+	int readFixed32() throws IOException
+	{
+		checkAvailable(4);
+		
+		int value = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			value |= (data[position++] & 0xFF) << (8 * i);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Reads the length of a length-delimited field, checking it fits in the current message.
+	 * 
+	 * @return The length
+	 * 
+	 * @throws IOException Thrown if the length is invalid
+	 */
+	int readLength() throws IOException
+	{
+		final long length = readVarint();
+		
+		if (length < 0 || length > limit - position)
+		{
+			throw new IOException("Invalid length " + length);
+		}
+		
+		return (int) length;
+	}
+	
+	void skip(final int length) throws IOException
+	{
+		checkAvailable(length);
+		position += length;
+	}
+	
+	/**
+	 * Skips the value of the field with the given tag.
+	 * 
+	 * @param tag The field tag
+	 * 
+	 * @throws IOException Thrown if the value can't be skipped
+	 */
+	void skipField(final int tag) throws IOException
+	{
+		switch (getWireType(tag))
+		{
+			case WIRE_VARINT:
+				readVarint();
+				break;
+			case WIRE_FIXED64:
+				skip(8);
+				break;
+			case WIRE_LENGTH_DELIMITED:
+				skip(readLength());
+				break;
+			case WIRE_FIXED32:
+				skip(4);
+				break;
+			default:
+				throw new IOException("Unsupported wire type " + getWireType(tag));
+		}
+	}
+	
+	/**
+	 * Starts reading an embedded message of the given length.
+	 * 
+	 * @param length Length of the embedded message
+	 * 
+	 * @return The previous limit, to be passed to popLimit
+	 */
+	int pushLimit(final int length)
+	{
+		final int oldLimit = limit;
+		limit = position + length;
+		
+		return oldLimit;
+	}
+	
+	/**
+	 * Finishes reading an embedded message.
+	 * 
+	 * @param oldLimit The limit returned by pushLimit
+	 */
+	void popLimit(final int oldLimit)
+	{
+		position = limit;
+		limit = oldLimit;
+	}
+	
+	private void checkAvailable(final int length) throws IOException
+	{
+		if (length > limit - position)
+		{
+			throw new IOException("Truncated message");
+		}
+	}
+}
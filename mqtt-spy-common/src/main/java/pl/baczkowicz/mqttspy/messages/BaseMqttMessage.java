@@ -24,6 +24,9 @@ import java.util.Date;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 import pl.baczkowicz.spy.utils.ConversionUtils;
 
 /**
@@ -33,8 +36,23 @@ import pl.baczkowicz.spy.utils.ConversionUtils;
  */
 public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessage
 {	
-	/** The received message. */
-	private final MqttMessage rawMessage;
+	/** The received message with its decoded payload - can be shared between views of the same message, so never modified in place once shared. */
+	private MessageCore core;
+	
+	/** Whether the core is shared with other views of the same message. */
+	private volatile boolean shared;
+	
+	/** Number of references this view holds on the core's payload stored in an arena. */
+	private int arenaReferences;
+	
+	/** Number of references this view holds on the core's interned payload. */
+	private int internedReferences;
+	
+	/** Core the references on the shared size were taken on (it can be replaced by setPayload). */
+	private MessageCore sizedCore;
+	
+	/** Number of references this view holds on the core's shared size. */
+	private int sizeReferences;
 	
 	/**
 	 * Creates a BaseMqttMessage from the given parameters.
@@ -46,7 +64,7 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	public BaseMqttMessage(final long id, final String topic, final MqttMessage message)
 	{
 		super(id, topic, null, new Date());
-		this.rawMessage = message;
+		this.core = new MessageCore(message);
 	}
 	
 	/**
@@ -60,7 +78,21 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	public BaseMqttMessage(final long id, final String topic, final MqttMessage message, final Date date)
 	{
 		super(id, topic, null, date);
-		this.rawMessage = message;
+		this.core = new MessageCore(message);
+	}
+	
+	/**
+	 * Creates a lightweight view of the given message. The raw message (topic, 
+	 * payload, QoS, retained flag), its decoded payload and the received date are shared, not copied.
+	 * 
+	 * @param message The message to create a view of
+	 */
+	protected BaseMqttMessage(final BaseMqttMessage message)
+	{
+		super(message.getId(), message.getTopic(), null, message.getDate());
+		this.core = message.core;
+		this.shared = true;
+		message.shared = true;
 	}
 	
 	/**
@@ -82,13 +114,15 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	}
 
 	/**
-	 * Gets the MqttMessage.
+	 * Gets the MqttMessage. If the payload is compressed or held in an arena,
+	 * this is a read-only copy (changing it throws an IllegalStateException)
+	 * - use setPayload to change the payload.
 	 * 
 	 * @return MqttMessage
 	 */
 	public MqttMessage getRawMessage()
 	{
-		return rawMessage;
+		return core.getMessage();
 	}
 	
 	// Convenience methods for accessing the message object	
@@ -96,29 +130,554 @@ public class BaseMqttMessage extends FormattedMessage implements IBaseMqttMessag
 	@Override
 	public String getPayload()
 	{
-		return ConversionUtils.arrayToString(this.rawMessage.getPayload());
+		return core.getDecodedPayload();
+	}
+	
+	@Override
+	protected String getDecodedPayload()
+	{
+		return core.getCachedPayload();
+	}
+	
+	@Override
+	protected long estimateRawPayloadSize()
+	{
+		final int storedLength = core.getStoredLength();
+		
+		// Payloads held in an arena are off the heap, but still count towards the size of the store
+		return storedLength >= 0 ? storedLength : estimateSize(core.message.getPayload());
+	}
+	
+	@Override
+	public long getEstimatedSharedSize()
+	{
+		// The raw and decoded payloads are held by the core, shared by all views of this message
+		return estimateRawPayloadSize() + estimateSize(getDecodedPayload());
+	}
+	
+	@Override
+	public synchronized long retainSharedSize()
+	{
+		if (sizeReferences++ == 0)
+		{
+			sizedCore = core;
+		}
+		
+		return sizedCore.retainSize(getEstimatedSharedSize());
+	}
+	
+	@Override
+	public synchronized long releaseSharedSize()
+	{
+		if (sizeReferences == 0)
+		{
+			return 0;
+		}
+		
+		final long released = sizedCore.releaseSize();
+		
+		if (--sizeReferences == 0)
+		{
+			sizedCore = null;
+		}
+		
+		return released;
+	}
+	
+	@Override
+	public synchronized long updateSharedSize()
+	{
+		return sizedCore != null ? sizedCore.updateSize(getEstimatedSharedSize()) : 0;
+	}
+	
+	@Override
+	public synchronized void setPayload(final String payload)
+	{
+		// Copy on write, so that other views of the same message (or the stored payload) are not affected
+		if (shared || !core.isPlain() || core.isInterned() || core.message instanceof ReadOnlyMqttMessage)
+		{
+			final MessageCore previous = core;
+			this.core = new MessageCore(copyMqttMessage(previous.getMessage()));
+			this.shared = false;
+			
+			for (; arenaReferences > 0; arenaReferences--)
+			{
+				previous.releaseFromArena();
+			}
+			
+			for (; internedReferences > 0; internedReferences--)
+			{
+				previous.releaseInterned();
+			}
+		}
+		
+		this.core.message.setPayload(ConversionUtils.stringToArray(payload));
+	}
+	
+	@Override
+	public synchronized void retainInArena(final PayloadArena arena)
+	{
+		// Drop strings that can be worked out from the payload when displayed
+		dropPayloadCopies();
+		
+		core.retainInArena(arena);
+		arenaReferences++;
+	}
+	
+	@Override
+	public synchronized void compressPayload(final PayloadCompressor compressor)
+	{
+		// Drop strings that can be worked out from the payload when displayed
+		dropPayloadCopies();
+		
+		core.compress(compressor);
+	}
+	
+	@Override
+	public synchronized void evictDecompressedPayload()
+	{
+		core.evictDecompressed();
+	}
+	
+	@Override
+	public synchronized void internPayload(final PayloadInterner interner)
+	{
+		// Drop strings that can be worked out from the payload when displayed
+		dropPayloadCopies();
+		
+		if (core.intern(interner))
+		{
+			internedReferences++;
+		}
+	}
+	
+	@Override
+	public synchronized void releaseInternedPayload()
+	{
+		if (internedReferences > 0)
+		{
+			internedReferences--;
+			core.releaseInterned();
+		}
+	}
+	
+	@Override
+	public int getPayloadLength()
+	{
+		return core.getPayloadLength();
+	}
+	
+	@Override
+	public int getStoredPayloadLength()
+	{
+		return core.getStoredPayloadLength();
 	}
 	
 	@Override
-	public void setPayload(final String payload)
+	public synchronized void releaseFromArena()
 	{
-		this.rawMessage.setPayload(ConversionUtils.stringToArray(payload));
+		if (arenaReferences > 0)
+		{
+			arenaReferences--;
+			core.releaseFromArena();
+		}
 	}
 	
 	@Override
 	public int getQoS()
 	{
-		return this.rawMessage.getQos();
+		return core.message.getQos();
 	}
 	
 	@Override
 	public boolean isRetained()
 	{
-		return this.rawMessage.isRetained();
+		return core.message.isRetained();
 	}
 	
 	public byte[] getRawPayload()
 	{
-		return getRawMessage().getPayload();
+		return core.getPayload();
+	}
+	
+	/**
+	 * A copy of a message which can't be changed, as changes wouldn't make it
+	 * back to the stored (compressed or off-heap) payload.
+	 */
+	private static final class ReadOnlyMqttMessage extends MqttMessage
+	{
+		private ReadOnlyMqttMessage(final byte[] payload, final int qos, final boolean retained)
+		{
+			super(payload);
+			setQos(qos);
+			setRetained(retained);
+			setMutable(false);
+		}
+	}
+	
+	/**
+	 * The received message together with its payload decoded to a string on
+	 * first access. While the message is stored, the payload can be shared
+	 * with other messages with the same payload, or compressed and/or moved to
+	 * an arena, in which case strings are decoded from it on each access.
+	 */
+	private static final class MessageCore
+	{
+		/** The received message (with the compressed payload if compressed, or without the payload if held in an arena). */
+		private volatile MqttMessage message;
+		
+		/** Payload array the cached string was decoded from. */
+		private byte[] decodedFrom;
+		
+		/** Cached payload string. */
+		private String decodedPayload;
+		
+		/** Compressor used to compress the payload (if compressed). */
+		private PayloadCompressor compressor;
+		
+		/** Length of the payload before compression. */
+		private int payloadLength;
+		
+		/** Interner holding the shared copy of the payload (if interned). */
+		private PayloadInterner interner;
+		
+		/** Number of references taken on the interned payload. */
+		private int internedReferences;
+		
+		/** Arena holding the payload (if any). */
+		private PayloadArena arena;
+		
+		/** Address of the payload in the arena. */
+		private long storedAddress;
+		
+		/** Length of the payload in the arena. */
+		private int storedLength;
+		
+		/** Number of references taken on the payload in the arena. */
+		private int storedReferences;
+		
+		/** Release of the payload in the arena, pending until this core is garbage collected (if no references are left). */
+		private PayloadArena.DeferredRelease deferredRelease;
+		
+		/** Number of references taken on the estimated size of the core (by stores sharing a memory budget). */
+		private int sizeReferences;
+		
+		/** Estimated size of the core, as counted by the holders of these references. */
+		private long countedSize;
+		
+		private MessageCore(final MqttMessage message)
+		{
+			this.message = message;
+		}
+		
+		/**
+		 * Checks whether the payload is held by the message as received.
+		 * 
+		 * @return True if not compressed or moved to an arena
+		 */
+		private synchronized boolean isPlain()
+		{
+			return arena == null && compressor == null;
+		}
+		
+		/**
+		 * Checks whether the payload is shared with other messages.
+		 * 
+		 * @return True if interned
+		 */
+		private synchronized boolean isInterned()
+		{
+			return interner != null;
+		}
+		
+		/**
+		 * Gets the message, with its payload decompressed and/or loaded from the arena if needed.
+		 * 
+		 * @return The message
+		 */
+		private synchronized MqttMessage getMessage()
+		{
+			if (isPlain())
+			{
+				return message;
+			}
+			
+			return new ReadOnlyMqttMessage(getPayload(), message.getQos(), message.isRetained());
+		}
+		
+		private synchronized byte[] getPayload()
+		{
+			// Decompressed payloads might be cached, so never hand them out
+			return compressor == null ? getStoredPayload() : getDecompressedPayload().clone();
+		}
+		
+		private byte[] getStoredPayload()
+		{
+			return arena == null ? message.getPayload() : arena.load(storedAddress, storedLength);
+		}
+		
+		private byte[] getDecompressedPayload()
+		{
+			return compressor.decompress(this, getStoredPayload(), payloadLength);
+		}
+		
+		/**
+		 * Removes the decompressed payload from the compressor's cache (if compressed).
+		 */
+		private synchronized void evictDecompressed()
+		{
+			if (compressor != null)
+			{
+				compressor.evict(this);
+			}
+		}
+		
+		/**
+		 * Gets the length of the payload held in an arena.
+		 * 
+		 * @return The length or -1 if the payload is on the heap
+		 */
+		private synchronized int getStoredLength()
+		{
+			return arena == null ? -1 : storedLength;
+		}
+		
+		private synchronized int getPayloadLength()
+		{
+			return compressor != null ? payloadLength : getStoredPayloadLength();
+		}
+		
+		private synchronized int getStoredPayloadLength()
+		{
+			return arena != null ? storedLength : message.getPayload().length;
+		}
+		
+		/**
+		 * Gets the decoded payload, decoding it only if not done before for the current payload array.
+		 * 
+		 * @return The payload string
+		 */
+		private synchronized String getDecodedPayload()
+		{
+			if (!isPlain())
+			{
+				return ConversionUtils.arrayToString(compressor == null ? getStoredPayload() : getDecompressedPayload());
+			}
+			
+			final byte[] payload = message.getPayload();
+			
+			if (decodedPayload == null || payload != decodedFrom)
+			{
+				decodedPayload = ConversionUtils.arrayToString(payload);
+				decodedFrom = payload;
+			}
+			
+			return decodedPayload;
+		}
+		
+		/**
+		 * Gets the decoded payload only if it has already been decoded from the current payload array.
+		 * 
+		 * @return The payload string or null
+		 */
+		private synchronized String getCachedPayload()
+		{
+			return isPlain() && message.getPayload() == decodedFrom ? decodedPayload : null;
+		}
+		
+		/**
+		 * Compresses the payload with the given compressor (unless already
+		 * compressed, moved to an arena or not worth compressing).
+		 * 
+		 * @param compressor The compressor to use
+		 */
+		private synchronized void compress(final PayloadCompressor compressor)
+		{
+			// An interned payload is already shared, so compressing it would create a copy per message
+			if (!isPlain() || isInterned())
+			{
+				return;
+			}
+			
+			final byte[] payload = message.getPayload();
+			final byte[] compressed = compressor.compress(payload);
+			
+			if (compressed == null)
+			{
+				return;
+			}
+			
+			final MqttMessage properties = copyMqttMessage(message);
+			properties.setPayload(compressed);
+			message = properties;
+			
+			this.compressor = compressor;
+			payloadLength = payload.length;
+			decodedFrom = null;
+			decodedPayload = null;
+		}
+		
+		/**
+		 * Moves the (possibly compressed) payload to the given arena (unless already stored) and takes a reference to it.
+		 * 
+		 * @param arena The arena to use
+		 */
+		private synchronized void retainInArena(final PayloadArena arena)
+		{
+			// An interned payload stays on the heap, as it is shared with other messages
+			if (isInterned())
+			{
+				return;
+			}
+			
+			if (this.arena == null)
+			{
+				final byte[] payload = message.getPayload();
+				
+				storedAddress = arena.store(payload);
+				storedLength = payload.length;
+				this.arena = arena;
+				
+				// Keep only the message properties on the heap
+				final MqttMessage properties = copyMqttMessage(message);
+				properties.setPayload(new byte[0]);
+				message = properties;
+				
+				decodedFrom = null;
+				decodedPayload = null;
+			}
+			else if (deferredRelease != null)
+			{
+				this.arena.cancelRelease(deferredRelease);
+				deferredRelease = null;
+			}
+			
+			storedReferences++;
+		}
+		
+		/**
+		 * Releases a reference to the payload in the arena. Once no references
+		 * are left, the payload is released when this core is garbage
+		 * collected - it is not copied back onto the heap, but can still be
+		 * read while the message is in use elsewhere (e.g. displayed).
+		 */
+		private synchronized void releaseFromArena()
+		{
+			if (arena == null || storedReferences == 0 || --storedReferences > 0)
+			{
+				return;
+			}
+			
+			deferredRelease = arena.releaseWhenUnreachable(this, storedAddress, storedLength);
+		}
+		
+		/**
+		 * Replaces the payload with the copy shared by all messages with the
+		 * same payload (unless compressed or moved to an arena) and takes a
+		 * reference to it.
+		 * 
+		 * @param interner The interner to use
+		 * 
+		 * @return True if a reference was taken
+		 */
+		private synchronized boolean intern(final PayloadInterner interner)
+		{
+			if (this.interner == null)
+			{
+				if (!isPlain())
+				{
+					return false;
+				}
+				
+				final byte[] payload = message.getPayload();
+				final byte[] interned = interner.intern(payload);
+				
+				if (interned != payload)
+				{
+					final MqttMessage properties = copyMqttMessage(message);
+					properties.setPayload(interned);
+					message = properties;
+				}
+				
+				this.interner = interner;
+				decodedFrom = null;
+				decodedPayload = null;
+			}
+			
+			internedReferences++;
+			return true;
+		}
+		
+		/**
+		 * Releases a reference to the interned payload. Once no references
+		 * are left, the interner no longer holds the payload for this message.
+		 */
+		private synchronized void releaseInterned()
+		{
+			if (interner == null || --internedReferences > 0)
+			{
+				return;
+			}
+			
+			interner.release(message.getPayload());
+			interner = null;
+		}
+		
+		/**
+		 * Takes a reference on the estimated size of the core, so that it is
+		 * counted once however many views of the message are stored.
+		 * 
+		 * @param size Current estimated size of the core
+		 * 
+		 * @return The size to count for the first reference, 0 otherwise
+		 */
+		private synchronized long retainSize(final long size)
+		{
+			if (sizeReferences++ > 0)
+			{
+				return 0;
+			}
+			
+			countedSize = size;
+			return size;
+		}
+		
+		/**
+		 * Releases a reference on the estimated size of the core.
+		 * 
+		 * @return The size no longer counted once no references are left, 0 otherwise
+		 */
+		private synchronized long releaseSize()
+		{
+			if (sizeReferences == 0 || --sizeReferences > 0)
+			{
+				return 0;
+			}
+			
+			final long released = countedSize;
+			countedSize = 0;
+			
+			return released;
+		}
+		
+		/**
+		 * Updates the counted size of the core (if any references are held).
+		 * 
+		 * @param size Current estimated size of the core
+		 * 
+		 * @return Change in the counted size
+		 */
+		private synchronized long updateSize(final long size)
+		{
+			if (sizeReferences == 0)
+			{
+				return 0;
+			}
+			
+			final long delta = size - countedSize;
+			countedSize = size;
+			
+			return delta;
+		}
 	}
 }
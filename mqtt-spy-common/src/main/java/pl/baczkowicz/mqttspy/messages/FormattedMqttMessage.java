@@ -25,7 +25,6 @@ import java.util.List;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttConnection;
-import pl.baczkowicz.spy.utils.ConversionUtils;
 
 public class FormattedMqttMessage extends BaseMqttMessage
 {
@@ -42,29 +41,31 @@ public class FormattedMqttMessage extends BaseMqttMessage
 	{
 		super(id, topic, message);
 		this.connection = connection;
-		setFormattedPayload(ConversionUtils.arrayToString(message.getPayload()));
 	}
 	
 	public FormattedMqttMessage(final long id, final String topic, final MqttMessage message, final Date date, final BaseMqttConnection connection)
 	{
 		super(id, topic, message, date);
 		this.connection = connection;
-		setFormattedPayload(ConversionUtils.arrayToString(message.getPayload()));
 	}
 	
+	/**
+	 * Creates a lightweight view of the given message (e.g. one per matching
+	 * subscription). The raw message is shared and the payload is not decoded again.
+	 * 
+	 * @param message The message to create a view of
+	 */
 	public FormattedMqttMessage(final FormattedMqttMessage message)
 	{
-		this(message.getId(), message.getTopic(), copyMqttMessage(message.getRawMessage()), message.getConnection());
-		setFormattedPayload(message.getFormattedPayload());
-		setLastUsedFormatter(message.getLastUsedFormatter());
-		setSubscription(message.getSubscription());
+		super(message);
+		this.connection = message.getConnection();
+		copyFormatting(message);
 		setMatchingSubscriptionTopics(message.getMatchingSubscriptionTopics());
 	}
 
 	public FormattedMqttMessage(final BaseMqttMessage message, final BaseMqttConnection connection)
 	{
 		this(message.getId(), message.getTopic(), message.getRawMessage(), message.getDate(), connection);
-		setFormattedPayload(message.getPayload());
 	}	
 
 	/**
@@ -61,5 +61,12 @@ public interface IMqttScriptIO extends IScriptIO
 	 */
 	void publish(final String publicationTopic, final byte[] payload, final int qos, final boolean retained);
 
+	/**
+	 * Gets a snapshot of messages stored for the given subscription (newest first).
+	 * 
+	 * @param subscriptionTopic The subscription topic
+	 * 
+	 * @return Unmodifiable list of messages
+	 */
 	List<FormattedMqttMessage> getMessages(String subscriptionTopic);	
 }
\ No newline at end of file
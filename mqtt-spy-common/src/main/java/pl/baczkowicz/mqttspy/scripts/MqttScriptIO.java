@@ -137,7 +137,8 @@ public class MqttScriptIO extends ScriptIO implements IMqttScriptIO
 		
 		if (subscription != null)
 		{
-			return subscription.getStore().getMessages();
+			// A snapshot, so that scripts iterating over it don't block new messages
+			return subscription.getStore().getMessagesSnapshot();
 		}
 		
 		// No messages, return empty list
@@ -111,6 +111,8 @@ public class ConnectionTestingWithMosquitto
 				10, 
 				10, 
 				ssl, 
+				null,
+				null,
 				null);
 	}
 	
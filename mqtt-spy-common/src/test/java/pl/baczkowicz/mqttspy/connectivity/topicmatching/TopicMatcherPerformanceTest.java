@@ -0,0 +1,101 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.connectivity.topicmatching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.connectivity.BaseMqttSubscription;
+
+/**
+ * Measures topic matching throughput with a large number of subscriptions and topics.
+ */
+public class TopicMatcherPerformanceTest
+{
+	private static final int SUBSCRIPTIONS = 10000;
+	
+	private static final int TOPICS = 1000000;
+	
+	@Ignore
+	@Test
+	public void testMatchingWithManySubscriptionsAndTopics()
+	{
+		final Random random = new Random(1);
+		final TopicMatcher matcher = new TopicMatcher();
+		
+		// Mix of exact, single level and multi level subscriptions over a 4-level topic space
+		long startTime = System.nanoTime();
+		for (int i = 0; i < SUBSCRIPTIONS; i++)
+		{
+			final String site = "site" + random.nextInt(100);
+			final String device = "device" + random.nextInt(1000);
+			final String topic;
+			
+			switch (i % 4)
+			{
+				case 0:
+					topic = site + "/" + device + "/sensor" + random.nextInt(10) + "/value";
+					break;
+				case 1:
+					topic = site + "/+/sensor" + random.nextInt(10) + "/value";
+					break;
+				case 2:
+					topic = site + "/" + device + "/#";
+					break;
+				default:
+					topic = "+/" + device + "/+/value";
+					break;
+			}
+			
+			final BaseMqttSubscription subscription = new BaseMqttSubscription(topic, 0);
+			subscription.setId(i);
+			matcher.addSubscriptionToStore(subscription);
+		}
+		long totalTime = System.nanoTime() - startTime;
+		System.out.println("Adding " + SUBSCRIPTIONS + " subscriptions took " + (totalTime / 1000000) + " ms");
+		
+		final List<String> topics = new ArrayList<>(TOPICS);
+		for (int i = 0; i < TOPICS; i++)
+		{
+			topics.add("site" + (i % 100) + "/device" + ((i / 100) % 1000) + "/sensor" + ((i / 100000) % 10) + "/value");
+		}
+		
+		// Warm up
+		for (int i = 0; i < TOPICS / 10; i++)
+		{
+			matcher.getMatchingSubscriptions(topics.get(i));
+		}
+		
+		long matches = 0;
+		startTime = System.nanoTime();
+		for (final String topic : topics)
+		{
+			matches += matcher.getMatchingSubscriptions(topic).size();
+		}
+		totalTime = System.nanoTime() - startTime;
+		
+		System.out.println("Matching " + TOPICS + " distinct topics took " + (totalTime / 1000000) + " ms; avg = " 
+				+ (totalTime / TOPICS) + " ns; " + matches + " matches");
+	}
+}
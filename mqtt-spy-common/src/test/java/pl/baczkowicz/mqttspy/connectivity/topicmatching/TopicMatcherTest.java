@@ -0,0 +1,98 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.connectivity.topicmatching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.connectivity.BaseMqttSubscription;
+
+/**
+ * Tests for the TopicMatcher's result cache.
+ */
+public class TopicMatcherTest
+{
+	@Test
+	public void testCacheHitsAndMisses()
+	{
+		final TopicMatcher matcher = new TopicMatcher();
+		final BaseMqttSubscription subscription = new BaseMqttSubscription("a/#", 0);
+		matcher.addSubscriptionToStore(subscription);
+		
+		final List<BaseMqttSubscription> first = matcher.getMatchingSubscriptions("a/b");
+		final List<BaseMqttSubscription> second = matcher.getMatchingSubscriptions("a/b");
+		
+		assertEquals(Arrays.asList(subscription), first);
+		assertSame(first, second);
+		assertEquals(1, matcher.getCacheHits());
+		assertEquals(1, matcher.getCacheMisses());
+		
+		assertTrue(matcher.getMatchingSubscriptions("b").isEmpty());
+		assertTrue(matcher.getMatchingSubscriptions("b").isEmpty());
+		assertEquals(2, matcher.getCacheHits());
+		assertEquals(2, matcher.getCacheMisses());
+	}
+	
+	@Test
+	public void testCacheInvalidation()
+	{
+		final TopicMatcher matcher = new TopicMatcher();
+		final BaseMqttSubscription subscription1 = new BaseMqttSubscription("a/#", 0);
+		final BaseMqttSubscription subscription2 = new BaseMqttSubscription("a/+", 0);
+		matcher.addSubscriptionToStore(subscription1);
+		
+		assertEquals(Arrays.asList(subscription1), matcher.getMatchingSubscriptions("a/b"));
+		
+		matcher.addSubscriptionToStore(subscription2);
+		assertEquals(0, matcher.getCacheSize());
+		assertEquals(2, matcher.getMatchingSubscriptions("a/b").size());
+		
+		matcher.removeSubscriptionFromStore(subscription1);
+		assertEquals(Arrays.asList(subscription2), matcher.getMatchingSubscriptions("a/b"));
+		assertEquals(0, matcher.getCacheHits());
+		assertEquals(3, matcher.getCacheMisses());
+	}
+	
+	@Test
+	public void testCacheEviction()
+	{
+		final TopicMatcher matcher = new TopicMatcher(2);
+		matcher.addSubscriptionToStore(new BaseMqttSubscription("#", 0));
+		
+		matcher.getMatchingSubscriptions("a");
+		matcher.getMatchingSubscriptions("b");
+		
+		// Used again - so "b" gets evicted first
+		matcher.getMatchingSubscriptions("a");
+		matcher.getMatchingSubscriptions("c");
+		assertEquals(2, matcher.getCacheSize());
+		
+		matcher.getMatchingSubscriptions("a");
+		matcher.getMatchingSubscriptions("b");
+		assertEquals(2, matcher.getCacheHits());
+		assertEquals(4, matcher.getCacheMisses());
+	}
+}
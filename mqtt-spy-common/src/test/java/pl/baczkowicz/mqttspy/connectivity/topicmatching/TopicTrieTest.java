@@ -0,0 +1,127 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.connectivity.topicmatching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for the TopicTrie.
+ */
+public class TopicTrieTest
+{
+	private static List<String> match(final TopicTrie<String> trie, final String topic)
+	{
+		final List<String> matches = new ArrayList<>();
+		trie.match(topic, matches);
+		Collections.sort(matches);
+		return matches;
+	}
+	
+	private static TopicTrie<String> createTrie(final String... filters)
+	{
+		final TopicTrie<String> trie = new TopicTrie<>();
+		
+		for (final String filter : filters)
+		{
+			trie.add(filter, filter);
+		}
+		
+		return trie;
+	}
+	
+	@Test
+	public void testExactMatching()
+	{
+		final TopicTrie<String> trie = createTrie("a/b", "a/b/c", "/a", "a//b");
+		
+		assertEquals(Arrays.asList("a/b"), match(trie, "a/b"));
+		assertEquals(Arrays.asList("a/b/c"), match(trie, "a/b/c"));
+		assertEquals(Arrays.asList("/a"), match(trie, "/a"));
+		assertEquals(Arrays.asList("a//b"), match(trie, "a//b"));
+		assertEquals(Arrays.asList(), match(trie, "a"));
+		assertEquals(Arrays.asList(), match(trie, "a/b/"));
+	}
+	
+	@Test
+	public void testSingleLevelWildcard()
+	{
+		final TopicTrie<String> trie = createTrie("a/+", "+/b", "+/+", "a/+/c", "+");
+		
+		assertEquals(Arrays.asList("+/+", "+/b", "a/+"), match(trie, "a/b"));
+		assertEquals(Arrays.asList("a/+/c"), match(trie, "a/x/c"));
+		assertEquals(Arrays.asList("+"), match(trie, "a"));
+		assertEquals(Arrays.asList("+/+", "a/+"), match(trie, "a/"));
+		assertEquals(Arrays.asList("+/+"), match(trie, "/x"));
+	}
+	
+	@Test
+	public void testMultiLevelWildcard()
+	{
+		final TopicTrie<String> trie = createTrie("#", "a/#", "a/+/#", "b/#");
+		
+		assertEquals(Arrays.asList("#", "a/#"), match(trie, "a"));
+		assertEquals(Arrays.asList("#", "a/#", "a/+/#"), match(trie, "a/b"));
+		assertEquals(Arrays.asList("#", "a/#", "a/+/#"), match(trie, "a/b/c/d"));
+		assertEquals(Arrays.asList("#"), match(trie, "c/d"));
+	}
+	
+	@Test
+	public void testSystemTopics()
+	{
+		final TopicTrie<String> trie = createTrie("#", "+/info", "$SYS/#", "$SYS/+");
+		
+		assertEquals(Arrays.asList("$SYS/#", "$SYS/+"), match(trie, "$SYS/info"));
+		assertEquals(Arrays.asList("#", "+/info"), match(trie, "SYS/info"));
+	}
+	
+	@Test
+	public void testAddingAndRemoving()
+	{
+		final TopicTrie<String> trie = new TopicTrie<>();
+		
+		assertTrue(trie.add("a/+", "first"));
+		assertTrue(trie.add("a/+", "second"));
+		assertFalse(trie.add("a/+", "second"));
+		assertEquals(2, trie.size());
+		assertEquals(Arrays.asList("first", "second"), match(trie, "a/b"));
+		
+		assertTrue(trie.remove("a/+", "first"));
+		assertFalse(trie.remove("a/+", "first"));
+		assertFalse(trie.remove("a/b/c", "second"));
+		assertEquals(Arrays.asList("second"), match(trie, "a/b"));
+		
+		assertTrue(trie.remove("a/+", "second"));
+		assertEquals(0, trie.size());
+		assertEquals(Arrays.asList(), match(trie, "a/b"));
+		
+		// Pruned branches can be re-created
+		assertTrue(trie.add("a/+", "third"));
+		assertEquals(Arrays.asList("third"), match(trie, "a/b"));
+	}
+}
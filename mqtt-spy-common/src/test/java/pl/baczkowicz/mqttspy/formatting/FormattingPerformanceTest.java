@@ -20,15 +20,24 @@
 package pl.baczkowicz.mqttspy.formatting;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import javax.script.ScriptException;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import pl.baczkowicz.mqttspy.kura.KuraNativeFormatter;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.scripts.MqttScriptManager;
+import pl.baczkowicz.spy.common.generated.CharacterReplaceFormatterDetails;
 import pl.baczkowicz.spy.common.generated.ConversionMethod;
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.common.generated.FormatterFunction;
@@ -36,6 +45,9 @@ import pl.baczkowicz.spy.common.generated.ScriptDetails;
 import pl.baczkowicz.spy.common.generated.ScriptExecutionDetails;
 import pl.baczkowicz.spy.common.generated.SubstringConversionFormatterDetails;
 import pl.baczkowicz.spy.common.generated.SubstringExtractFormatterDetails;
+import pl.baczkowicz.spy.formatting.CompiledFormatter;
+import pl.baczkowicz.spy.formatting.FormatterCompiler;
+import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.formatting.FormattingUtils;
 import pl.baczkowicz.spy.formatting.ScriptBasedFormatter;
 import pl.baczkowicz.spy.utils.ConversionUtils;
@@ -44,9 +56,157 @@ public class FormattingPerformanceTest
 {
 	private FormatterDetails defaultFormatter = FormattingUtils.createBasicFormatter("default", "Plain", null, ConversionMethod.PLAIN);
 	
+	private static final int WARM_UP = 10000;
+	
+	private static final int REPEAT = 20000;
+	
+	private static final int KURA_WARM_UP = 2000;
+	
+	private static final int KURA_REPEAT = 5000;
+	
+	private static String timeInterpreted(final FormatterDetails formatter, final byte[] payload, final int repeat)
+	{
+		String result = null;
+		for (int i = 0; i < repeat; i++)
+		{
+			result = FormattingUtils.checkAndFormatText(formatter, payload);
+		}
+		return result;
+	}
+	
+	private static String timeCompiled(final CompiledFormatter formatter, final byte[] payload, final int repeat)
+	{
+		String result = null;
+		for (int i = 0; i < repeat; i++)
+		{
+			result = formatter.format(payload);
+		}
+		return result;
+	}
+	
+	private static String timeFormattingManager(final FormattingManager formattingManager, final FormatterDetails formatter, 
+			final byte[] payload, final int repeat)
+	{
+		String result = null;
+		for (int i = 0; i < repeat; i++)
+		{
+			// As done for every received message, including the look-up of the compiled formatter
+			result = formattingManager.getCompiledFormatter(formatter).format(payload);
+		}
+		return result;
+	}
+	
+	private static void compare(final FormatterDetails formatter, final byte[] payload)
+	{
+		final CompiledFormatter compiled = FormatterCompiler.compile(formatter);
+		final FormattingManager formattingManager = new FormattingManager(null);
+		
+		// Warm up all paths and check they agree
+		assertEquals(timeInterpreted(formatter, payload, WARM_UP), timeCompiled(compiled, payload, WARM_UP));
+		assertEquals(timeInterpreted(formatter, payload, 1), timeFormattingManager(formattingManager, formatter, payload, WARM_UP));
+		
+		long startTime = System.nanoTime();
+		timeInterpreted(formatter, payload, REPEAT);
+		final long interpreted = System.nanoTime() - startTime;
+		
+		startTime = System.nanoTime();
+		timeCompiled(compiled, payload, REPEAT);
+		final long compiledTime = System.nanoTime() - startTime;
+		
+		startTime = System.nanoTime();
+		timeFormattingManager(formattingManager, formatter, payload, REPEAT);
+		final long managerTime = System.nanoTime() - startTime;
+		
+		System.out.println(formatter.getName() + ": interpreted avg = " + (interpreted / REPEAT) + " ns; compiled avg = " 
+				+ (compiledTime / REPEAT) + " ns; speed-up = " + String.format("%.1f", (double) interpreted / compiledTime) + "x"
+				+ "; via FormattingManager avg = " + (managerTime / REPEAT) + " ns");
+	}
+	
+	@Test
+	public void compareInterpretedAndCompiledFormatters()
+	{
+		final byte[] payload = ("{\"id\":12, \"status\":\"ok\"}\r\n<Body>VGhpcyBpcyBhIHNhbXBsZSBtZXNzYWdlIGVuY29kZWQgaW4gQkFTRTY0Lg==</Body>"
+				+ "\t<Trailer>end of the message</Trailer>").getBytes();
+		
+		// Decode the body and extract it
+		final FormatterDetails bodyDecoder = new FormatterDetails();
+		bodyDecoder.setName("Base64 body decoder");
+		bodyDecoder.getFunction().add(new FormatterFunction(null, 
+				new SubstringConversionFormatterDetails("<Body>", "</Body>", true, ConversionMethod.BASE_64_DECODE), null, null, null, null));
+		bodyDecoder.getFunction().add(new FormatterFunction(null, null, null, 
+				new SubstringExtractFormatterDetails("<Body>", "</Body>", false), null, null));
+		compare(bodyDecoder, payload);
+		
+		// Make control characters visible
+		final FormatterDetails controlCharacters = new FormatterDetails();
+		controlCharacters.setName("Control characters as HEX");
+		controlCharacters.getFunction().add(new FormatterFunction(null, null, null, null, 
+				new CharacterReplaceFormatterDetails(ConversionMethod.HEX_ENCODE, 0, 31, "/"), null));
+		compare(controlCharacters, payload);
+		
+		// Both of the above
+		final FormatterDetails combined = new FormatterDetails();
+		combined.setName("Combined");
+		combined.getFunction().addAll(controlCharacters.getFunction());
+		combined.getFunction().addAll(bodyDecoder.getFunction());
+		compare(combined, payload);
+		
+		// Single conversion of the raw payload
+		defaultFormatter.setName("Plain");
+		compare(defaultFormatter, payload);
+	}
+	
+	@Test
+	public void compareScriptAndNativeKuraFormatters() throws IOException
+	{
+		final byte[] payload = Files.readAllBytes(Paths.get("src/test/resources/kura/kura.birth"));
+		final FormattedMqttMessage message = new FormattedMqttMessage(0, "test", new MqttMessage(payload), null);
+		
+		FormatterDetails kuraScript = null;
+		for (final FormatterDetails formatter : FormattingManager.createDefaultScriptFormatters())
+		{
+			if (formatter.getName().equals("Eclipse Kura"))
+			{
+				kuraScript = formatter;
+			}
+		}
+		assertNotNull(kuraScript);
+		
+		final ScriptBasedFormatter scriptFormatter = new ScriptBasedFormatter(new MqttScriptManager(null, null, null));
+		final KuraNativeFormatter nativeFormatter = new KuraNativeFormatter();
+		
+		// Warm up both and check they decoded the payload
+		String scriptResult = null;
+		String nativeResult = null;
+		for (int i = 0; i < KURA_WARM_UP; i++)
+		{
+			scriptResult = scriptFormatter.formatMessage(kuraScript, message);
+			nativeResult = nativeFormatter.format(message.getRawPayload());
+		}
+		assertTrue(scriptResult.contains("KURA_1.3.0"));
+		assertTrue(nativeResult.contains("KURA_1.3.0"));
+		
+		long startTime = System.nanoTime();
+		for (int i = 0; i < KURA_REPEAT; i++)
+		{
+			scriptFormatter.formatMessage(kuraScript, message);
+		}
+		final long scriptTime = System.nanoTime() - startTime;
+		
+		startTime = System.nanoTime();
+		for (int i = 0; i < KURA_REPEAT; i++)
+		{
+			nativeFormatter.format(message.getRawPayload());
+		}
+		final long nativeTime = System.nanoTime() - startTime;
+		
+		System.out.println("Eclipse Kura: script avg = " + (scriptTime / KURA_REPEAT) + " ns; native avg = " 
+				+ (nativeTime / KURA_REPEAT) + " ns; speed-up = " + String.format("%.1f", (double) scriptTime / nativeTime) + "x");
+	}
+	
 	@Ignore
 	@Test
-	public void compareFormattingMethods() throws NoSuchMethodException, ScriptException
+	public void compareScriptFormattingMethods() throws NoSuchMethodException, ScriptException
 	{
 		final String payload = "<Body>VGhpcyBpcyBhIHNhbXBsZSBtZXNzYWdlIGVuY29kZWQgaW4gQkFTRTY0Lg==</Body>";
 		final FormattedMqttMessage message = new FormattedMqttMessage(0, "test", new MqttMessage(payload.getBytes()), null);
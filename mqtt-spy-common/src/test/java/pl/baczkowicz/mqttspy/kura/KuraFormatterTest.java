@@ -1,20 +1,33 @@
 package pl.baczkowicz.mqttspy.kura;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Date;
 
+import org.eclipse.kura.KuraException;
 import org.eclipse.kura.KuraInvalidMessageException;
+import org.eclipse.kura.core.cloud.CloudPayloadProtoBufDecoderImpl;
+import org.eclipse.kura.core.cloud.CloudPayloadProtoBufEncoderImpl;
+import org.eclipse.kura.message.KuraPayload;
+import org.eclipse.kura.message.KuraPosition;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jayway.jsonpath.JsonPath;
+
 public class KuraFormatterTest
 {
 	/** Diagnostic logger. */
 	private static final Logger logger = LoggerFactory.getLogger(KuraFormatterTest.class);
 	
+	private final KuraNativeFormatter nativeFormatter = new KuraNativeFormatter();
+	
 	@Test
 	public void testKuraPayloadFormatting() throws KuraInvalidMessageException, IOException
 	{
@@ -23,5 +36,68 @@ public class KuraFormatterTest
 		
 		logger.info(KuraPayloadFormatter.format(data));
 	}
-
+	
+	@Test
+	public void testNativeFormattingMatchesKuraDecoder() throws KuraInvalidMessageException, IOException
+	{
+		final byte[] data = Files.readAllBytes(Paths.get("src/test/resources/kura/kura.birth"));
+		final KuraPayload payload = new CloudPayloadProtoBufDecoderImpl(data).buildFromByteArray();
+		
+		final String json = nativeFormatter.format(data);
+		logger.info(nativeFormatter.formatPretty(data));
+		
+		for (final String name : payload.metricNames())
+		{
+			assertEquals(payload.getMetric(name), JsonPath.read(json, "$.kuraPayload.metrics['" + name + "']"));
+		}
+		
+		// Same content, just indented
+		assertEquals(json, nativeFormatter.formatPretty(data).replaceAll("\n *", "").replace("\": ", "\":"));
+	}
+	
+	@Test
+	public void testNativeFormattingOfAllMetricTypes() throws KuraException, IOException
+	{
+		final KuraPayload payload = new KuraPayload();
+		payload.setTimestamp(new Date(1454624652237L));
+		
+		final KuraPosition position = new KuraPosition();
+		position.setLatitude(51.5);
+		position.setLongitude(-0.125);
+		position.setSatellites(7);
+		payload.setPosition(position);
+		
+		payload.addMetric("double", 21.5);
+		payload.addMetric("float", 0.1f);
+		payload.addMetric("long", 1454624652237L);
+		payload.addMetric("int", -5);
+		payload.addMetric("bool", true);
+		payload.addMetric("string", "\"quoted\"\n\u00e9");
+		payload.addMetric("bytes", new byte[] {1, 2, 3});
+		payload.setBody("{\"hello\":\"mqtt-spy\"}".getBytes());
+		
+		final String json = nativeFormatter.format(new CloudPayloadProtoBufEncoderImpl(payload).getBytes());
+		logger.info(json);
+		
+		assertEquals(1454624652237L, ((Number) JsonPath.read(json, "$.kuraPayload.timestamp")).longValue());
+		assertEquals(51.5, (Double) JsonPath.read(json, "$.kuraPayload.position.latitude"), 0);
+		assertEquals(-0.125, (Double) JsonPath.read(json, "$.kuraPayload.position.longitude"), 0);
+		assertEquals(7, (int) (Integer) JsonPath.read(json, "$.kuraPayload.position.satellites"));
+		
+		assertEquals(21.5, (Double) JsonPath.read(json, "$.kuraPayload.metrics.double"), 0);
+		assertEquals(0.1, (Double) JsonPath.read(json, "$.kuraPayload.metrics.float"), 0);
+		assertEquals(1454624652237L, ((Number) JsonPath.read(json, "$.kuraPayload.metrics.long")).longValue());
+		assertEquals(-5, (int) (Integer) JsonPath.read(json, "$.kuraPayload.metrics.int"));
+		assertEquals(true, JsonPath.read(json, "$.kuraPayload.metrics.bool"));
+		assertEquals("\"quoted\"\n\u00e9", JsonPath.read(json, "$.kuraPayload.metrics.string"));
+		assertEquals("AQID", JsonPath.read(json, "$.kuraPayload.metrics.bytes"));
+		assertEquals("{\"hello\":\"mqtt-spy\"}", JsonPath.read(json, "$.kuraPayload.body"));
+	}
+	
+	@Test
+	public void testNativeFormattingOfInvalidPayload()
+	{
+		assertTrue(nativeFormatter.format("hello".getBytes()).startsWith("Invalid Kura payload"));
+		assertTrue(nativeFormatter.format(new byte[] {(byte) 0x82, (byte) 0x01}).startsWith("Invalid Kura payload"));
+	}
 }
@@ -0,0 +1,149 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+
+/**
+ * Tests for views of the FormattedMqttMessage.
+ */
+public class FormattedMqttMessageTest
+{
+	@Test
+	public void testViewsShareTheReceivedMessage()
+	{
+		final FormattedMqttMessage received = new FormattedMqttMessage(1, "topic", new MqttMessage("payload".getBytes()), null);
+		
+		final FormattedMqttMessage view1 = new FormattedMqttMessage(received);
+		final FormattedMqttMessage view2 = new FormattedMqttMessage(received);
+		view2.setSubscription("topic/#");
+		
+		assertSame(received.getRawMessage(), view1.getRawMessage());
+		assertSame(received.getRawMessage(), view2.getRawMessage());
+		assertSame(received.getDate(), view1.getDate());
+		assertSame(received.getFormattedPayload(), view1.getFormattedPayload());
+		assertEquals(received.getId(), view2.getId());
+		assertEquals("topic/#", view2.getSubscription());
+		assertEquals(null, view1.getSubscription());
+	}
+	
+	@Test
+	public void testModifyingViewDoesNotAffectOthers()
+	{
+		final FormattedMqttMessage received = new FormattedMqttMessage(1, "topic", new MqttMessage("payload".getBytes()), null);
+		
+		final FormattedMqttMessage view = new FormattedMqttMessage(received);
+		view.setPayload("modified");
+		
+		assertNotSame(received.getRawMessage(), view.getRawMessage());
+		assertEquals("modified", view.getPayload());
+		assertEquals("payload", received.getPayload());
+		
+		received.setPayload("modified too");
+		assertEquals("modified", view.getPayload());
+		assertEquals("modified too", received.getPayload());
+	}
+	
+	@Test
+	public void testSharedSizeCountedOnce()
+	{
+		final FormattedMqttMessage received = new FormattedMqttMessage(1, "topic", new MqttMessage("payload".getBytes()), null);
+		
+		final FormattedMqttMessage view1 = new FormattedMqttMessage(received);
+		final FormattedMqttMessage view2 = new FormattedMqttMessage(received);
+		final long sharedSize = view1.getEstimatedSharedSize();
+		
+		assertTrue(sharedSize > 0);
+		assertTrue(view1.getEstimatedSize() > sharedSize);
+		
+		// Only the first reference counts the shared parts, and only the last one releases them
+		assertEquals(sharedSize, view1.retainSharedSize());
+		assertEquals(0, view2.retainSharedSize());
+		assertEquals(0, view1.releaseSharedSize());
+		assertEquals(sharedSize, view2.releaseSharedSize());
+		assertEquals(0, view2.releaseSharedSize());
+	}
+	
+	@Test
+	public void testReleasedArenaPayloadStaysReadable()
+	{
+		final PayloadArena arena = new PayloadArena(1024);
+		final FormattedMqttMessage received = new FormattedMqttMessage(1, "topic", new MqttMessage("payload".getBytes()), null);
+		
+		received.retainInArena(arena);
+		assertTrue(arena.getStoredBytes() > 0);
+		
+		// Evicting the message doesn't copy the payload back - it stays in the arena while the message is in use
+		received.releaseFromArena();
+		assertEquals("payload", received.getPayload());
+		assertTrue(arena.getStoredBytes() > 0);
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testArenaRawMessageIsReadOnly()
+	{
+		final FormattedMqttMessage received = new FormattedMqttMessage(1, "topic", new MqttMessage("payload".getBytes()), null);
+		received.retainInArena(new PayloadArena(1024));
+		
+		assertEquals("payload", new String(received.getRawMessage().getPayload()));
+		received.getRawMessage().setPayload("modified".getBytes());
+	}
+	
+	@Test
+	public void testDecompressedPayloadEvicted()
+	{
+		final List<Object> evicted = new ArrayList<>();
+		final PayloadCompressor compressor = new PayloadCompressor(1)
+		{
+			@Override
+			public void evict(final Object key)
+			{
+				evicted.add(key);
+				super.evict(key);
+			}
+		};
+		
+		final FormattedMqttMessage plain = new FormattedMqttMessage(1, "topic", new MqttMessage("short".getBytes()), null);
+		plain.evictDecompressedPayload();
+		assertTrue(evicted.isEmpty());
+		
+		final String payload = new String(new char[1000]).replace('\0', 'a');
+		final FormattedMqttMessage compressed = new FormattedMqttMessage(2, "topic", new MqttMessage(payload.getBytes()), null);
+		compressed.compressPayload(compressor);
+		assertTrue(compressed.getStoredPayloadLength() < payload.length());
+		assertEquals(payload, compressed.getPayload());
+		
+		compressed.evictDecompressedPayload();
+		assertEquals(1, evicted.size());
+		assertEquals(payload, compressed.getPayload());
+	}
+}
@@ -0,0 +1,129 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.messages;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Compares allocation of the eager (decode on creation and on every access) 
+ * and lazy (decode once on first access) payload handling.
+ */
+public class MessageAllocationPerformanceTest
+{
+	/** Number of subscriptions each message is matched to. */
+	private static final int SUBSCRIPTIONS = 5;
+	
+	/** How many times the payload is accessed when viewed (search, charts, summary, logging). */
+	private static final int ACCESSES = 5;
+	
+	private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	
+	@Ignore
+	@Test
+	public void compareEagerAndLazyDecoding()
+	{
+		for (final int size : new int[] {1024, 64 * 1024})
+		{
+			final byte[] payload = new byte[size];
+			new Random(size).nextBytes(payload);
+			final int repeat = size > 1024 ? 1000 : 20000;
+			
+			// Warm up
+			runEager(payload, repeat, true);
+			runLazy(payload, repeat, true);
+			
+			for (final boolean viewed : new boolean[] {false, true})
+			{
+				final long eager = runEager(payload, repeat, viewed);
+				final long lazy = runLazy(payload, repeat, viewed);
+				
+				System.out.println(String.format("%d B payload, %s: eager = %d B/msg; lazy = %d B/msg", 
+						size, viewed ? "viewed" : "never viewed", eager / repeat, lazy / repeat));
+			}
+		}
+	}
+	
+	/**
+	 * Mimics the previous behaviour - a decoded copy per subscription, with the payload decoded on each access.
+	 */
+	private long runEager(final byte[] payload, final int repeat, final boolean viewed)
+	{
+		final long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long length = 0;
+		
+		for (int i = 0; i < repeat; i++)
+		{
+			for (int s = 0; s <= SUBSCRIPTIONS; s++)
+			{
+				final MqttMessage copy = BaseMqttMessage.copyMqttMessage(new MqttMessage(payload));
+				final FormattedMqttMessage message = new FormattedMqttMessage(i, "test", copy, null);
+				message.setFormattedPayload(ConversionUtils.arrayToString(copy.getPayload()));
+				
+				if (viewed)
+				{
+					for (int a = 0; a < ACCESSES; a++)
+					{
+						length += ConversionUtils.arrayToString(copy.getPayload()).length();
+					}
+				}
+			}
+		}
+		
+		final long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+		return length >= 0 ? allocated : 0;
+	}
+	
+	/**
+	 * Lazy decoding - views sharing the received message, with the payload decoded once on first access.
+	 */
+	private long runLazy(final byte[] payload, final int repeat, final boolean viewed)
+	{
+		final long start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long length = 0;
+		
+		for (int i = 0; i < repeat; i++)
+		{
+			final FormattedMqttMessage received = new FormattedMqttMessage(i, "test", new MqttMessage(payload), null);
+			
+			for (int s = 0; s <= SUBSCRIPTIONS; s++)
+			{
+				final FormattedMqttMessage message = new FormattedMqttMessage(received);
+				
+				if (viewed)
+				{
+					for (int a = 0; a < ACCESSES; a++)
+					{
+						length += message.getFormattedPayload().length();
+					}
+				}
+			}
+		}
+		
+		final long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+		return length >= 0 ? allocated : 0;
+	}
+}
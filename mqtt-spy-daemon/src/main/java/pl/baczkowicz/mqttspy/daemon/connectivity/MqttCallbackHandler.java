@@ -19,10 +19,11 @@
  */
 package pl.baczkowicz.mqttspy.daemon.connectivity;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
@@ -35,13 +36,16 @@ import pl.baczkowicz.mqttspy.common.generated.MessageLogEnum;
 import pl.baczkowicz.mqttspy.common.generated.SubscriptionDetails;
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttConnection;
 import pl.baczkowicz.mqttspy.connectivity.BaseMqttSubscription;
+import pl.baczkowicz.mqttspy.connectivity.topicmatching.TopicMatcher;
 import pl.baczkowicz.mqttspy.daemon.configuration.generated.DaemonMqttConnectionDetails;
 import pl.baczkowicz.mqttspy.logger.MqttMessageLogger;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.connectivity.IngestQueue;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.messages.MessageIdGenerator;
 import pl.baczkowicz.spy.scripts.BaseScriptManager;
+import pl.baczkowicz.spy.utils.ThreadingUtils;
 
 /**
  * Callback handler for the MQTT connection.
@@ -51,12 +55,21 @@ public class MqttCallbackHandler implements MqttCallback
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(MqttCallbackHandler.class);
 	
-	/** Stores all received messages, so that we don't block the receiving thread. */
-	private final Queue<FormattedMqttMessage> messageQueue = new LinkedBlockingQueue<FormattedMqttMessage>();
+	/** How often (in ms) statistics are logged. */
+	private final static long STATS_LOG_INTERVAL = 60000;
+	
+	/** Stores received messages, so that we don't block the receiving thread; bounded, with the configured overload policy. */
+	private final IngestQueue<FormattedMqttMessage> ingestQueue;
+	
+	/** Stores processed messages for logging; when full, processing waits, so that any overload is handled by the ingest queue. */
+	private final BlockingQueue<FormattedMqttMessage> logQueue;
 	
 	/** Logs all received messages (if configured). */
 	private final MqttMessageLogger messageLogger;
 	
+	/** Processes messages taken from the ingest queue. */
+	private final Thread processingThread;
+	
 	/** The connection. */
 	private final BaseMqttConnection connection;
 
@@ -71,6 +84,12 @@ public class MqttCallbackHandler implements MqttCallback
 	
 	private final FormattingManager formattingManager;
 	
+	/** When (in ms) statistics were last logged. */
+	private long lastStatsLog = System.currentTimeMillis();
+	
+	/** Number of dropped messages when statistics were last logged. */
+	private long lastStatsDroppedCount;
+	
 	/** Message ID. */
 	//private long currentId = 1;
 
@@ -88,14 +107,18 @@ public class MqttCallbackHandler implements MqttCallback
 		this.connectionSettings = connectionSettings;
 		this.scriptManager = scriptManager;
 		this.formattingManager = new FormattingManager(scriptManager);
-		this.messageLogger = new MqttMessageLogger("0", messageQueue, connectionSettings.getMessageLog(), false, 10);
+		this.ingestQueue = new IngestQueue<FormattedMqttMessage>(connectionSettings.getIngestQueue(), null);
+		this.logQueue = new LinkedBlockingQueue<FormattedMqttMessage>(ingestQueue.getCapacity());
+		this.messageLogger = new MqttMessageLogger("0", logQueue, connectionSettings.getMessageLog(), false, 10);
+		this.processingThread = new Thread(this::processMessages);
 		
 		for (final SubscriptionDetails subscriptionDetails : connectionSettings.getSubscription())
 		{
 			this.subscriptionsDetails.put(subscriptionDetails.getTopic(), subscriptionDetails);
 		}
 		
-		new Thread(messageLogger).start();			
+		new Thread(messageLogger).start();
+		processingThread.start();
 	}
 
 	/** 
@@ -110,24 +133,62 @@ public class MqttCallbackHandler implements MqttCallback
 	}
 
 	/**
-	 * Handles received messages.
+	 * Handles received messages - adds them to the ingest queue.
 	 * 
 	 * @param topic Topic on which the message has been received
 	 * @param message The received message
 	 */
 	public void messageArrived(final String topic, final MqttMessage message)
 	{
-		logger.debug("[{}] Received message on topic \"{}\". Payload = \"{}\"", messageQueue.size(), topic, new String(message.getPayload()));		
+		logger.debug("[{}] Received message on topic \"{}\". Payload = \"{}\"", ingestQueue.size(), topic, new String(message.getPayload()));		
 		
-		final long newId = MessageIdGenerator.getNewId();
+		ingestQueue.add(new FormattedMqttMessage(MessageIdGenerator.getNewId(), topic, message, connection));
+	}
+	
+	/**
+	 * Processes messages from the ingest queue until stopped.
+	 */
+	private void processMessages()
+	{
+		ThreadingUtils.logThreadStarting("Message Handler");
 		
-		final FormattedMqttMessage receivedMessage = new FormattedMqttMessage(newId, topic, message, connection);
+		while (true)
+		{
+			try
+			{
+				processMessage(ingestQueue.getQueue().take());
+			}
+			catch (InterruptedException e)
+			{
+				break;
+			}
+			catch (RuntimeException e)
+			{
+				logger.error("Cannot process received message", e);
+			}
+		}
 		
+		ThreadingUtils.logThreadEnding();
+	}
+	
+	/**
+	 * Processes a received message - runs subscription scripts, stores and logs it.
+	 * 
+	 * @param receivedMessage The received message
+	 */
+	private void processMessage(final FormattedMqttMessage receivedMessage)
+	{
 		// Check matching subscriptions
-		final List<String> matchingSubscriptions = connection.getTopicMatcher().getMatchingSubscriptions(receivedMessage.getTopic());
-		receivedMessage.setMatchingSubscriptionTopics(matchingSubscriptions);
+		final List<BaseMqttSubscription> matchingSubscriptions = connection.getTopicMatcher().getMatchingSubscriptions(receivedMessage.getTopic());
+		final List<String> matchingSubscriptionTopics = new ArrayList<String>(matchingSubscriptions.size());
+		for (final BaseMqttSubscription subscription : matchingSubscriptions)
+		{
+			matchingSubscriptionTopics.add(subscription.getTopic());
+		}
+		receivedMessage.setMatchingSubscriptionTopics(matchingSubscriptionTopics);
 		
 		logger.trace("Matching subscriptions for message on {} = {}", receivedMessage.getTopic(), matchingSubscriptions);
+		logStatsIfDue();
 		
 		// Before scripts
 		if (connectionSettings.getMessageLog().isLogBeforeScripts())
@@ -137,16 +198,15 @@ public class MqttCallbackHandler implements MqttCallback
 		}
 		
 		// Format the message if configured
-		final FormattedMqttMessage formattedMessage = new FormattedMqttMessage(newId, topic, message, connection);
+		final FormattedMqttMessage formattedMessage = new FormattedMqttMessage(receivedMessage);
 		if (connectionSettings.getFormatter() != null)
 		{
 			formattingManager.formatMessage(formattedMessage, (FormatterDetails) connectionSettings.getFormatter());
 		}
 		
-		for (final String matchingSubscriptionTopic : matchingSubscriptions)
+		for (final BaseMqttSubscription subscription : matchingSubscriptions)
 		{
 			// If configured, run scripts for the matching subscriptions
-			final BaseMqttSubscription subscription = connection.getMqttSubscriptionForTopic(matchingSubscriptionTopic);
 			if (subscription.isScriptActive())
 			{
 				scriptManager.runScriptWithReceivedMessage(subscription.getScript(), receivedMessage);
@@ -176,7 +236,15 @@ public class MqttCallbackHandler implements MqttCallback
 		// Add the received message to queue for logging
 		if (!MessageLogEnum.DISABLED.equals(connectionSettings.getMessageLog().getValue()))
 		{
-			messageQueue.add(receivedMessage);
+			try
+			{
+				logQueue.put(receivedMessage);
+			}
+			catch (InterruptedException e)
+			{
+				// Stopping - let the processing thread finish
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
@@ -191,10 +259,57 @@ public class MqttCallbackHandler implements MqttCallback
 	}
 	
 	/**
-	 * Stops the message logger.
+	 * Stops processing and the message logger.
 	 */
 	public void stop()
 	{
+		processingThread.interrupt();
 		messageLogger.stop();
+		
+		logStats();
+	}
+	
+	/**
+	 * Logs statistics if they haven't been logged for a while.
+	 */
+	private void logStatsIfDue()
+	{
+		final long now = System.currentTimeMillis();
+		
+		if (now - lastStatsLog >= STATS_LOG_INTERVAL)
+		{
+			lastStatsLog = now;
+			logStats();
+		}
+	}
+	
+	/**
+	 * Logs the topic matching cache statistics (so that the cache can be sized)
+	 * and the messages dropped by the ingest queue since last logged.
+	 */
+	private synchronized void logStats()
+	{
+		final TopicMatcher topicMatcher = connection.getTopicMatcher();
+		
+		logger.info("Topic matching cache: {}/{} topics, hits = {}, misses = {}", 
+				topicMatcher.getCacheSize(), topicMatcher.getMaxCacheSize(), topicMatcher.getCacheHits(), topicMatcher.getCacheMisses());
+		
+		final long droppedCount = ingestQueue.getDroppedCount();
+		if (droppedCount > lastStatsDroppedCount)
+		{
+			logger.warn("Dropped {} message(s) because of overload ({}; {} dropped in total); per topic = {}", 
+					droppedCount - lastStatsDroppedCount, ingestQueue.getOverloadPolicy(), droppedCount, ingestQueue.getDroppedCountPerTopic());
+			lastStatsDroppedCount = droppedCount;
+		}
+	}
+	
+	/**
+	 * Gets the ingest queue.
+	 * 
+	 * @return The ingest queue (with drop counts)
+	 */
+	public IngestQueue<FormattedMqttMessage> getIngestQueue()
+	{
+		return ingestQueue;
 	}
 }
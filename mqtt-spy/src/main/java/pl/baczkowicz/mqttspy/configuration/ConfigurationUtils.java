@@ -49,6 +49,16 @@ public class ConfigurationUtils
 			connection.setMaxMessagesStored(MessageList.DEFAULT_MAX_SIZE);
 		}
 		
+		if (connection.getMaxMemoryStored() == null)
+		{
+			connection.setMaxMemoryStored(0);
+		}
+		
+		if (connection.getCompressPayloadsAbove() == null)
+		{
+			connection.setCompressPayloadsAbove(0);
+		}
+		
 		if (connection.getMinMessagesStoredPerTopic() == null)
 		{
 			connection.setMinMessagesStoredPerTopic(MessageList.DEFAULT_MIN_MESSAGES_PER_TOPIC);
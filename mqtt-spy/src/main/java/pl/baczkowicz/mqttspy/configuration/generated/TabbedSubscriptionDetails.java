@@ -43,6 +43,7 @@ import pl.baczkowicz.mqttspy.common.generated.SubscriptionDetails;
  *   &lt;complexContent&gt;
  *     &lt;extension base="{http://baczkowicz.pl/mqtt-spy/common}SubscriptionDetails"&gt;
  *       &lt;attribute name="createTab" type="{http://www.w3.org/2001/XMLSchema}boolean" default="false" /&gt;
+ *       &lt;attribute name="maxMemoryStored" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
  *     &lt;/extension&gt;
  *   &lt;/complexContent&gt;
  * &lt;/complexType&gt;
@@ -61,6 +62,8 @@ public class TabbedSubscriptionDetails
     private final static long serialVersionUID = 1L;
     @XmlAttribute(name = "createTab")
     protected Boolean createTab;
+    @XmlAttribute(name = "maxMemoryStored")
+    protected Integer maxMemoryStored;
 
     /**
      * Default no-arg constructor
@@ -74,8 +77,9 @@ public class TabbedSubscriptionDetails
      * Fully-initialising value constructor
      * 
      */
-    public TabbedSubscriptionDetails(final Boolean createTab) {
+    public TabbedSubscriptionDetails(final Boolean createTab, final Integer maxMemoryStored) {
         this.createTab = createTab;
+        this.maxMemoryStored = maxMemoryStored;
     }
 
     /**
@@ -106,6 +110,30 @@ public class TabbedSubscriptionDetails
         this.createTab = value;
     }
 
+    /**
+     * Gets the value of the maxMemoryStored property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxMemoryStored() {
+        return maxMemoryStored;
+    }
+
+    /**
+     * Sets the value of the maxMemoryStored property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxMemoryStored(Integer value) {
+        this.maxMemoryStored = value;
+    }
+
     public String toString() {
         final ToStringStrategy strategy = JAXBToStringStrategy.INSTANCE;
         final StringBuilder buffer = new StringBuilder();
@@ -127,6 +155,11 @@ public class TabbedSubscriptionDetails
             theCreateTab = ((this.createTab!= null)?this.isCreateTab():false);
             strategy.appendField(locator, this, "createTab", buffer, theCreateTab);
         }
+        {
+            Integer theMaxMemoryStored;
+            theMaxMemoryStored = this.getMaxMemoryStored();
+            strategy.appendField(locator, this, "maxMemoryStored", buffer, theMaxMemoryStored);
+        }
         return buffer;
     }
 
@@ -150,6 +183,15 @@ public class TabbedSubscriptionDetails
                 return false;
             }
         }
+        {
+            Integer lhsMaxMemoryStored;
+            lhsMaxMemoryStored = this.getMaxMemoryStored();
+            Integer rhsMaxMemoryStored;
+            rhsMaxMemoryStored = that.getMaxMemoryStored();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "maxMemoryStored", lhsMaxMemoryStored), LocatorUtils.property(thatLocator, "maxMemoryStored", rhsMaxMemoryStored), lhsMaxMemoryStored, rhsMaxMemoryStored)) {
+                return false;
+            }
+        }
         return true;
     }
 
@@ -165,6 +207,11 @@ public class TabbedSubscriptionDetails
             theCreateTab = ((this.createTab!= null)?this.isCreateTab():false);
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "createTab", theCreateTab), currentHashCode, theCreateTab);
         }
+        {
+            Integer theMaxMemoryStored;
+            theMaxMemoryStored = this.getMaxMemoryStored();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "maxMemoryStored", theMaxMemoryStored), currentHashCode, theMaxMemoryStored);
+        }
         return currentHashCode;
     }
 
@@ -195,6 +242,14 @@ public class TabbedSubscriptionDetails
             } else {
                 copy.createTab = null;
             }
+            if (this.maxMemoryStored!= null) {
+                Integer sourceMaxMemoryStored;
+                sourceMaxMemoryStored = this.getMaxMemoryStored();
+                Integer copyMaxMemoryStored = ((Integer) strategy.copy(LocatorUtils.property(locator, "maxMemoryStored", sourceMaxMemoryStored), sourceMaxMemoryStored));
+                copy.setMaxMemoryStored(copyMaxMemoryStored);
+            } else {
+                copy.maxMemoryStored = null;
+            }
         }
         return draftCopy;
     }
@@ -59,6 +59,8 @@ import pl.baczkowicz.spy.common.generated.ScriptDetails;
  *         &lt;element name="Formatter" type="{http://www.w3.org/2001/XMLSchema}IDREF" minOccurs="0"/&gt;
  *         &lt;element name="MinMessagesStoredPerTopic" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
  *         &lt;element name="MaxMessagesStored" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
+ *         &lt;element name="MaxMemoryStored" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
+ *         &lt;element name="CompressPayloadsAbove" type="{http://www.w3.org/2001/XMLSchema}int" minOccurs="0"/&gt;
  *         &lt;element name="PublicationScripts" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/&gt;
  *         &lt;element name="SearchScripts" type="{http://www.w3.org/2001/XMLSchema}string" minOccurs="0"/&gt;
  *         &lt;element name="BackgroundScript" type="{http://baczkowicz.pl/spy/common}ScriptDetails" maxOccurs="unbounded" minOccurs="0"/&gt;
@@ -83,6 +85,8 @@ import pl.baczkowicz.spy.common.generated.ScriptDetails;
     "formatter",
     "minMessagesStoredPerTopic",
     "maxMessagesStored",
+    "maxMemoryStored",
+    "compressPayloadsAbove",
     "publicationScripts",
     "searchScripts",
     "backgroundScript",
@@ -114,6 +118,10 @@ public class UserInterfaceMqttConnectionDetails
     protected Integer minMessagesStoredPerTopic;
     @XmlElement(name = "MaxMessagesStored")
     protected Integer maxMessagesStored;
+    @XmlElement(name = "MaxMemoryStored")
+    protected Integer maxMemoryStored;
+    @XmlElement(name = "CompressPayloadsAbove")
+    protected Integer compressPayloadsAbove;
     @XmlElement(name = "PublicationScripts")
     protected String publicationScripts;
     @XmlElement(name = "SearchScripts")
@@ -135,7 +143,7 @@ public class UserInterfaceMqttConnectionDetails
      * Fully-initialising value constructor
      * 
      */
-    public UserInterfaceMqttConnectionDetails(final List<PublicationDetails> publication, final List<TabbedSubscriptionDetails> subscription, final UserAuthenticationOptions userAuthentication, final Boolean autoOpen, final Boolean autoConnect, final Boolean autoSubscribe, final Object formatter, final Integer minMessagesStoredPerTopic, final Integer maxMessagesStored, final String publicationScripts, final String searchScripts, final List<ScriptDetails> backgroundScript, final MessageLog messageLog) {
+    public UserInterfaceMqttConnectionDetails(final List<PublicationDetails> publication, final List<TabbedSubscriptionDetails> subscription, final UserAuthenticationOptions userAuthentication, final Boolean autoOpen, final Boolean autoConnect, final Boolean autoSubscribe, final Object formatter, final Integer minMessagesStoredPerTopic, final Integer maxMessagesStored, final Integer maxMemoryStored, final Integer compressPayloadsAbove, final String publicationScripts, final String searchScripts, final List<ScriptDetails> backgroundScript, final MessageLog messageLog) {
         this.publication = publication;
         this.subscription = subscription;
         this.userAuthentication = userAuthentication;
@@ -145,6 +153,8 @@ public class UserInterfaceMqttConnectionDetails
         this.formatter = formatter;
         this.minMessagesStoredPerTopic = minMessagesStoredPerTopic;
         this.maxMessagesStored = maxMessagesStored;
+        this.maxMemoryStored = maxMemoryStored;
+        this.compressPayloadsAbove = compressPayloadsAbove;
         this.publicationScripts = publicationScripts;
         this.searchScripts = searchScripts;
         this.backgroundScript = backgroundScript;
@@ -377,6 +387,54 @@ public class UserInterfaceMqttConnectionDetails
         this.maxMessagesStored = value;
     }
 
+    /**
+     * Gets the value of the maxMemoryStored property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getMaxMemoryStored() {
+        return maxMemoryStored;
+    }
+
+    /**
+     * Sets the value of the maxMemoryStored property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setMaxMemoryStored(Integer value) {
+        this.maxMemoryStored = value;
+    }
+
+    /**
+     * Gets the value of the compressPayloadsAbove property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getCompressPayloadsAbove() {
+        return compressPayloadsAbove;
+    }
+
+    /**
+     * Sets the value of the compressPayloadsAbove property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setCompressPayloadsAbove(Integer value) {
+        this.compressPayloadsAbove = value;
+    }
+
     /**
      * Gets the value of the publicationScripts property.
      * 
@@ -539,6 +597,16 @@ public class UserInterfaceMqttConnectionDetails
             theMaxMessagesStored = this.getMaxMessagesStored();
             strategy.appendField(locator, this, "maxMessagesStored", buffer, theMaxMessagesStored);
         }
+        {
+            Integer theMaxMemoryStored;
+            theMaxMemoryStored = this.getMaxMemoryStored();
+            strategy.appendField(locator, this, "maxMemoryStored", buffer, theMaxMemoryStored);
+        }
+        {
+            Integer theCompressPayloadsAbove;
+            theCompressPayloadsAbove = this.getCompressPayloadsAbove();
+            strategy.appendField(locator, this, "compressPayloadsAbove", buffer, theCompressPayloadsAbove);
+        }
         {
             String thePublicationScripts;
             thePublicationScripts = this.getPublicationScripts();
@@ -654,6 +722,24 @@ public class UserInterfaceMqttConnectionDetails
                 return false;
             }
         }
+        {
+            Integer lhsMaxMemoryStored;
+            lhsMaxMemoryStored = this.getMaxMemoryStored();
+            Integer rhsMaxMemoryStored;
+            rhsMaxMemoryStored = that.getMaxMemoryStored();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "maxMemoryStored", lhsMaxMemoryStored), LocatorUtils.property(thatLocator, "maxMemoryStored", rhsMaxMemoryStored), lhsMaxMemoryStored, rhsMaxMemoryStored)) {
+                return false;
+            }
+        }
+        {
+            Integer lhsCompressPayloadsAbove;
+            lhsCompressPayloadsAbove = this.getCompressPayloadsAbove();
+            Integer rhsCompressPayloadsAbove;
+            rhsCompressPayloadsAbove = that.getCompressPayloadsAbove();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "compressPayloadsAbove", lhsCompressPayloadsAbove), LocatorUtils.property(thatLocator, "compressPayloadsAbove", rhsCompressPayloadsAbove), lhsCompressPayloadsAbove, rhsCompressPayloadsAbove)) {
+                return false;
+            }
+        }
         {
             String lhsPublicationScripts;
             lhsPublicationScripts = this.getPublicationScripts();
@@ -745,6 +831,16 @@ public class UserInterfaceMqttConnectionDetails
             theMaxMessagesStored = this.getMaxMessagesStored();
             currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "maxMessagesStored", theMaxMessagesStored), currentHashCode, theMaxMessagesStored);
         }
+        {
+            Integer theMaxMemoryStored;
+            theMaxMemoryStored = this.getMaxMemoryStored();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "maxMemoryStored", theMaxMemoryStored), currentHashCode, theMaxMemoryStored);
+        }
+        {
+            Integer theCompressPayloadsAbove;
+            theCompressPayloadsAbove = this.getCompressPayloadsAbove();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "compressPayloadsAbove", theCompressPayloadsAbove), currentHashCode, theCompressPayloadsAbove);
+        }
         {
             String thePublicationScripts;
             thePublicationScripts = this.getPublicationScripts();
@@ -869,6 +965,22 @@ public class UserInterfaceMqttConnectionDetails
             } else {
                 copy.maxMessagesStored = null;
             }
+            if (this.maxMemoryStored!= null) {
+                Integer sourceMaxMemoryStored;
+                sourceMaxMemoryStored = this.getMaxMemoryStored();
+                Integer copyMaxMemoryStored = ((Integer) strategy.copy(LocatorUtils.property(locator, "maxMemoryStored", sourceMaxMemoryStored), sourceMaxMemoryStored));
+                copy.setMaxMemoryStored(copyMaxMemoryStored);
+            } else {
+                copy.maxMemoryStored = null;
+            }
+            if (this.compressPayloadsAbove!= null) {
+                Integer sourceCompressPayloadsAbove;
+                sourceCompressPayloadsAbove = this.getCompressPayloadsAbove();
+                Integer copyCompressPayloadsAbove = ((Integer) strategy.copy(LocatorUtils.property(locator, "compressPayloadsAbove", sourceCompressPayloadsAbove), sourceCompressPayloadsAbove));
+                copy.setCompressPayloadsAbove(copyCompressPayloadsAbove);
+            } else {
+                copy.compressPayloadsAbove = null;
+            }
             if (this.publicationScripts!= null) {
                 String sourcePublicationScripts;
                 sourcePublicationScripts = this.getPublicationScripts();
@@ -35,6 +35,7 @@ import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.scripts.InteractiveScriptManager;
 import pl.baczkowicz.spy.common.generated.ScriptDetails;
 import pl.baczkowicz.spy.connectivity.ConnectionStatus;
+import pl.baczkowicz.spy.connectivity.IngestQueue;
 import pl.baczkowicz.spy.connectivity.ReconnectionManager;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.formatting.FormattingManager;
@@ -73,6 +74,9 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 	private final InteractiveScriptManager scriptManager;
 
 	private MqttMessageLogger messageLogger;
+	
+	/** Queue of received messages (with drop counts) used by the current callback handler. */
+	private volatile IngestQueue<FormattedMqttMessage> ingestQueue;
 
 	public MqttAsyncConnection(final ReconnectionManager reconnectionManager, final MqttRuntimeConnectionProperties properties, 
 			final ConnectionStatus status, final IKBus eventBus,
@@ -99,18 +103,31 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 		setConnectionStatus(status);
 	}
 	
+	/**
+	 * Processes a batch of received messages, in the order they were received.
+	 *
+	 * @param receivedMessages The messages to process
+	 */
+	public void messagesReceived(final List<FormattedMqttMessage> receivedMessages)
+	{
+		for (final FormattedMqttMessage receivedMessage : receivedMessages)
+		{
+			messageReceived(receivedMessage);
+		}
+	}
+
 	public void messageReceived(final FormattedMqttMessage receivedMessage)
-	{		
+	{
 		// TODO: we should only delete from the topic matcher when a subscription is closed for good, not when just unsubscribed
-		final List<String> matchingSubscriptionTopics = getTopicMatcher().getMatchingSubscriptions(receivedMessage.getTopic());
-		logger.trace("Matching subscriptions = " + matchingSubscriptionTopics);
+		final List<BaseMqttSubscription> matchingSubscriptions = getTopicMatcher().getMatchingSubscriptions(receivedMessage.getTopic());
+		logger.trace("Matching subscriptions = {}", matchingSubscriptions);
 		
 		final FormattedMqttMessage message = new FormattedMqttMessage(receivedMessage);		
 		
 		final List<String> matchingActiveSubscriptions = new ArrayList<String>();
 		
 		final BaseMqttSubscription lastMatchingSubscription = 
-				matchMessageToSubscriptions(matchingSubscriptionTopics, receivedMessage, matchingActiveSubscriptions);
+				matchMessageToSubscriptions(matchingSubscriptions, receivedMessage, matchingActiveSubscriptions);
 		
 		// If logging is enabled
 		if (messageLogger != null && messageLogger.isRunning())
@@ -134,39 +151,37 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 		store.messageReceived(message);
 	}
 	
-	private BaseMqttSubscription matchMessageToSubscriptions(final List<String> matchingSubscriptionTopics, final FormattedMqttMessage receivedMessage, 
+	private BaseMqttSubscription matchMessageToSubscriptions(final List<BaseMqttSubscription> matchingSubscriptions, final FormattedMqttMessage receivedMessage, 
 			final List<String> matchingActiveSubscriptions)
 	{
 		BaseMqttSubscription lastMatchingSubscription = matchMessageToSubscriptions(
-				matchingSubscriptionTopics, receivedMessage, matchingActiveSubscriptions, false);
+				matchingSubscriptions, receivedMessage, matchingActiveSubscriptions, false);
 		
 		// If no active subscriptions available, use the first one that matches (as we might be still receiving messages for a non-active subscription)
 		if (matchingActiveSubscriptions.isEmpty())
 		{
 			logger.debug("No active subscription available for {}, trying to find first matching...", receivedMessage.getTopic());
-			lastMatchingSubscription = matchMessageToSubscriptions(matchingSubscriptionTopics, receivedMessage, matchingActiveSubscriptions, true);
-			logger.debug("First matching = {} {}", lastMatchingSubscription, matchingSubscriptionTopics);
+			lastMatchingSubscription = matchMessageToSubscriptions(matchingSubscriptions, receivedMessage, matchingActiveSubscriptions, true);
+			logger.debug("First matching = {} {}", lastMatchingSubscription, matchingSubscriptions);
 		}
 		
 		return lastMatchingSubscription;
 	}
 	
-	private BaseMqttSubscription matchMessageToSubscriptions(final List<String> matchingSubscriptionTopics, final FormattedMqttMessage receivedMessage, 
-			final List<String> matchingSubscriptions, final boolean anySubscription)
+	private BaseMqttSubscription matchMessageToSubscriptions(final List<BaseMqttSubscription> matchingSubscriptions, final FormattedMqttMessage receivedMessage, 
+			final List<String> matchingSubscriptionTopics, final boolean anySubscription)
 	{
 		BaseMqttSubscription foundMqttSubscription = null;
 		
 		// For all found subscriptions
-		for (final String matchingSubscriptionTopic : matchingSubscriptionTopics)
+		for (final BaseMqttSubscription mqttSubscription : matchingSubscriptions)
 		{					
-			logger.trace("Message on topic " + receivedMessage.getTopic() + " matched to " + matchingSubscriptionTopic);
-			// Get the mqtt-spy's subscription object
-			final BaseMqttSubscription mqttSubscription = getMqttSubscriptionForTopic(matchingSubscriptionTopic);
+			logger.trace("Message on topic {} matched to {}", receivedMessage.getTopic(), mqttSubscription.getTopic());
 
-			// If a match has been found, and the subscription is active or we don't care
-			if (mqttSubscription != null && (anySubscription || mqttSubscription.isSubscribing() || mqttSubscription.isActive()))
+			// If the subscription is active or we don't care
+			if (anySubscription || mqttSubscription.isSubscribing() || mqttSubscription.isActive())
 			{
-				matchingSubscriptions.add(matchingSubscriptionTopic);
+				matchingSubscriptionTopics.add(mqttSubscription.getTopic());
 
 				// Create a copy of the message for each subscription
 				final FormattedMqttMessage message = new FormattedMqttMessage(receivedMessage);
@@ -450,4 +465,24 @@ public class MqttAsyncConnection extends MqttConnectionWithReconnection implemen
 	{
 		return messageLogger;
 	}
+	
+	/**
+	 * Sets the queue of received messages (done by the callback handler on each connect).
+	 * 
+	 * @param ingestQueue The ingest queue
+	 */
+	public void setIngestQueue(final IngestQueue<FormattedMqttMessage> ingestQueue)
+	{
+		this.ingestQueue = ingestQueue;
+	}
+	
+	/**
+	 * Gets the queue of received messages, with the number of messages dropped since connected.
+	 * 
+	 * @return The ingest queue (null if never connected)
+	 */
+	public IngestQueue<FormattedMqttMessage> getIngestQueue()
+	{
+		return ingestQueue;
+	}
 }
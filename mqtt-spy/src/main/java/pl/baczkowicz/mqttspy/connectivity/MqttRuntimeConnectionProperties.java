@@ -44,6 +44,16 @@ public class MqttRuntimeConnectionProperties extends MqttConnectionDetailsWithOp
 	{
 		return configuredProperties.getMaxMessagesStored();
 	}
+	
+	public int getMaxMemoryStored()
+	{
+		return configuredProperties.getMaxMemoryStored();
+	}
+	
+	public int getCompressPayloadsAbove()
+	{
+		return configuredProperties.getCompressPayloadsAbove();
+	}
 
 	public boolean isAutoConnect()
 	{
@@ -19,9 +19,6 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.handlers;
 
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
-
 import javafx.application.Platform;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
@@ -33,6 +30,7 @@ import org.slf4j.LoggerFactory;
 import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.events.queuable.connectivity.MqttConnectionLostEvent;
+import pl.baczkowicz.spy.connectivity.IngestQueue;
 import pl.baczkowicz.spy.messages.MessageIdGenerator;
 
 /**
@@ -43,8 +41,8 @@ public class MqttCallbackHandler implements MqttCallback
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(MqttCallbackHandler.class);
 	
-	/** Stores all received messages, so that we don't block the receiving thread. */
-	private final Queue<FormattedMqttMessage> messageQueue = new LinkedBlockingQueue<FormattedMqttMessage>();
+	/** Stores received messages, so that we don't block the receiving thread; bounded, with the configured overload policy. */
+	private final IngestQueue<FormattedMqttMessage> ingestQueue;
 	
 	private MqttAsyncConnection connection;
 	
@@ -53,7 +51,9 @@ public class MqttCallbackHandler implements MqttCallback
 	public MqttCallbackHandler(final MqttAsyncConnection connection)
 	{
 		this.setConnection(connection);
-		this.messageHandler = new MqttMessageHandler(connection, messageQueue);
+		this.ingestQueue = new IngestQueue<FormattedMqttMessage>(connection.getProperties().getIngestQueue(), null);
+		connection.setIngestQueue(ingestQueue);
+		this.messageHandler = new MqttMessageHandler(connection, ingestQueue.getQueue());
 		new Thread(messageHandler).start();
 	}
 
@@ -65,8 +65,8 @@ public class MqttCallbackHandler implements MqttCallback
 
 	public void messageArrived(final String topic, final MqttMessage message)
 	{
-		logger.debug("[{}] Received message on topic \"{}\". Payload = \"{}\"", messageQueue.size(), topic, new String(message.getPayload()));
-		messageQueue.add(new FormattedMqttMessage(MessageIdGenerator.getNewId(), topic, message, connection));
+		logger.debug("[{}] Received message on topic \"{}\". Payload = \"{}\"", ingestQueue.size(), topic, new String(message.getPayload()));
+		ingestQueue.add(new FormattedMqttMessage(MessageIdGenerator.getNewId(), topic, message, connection));
 	}
 
 	public void deliveryComplete(IMqttDeliveryToken token)
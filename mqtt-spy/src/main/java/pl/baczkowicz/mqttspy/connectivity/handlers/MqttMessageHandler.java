@@ -19,7 +19,9 @@
  */
 package pl.baczkowicz.mqttspy.connectivity.handlers;
 
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +33,10 @@ import pl.baczkowicz.spy.utils.ThreadingUtils;
 /**
  * This class is responsible for handling received messages. One thread per connection expected here.
  * 
+ * The handler blocks until at least one message is available, and then drains
+ * everything that has arrived in the meantime (up to the configured batch
+ * size), so that the processing rate is only limited by the CPU.
+ * 
  * @author Kamil Baczkowicz
  *
  */
@@ -38,38 +44,48 @@ public class MqttMessageHandler implements Runnable
 {
 	private final static Logger logger = LoggerFactory.getLogger(MqttMessageHandler.class);
 	
-	private final Queue<FormattedMqttMessage> queue;
+	/** Default maximum number of messages processed on each wake-up. */
+	public final static int DEFAULT_MAX_BATCH_SIZE = 1000;
+	
+	private final BlockingQueue<FormattedMqttMessage> queue;
 
-	private MqttAsyncConnection connection;
+	private final MqttAsyncConnection connection;
+	
+	/** Maximum number of messages processed on each wake-up. */
+	private final int maxBatchSize;
 
-	public MqttMessageHandler(final MqttAsyncConnection connection, final Queue<FormattedMqttMessage> queue)
+	public MqttMessageHandler(final MqttAsyncConnection connection, final BlockingQueue<FormattedMqttMessage> queue)
+	{
+		this(connection, queue, DEFAULT_MAX_BATCH_SIZE);
+	}
+	
+	public MqttMessageHandler(final MqttAsyncConnection connection, final BlockingQueue<FormattedMqttMessage> queue, final int maxBatchSize)
 	{
 		this.queue = queue;
 		this.connection = connection;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
 	}
 	
 	public void run()
 	{
 		ThreadingUtils.logThreadStarting("Message Handler for " + connection.getName());
 		
-		logger.debug("Starting processing thread for connection " + connection.getProperties().getName());
+		logger.debug("Starting processing thread for connection " + connection.getName());
+		
+		final List<FormattedMqttMessage> batch = new ArrayList<FormattedMqttMessage>(maxBatchSize);
+		
 		while (true)
 		{
 			try
 			{
-				if (queue.size() > 0)
-				{
-					final FormattedMqttMessage content = queue.remove();
-					connection.messageReceived(content);
-					
-					// Let other threads do stuff
-					Thread.sleep(1);
-				}
-				else
-				{
-					// If no messages present, sleep a bit
-					Thread.sleep(10);
-				}
+				// Wait for the first message to arrive...
+				batch.add(queue.take());
+				
+				// ...and take whatever else is already waiting
+				queue.drainTo(batch, maxBatchSize - 1);
+				
+				connection.messagesReceived(batch);
+				batch.clear();
 			}
 			catch (InterruptedException e)
 			{
@@ -85,4 +101,8 @@ public class MqttMessageHandler implements Runnable
 		return queue.size();
 	}
 
+	public int getMaxBatchSize()
+	{
+		return maxBatchSize;
+	}
 }
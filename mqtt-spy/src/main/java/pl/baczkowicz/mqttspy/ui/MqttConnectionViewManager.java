@@ -64,6 +64,9 @@ import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.exceptions.ConfigurationException;
 import pl.baczkowicz.spy.exceptions.SpyException;
 import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 import pl.baczkowicz.spy.ui.IConnectionViewManager;
 import pl.baczkowicz.spy.ui.configuration.IConfigurationManager;
 import pl.baczkowicz.spy.ui.configuration.UiProperties;
@@ -72,6 +75,7 @@ import pl.baczkowicz.spy.ui.controllers.IConnectionController;
 import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.properties.ModifiableConnection;
 import pl.baczkowicz.spy.ui.stats.StatisticsManager;
+import pl.baczkowicz.spy.ui.storage.MessageStoreMemoryBudget;
 import pl.baczkowicz.spy.ui.utils.DialogFactory;
 import pl.baczkowicz.spy.ui.utils.TabUtils;
 
@@ -113,6 +117,12 @@ public class MqttConnectionViewManager implements IConnectionViewManager
 	private ReconnectionManager reconnectionManager;
 
 	private Set<MqttConnectionController> offlineConnectionControllers = new HashSet<>();
+	
+	/** Memory budget shared by message stores of all connections. */
+	private final MessageStoreMemoryBudget messageStoresMemoryBudget;
+	
+	/** Off-heap arena for payloads stored by all connections (null if payloads are kept on the heap). */
+	private final PayloadArena payloadArena;
 
 	public MqttConnectionViewManager(final IKBus eventBus, final StatisticsManager statisticsManager, 
 			final IConfigurationManager configurationManager)
@@ -121,11 +131,15 @@ public class MqttConnectionViewManager implements IConnectionViewManager
 		
 		this.eventBus = eventBus;
 		this.configurationManager = configurationManager;
+		this.messageStoresMemoryBudget = new MessageStoreMemoryBudget(
+				UiProperties.getMessageStoresMaxMemory(configurationManager.getUiPropertyFile()) * MessageStoreMemoryBudget.BYTES_PER_MB);
+		this.payloadArena = UiProperties.getMessageStoresOffHeap(configurationManager.getUiPropertyFile()) ? new PayloadArena() : null;
+		this.messageStoresMemoryBudget.setPayloadArena(payloadArena);
 		
 		this.reconnectionManager = new ReconnectionManager();
 		new Thread(reconnectionManager).start();
 		
-		new Thread(new UIEventHandler(uiEventQueue, eventBus)).start();
+		new UIEventHandler(uiEventQueue, eventBus, UiProperties.getEventsFrameBudget(configurationManager.getUiPropertyFile())).start();
 	}
 	
 	public void openConnection(final ModifiableConnection configuredConnectionDetails) throws ConfigurationException
@@ -286,6 +300,7 @@ public class MqttConnectionViewManager implements IConnectionViewManager
 	{
 		final InteractiveScriptManager scriptManager = new InteractiveScriptManager(eventBus, null);
 		final FormattingManager formattingManager = new FormattingManager(scriptManager);
+		formattingManager.setFormattingMode(UiProperties.getFormattingMode(configurationManager.getUiPropertyFile()));
 		final MqttAsyncConnection connection = new MqttAsyncConnection(reconnectionManager,
 				connectionProperties, ConnectionStatus.DISCONNECTED, 
 				eventBus, scriptManager, formattingManager, uiEventQueue, 
@@ -293,6 +308,21 @@ public class MqttConnectionViewManager implements IConnectionViewManager
 
 		formattingManager.initialiseFormatter(connection.getProperties().getFormatter());
 		scriptManager.setConnection(connection);
+		connection.getStore().setMemoryBudget(
+				connectionProperties.getMaxMemoryStored() * MessageStoreMemoryBudget.BYTES_PER_MB, messageStoresMemoryBudget);
+		connection.getStore().setPayloadArena(payloadArena);
+		
+		// Identical payloads are shared between the connection's and its subscriptions' stores
+		if (UiProperties.getMessageStoresDeduplication(configurationManager.getUiPropertyFile()))
+		{
+			connection.getStore().setPayloadInterner(new PayloadInterner());
+		}
+		
+		if (connectionProperties.getCompressPayloadsAbove() > 0)
+		{
+			connection.getStore().setPayloadCompressor(
+					new PayloadCompressor(connectionProperties.getCompressPayloadsAbove() * PayloadCompressor.BYTES_PER_KB));
+		}
 		
 		// Set up message logger		
 		final MessageLog messageLog = connectionProperties.getConfiguredProperties().getMessageLog();		
@@ -54,6 +54,7 @@ import pl.baczkowicz.spy.ui.panes.PaneVisibilityStatus;
 import pl.baczkowicz.spy.ui.panes.SpyPerspective;
 import pl.baczkowicz.spy.ui.panes.TabStatus;
 import pl.baczkowicz.spy.ui.storage.ManagedMessageStoreWithFiltering;
+import pl.baczkowicz.spy.ui.storage.MessageStoreMemoryBudget;
 import pl.baczkowicz.spy.ui.utils.FxmlUtils;
 import pl.baczkowicz.spy.ui.utils.StylingUtils;
 import pl.baczkowicz.spy.ui.utils.TabUtils;
@@ -128,6 +129,15 @@ public class MqttSubscriptionViewManager
 		subscription.setConnection(connection);
 		subscription.setDetails(subscriptionDetails);
 		
+		// Subscriptions share the global memory budget with their connection
+		final int maxMemoryStored = subscriptionDetails.getMaxMemoryStored() != null ? 
+				subscriptionDetails.getMaxMemoryStored() : connection.getProperties().getMaxMemoryStored();
+		subscription.getStore().setMemoryBudget(maxMemoryStored * MessageStoreMemoryBudget.BYTES_PER_MB,
+				connection.getStore().getNonFilteredMessageList().getSharedMemoryBudget());
+		subscription.getStore().setPayloadArena(connection.getStore().getPayloadArena());
+		subscription.getStore().setPayloadCompressor(connection.getStore().getPayloadCompressor());
+		subscription.getStore().setPayloadInterner(connection.getStore().getPayloadInterner());
+		
 		// Add a new tab
 		final SubscriptionController subscriptionController = createSubscriptionTab(
 				false, subscription.getStore(), subscription, connection, connectionController);
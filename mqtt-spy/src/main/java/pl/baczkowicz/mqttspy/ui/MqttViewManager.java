@@ -63,6 +63,7 @@ import pl.baczkowicz.mqttspy.ui.messagelog.LogReaderTask;
 import pl.baczkowicz.mqttspy.ui.messagelog.TaskWithProgressUpdater;
 import pl.baczkowicz.mqttspy.ui.utils.ContextMenuUtils;
 import pl.baczkowicz.spy.connectivity.ConnectionStatus;
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.ui.BaseViewManager;
 import pl.baczkowicz.spy.ui.configuration.BaseConfigurationManager;
@@ -342,7 +343,8 @@ public class MqttViewManager extends BaseViewManager
 				subscriptionController.getTab().setContextMenu(ContextMenuUtils.createAllSubscriptionsTabContextMenu(
 						connection, eventBus, subscriptionManager, configurationManager, subscriptionController));
 				
-				eventBus.subscribe(connectionController, connectionController::onConnectionStatusChanged, ConnectionStatusChangeEvent.class, new SimpleRunLaterExecutor(), connection);
+				eventBus.subscribeWithBatching(connectionController, connectionController::onConnectionStatusChanges, ConnectionStatusChangeEvent.class, 
+						new SimpleRunLaterExecutor(), connection, 100, OverflowPolicy.COALESCE);
 											
 				connection.setOpening(false);
 				connection.setOpened(true);
@@ -20,10 +20,8 @@
 package pl.baczkowicz.mqttspy.ui.controllers;
 
 import java.net.URL;
-import java.util.List;
 import java.util.ResourceBundle;
 
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
@@ -50,6 +48,7 @@ import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.ui.events.MessageIndexChangeEvent;
 import pl.baczkowicz.spy.ui.properties.MessageContentProperties;
+import pl.baczkowicz.spy.ui.properties.VirtualMessageContentList;
 import pl.baczkowicz.spy.ui.storage.BasicMessageStoreWithSummary;
 import pl.baczkowicz.spy.ui.utils.StylingUtils;
 import pl.baczkowicz.spy.ui.utils.UiUtils;
@@ -61,7 +60,7 @@ public class MessageListTableController implements Initializable
 {
 	final static Logger logger = LoggerFactory.getLogger(MessageListTableController.class);
 	
-	private ObservableList<MessageContentProperties<FormattedMqttMessage>> items; 
+	private VirtualMessageContentList<FormattedMqttMessage> items; 
 	
 	@FXML
 	private TableView<MessageContentProperties<FormattedMqttMessage>> messageTable;
@@ -143,7 +142,7 @@ public class MessageListTableController implements Initializable
 							{
 								super.updateItem(item, empty);															
 								
-								if (!isEmpty() && item.getSubscription() != null)
+								if (!isEmpty() && item != null && item.getSubscription() != null)
 								{								
 									final BaseMqttSubscription subscription = connection.getMqttSubscriptionForTopic(item.getSubscription());
 									
@@ -173,20 +172,12 @@ public class MessageListTableController implements Initializable
 	
 	private void selectItem()
 	{
-		final MessageContentProperties<FormattedMqttMessage> item = messageTable.getSelectionModel().getSelectedItem();
-		if (item != null)
+		final int selectedIndex = messageTable.getSelectionModel().getSelectedIndex();
+		
+		// The items are backed by the store's message list, so the indices match
+		if (selectedIndex >= 0)
 		{
-			final List<FormattedMqttMessage> list = store.getMessages();
-			for (int i = 0; i < store.getMessages().size(); i++)
-			{
-				if (list.get(i).getId() == item.getId())
-				{
-					// logger.info("{} Changing selection to " + (array.length - i), store.getName());
-					
-					eventBus.publish(new MessageIndexChangeEvent(i + 1, store, this));
-					// eventManager.changeMessageIndex(store, this, i + 1);
-				}
-			}
+			eventBus.publish(new MessageIndexChangeEvent(selectedIndex + 1, store, this));
 		}
 	}
 
@@ -198,21 +189,11 @@ public class MessageListTableController implements Initializable
 			return;
 		}
 		
-		if (store.getMessages().size() > 0)
+		final int index = event.getIndex() - 1;
+		
+		if (index >= 0 && index < items.size() && index != messageTable.getSelectionModel().getSelectedIndex())
 		{
-			final long id = (store.getMessages().get(event.getIndex() - 1)).getId();
-
-			for (final MessageContentProperties<FormattedMqttMessage> item : items)
-			{
-				if (item.getId() == id)
-				{
-					if (!item.equals(messageTable.getSelectionModel().getSelectedItem()))
-					{
-						messageTable.getSelectionModel().select(item);
-						break;
-					}
-				}
-			}
+			messageTable.getSelectionModel().select(index);
 		}
 	}
 	
@@ -222,7 +203,7 @@ public class MessageListTableController implements Initializable
 		messageTable.setItems(items);	
 	}
 	
-	public void setItems(final ObservableList<MessageContentProperties<FormattedMqttMessage>> items)
+	public void setItems(final VirtualMessageContentList<FormattedMqttMessage> items)
 	{
 		this.items = items;
 	}
@@ -247,8 +228,7 @@ public class MessageListTableController implements Initializable
 		{
 			public void handle(ActionEvent e)
 			{
-				final MessageContentProperties<FormattedMqttMessage> item = messageTable.getSelectionModel()
-						.getSelectedItem();
+				final MessageContentProperties<FormattedMqttMessage> item = getSelectedItem(messageTable);
 				if (item != null)
 				{
 					UiUtils.copyToClipboard(item.topicProperty().getValue());
@@ -266,8 +246,7 @@ public class MessageListTableController implements Initializable
 		{
 			public void handle(ActionEvent e)
 			{
-				final MessageContentProperties<FormattedMqttMessage> item = messageTable.getSelectionModel()
-						.getSelectedItem();
+				final MessageContentProperties<FormattedMqttMessage> item = getSelectedItem(messageTable);
 				if (item != null)
 				{
 					UiUtils.copyToClipboard(item.lastReceivedPayloadProperty().getValue());
@@ -279,6 +258,26 @@ public class MessageListTableController implements Initializable
 		return contextMenu;
 	}
 	
+	/**
+	 * Gets the properties of the selected row. As row properties are
+	 * recycled, they are looked up by the selected index.
+	 * 
+	 * @param messageTable The message table
+	 * 
+	 * @return The selected item or null if nothing selected
+	 */
+	private static MessageContentProperties<FormattedMqttMessage> getSelectedItem(final TableView<MessageContentProperties<FormattedMqttMessage>> messageTable)
+	{
+		final int selectedIndex = messageTable.getSelectionModel().getSelectedIndex();
+		
+		if (selectedIndex < 0 || selectedIndex >= messageTable.getItems().size())
+		{
+			return null;
+		}
+		
+		return messageTable.getItems().get(selectedIndex);
+	}
+	
 	public void setEventBus(final IKBus eventBus)
 	{
 		this.eventBus = eventBus;
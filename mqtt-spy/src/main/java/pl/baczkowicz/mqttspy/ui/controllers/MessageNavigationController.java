@@ -57,6 +57,7 @@ import pl.baczkowicz.spy.ui.events.MessageAddedEvent;
 import pl.baczkowicz.spy.ui.events.MessageIndexChangeEvent;
 import pl.baczkowicz.spy.ui.events.MessageIndexIncrementEvent;
 import pl.baczkowicz.spy.ui.events.MessageIndexToFirstEvent;
+import pl.baczkowicz.spy.ui.events.MessageListChangedEvent;
 import pl.baczkowicz.spy.ui.events.MessageRemovedEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
 import pl.baczkowicz.spy.ui.storage.BasicMessageStoreWithSummary;
@@ -309,6 +310,12 @@ public class MessageNavigationController implements Initializable
 		updateIndex(false);			
 	}
 	
+	public void onMessageListChanged(final MessageListChangedEvent event)
+	{
+		// Individual changes are not known, so start from the latest message again
+		showFirstMessage();
+	}
+	
 	// TODO: optimise message handling
 	public void onMessageRemoved(final MessageRemovedEvent<FormattedMessage> event)
 	{
@@ -21,6 +21,7 @@ package pl.baczkowicz.mqttspy.ui.controllers;
 
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 
@@ -478,6 +479,16 @@ public class MqttConnectionController implements Initializable, TabController, P
 		}
 	}
 	
+	/**
+	 * Updates the UI for the latest of the given connection status changes.
+	 * 
+	 * @param events Connection status changes (oldest first)
+	 */
+	public void onConnectionStatusChanges(final List<ConnectionStatusChangeEvent> events)
+	{
+		onConnectionStatusChanged(events.get(events.size() - 1));
+	}
+	
 	public void onConnectionStatusChanged(final ConnectionStatusChangeEvent event)
 	{
 		final ConnectionStatus connectionStatus = event.getConnectionStatus();
@@ -22,6 +22,7 @@ package pl.baczkowicz.mqttspy.ui.controllers;
 import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 
@@ -54,6 +55,7 @@ import org.slf4j.LoggerFactory;
 import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
 import pl.baczkowicz.mqttspy.ui.MqttViewManager;
 import pl.baczkowicz.mqttspy.ui.scripts.InteractiveScriptManager;
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.scripts.ScriptRunningState;
 import pl.baczkowicz.spy.scripts.events.ScriptStateChangeEvent;
@@ -325,7 +327,8 @@ public class PublicationScriptsController implements Initializable, TitledPaneCo
 		includeSubdirectories = true;
 		
 		scriptManager = connection.getScriptManager();
-		eventBus.subscribe(this, this::onScriptStateChange, ScriptStateChangeEvent.class, new SimpleRunLaterExecutor());
+		eventBus.subscribeWithBatching(this, this::onScriptStateChange, ScriptStateChangeEvent.class, new SimpleRunLaterExecutor(), 
+				null, 100, OverflowPolicy.COALESCE);
 		
 		// Note: subscription scripts don't have context menus because they can't be started/stopped manually - for future, consider enabled/disabled
 		contextMenus.put(ScriptTypeEnum.PUBLICATION, createDirectoryTypeScriptTableContextMenu(ScriptTypeEnum.PUBLICATION));		
@@ -578,7 +581,7 @@ public class PublicationScriptsController implements Initializable, TitledPaneCo
 		return refreshListItem;
 	}
 
-	public void onScriptStateChange(final ScriptStateChangeEvent event)
+	public void onScriptStateChange(final List<ScriptStateChangeEvent> events)
 	{
 		// TODO: update the context menu - but this requires context menu per row, not type
 	}
@@ -25,8 +25,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.ResourceBundle;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -63,7 +61,7 @@ import pl.baczkowicz.spy.ui.events.MessageIndexChangeEvent;
 import pl.baczkowicz.spy.ui.events.MessageIndexIncrementEvent;
 import pl.baczkowicz.spy.ui.events.MessageIndexToFirstEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
-import pl.baczkowicz.spy.ui.properties.MessageContentProperties;
+import pl.baczkowicz.spy.ui.properties.VirtualMessageContentList;
 import pl.baczkowicz.spy.ui.search.InlineScriptMatcher;
 import pl.baczkowicz.spy.ui.search.ScriptMatcher;
 import pl.baczkowicz.spy.ui.search.SearchMatcher;
@@ -143,7 +141,8 @@ public class SearchPaneController implements Initializable
 
 	private Tab tab;
 
-	private final ObservableList<MessageContentProperties<FormattedMqttMessage>> foundMessages = FXCollections.observableArrayList();
+	/** Found messages, as shown in the table - backed by the found message store. */
+	private VirtualMessageContentList<FormattedMqttMessage> foundMessages;
 
 	private int seachedCount;
 
@@ -185,6 +184,9 @@ public class SearchPaneController implements Initializable
 				"search-" + store.getName(), store.getFormatter(), 
 				formattingManager, UiProperties.getSummaryMaxPayloadLength(configurationManager.getUiPropertyFile()));
 		
+		foundMessages = new VirtualMessageContentList<FormattedMqttMessage>(foundMessageStore.getMessageList(), 
+				UiProperties.getSummaryMaxPayloadLength(configurationManager.getUiPropertyFile()));
+		
 		uniqueContentOnlyFilter = new UniqueContentOnlyFilter<FormattedMqttMessage>(store, store.getUiEventQueue());
 		uniqueContentOnlyFilter.setUniqueContentOnly(messageNavigationPaneController.getUniqueOnlyMenu().isSelected());
 		foundMessageStore.addMessageFilter(uniqueContentOnlyFilter);
@@ -347,11 +349,11 @@ public class SearchPaneController implements Initializable
 	{
 		final SearchMatcher matcher = getSearchMatcher();
 		
-		final int firstIndex = store.getMessages().size() - 1;
+		final int firstIndex = messages.size() - 1;
 		
 		for (int i = firstIndex; i >= 0; i--)
 		{
-			processMessage(store.getMessages().get(i), matcher);
+			processMessage(messages.get(i), matcher);
 			
 			if (firstIndex == i && !matcher.isValid())
 			{
@@ -377,6 +379,11 @@ public class SearchPaneController implements Initializable
 		}
 	}
 	
+	/**
+	 * Checks the given message against the matcher, and stores it if found.
+	 * 
+	 * @return True if the message has been found and stored
+	 */
 	private boolean processMessage(final FormattedMqttMessage message, final SearchMatcher matcher)
 	{
 		seachedCount++;
@@ -385,32 +392,27 @@ public class SearchPaneController implements Initializable
 		
 		if (found)
 		{
-			messageFound(message);
-			return true;
+			return messageFound(message);
 		}
 		
 		return false;
 	}
 	
-	private void messageFound(final FormattedMqttMessage message)
+	private boolean messageFound(final FormattedMqttMessage message)
 	{	
-		foundMessages.add(0, new MessageContentProperties<FormattedMqttMessage>(message, /*store.getFormatter(), */
-				UiProperties.getSummaryMaxPayloadLength(configurationManager.getUiPropertyFile())));
-		
 		if (!uniqueContentOnlyFilter.filter(message, foundMessageStore.getMessageList(), true))
 		{
-			// If an old message has been deleted from the store, remove it from the list as well 
-			if (foundMessageStore.storeMessage(message) != null)
-			{
-				foundMessages.remove(foundMessages.size() - 1);
-			}
+			// The table reads the found messages directly from the store
+			foundMessageStore.storeMessage(message);
+			return true;
 		}
+		
+		return false;
 	}
 	
 	private void clearMessages()
 	{
 		seachedCount = 0;
-		foundMessages.clear();
 		foundMessageStore.clear();
 		uniqueContentOnlyFilter.reset();
 	}
@@ -420,7 +422,8 @@ public class SearchPaneController implements Initializable
 	{
 		clearMessages();		
 		
-		processMessages(store.getMessages());		
+		processMessages(store.getMessagesSnapshot());		
+		foundMessages.refresh();
 		
 		updateTabTitle();	
 		messagePaneController.setSearchOptions(new SearchOptions(searchField.getText(), caseSensitiveCheckBox.isSelected()));
@@ -455,6 +458,7 @@ public class SearchPaneController implements Initializable
 	public void onFormatChange(final MessageFormatChangeEvent event)
 	{
 		foundMessageStore.setFormatter(store.getFormatter());
+		foundMessages.updateFormatting();
 		
 		eventBus.publish(new MessageFormatChangeEvent(foundMessageStore));
 	}
@@ -476,6 +480,8 @@ public class SearchPaneController implements Initializable
 			final boolean matchingSearch = processMessage(message, getSearchMatcher()); 
 			if (matchingSearch)														
 			{
+				foundMessages.messagesAdded(1);
+				
 				if (messageNavigationPaneController.showLatest())
 				{
 					eventBus.publish(new MessageIndexToFirstEvent(foundMessageStore));
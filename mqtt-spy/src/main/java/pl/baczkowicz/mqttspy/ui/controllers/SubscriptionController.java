@@ -20,8 +20,12 @@
 package pl.baczkowicz.mqttspy.ui.controllers;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 import javafx.application.Platform;
@@ -61,15 +65,20 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.mqttspy.connectivity.MqttRuntimeConnectionProperties;
 import pl.baczkowicz.mqttspy.connectivity.MqttSubscription;
+import pl.baczkowicz.mqttspy.connectivity.topicmatching.TopicMatcher;
 import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.mqttspy.ui.MqttSubscriptionViewManager;
 import pl.baczkowicz.mqttspy.ui.MqttViewManager;
 import pl.baczkowicz.mqttspy.ui.events.SubscriptionStatusChangeEvent;
 import pl.baczkowicz.mqttspy.ui.messagelog.MessageLogUtils;
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.connectivity.IngestQueue;
+import pl.baczkowicz.spy.eventbus.DeliveryLane;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.formatting.FormattingUtils;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 import pl.baczkowicz.spy.ui.configuration.IConfigurationManager;
 import pl.baczkowicz.spy.ui.events.ClearTabEvent;
 import pl.baczkowicz.spy.ui.events.FormattersChangedEvent;
@@ -88,6 +97,7 @@ import pl.baczkowicz.spy.ui.search.UniqueContentOnlyFilter;
 import pl.baczkowicz.spy.ui.stats.StatisticsManager;
 import pl.baczkowicz.spy.ui.storage.BasicMessageStoreWithSummary;
 import pl.baczkowicz.spy.ui.storage.ManagedMessageStoreWithFiltering;
+import pl.baczkowicz.spy.ui.storage.MessageStoreMemoryBudget;
 import pl.baczkowicz.spy.ui.threading.SimpleRunLaterExecutor;
 import pl.baczkowicz.spy.ui.utils.FxmlUtils;
 import pl.baczkowicz.spy.ui.utils.UiUtils;
@@ -116,6 +126,9 @@ public class SubscriptionController implements Initializable, TabController
 	/** (10 topics; 50 messages, load average: 0.1/0.5/5.0). */
 	private static final String SUMMARY_PANE_STATS_FORMAT = " (%s, %s, " + StatisticsManager.STATS_FORMAT + ")";
 
+	/** Maximum number of topics listed in the dropped messages tooltip. */
+	private static final int MAX_DROPPED_TOPICS_IN_TOOLTIP = 10;
+
 	@FXML
 	private SplitPane splitPane;
 
@@ -184,6 +197,10 @@ public class SubscriptionController implements Initializable, TabController
 
 	private Label statsLabel;
 
+	private Tooltip statsTooltip;
+
+	private String statsTooltipText;
+
 	private AnchorPane paneTitle;
 
 	private TextField searchBox;
@@ -214,6 +231,7 @@ public class SubscriptionController implements Initializable, TabController
 		
 		final List<FormatterDetails> formatters = FormattingUtils.createBaseFormatters();
 		formatters.addAll(FormattingManager.createDefaultScriptFormatters());
+		formatters.addAll(FormattingManager.createDefaultNativeFormatters());
 		
 		for (int i = 0; i < formatters.size(); i++)
 		{
@@ -295,9 +313,9 @@ public class SubscriptionController implements Initializable, TabController
 	
 	public void init()
 	{
-		final Tooltip summaryTitledPaneTooltip = new Tooltip(
-				"Load, the average number of messages per second, is calculated over the following intervals: " 
-						+ StatisticsManager.getPeriodList() + ".");
+		statsTooltipText = "Load, the average number of messages per second, is calculated over the following intervals: " 
+				+ StatisticsManager.getPeriodList() + ".";
+		statsTooltip = new Tooltip(statsTooltipText);
 				
 		statsHistory = new BasicMessageStoreWithSummary<FormattedMqttMessage>(
 				"stats" + store.getName(), 
@@ -337,6 +355,10 @@ public class SubscriptionController implements Initializable, TabController
 		
 		eventBus.subscribeWithFilterOnly(messageNavigationPaneController, messageNavigationPaneController::onMessageAdded, MessageAddedEvent.class, store.getMessageList());		
 		eventBus.subscribeWithFilterOnly(messageNavigationPaneController, messageNavigationPaneController::onMessageRemoved, MessageRemovedEvent.class, store.getMessageList());
+		eventBus.subscribeWithFilterOnly(messageNavigationPaneController, messageNavigationPaneController::onMessageListChanged, MessageListChangedEvent.class, store.getMessageList());
+		
+		// Messages added and removed while nobody is looking don't all need to be shown
+		store.getMessageList().setShowingCheck(() -> UiUtils.isShowing(messagePane) || (searchStage != null && searchStage.isShowing()));
 		
 		populateFormatters();
 		
@@ -380,7 +402,7 @@ public class SubscriptionController implements Initializable, TabController
 		{
 			statsLabel.setTextAlignment(TextAlignment.RIGHT);
 			statsLabel.setAlignment(Pos.CENTER_RIGHT);
-			statsLabel.setTooltip(summaryTitledPaneTooltip);
+			statsLabel.setTooltip(statsTooltip);
 			AnchorPane.setRightAnchor(statsLabel, 5.0);
 
 			updateSubscriptionStats();
@@ -416,6 +438,8 @@ public class SubscriptionController implements Initializable, TabController
 	
 	public void handleFormattersChange(final FormattersChangedEvent event)	
 	{
+		// Formatters are edited in place, so don't keep their old compiled versions
+		formattingManager.clearCompiledFormatters();
 		populateFormatters();
 	}
 	
@@ -643,6 +667,7 @@ public class SubscriptionController implements Initializable, TabController
 		final String filteredTopics = topicCount != filteredTopicCount ? ("showing " + filteredTopicCount + "/") : "";
 		final String topicCountText = filteredTopics + (topicCount == 1 ? "1 topic" : topicCount + " topics");
 		final String messageCountText = messageCount == 1 ? "1 message" : messageCount + " messages";
+		final String memoryUsageText = getMemoryUsageText();
 		
 		Double avg5sec = 0.0;
 		Double avg30sec = 0.0;
@@ -654,9 +679,31 @@ public class SubscriptionController implements Initializable, TabController
 			avg30sec = StatisticsManager.getMessagesReceived(connectionProperties.getId(), 30).overallCount;
 			avg300sec = StatisticsManager.getMessagesReceived(connectionProperties.getId(), 300).overallCount;
 			
+			// Messages shed by the ingest queue - the total goes on the label, the busiest topics into the tooltip
+			final IngestQueue<FormattedMqttMessage> ingestQueue = connectionController.getConnection().getIngestQueue();
+			final long droppedCount = ingestQueue != null ? ingestQueue.getDroppedCount() : 0;
+			final String droppedCountText = droppedCount > 0 ? (", " + droppedCount + " dropped") : "";
+			statsTooltip.setText(statsTooltipText + getTopicMatchingText(connectionController.getConnection().getTopicMatcher()) 
+					+ getDeliveryLanesText(eventBus.getDeliveryLanes())
+					+ (droppedCount > 0 ? getDroppedTopicsText(ingestQueue.getDroppedCountPerTopic()) : ""));
+			
+			// Payloads are shared across the whole connection
+			final PayloadInterner payloadInterner = store.getPayloadInterner();
+			final String savedText = payloadInterner != null && payloadInterner.getSavedBytes() > 0 
+					? String.format(", %.1f MB saved by sharing payloads", (double) payloadInterner.getSavedBytes() / MessageStoreMemoryBudget.BYTES_PER_MB) : "";
+			
+			// Off-heap memory is shared by all connections
+			final PayloadArena payloadArena = store.getPayloadArena();
+			final String offHeapText = payloadArena != null 
+					? String.format(", %.1f MB off-heap", (double) payloadArena.getAllocatedBytes() / MessageStoreMemoryBudget.BYTES_PER_MB) : "";
+			
+			// Only worth showing when the UI is noticeably behind
+			final long uiLag = StatisticsManager.getUiLag();
+			final String uiLagText = uiLag >= 100 ? (", UI lag " + uiLag + " ms") : "";
+			
 			statsLabel.setText(String.format(SUMMARY_PANE_STATS_FORMAT, 
 				topicCountText,
-				messageCountText,
+				messageCountText + memoryUsageText + offHeapText + savedText + droppedCountText + uiLagText,
 				avg5sec,
 				avg30sec,
 				avg300sec));						
@@ -673,7 +720,7 @@ public class SubscriptionController implements Initializable, TabController
 			
 			statsLabel.setText(String.format(SUMMARY_PANE_STATS_FORMAT, 
 					topicCountText,
-					messageCountText,
+					messageCountText + memoryUsageText,
 					avg5sec == null ? 0 : avg5sec, 
 					avg30sec == null ? 0 : avg30sec, 
 					avg300sec == null ? 0 : avg300sec));
@@ -700,6 +747,98 @@ public class SubscriptionController implements Initializable, TabController
 				statsHistory.getMessageList()));
 	}
 
+	/**
+	 * Formats the topic matching cache statistics (so that the cache can be sized).
+	 * 
+	 * @param topicMatcher The connection's topic matcher
+	 * 
+	 * @return Text to append to the stats tooltip
+	 */
+	private static String getTopicMatchingText(final TopicMatcher topicMatcher)
+	{
+		final long hits = topicMatcher.getCacheHits();
+		final long lookups = hits + topicMatcher.getCacheMisses();
+		
+		return System.lineSeparator() + System.lineSeparator() 
+				+ String.format("Topic matching cache: %d/%d topics, %d hits, %d misses (%.1f%% hit rate)", 
+						topicMatcher.getCacheSize(), topicMatcher.getMaxCacheSize(), hits, lookups - hits, 
+						lookups > 0 ? 100.0 * hits / lookups : 0);
+	}
+
+	/**
+	 * Lists the event bus delivery lanes with their queue depths, latencies and counts.
+	 * 
+	 * @param lanes The delivery lanes
+	 * 
+	 * @return Text to append to the stats tooltip (empty if there are no lanes)
+	 */
+	private static String getDeliveryLanesText(final Collection<DeliveryLane<?>> lanes)
+	{
+		if (lanes.isEmpty())
+		{
+			return "";
+		}
+		
+		final StringBuilder text = new StringBuilder(System.lineSeparator() + System.lineSeparator() + "Event delivery lanes:");
+		for (final DeliveryLane<?> lane : lanes)
+		{
+			text.append(System.lineSeparator() + lane);
+		}
+		
+		return text.toString();
+	}
+
+	/**
+	 * Lists the topics with the most dropped messages, most dropped first.
+	 * 
+	 * @param droppedPerTopic Number of dropped messages per topic
+	 * 
+	 * @return Text to append to the stats tooltip (empty if nothing was dropped)
+	 */
+	private static String getDroppedTopicsText(final Map<String, Long> droppedPerTopic)
+	{
+		if (droppedPerTopic.isEmpty())
+		{
+			return "";
+		}
+		
+		final List<Map.Entry<String, Long>> topics = new ArrayList<>(droppedPerTopic.entrySet());
+		Collections.sort(topics, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+		
+		final StringBuilder text = new StringBuilder(System.lineSeparator() + System.lineSeparator() + "Dropped messages per topic:");
+		for (final Map.Entry<String, Long> topic : topics.subList(0, Math.min(topics.size(), MAX_DROPPED_TOPICS_IN_TOOLTIP)))
+		{
+			text.append(System.lineSeparator() + topic.getKey() + ": " + topic.getValue());
+		}
+		
+		if (topics.size() > MAX_DROPPED_TOPICS_IN_TOOLTIP)
+		{
+			text.append(System.lineSeparator() + "(and " + (topics.size() - MAX_DROPPED_TOPICS_IN_TOOLTIP) + " more topics)");
+		}
+		
+		return text.toString();
+	}
+
+	/**
+	 * Formats the estimated memory used by the store, together with its limit if set.
+	 * 
+	 * @return Memory usage text to append to the stats
+	 */
+	private String getMemoryUsageText()
+	{
+		final double usage = (double) store.getMemoryUsage() / MessageStoreMemoryBudget.BYTES_PER_MB;
+		final long limit = store.getNonFilteredMessageList().getMemoryLimit();
+		final double compressionRatio = store.getCompressionRatio();
+		final String compressionText = compressionRatio > 1 ? String.format(" [payloads compressed %.1fx]", compressionRatio) : "";
+		
+		if (limit > 0)
+		{
+			return String.format(", %.1f/%d MB", usage, limit / MessageStoreMemoryBudget.BYTES_PER_MB) + compressionText;
+		}
+		
+		return String.format(", %.1f MB", usage) + compressionText;
+	}
+
 	/**
 	 * @return the statsHistory
 	 */
@@ -294,6 +294,12 @@ public class SubscriptionSummaryTableController implements Initializable
 		
 		nonFilteredData = store.getNonFilteredMessageList().getTopicSummary().getObservableMessagesPerTopic();
 		
+		// Updates for tables not on screen can be batched up
+		store.getNonFilteredMessageList().getTopicSummary().setShowingCheck(() -> UiUtils.isShowing(filterTable));
+		
+		// Rows on screen are re-formatted first when the formatter changes
+		store.getNonFilteredMessageList().getTopicSummary().setVisibleItems(() -> UiUtils.getVisibleItems(filterTable));
+		
 		// Create filtered data set
 		filteredData = new FilteredList<>(nonFilteredData);
 		
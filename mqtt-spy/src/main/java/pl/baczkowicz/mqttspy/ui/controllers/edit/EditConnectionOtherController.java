@@ -75,6 +75,12 @@ public class EditConnectionOtherController extends AnchorPane implements Initial
 	@FXML
 	private TextField maxMessagesStored;
 	
+	@FXML
+	private TextField maxMemoryStored;
+	
+	@FXML
+	private TextField compressPayloadsAbove;
+	
 	@FXML
 	private TextField minMessagesPerTopicStored;
 	
@@ -110,6 +116,12 @@ public class EditConnectionOtherController extends AnchorPane implements Initial
 		maxMessagesStored.textProperty().addListener(basicOnChangeListener);
 		maxMessagesStored.addEventFilter(KeyEvent.KEY_TYPED, KeyboardUtils.nonNumericKeyConsumer);
 		
+		maxMemoryStored.textProperty().addListener(basicOnChangeListener);
+		maxMemoryStored.addEventFilter(KeyEvent.KEY_TYPED, KeyboardUtils.nonNumericKeyConsumer);
+		
+		compressPayloadsAbove.textProperty().addListener(basicOnChangeListener);
+		compressPayloadsAbove.addEventFilter(KeyEvent.KEY_TYPED, KeyboardUtils.nonNumericKeyConsumer);
+		
 		minMessagesPerTopicStored.textProperty().addListener(basicOnChangeListener);
 		minMessagesPerTopicStored.addEventFilter(KeyEvent.KEY_TYPED, KeyboardUtils.nonNumericKeyConsumer);
 		
@@ -180,6 +192,7 @@ public class EditConnectionOtherController extends AnchorPane implements Initial
 		formatter.getItems().clear();		
 		formatter.getItems().addAll(FormattingUtils.createBaseFormatters());
 		formatter.getItems().addAll(FormattingManager.createDefaultScriptFormatters());		
+		formatter.getItems().addAll(FormattingManager.createDefaultNativeFormatters());
 	}
 
 	// ===============================
@@ -209,6 +222,8 @@ public class EditConnectionOtherController extends AnchorPane implements Initial
 		connection.setAutoSubscribe(autoSubscribe.isSelected());
 		connection.setFormatter(formatter.getSelectionModel().getSelectedItem());
 		connection.setMaxMessagesStored(Integer.valueOf(maxMessagesStored.getText()));
+		connection.setMaxMemoryStored(maxMemoryStored.getText().isEmpty() ? 0 : Integer.valueOf(maxMemoryStored.getText()));
+		connection.setCompressPayloadsAbove(compressPayloadsAbove.getText().isEmpty() ? 0 : Integer.valueOf(compressPayloadsAbove.getText()));
 		connection.setMinMessagesStoredPerTopic(Integer.valueOf(minMessagesPerTopicStored.getText()));
 		
 		return connection;
@@ -224,6 +239,8 @@ public class EditConnectionOtherController extends AnchorPane implements Initial
 		autoOpen.setSelected(connection.isAutoOpen() == null ? false : connection.isAutoOpen());
 		autoSubscribe.setSelected(connection.isAutoSubscribe() == null ? false : connection.isAutoSubscribe());
 		maxMessagesStored.setText(connection.getMaxMessagesStored().toString());
+		maxMemoryStored.setText(connection.getMaxMemoryStored().toString());
+		compressPayloadsAbove.setText(connection.getCompressPayloadsAbove().toString());
 		minMessagesPerTopicStored.setText(connection.getMinMessagesStoredPerTopic().toString());
 				
 		if (formatter.getItems().size() > 0 && connection.getFormatter() != null)
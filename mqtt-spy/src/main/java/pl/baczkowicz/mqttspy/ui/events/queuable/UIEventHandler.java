@@ -19,12 +19,15 @@
  */
 package pl.baczkowicz.mqttspy.ui.events.queuable;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,177 +36,395 @@ import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.storage.MessageList;
 import pl.baczkowicz.spy.ui.events.MessageAddedEvent;
+import pl.baczkowicz.spy.ui.events.MessageListChangedEvent;
 import pl.baczkowicz.spy.ui.events.MessageRemovedEvent;
 import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
-import pl.baczkowicz.spy.utils.ThreadingUtils;
-import pl.baczkowicz.spy.utils.TimeUtils;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryUpdateEvent;
+import pl.baczkowicz.spy.ui.stats.StatisticsManager;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
 
 /**
  * This class is responsible for handling queued events. This is done in batches
  * for improved performance. So rather than flooding JavaFX with hundreds or
  * thousands of requests to do runLater, we buffer those events, and then
  * process them in batches.
+ * 
+ * Events are processed on each JavaFX pulse (frame), but only for as long as
+ * the frame budget allows - anything left is carried over to the next frame,
+ * so that the UI stays responsive at any message rate. The budget is split
+ * between message browsing and topic summary updates, so that neither can
+ * hold up the other. Topic summary updates for tables not on screen are
+ * merged and only shown once a second. Messages added to or removed from
+ * lists are only taken off the queue a batch at a time, once the previous
+ * batches have been shown. If too many are waiting for a store, they are
+ * dropped and replaced with a single 'list changed' event.
  */
-public class UIEventHandler implements Runnable
+public class UIEventHandler extends AnimationTimer
 {
 	final static Logger logger = LoggerFactory.getLogger(UIEventHandler.class);
 	
+	/** Maximum number of messages in a single message added/removed event. */
+	private final static int MAX_BROWSE_BATCH_SIZE = 500;
+	
+	/** How often (in ms) topic summaries not on screen are updated. */
+	private final static long HIDDEN_SUMMARY_UPDATE_INTERVAL = 1000;
+	
+	/** Maximum number of browse events queued for a store. */
+	private final static int MAX_QUEUED_BROWSE_EVENTS = 10 * MAX_BROWSE_BATCH_SIZE;
+	
 	private final EventQueueManager<FormattedMqttMessage> uiEventQueue;
 	
-	// private final EventManager<FormattedMqttMessage> eventManager;
-
 	private IKBus eventBus;
+	
+	/** Time (in ns) to spend on events in each frame. */
+	private final long frameBudget;
+	
+	/** Browse events still to be shown, by message list. */
+	private final Map<MessageList<FormattedMqttMessage>, PendingEvents> pendingBrowseEvents = new LinkedHashMap<>();
+	
+	/** Topic summary updates still to be shown, by message list. */
+	private final Map<MessageListWithObservableTopicSummary<FormattedMqttMessage>, PendingTopicUpdates> pendingTopicUpdates = new LinkedHashMap<>();
 
-	public UIEventHandler(final EventQueueManager<FormattedMqttMessage> uiEventQueue, final IKBus eventBus)
+	/**
+	 * Creates the handler. Call start() to begin processing events.
+	 * 
+	 * @param uiEventQueue The queue to process events from
+	 * @param eventBus The event bus to publish message added/removed events on
+	 * @param frameBudget Time (in ms) to spend on events in each frame
+	 */
+	public UIEventHandler(final EventQueueManager<FormattedMqttMessage> uiEventQueue, final IKBus eventBus, final int frameBudget)
 	{
 		this.uiEventQueue = uiEventQueue;
 		this.eventBus = eventBus;
+		this.frameBudget = frameBudget * 1000000L;
 	}
 
 	@Override
-	public void run()
+	public void handle(final long now)
 	{
-		ThreadingUtils.logThreadStarting("UI event handler");
+		final long start = System.nanoTime();
+		final long deadline = start + frameBudget;
 		
-		while (true)
+		if (uiEventQueue.getEventCount() > 0)
 		{
-			if (uiEventQueue.getEventCount() > 0)
+			// Stores the UI can't keep up with get their lists refreshed in one go
+			for (final MessageList<FormattedMqttMessage> list : uiEventQueue.dropEvents(MAX_QUEUED_BROWSE_EVENTS))
 			{
-				showUpdates();
+				dropBrowseEvents(list);
 			}
 			
-			// Sleep so that we don't run all the time - updating the UI 10 times a second should be more than enough
-			if (ThreadingUtils.sleep(100))			
+			// Only take another batch of browse events once the last one has been shown (topic summary events come back coalesced)
+			addPendingEvents(uiEventQueue.getAndRemoveEvents(pendingBrowseEvents.isEmpty() ? MAX_BROWSE_BATCH_SIZE : 0), start);
+		}
+		
+		// Browse events get half of the frame if there are topic updates waiting, and anything left at the end
+		long processed = showBrowseEvents(pendingTopicUpdates.isEmpty() ? deadline : start + frameBudget / 2);
+		processed = processed + showTopicUpdates(deadline, start);
+		
+		if (!pendingBrowseEvents.isEmpty())
+		{
+			processed = processed + showBrowseEvents(deadline);
+		}
+		
+		StatisticsManager.setUiLag(getOldestPendingTime(start));
+		
+		if (logger.isTraceEnabled() && processed > 0)
+		{
+			logger.trace("UI event handling of {} items took {} ms", processed, (System.nanoTime() - start) / 1000000);
+		}
+	}
+	
+	private void addPendingEvents(final List<SpyUIEvent<FormattedMqttMessage>> events, final long time)
+	{
+		for (final SpyUIEvent<FormattedMqttMessage> event : events)
+		{
+			if (event instanceof TopicSummaryUpdateEvent)
 			{
-				break;
+				final TopicSummaryUpdateEvent<FormattedMqttMessage> update = (TopicSummaryUpdateEvent<FormattedMqttMessage>) event;
+				PendingTopicUpdates listUpdates = pendingTopicUpdates.get(update.getList());
+				
+				if (listUpdates == null)
+				{
+					listUpdates = new PendingTopicUpdates();
+					pendingTopicUpdates.put(update.getList(), listUpdates);
+				}
+				
+				listUpdates.add(update, time);
 			}
-		}		
+			else
+			{
+				PendingEvents listEvents = pendingBrowseEvents.get(event.getList());
+				
+				if (listEvents == null)
+				{
+					listEvents = new PendingEvents();
+					pendingBrowseEvents.put(event.getList(), listEvents);
+				}
+				
+				listEvents.add(event, time);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static boolean isShowing(final MessageList<FormattedMqttMessage> list)
+	{
+		return !(list instanceof MessageListWithObservableTopicSummary) 
+				|| ((MessageListWithObservableTopicSummary<FormattedMqttMessage>) list).isShowing();
+	}
+	
+	/**
+	 * Drops pending browse events for the given list (its queued events have
+	 * already been dropped), so that they don't keep messages (possibly long
+	 * removed from the store) in memory. Anything browsing the list is told
+	 * it has changed instead.
+	 * 
+	 * @param list The list to drop events for
+	 */
+	private void dropBrowseEvents(final MessageList<FormattedMqttMessage> list)
+	{
+		logger.debug("Too many browse events queued for {} - dropping them", list.getName());
 		
-		ThreadingUtils.logThreadEnding();
+		pendingBrowseEvents.remove(list);
+		eventBus.publish(new MessageListChangedEvent(list));
 	}
-
-	private void showUpdates()
+	
+	/**
+	 * Publishes pending message added/removed events, a batch per list at a
+	 * time (so that a busy list doesn't hold up others), until the deadline.
+	 * 
+	 * @param deadline When to stop (in ns)
+	 * 
+	 * @return Number of events processed
+	 */
+	private long showBrowseEvents(final long deadline)
 	{
-		final long start = TimeUtils.getMonotonicTime();
 		long processed = 0;
-		while (uiEventQueue.getEventCount() > 0)
+		boolean pending = !pendingBrowseEvents.isEmpty();
+		
+		while (pending && System.nanoTime() < deadline)
 		{
-			final Map<String, List<SpyUIEvent<FormattedMqttMessage>>> events = uiEventQueue.getEvents();
+			pending = false;
+			
+			for (final Iterator<PendingEvents> iterator = pendingBrowseEvents.values().iterator(); iterator.hasNext();)
 			{
-				for (final String type : events.keySet())
+				final PendingEvents listEvents = iterator.next();
+				processed = processed + showBrowseEvents(listEvents);
+				
+				if (listEvents.events.isEmpty())
 				{
-					// Remove the event queue from the manager
-					final List<SpyUIEvent<FormattedMqttMessage>> eventQueue = uiEventQueue.getAndRemoveEvents(type);
-					
-					if (eventQueue.isEmpty())
-					{
-						continue;
-					}
-					
-					processed = processed + eventQueue.size();
-					processEventType(eventQueue);					
+					iterator.remove();
 				}
-			}								
-		}	
-		final long end = TimeUtils.getMonotonicTime();
-		if (logger.isTraceEnabled())
-		{
-			logger.trace("UI event handling of {} items took {} ms", processed, (end - start));
+				else
+				{
+					pending = true;
+				}
+				
+				if (System.nanoTime() >= deadline)
+				{
+					break;
+				}
+			}
 		}
+		
+		return processed;
 	}
 	
-	private void processEventType(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue)
+	/**
+	 * Publishes the next batch of events of the same type for the list.
+	 * 
+	 * @param listEvents Pending events for the list
+	 * 
+	 * @return Number of events processed
+	 */
+	@SuppressWarnings("unchecked")
+	private int showBrowseEvents(final PendingEvents listEvents)
 	{
-		// Split by parent
-		final Map<MessageList<FormattedMqttMessage>, List<SpyUIEvent<FormattedMqttMessage>>> parentToEvent = new HashMap<>();		
-		for (final SpyUIEvent<FormattedMqttMessage> event : eventQueue)
+		final SpyUIEvent<FormattedMqttMessage> first = listEvents.events.peekFirst();
+		
+		if (first instanceof BrowseReceivedMessageEvent)
 		{
-			List<SpyUIEvent<FormattedMqttMessage>> parentQueue = parentToEvent.get(event.getList());
-			
-			if (parentQueue == null)
+			final List<BrowseReceivedMessageEvent<FormattedMqttMessage>> batch = new ArrayList<>();
+			while (batch.size() < MAX_BROWSE_BATCH_SIZE && listEvents.events.peekFirst() instanceof BrowseReceivedMessageEvent)
 			{
-				parentQueue = new ArrayList<>();
-				parentToEvent.put(event.getList(), parentQueue);
+				batch.add((BrowseReceivedMessageEvent<FormattedMqttMessage>) listEvents.remove());
 			}
 			
-			parentToEvent.get(event.getList()).add(event);
+			eventBus.publish(new MessageAddedEvent<>(batch, batch.get(0).getList()));
+			return batch.size();
 		}
-
-		// Process in batches
-		for (final MessageList<FormattedMqttMessage> parent : parentToEvent.keySet())
+		else if (first instanceof BrowseRemovedMessageEvent)
 		{
-			Platform.runLater(new Runnable()
-			{				
-				@Override
-				public void run()
-				{					
-					handleEvents(parentToEvent.get(parent));
-				}
-			});			
-		}		
+			final List<BrowseRemovedMessageEvent<FormattedMqttMessage>> batch = new ArrayList<>();
+			while (batch.size() < MAX_BROWSE_BATCH_SIZE && listEvents.events.peekFirst() instanceof BrowseRemovedMessageEvent)
+			{
+				batch.add((BrowseRemovedMessageEvent<FormattedMqttMessage>) listEvents.remove());
+			}
+			
+			eventBus.publish(new MessageRemovedEvent<>(batch, batch.get(0).getList()));
+			return batch.size();
+		}
+		
+		// Not expected
+		logger.warn("Unknown UI event {}", first);
+		listEvents.remove();
+		return 1;
 	}
-
-	@SuppressWarnings("unchecked")
-	private void handleEvents(final List<SpyUIEvent<FormattedMqttMessage>> eventQueue)
+	
+	/**
+	 * Applies pending topic summary updates until the deadline. Summaries not
+	 * on screen are only updated once in a while, with intermediate states
+	 * dropped.
+	 * 
+	 * @param deadline When to stop (in ns)
+	 * @param now Current time (in ns)
+	 * 
+	 * @return Number of updates processed
+	 */
+	private long showTopicUpdates(final long deadline, final long now)
 	{
-		final SpyUIEvent<FormattedMqttMessage> event = eventQueue.get(0);
+		long processed = 0;
 		
-		if (event instanceof BrowseReceivedMessageEvent)
-		{
-			eventBus.publish(new MessageAddedEvent<>((List<BrowseReceivedMessageEvent<FormattedMqttMessage>>)(Object)eventQueue, 
-					((BrowseReceivedMessageEvent<FormattedMqttMessage>) event).getList()));
-//			eventManager.notifyMessageAdded(
-//					(List<BrowseReceivedMessageEvent<FormattedMqttMessage>>)(Object)eventQueue, 
-//					((BrowseReceivedMessageEvent<FormattedMqttMessage>) event).getList());
-		}
-		else if (event instanceof BrowseRemovedMessageEvent)
+		for (final Iterator<Map.Entry<MessageListWithObservableTopicSummary<FormattedMqttMessage>, PendingTopicUpdates>> iterator = pendingTopicUpdates.entrySet().iterator(); 
+				iterator.hasNext() && System.nanoTime() < deadline;)
 		{
-			eventBus.publish(new MessageRemovedEvent<>((List<BrowseRemovedMessageEvent<FormattedMqttMessage>>)(Object)eventQueue, 
-					event.getList()));
-//			eventManager.notifyMessageRemoved(
-//					(List<BrowseRemovedMessageEvent<FormattedMqttMessage>>)(Object)eventQueue, 
-//					event.getList());
+			final Map.Entry<MessageListWithObservableTopicSummary<FormattedMqttMessage>, PendingTopicUpdates> entry = iterator.next();
+			final PendingTopicUpdates listUpdates = entry.getValue();
+			
+			if (now - listUpdates.since < HIDDEN_SUMMARY_UPDATE_INTERVAL * 1000000 && !entry.getKey().getTopicSummary().isShowing())
+			{
+				continue;
+			}
+			
+			for (final Iterator<TopicSummaryUpdateEvent<FormattedMqttMessage>> updates = listUpdates.updates.values().iterator(); 
+					updates.hasNext() && System.nanoTime() < deadline;)
+			{
+				handleTopicSummaryUpdateEvent(updates.next());
+				updates.remove();
+				processed++;
+			}
+			
+			if (listUpdates.updates.isEmpty())
+			{
+				iterator.remove();
+			}
 		}
-		else if (event instanceof TopicSummaryNewMessageEvent)
+		
+		return processed;
+	}
+	
+	/**
+	 * Gets how long the oldest pending update (for anything on screen) has been waiting.
+	 * 
+	 * @param now Current time (in ns)
+	 * 
+	 * @return Time in ms (0 if nothing is pending)
+	 */
+	private long getOldestPendingTime(final long now)
+	{
+		long oldest = now;
+		
+		for (final Map.Entry<MessageList<FormattedMqttMessage>, PendingEvents> entry : pendingBrowseEvents.entrySet())
 		{
-			for (final SpyUIEvent<FormattedMqttMessage> item : eventQueue)
+			if (isShowing(entry.getKey()))
 			{
-				handleTopicSummaryNewMessageEvent((TopicSummaryNewMessageEvent<FormattedMqttMessage>) item);
+				oldest = Math.min(oldest, entry.getValue().times.peekFirst()[0]);
 			}
 		}
-		else if (event instanceof TopicSummaryRemovedMessageEvent)
+		
+		for (final Map.Entry<MessageListWithObservableTopicSummary<FormattedMqttMessage>, PendingTopicUpdates> entry : pendingTopicUpdates.entrySet())
 		{
-			for (final SpyUIEvent<FormattedMqttMessage> item : eventQueue)
+			if (entry.getKey().getTopicSummary().isShowing())
 			{
-				handleTopicSummaryRemovedMessageEvent((TopicSummaryRemovedMessageEvent<FormattedMqttMessage>) item);
-			}			
+				oldest = Math.min(oldest, entry.getValue().since);
+			}
 		}
+		
+		return (now - oldest) / 1000000;
 	}
 	
-	private void handleTopicSummaryNewMessageEvent(final TopicSummaryNewMessageEvent<FormattedMqttMessage> updateEvent)
+	private void handleTopicSummaryUpdateEvent(final TopicSummaryUpdateEvent<FormattedMqttMessage> updateEvent)
 	{
-		// Calculate the overall message count per topic
-		updateEvent.getList().getTopicSummary().addMessage(updateEvent.getAdded());
+		// Apply all changes to the topic's message count (and the latest message) at once
+		updateEvent.getList().getTopicSummary().updateTopic(updateEvent.getTopic(), updateEvent.getLatest(), updateEvent.getCountDelta());
 		
 		// Update the 'show' property if required
 		if (updateEvent.isShowTopic())
 		{			
-			updateEvent.getList().getTopicSummary().setShowValue(updateEvent.getAdded().getTopic(), true);											
+			updateEvent.getList().getTopicSummary().setShowValue(updateEvent.getTopic(), true);											
+		}
+	}
+	
+	/**
+	 * Events waiting to be shown for a list, with the times they were taken off the queue.
+	 */
+	private static class PendingEvents
+	{
+		private final Deque<SpyUIEvent<FormattedMqttMessage>> events = new ArrayDeque<>();
+		
+		/** Times (in ns) events were added at, with the number of events still pending from each. */
+		private final Deque<long[]> times = new ArrayDeque<>();
+		
+		private void add(final SpyUIEvent<FormattedMqttMessage> event, final long time)
+		{
+			final long[] last = times.peekLast();
+			
+			if (last != null && last[0] == time)
+			{
+				last[1]++;
+			}
+			else
+			{
+				times.addLast(new long[] {time, 1});
+			}
+			
+			events.addLast(event);
+		}
+		
+		private SpyUIEvent<FormattedMqttMessage> remove()
+		{
+			final long[] first = times.peekFirst();
+			
+			if (--first[1] == 0)
+			{
+				times.removeFirst();
+			}
+			
+			return events.removeFirst();
 		}
 	}
 	
-	private void handleTopicSummaryRemovedMessageEvent(final TopicSummaryRemovedMessageEvent<FormattedMqttMessage> removeEvent)
+	/**
+	 * Topic summary updates waiting to be shown for a list - one per topic.
+	 */
+	private static class PendingTopicUpdates
 	{
-		// Remove old message from stats
-		if (removeEvent.getRemoved() != null)
+		private final Map<String, TopicSummaryUpdateEvent<FormattedMqttMessage>> updates = new LinkedHashMap<>();
+		
+		/** When (in ns) the oldest pending update was added. */
+		private long since;
+		
+		private void add(final TopicSummaryUpdateEvent<FormattedMqttMessage> update, final long time)
 		{
-			// TODO: does this actually work?
-			removeEvent.getList().getTopicSummary().removeMessage(removeEvent.getRemoved());
+			if (updates.isEmpty())
+			{
+				since = time;
+			}
+			
+			final TopicSummaryUpdateEvent<FormattedMqttMessage> pending = updates.get(update.getTopic());
+			
+			if (pending == null)
+			{
+				updates.put(update.getTopic(), update);
+			}
+			else
+			{
+				// Only the end result matters
+				pending.merge(update);
+			}
 		}
 	}
 }
@@ -41,7 +41,7 @@ public class MessageLogUtils
 	{
 		final StringBuffer messagesAsString = new StringBuffer();
 		
-		final List<FormattedMqttMessage> messages = store.getMessages(); 
+		final List<FormattedMqttMessage> messages = store.getMessagesSnapshot(); 
 		for (int i = messages.size() - 1; i >= 0; i--)
 		{
 			final FormattedMqttMessage message = messages.get(i);
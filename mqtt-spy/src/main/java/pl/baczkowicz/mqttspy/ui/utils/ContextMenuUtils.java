@@ -313,6 +313,10 @@ public class ContextMenuUtils
 				eventBus.publish(new ClearTabEvent(connection.getStore()));
 				// eventManager.notifyClearHistory(connection.getStore());
 				StatisticsManager.resetMessagesReceived(connection.getId());
+				if (connection.getIngestQueue() != null)
+				{
+					connection.getIngestQueue().resetDroppedCount();
+				}
 				connection.getStore().clear();
 			}
 		});
@@ -136,6 +136,7 @@ public class MqttConnectionTest extends TestCase
 				allowing(mockEventBus).publish(with(any(SubscriptionStatusChangeEvent.class)));
 				
 				allowing(mockedFormattingManager).formatMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
+				allowing(mockedFormattingManager).formatReceivedMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
 			}
 		});
 
@@ -206,6 +207,7 @@ public class MqttConnectionTest extends TestCase
 				allowing(mockEventBus).publish(with(any(SubscriptionStatusChangeEvent.class)));
 				
 				allowing(mockedFormattingManager).formatMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
+				allowing(mockedFormattingManager).formatReceivedMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
 			}
 		});
 	
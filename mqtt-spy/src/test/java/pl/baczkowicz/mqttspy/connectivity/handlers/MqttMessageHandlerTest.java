@@ -0,0 +1,152 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.mqttspy.connectivity.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.hamcrest.Description;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.baczkowicz.mqttspy.connectivity.MqttAsyncConnection;
+import pl.baczkowicz.mqttspy.messages.FormattedMqttMessage;
+import pl.baczkowicz.spy.utils.ThreadingUtils;
+
+public class MqttMessageHandlerTest
+{
+	private static final int MESSAGE_COUNT = 200000;
+	
+	private Mockery context = new Mockery()
+	{
+		{
+			setImposteriser(ClassImposteriser.INSTANCE);
+			setThreadingPolicy(new Synchroniser());
+		}
+	};
+	
+	private MqttAsyncConnection mockedConnection;
+	
+	private final AtomicLong processed = new AtomicLong();
+	
+	private final AtomicLong batches = new AtomicLong();
+
+	@Before
+	public void setUp()
+	{
+		mockedConnection = context.mock(MqttAsyncConnection.class);
+		
+		context.checking(new Expectations()
+		{
+			{
+				allowing(mockedConnection).getName();
+				will(returnValue("test"));
+				
+				allowing(mockedConnection).messagesReceived(with(any(List.class)));
+				will(new CustomAction("count messages")
+				{
+					@Override
+					public Object invoke(final Invocation invocation) throws Throwable
+					{
+						processed.addAndGet(((List<?>) invocation.getParameter(0)).size());
+						batches.incrementAndGet();
+						return null;
+					}
+					
+					@Override
+					public void describeTo(final Description description)
+					{
+						description.appendText("count messages");
+					}
+				});
+			}
+		});
+	}
+
+	@Test
+	public void testSustainedThroughput() throws InterruptedException
+	{
+		final BlockingQueue<FormattedMqttMessage> queue = new LinkedBlockingQueue<FormattedMqttMessage>();
+		final MqttMessageHandler handler = new MqttMessageHandler(mockedConnection, queue, 500);
+		final Thread handlerThread = new Thread(handler);
+		handlerThread.start();
+		
+		final MqttMessage message = new MqttMessage("sample payload".getBytes());
+		
+		final long start = System.nanoTime();
+		for (int i = 0; i < MESSAGE_COUNT; i++)
+		{
+			queue.add(new FormattedMqttMessage(i, "test/topic", message, null));
+		}
+		
+		while (processed.get() < MESSAGE_COUNT && System.nanoTime() - start < 30000000000L)
+		{
+			ThreadingUtils.sleep(5);
+		}
+		final long totalTime = System.nanoTime() - start;
+		handlerThread.interrupt();
+		
+		final double rate = processed.get() * 1000000000.0 / totalTime;
+		System.out.println("Processed " + processed.get() + " messages in " + batches.get() + " batches; took " 
+				+ (totalTime / 1000000) + " ms; rate = " + (long) rate + " msg/s");
+		
+		assertEquals(MESSAGE_COUNT, processed.get());
+		
+		// The old sleep-per-message handler could never exceed 1000 msg/s
+		assertTrue(rate > 10000);
+	}
+	
+	@Test
+	public void testBatchSizeIsBounded() throws InterruptedException
+	{
+		final BlockingQueue<FormattedMqttMessage> queue = new LinkedBlockingQueue<FormattedMqttMessage>();
+		final MqttMessage message = new MqttMessage("sample payload".getBytes());
+		
+		// Queue up messages before the handler starts, so that they are all drained in full batches
+		for (int i = 0; i < 1000; i++)
+		{
+			queue.add(new FormattedMqttMessage(i, "test/topic", message, null));
+		}
+		
+		final Thread handlerThread = new Thread(new MqttMessageHandler(mockedConnection, queue, 100));
+		handlerThread.start();
+		
+		final long start = System.nanoTime();
+		while (processed.get() < 1000 && System.nanoTime() - start < 10000000000L)
+		{
+			ThreadingUtils.sleep(5);
+		}
+		handlerThread.interrupt();
+		
+		assertEquals(10, batches.get());
+	}
+}
@@ -23,6 +23,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -62,6 +66,7 @@ public class ObservableMessageStoreWithFilteringTest
 		{
 			{
 				allowing(mockedFormattingManager).formatMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
+				allowing(mockedFormattingManager).formatReceivedMessage(with(any(FormattedMqttMessage.class)), with(any(FormatterDetails.class)));
 			}
 		});
 	}
@@ -108,4 +113,35 @@ public class ObservableMessageStoreWithFilteringTest
 		store.messageReceived(message);
 		assertFalse(store.getFilteredMessageStore().getBrowsedTopics().contains("t3"));
 	}
+	
+	@Test
+	public final void testShowingAndHidingTopicsKeepsOrder()
+	{
+		store = new ManagedMessageStoreWithFiltering<FormattedMqttMessage>(
+				"test", 5, 100, 100, new EventQueueManager<FormattedMqttMessage>(), mockedFormattingManager, 0);
+		
+		final List<FormattedMqttMessage> messages = new ArrayList<>();
+		for (int i = 0; i < 30; i++)
+		{
+			final FormattedMqttMessage message = new FormattedMqttMessage(i, "t" + (i % 3), new MqttMessage(("test" + i).getBytes()), null);
+			messages.add(0, message);
+			store.messageReceived(message);
+		}
+		
+		store.setShowValue("t1", false);
+		store.setShowValues(false, Arrays.asList("t2"));
+		assertEquals(10, store.getMessages().size());
+		
+		store.setShowValue("t2", true);
+		assertEquals(20, store.getMessages().size());
+		
+		store.setShowValue("t1", true);
+		assertEquals(messages, store.getMessages());
+		
+		store.setAllShowValues(false);
+		assertEquals(0, store.getMessages().size());
+		
+		store.setAllShowValues(true);
+		assertEquals(messages, store.getMessages());
+	}
 }
@@ -24,6 +24,7 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.spy.configuration.BaseConfigurationUtils;
 import pl.baczkowicz.spy.configuration.PropertyFileLoader;
+import pl.baczkowicz.spy.formatting.FormattingMode;
 import pl.baczkowicz.spy.ui.panes.SpyPerspective;
 
 public class UiProperties
@@ -52,6 +53,19 @@ public class UiProperties
 	
 	public static final String BROWSER_LM_SUBSTRING = "ui.messagebrowser.largemessage.substring";
 	
+	public static final String MESSAGESTORES_MEMORY_MAX = "ui.messagestores.memory.max";
+	
+	public static final String MESSAGESTORES_OFFHEAP_ENABLED = "ui.messagestores.offheap.enabled";
+	
+	public static final String MESSAGESTORES_DEDUPLICATION_ENABLED = "ui.messagestores.deduplication.enabled";
+	
+	public static final String EVENTS_FRAME_BUDGET = "ui.events.framebudget";
+	
+	public static final String FORMATTING_MODE = "ui.formatting.mode";
+	
+	/** Default time (in ms) spent on UI updates in each frame - leaves most of a 60 fps frame for rendering and user input. */
+	public static final int DEFAULT_EVENTS_FRAME_BUDGET = 8;
+	
 	private final static Logger logger = LoggerFactory.getLogger(UiProperties.class);
 	
 	private static Integer summaryMaxPayloadLength;
@@ -61,6 +75,16 @@ public class UiProperties
 	private static Boolean largeMessageHide;
 	
 	private static Integer largeMessageSubstring;
+	
+	private static Integer messageStoresMaxMemory;
+	
+	private static Boolean messageStoresOffHeap;
+	
+	private static Boolean messageStoresDeduplication;
+	
+	private static Integer eventsFrameBudget;
+	
+	private static FormattingMode formattingMode;
 
 	public static double getApplicationHeight(final PropertyFileLoader fileLoader)
 	{
@@ -116,6 +140,103 @@ public class UiProperties
 		
 		return largeMessageSubstring;
 	}	
+	
+	/**
+	 * Gets the memory limit (in MB) for all message stores across all
+	 * connections; defaults to half of the maximum heap size.
+	 * 
+	 * @param fileLoader The property file loader
+	 * 
+	 * @return The limit in MB
+	 */
+	public static int getMessageStoresMaxMemory(final PropertyFileLoader fileLoader)
+	{
+		if (messageStoresMaxMemory == null)
+		{
+			final int defaultLimit = (int) (Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024));
+			messageStoresMaxMemory = BaseConfigurationUtils.getIntegerProperty(MESSAGESTORES_MEMORY_MAX, defaultLimit, fileLoader);
+		}
+		
+		return messageStoresMaxMemory;
+	}
+	
+	/**
+	 * Checks whether payloads of stored messages should be kept off the heap.
+	 * 
+	 * @param fileLoader The property file loader
+	 * 
+	 * @return True if payloads should be stored in an off-heap arena
+	 */
+	public static boolean getMessageStoresOffHeap(final PropertyFileLoader fileLoader)
+	{
+		if (messageStoresOffHeap == null)
+		{
+			messageStoresOffHeap = BaseConfigurationUtils.getBooleanProperty(MESSAGESTORES_OFFHEAP_ENABLED, Boolean.FALSE, fileLoader);
+		}
+		
+		return messageStoresOffHeap;
+	}
+	
+	/**
+	 * Checks whether identical payloads of stored messages should be shared.
+	 * 
+	 * @param fileLoader The property file loader
+	 * 
+	 * @return True if each distinct payload should be stored once per connection
+	 */
+	public static boolean getMessageStoresDeduplication(final PropertyFileLoader fileLoader)
+	{
+		if (messageStoresDeduplication == null)
+		{
+			messageStoresDeduplication = BaseConfigurationUtils.getBooleanProperty(MESSAGESTORES_DEDUPLICATION_ENABLED, Boolean.FALSE, fileLoader);
+		}
+		
+		return messageStoresDeduplication;
+	}
+	
+	/**
+	 * Gets the time the UI can spend on showing received messages in each frame.
+	 * 
+	 * @param fileLoader The property file loader
+	 * 
+	 * @return Time in milliseconds
+	 */
+	public static int getEventsFrameBudget(final PropertyFileLoader fileLoader)
+	{
+		if (eventsFrameBudget == null)
+		{
+			eventsFrameBudget = BaseConfigurationUtils.getIntegerProperty(EVENTS_FRAME_BUDGET, DEFAULT_EVENTS_FRAME_BUDGET, fileLoader);
+		}
+		
+		return eventsFrameBudget;
+	}
+
+	/**
+	 * Gets when received messages should be formatted - defaults to on demand for script-based formatters.
+	 * 
+	 * @param fileLoader The property file loader
+	 * 
+	 * @return The formatting mode
+	 */
+	public static FormattingMode getFormattingMode(final PropertyFileLoader fileLoader)
+	{
+		if (formattingMode == null)
+		{
+			final String value = fileLoader.getProperty(FORMATTING_MODE);
+			
+			try
+			{
+				formattingMode = value == null || value.isEmpty() ? FormattingMode.SCRIPTS_ON_DEMAND : FormattingMode.valueOf(value);
+			}
+			catch (IllegalArgumentException e)
+			{
+				logger.error("Invalid formatting mode " + value);
+				formattingMode = FormattingMode.SCRIPTS_ON_DEMAND;
+			}
+		}
+		
+		return formattingMode;
+	}
 
 	public static SpyPerspective getApplicationPerspective(final PropertyFileLoader fileLoader)
 	{
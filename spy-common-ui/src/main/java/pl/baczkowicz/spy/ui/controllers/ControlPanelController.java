@@ -21,6 +21,7 @@ package pl.baczkowicz.spy.ui.controllers;
 
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
 
@@ -36,6 +37,7 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.spy.configuration.BasePropertyNames;
 import pl.baczkowicz.spy.connectivity.ConnectionStatus;
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.exceptions.XMLException;
 import pl.baczkowicz.spy.ui.configuration.IConfigurationManager;
@@ -121,7 +123,8 @@ public class ControlPanelController extends AnchorPane implements Initializable
 	{		
 		eventBus.subscribe(this, this::onVersionInfoReceived, VersionInfoReceivedEvent.class, new SimpleRunLaterExecutor());
 		eventBus.subscribe(this, this::onVersionInfoError, VersionInfoErrorEvent.class, new SimpleRunLaterExecutor());
-		eventBus.subscribe(this, this::onConnectionStatusChanged, ConnectionStatusChangeEvent.class, new SimpleRunLaterExecutor());
+		eventBus.subscribeWithBatching(this, this::onConnectionStatusChanged, ConnectionStatusChangeEvent.class, new SimpleRunLaterExecutor(), 
+				null, 100, OverflowPolicy.COALESCE);
 		eventBus.subscribe(this, this::onConnectionsChanged, ConnectionsChangedEvent.class);
 		eventBus.subscribe(this, this::onConfigurationFileStatusChange, ConfigurationLoadedEvent.class);
 		
@@ -147,8 +150,9 @@ public class ControlPanelController extends AnchorPane implements Initializable
 	// === Logic =====================
 	// ===============================	
 	
-	public void onConnectionStatusChanged(final ConnectionStatusChangeEvent event)
+	public void onConnectionStatusChanged(final List<ConnectionStatusChangeEvent> events)
 	{
+		// Any number of status changes only needs one refresh
 		refreshConnectionsStatus();
 	}
 	
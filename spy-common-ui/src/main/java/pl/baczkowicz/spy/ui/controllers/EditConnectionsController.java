@@ -50,6 +50,7 @@ import pl.baczkowicz.spy.common.generated.ConnectionGroup;
 import pl.baczkowicz.spy.common.generated.ConnectionGroupReference;
 import pl.baczkowicz.spy.common.generated.ConnectionReference;
 import pl.baczkowicz.spy.configuration.BaseConfigurationUtils;
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.ui.configuration.IConfigurationManager;
 import pl.baczkowicz.spy.ui.configuration.ConfiguredConnectionGroupDetails;
@@ -210,7 +211,8 @@ public class EditConnectionsController extends AnchorPane implements Initializab
 		groups = configurationManager.getConnectionGrops();
 		rootItemProperties.setGroup(configurationManager.getRootGroup());
 		
-		eventBus.subscribe(this, this::onConnectionStatusChanged, ConnectionStatusChangeEvent.class, new SimpleRunLaterExecutor());
+		eventBus.subscribeWithBatching(this, this::onConnectionStatusChanged, ConnectionStatusChangeEvent.class, new SimpleRunLaterExecutor(), 
+				null, 100, OverflowPolicy.COALESCE);
 		eventBus.subscribe(this, this::onNewConnection, CreateNewConnectionEvent.class);
 
 		editConnectionGroupPaneController.setEditConnectionsController(this);
@@ -788,7 +790,7 @@ public class EditConnectionsController extends AnchorPane implements Initializab
 		this.configurationManager = configurationManager;
 	}	
 
-	public void onConnectionStatusChanged(final ConnectionStatusChangeEvent event)
+	public void onConnectionStatusChanged(final List<ConnectionStatusChangeEvent> events)
 	{
 		if (getSelectedItem() != null)
 		{
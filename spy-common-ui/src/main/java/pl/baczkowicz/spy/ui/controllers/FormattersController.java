@@ -51,6 +51,7 @@ import pl.baczkowicz.spy.common.generated.ScriptExecutionDetails;
 import pl.baczkowicz.spy.eventbus.IKBus;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.formatting.FormattingUtils;
+import pl.baczkowicz.spy.formatting.NativeFormatter;
 import pl.baczkowicz.spy.formatting.ScriptBasedFormatter;
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.scripts.BaseScriptManager;
@@ -188,6 +189,7 @@ public class FormattersController implements Initializable
 		
 		final List<FormatterDetails> defaultFormatters = FormattingUtils.createBaseFormatters();
 		defaultFormatters.addAll(FormattingManager.createDefaultScriptFormatters());
+		defaultFormatters.addAll(FormattingManager.createDefaultNativeFormatters());
 		
 		formattersList.getItems().addAll(defaultFormatters);
 		addFormattersToList(configurationManager.getFormatters(), formattersList.getItems());
@@ -429,6 +431,22 @@ public class FormattersController implements Initializable
 			message.setPrettyPayload(scriptBasedFormatter.formatMessage(selectedFormatter, message, true));
 			logger.debug("Pretty value set = {}", message.getPrettyPayload());
 		}
+		else if (FormattingUtils.isNative(selectedFormatter))
+		{
+			final NativeFormatter nativeFormatter = FormattingManager.getNativeFormatter(selectedFormatter);
+			
+			if (nativeFormatter == null)
+			{
+				logger.warn("Native formatter {} not available", selectedFormatter.getID());
+				message.setFormattedPayload(message.getPayload());
+				message.setPrettyPayload(message.getPayload());
+			}
+			else
+			{
+				message.setFormattedPayload(nativeFormatter.format(message.getRawPayload()));
+				message.setPrettyPayload(nativeFormatter.formatPretty(message.getRawPayload()));
+			}
+		}
 		else
 		{
 			// Use the raw payload to make sure any formatting/encoding that is applied is correct
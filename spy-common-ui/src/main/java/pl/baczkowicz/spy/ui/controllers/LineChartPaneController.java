@@ -707,7 +707,7 @@ public class LineChartPaneController<T extends FormattedMessage> implements Init
 	private void divideMessagesByTopic(final Collection<String> topics)
 	{
 		chartData.clear();
-		for (final FormattedMessage message : store.getMessages())
+		for (final FormattedMessage message : store.getMessagesSnapshot())
 		{
 			final String topic = message.getTopic();
 			// logger.info("Topics = " + topics);
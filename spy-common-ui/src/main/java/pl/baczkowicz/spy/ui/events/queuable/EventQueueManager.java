@@ -20,77 +20,244 @@
 package pl.baczkowicz.spy.ui.events.queuable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.storage.BasicMessageStore;
-import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
+import pl.baczkowicz.spy.storage.MessageList;
 import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
 import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
 
+/**
+ * Queues UI events raised by message stores, so that they can be processed
+ * in batches. Each store has its own lock-free queue, so stores don't
+ * contend with each other when adding events. Topic summary changes are not
+ * queued, but accumulated in per-topic counters - and taken as a single
+ * update per topic.
+ */
 public class EventQueueManager<T extends FormattedMessage>
 {
-	private Map<String, List<SpyUIEvent<T>>> events = new HashMap<>();  
+	/** Queued events and topic summary counters by the store that raised them. */
+	private final Map<BasicMessageStore<T>, StoreEvents<T>> stores = new ConcurrentHashMap<>();
 	
-	private AtomicLong eventCount = new AtomicLong();
+	/** Number of queued events (before coalescing). */
+	private final LongAdder eventCount = new LongAdder();
 	
-	public EventQueueManager()
+	public void add(final BasicMessageStore<T> parent, final SpyUIEvent<T> event)
 	{
-		events.put(BrowseReceivedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(BrowseRemovedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(TopicSummaryNewMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
-		events.put(TopicSummaryRemovedMessageEvent.class.toString(), new ArrayList<SpyUIEvent<T>>());
+		if (event instanceof TopicSummaryNewMessageEvent)
+		{
+			final TopicSummaryNewMessageEvent<T> newMessageEvent = (TopicSummaryNewMessageEvent<T>) event;
+			topicMessageAdded(parent, newMessageEvent.getList(), newMessageEvent.getAdded(), newMessageEvent.isShowTopic());
+		}
+		else if (event instanceof TopicSummaryRemovedMessageEvent)
+		{
+			final TopicSummaryRemovedMessageEvent<T> removedMessageEvent = (TopicSummaryRemovedMessageEvent<T>) event;
+			topicMessageRemoved(parent, removedMessageEvent.getList(), removedMessageEvent.getRemoved());
+		}
+		else
+		{
+			final StoreEvents<T> storeEvents = getStoreEvents(parent);
+			storeEvents.events.offer(event);
+			storeEvents.queued.increment();
+			eventCount.increment();
+		}
 	}
 	
-	public void add(final BasicMessageStore<T> parent, final SpyUIEvent<T> event)
+	/**
+	 * Records a message added to the given list, for its topic summary.
+	 * 
+	 * @param parent The store raising the event
+	 * @param list The list the message has been added to
+	 * @param message The added message
+	 * @param showTopic Whether the topic should be shown (browsed)
+	 */
+	public void topicMessageAdded(final BasicMessageStore<T> parent, final MessageListWithObservableTopicSummary<T> list, 
+			final T message, final boolean showTopic)
 	{
-		// Not using the parent for now - as probably not needed any more
-		
-		final String eventType = event.getClass().toString();		
+		getStoreEvents(parent).getCounters(list).messageAdded(message, showTopic);
+		eventCount.increment();
+	}
+	
+	/**
+	 * Records a message removed from the given list, for its topic summary.
+	 * 
+	 * @param parent The store raising the event
+	 * @param list The list the message has been removed from
+	 * @param message The removed message (ignored if null)
+	 */
+	public void topicMessageRemoved(final BasicMessageStore<T> parent, final MessageListWithObservableTopicSummary<T> list, 
+			final T message)
+	{
+		if (message != null)
+		{
+			getStoreEvents(parent).getCounters(list).messageRemoved(message);
+			eventCount.increment();
+		}
+	}
+	
+	private StoreEvents<T> getStoreEvents(final BasicMessageStore<T> parent)
+	{
+		StoreEvents<T> storeEvents = stores.get(parent);
 		
-		synchronized (events)
+		if (storeEvents == null)
 		{
-			final List<SpyUIEvent<T>> eventList = events.get(eventType);
-			eventList.add(event);
+			storeEvents = stores.computeIfAbsent(parent, key -> new StoreEvents<T>());
 		}
 		
-		eventCount.incrementAndGet();
-	}	
+		return storeEvents;
+	}
 	
-	public List<SpyUIEvent<T>> getAndRemoveEvents(final String eventType)
-	{		
-		final List<SpyUIEvent<T>> eventList = events.get(eventType);
+	/**
+	 * Removes the queue of the given store, dropping any events still queued for it.
+	 * 
+	 * @param parent The store no longer raising events
+	 */
+	public void remove(final BasicMessageStore<T> parent)
+	{
+		final StoreEvents<T> storeEvents = stores.remove(parent);
 		
-		synchronized (events)
+		if (storeEvents != null)
 		{
-			events.put(eventType, new ArrayList<SpyUIEvent<T>>());
+			eventCount.add(-storeEvents.queued.sum());
+			
+			for (final TopicSummaryCounters<T> counters : storeEvents.counters.values())
+			{
+				eventCount.add(-counters.takeUpdates(new ArrayList<SpyUIEvent<T>>()));
+			}
 		}
-		
-		reduceCount(eventList.size());	
-		return eventList;		
 	}
 	
-	public Map<String, List<SpyUIEvent<T>>> getEvents()
+	/**
+	 * Takes all queued events off the queues, followed by a single topic
+	 * summary update for each topic with messages added or removed (if they
+	 * don't cancel out). Other events are kept in the order they were added
+	 * for each store.
+	 * 
+	 * @return The queued events
+	 */
+	public List<SpyUIEvent<T>> getAndRemoveEvents()
 	{
-		return events;
+		return getAndRemoveEvents(Integer.MAX_VALUE);
 	}
 	
-	public long getEventCount()
+	/**
+	 * Takes up to the given number of queued events off each store's queue,
+	 * followed by a single topic summary update for each topic with messages
+	 * added or removed (if they don't cancel out). Any other events are left
+	 * queued.
+	 * 
+	 * @param maxEventsPerStore Maximum number of events (other than topic summary updates) to take for each store
+	 * 
+	 * @return The queued events
+	 */
+	public List<SpyUIEvent<T>> getAndRemoveEvents(final int maxEventsPerStore)
 	{
-		return eventCount.get();
+		final List<SpyUIEvent<T>> events = new ArrayList<>();
+		final List<TopicSummaryCounters<T>> changedCounters = new ArrayList<>();
+		
+		for (final StoreEvents<T> storeEvents : stores.values())
+		{
+			long taken = 0;
+			SpyUIEvent<T> event;
+			
+			while (taken < maxEventsPerStore && (event = storeEvents.events.poll()) != null)
+			{
+				taken++;
+				events.add(event);
+			}
+			
+			storeEvents.queued.add(-taken);
+			eventCount.add(-taken);
+			changedCounters.addAll(storeEvents.counters.values());
+		}
+		
+		for (final TopicSummaryCounters<T> counters : changedCounters)
+		{
+			eventCount.add(-counters.takeUpdates(events));
+		}
+		
+		return events;
 	}
 	
-	private void reduceCount(final long reduceBy)
+	/**
+	 * Drops all queued events (other than topic summary updates) of any store
+	 * with more than the given number waiting, so that a store the UI can't
+	 * keep up with doesn't build up an ever growing backlog.
+	 * 
+	 * @param maxEventsPerStore Maximum number of events a store can have queued
+	 * 
+	 * @return Lists the dropped events were for
+	 */
+	public Set<MessageList<T>> dropEvents(final int maxEventsPerStore)
 	{
-		eventCount.addAndGet(-reduceBy);
+		final Set<MessageList<T>> lists = new LinkedHashSet<>();
+		
+		for (final StoreEvents<T> storeEvents : stores.values())
+		{
+			if (storeEvents.queued.sum() <= maxEventsPerStore)
+			{
+				continue;
+			}
+			
+			long dropped = 0;
+			SpyUIEvent<T> event;
+			
+			while ((event = storeEvents.events.poll()) != null)
+			{
+				dropped++;
+				lists.add(event.getList());
+			}
+			
+			storeEvents.queued.add(-dropped);
+			eventCount.add(-dropped);
+		}
+		
+		return lists;
 	}
 	
-	// TODO: reading
+	/**
+	 * Gets the number of queued events (before coalescing).
+	 * 
+	 * @return Number of events
+	 */
+	public long getEventCount()
+	{
+		return eventCount.sum();
+	}
 	
-	// TODO: processing in batches
+	/**
+	 * Events queued by a single store.
+	 */
+	private static class StoreEvents<T extends FormattedMessage>
+	{
+		private final Queue<SpyUIEvent<T>> events = new ConcurrentLinkedQueue<>();
+		
+		/** Number of queued events (kept separately, as the size of the queue is expensive to get). */
+		private final LongAdder queued = new LongAdder();
+		
+		/** Topic summary counters by list. */
+		private final Map<MessageListWithObservableTopicSummary<T>, TopicSummaryCounters<T>> counters = new ConcurrentHashMap<>();
+		
+		private TopicSummaryCounters<T> getCounters(final MessageListWithObservableTopicSummary<T> list)
+		{
+			TopicSummaryCounters<T> listCounters = counters.get(list);
+			
+			if (listCounters == null)
+			{
+				listCounters = counters.computeIfAbsent(list, key -> new TopicSummaryCounters<T>(key));
+			}
+			
+			return listCounters;
+		}
+	}
 }
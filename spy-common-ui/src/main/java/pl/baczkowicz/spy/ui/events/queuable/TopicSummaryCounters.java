@@ -0,0 +1,173 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.events.queuable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryUpdateEvent;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
+
+/**
+ * Accumulates topic summary changes (message count and the latest message)
+ * for a message list, as messages are added and removed. Counters are
+ * updated without locking on the threads storing the messages, and are only
+ * turned into topic summary updates when taken - once per frame.
+ */
+public class TopicSummaryCounters<T extends FormattedMessage>
+{
+	private final MessageListWithObservableTopicSummary<T> list;
+	
+	/** Counters by topic. */
+	private final Map<String, TopicCounter<T>> counters = new ConcurrentHashMap<>();
+	
+	/** Counters changed since last taken, in the order of first change. */
+	private final Queue<TopicCounter<T>> changedCounters = new ConcurrentLinkedQueue<>();
+	
+	/** Number of messages added and removed since last taken. */
+	private final LongAdder recorded = new LongAdder();
+	
+	public TopicSummaryCounters(final MessageListWithObservableTopicSummary<T> list)
+	{
+		this.list = list;
+	}
+	
+	/**
+	 * Records a message added to the list.
+	 * 
+	 * @param message The added message
+	 * @param showTopic Whether the topic should be shown (browsed)
+	 */
+	public void messageAdded(final T message, final boolean showTopic)
+	{
+		final TopicCounter<T> counter = getCounter(message.getTopic());
+		
+		// Set the latest message before counting it, so that it is never taken without it
+		counter.latest.set(message);
+		if (showTopic)
+		{
+			counter.showTopic.set(true);
+		}
+		counter.count.increment();
+		
+		recorded(counter);
+	}
+	
+	/**
+	 * Records a message removed from the list.
+	 * 
+	 * @param message The removed message
+	 */
+	public void messageRemoved(final T message)
+	{
+		final TopicCounter<T> counter = getCounter(message.getTopic());
+		counter.count.decrement();
+		
+		recorded(counter);
+	}
+	
+	/**
+	 * Takes all changes recorded so far, as one topic summary update per
+	 * changed topic (unless the changes cancelled out).
+	 * 
+	 * @param events The list to add the updates to
+	 * 
+	 * @return Number of messages added and removed since last taken
+	 */
+	public long takeUpdates(final List<SpyUIEvent<T>> events)
+	{
+		// Subtract what has been read rather than reset, so that no concurrent update is lost
+		final long taken = recorded.sum();
+		recorded.add(-taken);
+		TopicCounter<T> counter;
+		
+		while ((counter = changedCounters.poll()) != null)
+		{
+			// Any changes from now on will queue the counter again
+			counter.changed.set(false);
+			
+			final long countDelta = counter.count.sum();
+			counter.count.add(-countDelta);
+			final T latest = counter.latest.getAndSet(null);
+			final boolean showTopic = counter.showTopic.getAndSet(false);
+			
+			if (countDelta != 0 || latest != null)
+			{
+				events.add(new TopicSummaryUpdateEvent<T>(list, counter.topic, latest, (int) countDelta, showTopic));
+			}
+		}
+		
+		return taken;
+	}
+	
+	private TopicCounter<T> getCounter(final String topic)
+	{
+		TopicCounter<T> counter = counters.get(topic);
+		
+		if (counter == null)
+		{
+			counter = counters.computeIfAbsent(topic, key -> new TopicCounter<T>(key));
+		}
+		
+		return counter;
+	}
+	
+	private void recorded(final TopicCounter<T> counter)
+	{
+		recorded.increment();
+		
+		if (!counter.changed.get() && counter.changed.compareAndSet(false, true))
+		{
+			changedCounters.offer(counter);
+		}
+	}
+	
+	/**
+	 * Changes to a single topic since last taken.
+	 */
+	private static class TopicCounter<T>
+	{
+		private final String topic;
+		
+		/** Number of messages added less the number removed. */
+		private final LongAdder count = new LongAdder();
+		
+		/** The latest message added. */
+		private final AtomicReference<T> latest = new AtomicReference<>();
+		
+		private final AtomicBoolean showTopic = new AtomicBoolean();
+		
+		/** Whether the counter is queued as changed. */
+		private final AtomicBoolean changed = new AtomicBoolean();
+		
+		private TopicCounter(final String topic)
+		{
+			this.topic = topic;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.events.queuable.ui;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
+
+/**
+ * Topic summary update coalesced from all messages added to and removed
+ * from a single topic since the last update.
+ */
+public class TopicSummaryUpdateEvent<T extends FormattedMessage> implements SpyUIEvent<T>
+{
+	private final MessageListWithObservableTopicSummary<T> list;
+	
+	private final String topic;
+	
+	/** The latest message added (or null if only removed). */
+	private T latest;
+	
+	/** Number of messages added less the number of messages removed. */
+	private int countDelta;
+	
+	private boolean showTopic;
+
+	public TopicSummaryUpdateEvent(final MessageListWithObservableTopicSummary<T> list, final String topic, 
+			final T latest, final int countDelta, final boolean showTopic)
+	{
+		this.list = list;
+		this.topic = topic;
+		this.latest = latest;
+		this.countDelta = countDelta;
+		this.showTopic = showTopic;
+	}
+	
+	/**
+	 * Adds the changes from a later update for the same topic.
+	 * 
+	 * @param update The later update
+	 */
+	public void merge(final TopicSummaryUpdateEvent<T> update)
+	{
+		if (update.latest != null)
+		{
+			latest = update.latest;
+		}
+		countDelta = countDelta + update.countDelta;
+		showTopic = showTopic || update.showTopic;
+	}
+	
+	public String getTopic()
+	{
+		return topic;
+	}
+	
+	public T getLatest()
+	{
+		return latest;
+	}
+	
+	public int getCountDelta()
+	{
+		return countDelta;
+	}
+
+	public boolean isShowTopic()
+	{
+		return showTopic;
+	}
+
+	@Override
+	public MessageListWithObservableTopicSummary<T> getList()
+	{
+		return list;
+	}
+}
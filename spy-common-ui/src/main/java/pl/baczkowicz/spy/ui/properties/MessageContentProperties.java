@@ -117,6 +117,7 @@ public class MessageContentProperties<T extends FormattedMessage> extends BaseTo
 	{
 		this.mqttContent = message;
 
+		topicProperty().set(mqttContent.getTopic());
 		this.lastReceivedTimestamp.set(TimeUtils.DATE_WITH_MILLISECONDS_SDF.format(mqttContent.getDate()));
 				
 		updateReceivedPayload(mqttContent.getFormattedPayload());
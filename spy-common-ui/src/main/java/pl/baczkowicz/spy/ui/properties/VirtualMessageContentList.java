@@ -0,0 +1,303 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.properties;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.collections.ObservableListBase;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.MessageList;
+
+/**
+ * Observable list of message properties, backed directly by a message list
+ * (newest first). Rows are read from the message list by index only when
+ * requested (e.g. by visible table cells), so the memory used and the time
+ * taken to show the list depend on the viewport rather than the number of
+ * stored messages. Properties of rows which are no longer requested are
+ * recycled for new rows.
+ * 
+ * The list doesn't observe the message list - call messagesAdded or refresh
+ * on the JavaFX thread after changing it.
+ */
+public class VirtualMessageContentList<T extends FormattedMessage> extends ObservableListBase<MessageContentProperties<T>>
+{
+	/** Default number of rows for which properties are kept - more than a table shows at once. */
+	public static final int DEFAULT_CACHED_ROWS = 256;
+	
+	/** The backing list of messages. */
+	private final List<T> messages;
+	
+	/** Maximum payload length, as used by MessageContentProperties. */
+	private final int maxPayloadLength;
+	
+	/** Maximum number of cached row properties. */
+	private final int cachedRows;
+	
+	/** Properties of recently requested rows, keyed by message (least recently used first). */
+	private final Map<T, MessageContentProperties<T>> rows;
+	
+	/** Properties evicted from the cache, available for reuse. */
+	private final Deque<MessageContentProperties<T>> recycledRows = new ArrayDeque<>();
+	
+	/** Size of the list, as last reported to the listeners. */
+	private int size;
+	
+	/** Newest message, as last reported to the listeners. */
+	private T newest;
+	
+	/** Oldest message, as last reported to the listeners. */
+	private T oldest;
+	
+	/**
+	 * Creates the list with the default number of cached rows.
+	 * 
+	 * @param messageList The message list to read from
+	 * @param maxPayloadLength Maximum payload length
+	 */
+	public VirtualMessageContentList(final MessageList<T> messageList, final int maxPayloadLength)
+	{
+		this(messageList, maxPayloadLength, DEFAULT_CACHED_ROWS);
+	}
+	
+	/**
+	 * Creates the list.
+	 * 
+	 * @param messageList The message list to read from
+	 * @param maxPayloadLength Maximum payload length
+	 * @param cachedRows Maximum number of cached row properties
+	 */
+	public VirtualMessageContentList(final MessageList<T> messageList, final int maxPayloadLength, final int cachedRows)
+	{
+		this.messages = messageList.getMessages();
+		this.maxPayloadLength = maxPayloadLength;
+		this.cachedRows = cachedRows;
+		this.rows = new LinkedHashMap<T, MessageContentProperties<T>>(cachedRows * 4 / 3 + 1, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<T, MessageContentProperties<T>> eldest)
+			{
+				if (size() > VirtualMessageContentList.this.cachedRows)
+				{
+					recycledRows.push(eldest.getValue());
+					return true;
+				}
+				
+				return false;
+			}
+		};
+		this.size = messages.size();
+		rememberEnds();
+	}
+
+	@Override
+	public MessageContentProperties<T> get(final int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+		
+		final T message;
+		try
+		{
+			message = messages.get(index);
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			// The message list has shrunk since the last refresh 
+			return null;
+		}
+		
+		MessageContentProperties<T> row = rows.get(message);
+		
+		if (row == null)
+		{
+			row = recycledRows.poll();
+			
+			if (row == null)
+			{
+				row = new MessageContentProperties<T>(message, maxPayloadLength);
+			}
+			else
+			{
+				row.setMessage(message);
+			}
+			
+			rows.put(message, row);
+		}
+		
+		return row;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Notifies the listeners that the given number of messages has been
+	 * added at the top of the message list. Any messages the list has lost
+	 * (e.g. the oldest ones, when it was full) are reported as removed from
+	 * the end. If messages have been removed from anywhere else (e.g. the
+	 * newest one replaced, or an old one evicted from between messages kept
+	 * for their topics), the whole list is refreshed instead.
+	 * 
+	 * @param added Number of messages added
+	 */
+	public void messagesAdded(final int added)
+	{
+		final int newSize = messages.size();
+		final int removed = Math.max(0, Math.min(size, size + added - newSize));
+		
+		if (!isRemovedFromEnd(added, removed, newSize))
+		{
+			refresh();
+			return;
+		}
+		
+		if (removed == 0 && added == 0)
+		{
+			return;
+		}
+		
+		beginChange();
+		if (removed > 0)
+		{
+			nextRemove(size - removed, Collections.<MessageContentProperties<T>>nCopies(removed, null));
+		}
+		if (added > 0)
+		{
+			nextAdd(0, added);
+		}
+		size = newSize;
+		rememberEnds();
+		endChange();
+	}
+	
+	/**
+	 * Checks if the message list looks as if the given number of messages
+	 * has been added at the top and the given number removed from the end.
+	 * 
+	 * @param added Number of messages added
+	 * @param removed Number of messages assumed removed from the end
+	 * @param newSize Current size of the message list
+	 * 
+	 * @return True if the change can be reported that way
+	 */
+	private boolean isRemovedFromEnd(final int added, final int removed, final int newSize)
+	{
+		if (newSize != size + added - removed)
+		{
+			return false;
+		}
+		
+		try
+		{
+			// The previously newest message should have moved down by the number added (unless removed itself)...
+			if (removed < size && messages.get(added) != newest)
+			{
+				return false;
+			}
+			
+			// ...and the previously oldest one should be gone if anything was removed
+			return removed == 0 || newSize == 0 || messages.get(newSize - 1) != oldest;
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			// Changed in the meantime
+			return false;
+		}
+	}
+	
+	/**
+	 * Remembers the newest and oldest messages, to check the next change against.
+	 */
+	private void rememberEnds()
+	{
+		newest = size > 0 ? messages.get(0) : null;
+		oldest = size > 0 ? messages.get(size - 1) : null;
+	}
+	
+	/**
+	 * Notifies the listeners that the content of the message list has
+	 * changed, and discards all cached row properties.
+	 */
+	public void refresh()
+	{
+		final int oldSize = size;
+		
+		for (final MessageContentProperties<T> row : rows.values())
+		{
+			if (recycledRows.size() < cachedRows)
+			{
+				recycledRows.push(row);
+			}
+		}
+		rows.clear();
+		size = messages.size();
+		rememberEnds();
+		
+		if (oldSize == 0 && size == 0)
+		{
+			return;
+		}
+		
+		beginChange();
+		if (oldSize > 0)
+		{
+			nextRemove(0, Collections.<MessageContentProperties<T>>nCopies(oldSize, null));
+		}
+		if (size > 0)
+		{
+			nextAdd(0, size);
+		}
+		endChange();
+	}
+	
+	/**
+	 * Updates the cached row properties after the messages have been
+	 * re-formatted. Rows not cached will be formatted when requested.
+	 */
+	public void updateFormatting()
+	{
+		for (final MessageContentProperties<T> row : rows.values())
+		{
+			row.setMessage(row.getMqttContent());
+		}
+	}
+	
+	/**
+	 * Gets the number of row properties currently cached.
+	 * 
+	 * @return Number of cached rows
+	 */
+	public int getCachedRowCount()
+	{
+		return rows.size();
+	}
+}
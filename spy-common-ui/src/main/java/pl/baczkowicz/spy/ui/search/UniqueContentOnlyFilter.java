@@ -54,7 +54,7 @@ public class UniqueContentOnlyFilter<T extends FormattedMessage> implements Mess
 		
 		if (message.getFormattedPayload().equals(lastMessage.getFormattedPayload()) && message.getTopic().equals(lastMessage.getTopic()))
 		{
-			final T deletedMessage = messageList.getMessages().remove(0);
+			final T deletedMessage = messageList.remove(0);
 			
 			if (updateUi)
 			{
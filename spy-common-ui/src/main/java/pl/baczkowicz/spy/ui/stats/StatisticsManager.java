@@ -48,6 +48,9 @@ public class StatisticsManager implements Runnable
 	public static Map<String, ConnectionStats> runtimeMessagesPublished = new HashMap<>();
 	
 	public static Map<String, ConnectionStats> runtimeMessagesReceived = new HashMap<>();
+	
+	/** How long (in ms) the oldest UI update still to be shown has been waiting. */
+	private static volatile long uiLag;
 
 	private StatsIO statsFileIO;	
 	
@@ -105,6 +108,21 @@ public class StatisticsManager implements Runnable
 		}
 	}
 	
+	public static void setUiLag(final long lag)
+	{
+		uiLag = lag;
+	}
+	
+	/**
+	 * Gets how far behind the received messages the UI is.
+	 * 
+	 * @return How long (in ms) the oldest UI update still to be shown has been waiting
+	 */
+	public static long getUiLag()
+	{
+		return uiLag;
+	}
+	
 	public static void nextInterval(final Map<String, ConnectionStats> runtimeMessages)
 	{
 		for (final String connectionId : runtimeMessages.keySet())
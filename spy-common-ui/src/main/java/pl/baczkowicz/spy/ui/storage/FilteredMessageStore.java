@@ -19,10 +19,12 @@
  */
 package pl.baczkowicz.spy.ui.storage;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -32,6 +34,7 @@ import pl.baczkowicz.spy.ui.search.MessageFilter;
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary.IndexedMessage;
 
 /**
  * Message store with filtering. 
@@ -57,6 +60,7 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 		setFormatter(messageFormat);
 		//this.filteredMessages = new MessageListWithObservableTopicSummary(preferredSize, maxSize, "filtered-" + name, messageFormat);
 		this.allMessages = allMessages;
+		getMessageList().setSourceList(allMessages);
 	}
 	
 	public void addMessageFilter(final MessageFilter<T> messageFilter)
@@ -93,22 +97,57 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		getMessageList().clear();
 			
-		logger.trace("[{}] Store reinitialise = {}/{}", allMessages.getName(), allMessages.getMessages().size(), allMessages);
-		synchronized (allMessages.getMessages())
-		{			
-			final int size = allMessages.getMessages().size();
-			for (int i = size - 1; i >= 0; i--)
+		// Only messages on browsed topics are taken from the store, so new messages can be stored while filtering
+		final List<IndexedMessage<T>> messages = allMessages.getTopicMessages(browsedTopics);
+		logger.trace("[{}] Store reinitialise = {}/{}", allMessages.getName(), messages.size(), allMessages);
+		
+		for (final IndexedMessage<T> indexedMessage : messages)
+		{
+			final T message = indexedMessage.getMessage();
+			
+			if (!filterMessage(message, false))
 			{
-				final T message = allMessages.getMessages().get(i);
-				
-				if (browsedTopics.contains(message.getTopic()) && !filterMessage(message, false))
-				{
-					getMessageList().add(message);								
-				}
+				getMessageList().add(message, indexedMessage.getSequence());								
 			}
 		}
 	}	
 	
+	/**
+	 * Adds messages on the given (newly browsed) topics to the filtered store.
+	 * Unless message filters (which might depend on the previous message)
+	 * are active, the messages are merged in without rebuilding the store.
+	 * 
+	 * @param topics The topics to show
+	 */
+	private void showTopics(final Collection<String> topics)
+	{
+		if (messageFiltersEnabled())
+		{
+			reinitialiseFilteredStore();
+		}
+		else
+		{
+			getMessageList().mergeMessages(allMessages.getTopicMessages(topics));
+		}
+	}
+	
+	/**
+	 * Removes messages on the given (no longer browsed) topics from the filtered store.
+	 * 
+	 * @param topics The topics to hide
+	 */
+	private void hideTopics(final Collection<String> topics)
+	{
+		if (messageFiltersEnabled())
+		{
+			reinitialiseFilteredStore();
+		}
+		else
+		{
+			getMessageList().removeTopics(topics);
+		}
+	}
+	
 	public boolean filterMessage(final T message, final boolean updateUi)
 	{
 		for (final MessageFilter<T> filter : messageFilters)
@@ -141,18 +180,9 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		removeAllTopicFilters();
 		
-		synchronized (allMessages.getMessages())
-		{
-			for (T message : allMessages.getMessages())
-			{
-				browsedTopics.add(message.getTopic());
-				
-				if (!filterMessage(message, false))
-				{
-					getMessageList().add(message);
-				}
-			}
-		}
+		final Set<String> topics = allMessages.getTopics();
+		browsedTopics.addAll(topics);
+		showTopics(topics);
 	}
 	
 	public void removeAllTopicFilters()
@@ -168,7 +198,7 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		synchronized (browsedTopics)
 		{
-			boolean updated = false;
+			final List<String> addedTopics = new ArrayList<>();
 			
 			for (final String topic : topics)
 			{
@@ -176,18 +206,16 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 				{
 					logger.debug("Adding {} to active filters for {}; recreate = {}", topic, allMessages.getName(), recreateStore);
 					browsedTopics.add(topic);														
-					updated = true;
+					addedTopics.add(topic);
 				}
 			}
 			
-			// TODO: optimise
-			if (updated && recreateStore)
+			if (!addedTopics.isEmpty() && recreateStore)
 			{
-				logger.warn("Recreating store for topics in {}", allMessages.getName());
-				reinitialiseFilteredStore();
+				showTopics(addedTopics);
 			}
 			
-			return updated;
+			return !addedTopics.isEmpty();
 		}
 	}
 	
@@ -200,7 +228,7 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 	{
 		synchronized (browsedTopics)
 		{
-			boolean updated = false;
+			final List<String> removedTopics = new ArrayList<>();
 			
 			for (final String topic : topics)
 			{
@@ -208,16 +236,16 @@ public class FilteredMessageStore<T extends FormattedMessage> extends BasicMessa
 				{
 					logger.debug("Removing {} from active filters for {}", topic, allMessages.getName());
 					browsedTopics.remove(topic);		
-					updated = true;
+					removedTopics.add(topic);
 				}
 			}
 			
-			if (updated)
+			if (!removedTopics.isEmpty())
 			{
-				reinitialiseFilteredStore();
+				hideTopics(removedTopics);
 			}
 			
-			return updated;
+			return !removedTopics.isEmpty();
 		}
 	}
 
@@ -30,10 +30,11 @@ import org.slf4j.LoggerFactory;
 
 import pl.baczkowicz.spy.formatting.FormattingManager;
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
 
 /**
  * The top level message store, handling received messages.
@@ -72,9 +73,7 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 				new MessageStoreGarbageCollector<T>(this, filteredStore.getFilteredMessages(), uiEventQueue, minMessagesPerTopic, false, true));		
 		this.setMessageStoreGarbageCollector(
 				new MessageStoreGarbageCollector<T>(this, super.getMessageList(), uiEventQueue, minMessagesPerTopic, true, false));
-		
-		new Thread(this.filteredStore.getMessageStoreGarbageCollector()).start();
-		new Thread(this.getMessageStoreGarbageCollector()).start();
+		this.getMessageStoreGarbageCollector().setSubsetCollector(this.filteredStore.getMessageStoreGarbageCollector());
 	}
 	
 	/**
@@ -86,8 +85,8 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 	 */
 	public void messageReceived(final T message)
 	{	
-		// 0. Format the message with the currently selected formatter
-		formattingManager.formatMessage(message, getFormatter());
+		// 0. Format the message with the currently selected formatter (or leave it until needed)
+		formattingManager.formatReceivedMessage(message, getFormatter());
 				
 		// Record the current state of topics
 		final boolean allTopicsShown = !browsingFiltersEnabled();		
@@ -120,11 +119,12 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		}
 			
 		// 5. Summary table update - required are: removed message, new message, and whether to show the topic
-		if (removed != null)
-		{
-			uiEventQueue.add(this, new TopicSummaryRemovedMessageEvent<T>(super.getMessageList(), removed));
-		}
-		uiEventQueue.add(this, new TopicSummaryNewMessageEvent<T>(super.getMessageList(), message, allTopicsShown && !topicAlreadyExists));
+		uiEventQueue.topicMessageRemoved(this, super.getMessageList(), removed);
+		uiEventQueue.topicMessageAdded(this, super.getMessageList(), message, allTopicsShown && !topicAlreadyExists);
+		
+		// 6. Bring both stores back within their preferred size and memory budget
+		getMessageStoreGarbageCollector().collect();
+		filteredStore.getMessageStoreGarbageCollector().collect();
 	}	
 	
 	@Override
@@ -133,6 +133,12 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		return filteredStore.getFilteredMessages().getMessages();
 	}
 	
+	@Override
+	public List<T> getMessagesSnapshot()
+	{
+		return filteredStore.getFilteredMessages().getSnapshot();
+	}
+	
 	@Override
 	public MessageListWithObservableTopicSummary<T> getMessageList()
 	{
@@ -252,9 +258,106 @@ public class ManagedMessageStoreWithFiltering<T extends FormattedMessage> extend
 		return formattingManager;
 	}
 	
+	/**
+	 * Sets the memory budget for this store. The filtered message list holds
+	 * a subset of the same messages, so messages evicted from the main list to
+	 * save memory are removed from the filtered list as well. Messages of this
+	 * store can be evicted when any of the stores sharing the budget exceeds it.
+	 * 
+	 * @param memoryLimit Memory limit for this store in bytes (0 for no limit)
+	 * @param sharedMemoryBudget Budget shared with other stores (or null)
+	 */
+	public void setMemoryBudget(final long memoryLimit, final MessageStoreMemoryBudget sharedMemoryBudget)
+	{
+		final MessageStoreMemoryBudget previousMemoryBudget = super.getMessageList().getSharedMemoryBudget();
+		if (previousMemoryBudget != null)
+		{
+			previousMemoryBudget.removeCollector(getMessageStoreGarbageCollector());
+		}
+		
+		super.getMessageList().setMemoryBudget(memoryLimit, sharedMemoryBudget);
+		
+		if (sharedMemoryBudget != null)
+		{
+			sharedMemoryBudget.addCollector(getMessageStoreGarbageCollector());
+		}
+	}
+	
+	/**
+	 * Gets the estimated memory used by messages in this store.
+	 * 
+	 * @return Estimated size in bytes
+	 */
+	public long getMemoryUsage()
+	{
+		return super.getMessageList().getMemoryUsage();
+	}
+	
+	/**
+	 * Sets the off-heap arena for payloads of messages in this store (both the main and the filtered list).
+	 * 
+	 * @param payloadArena The arena to use (or null to keep payloads on the heap)
+	 */
+	public void setPayloadArena(final PayloadArena payloadArena)
+	{
+		super.getMessageList().setPayloadArena(payloadArena);
+		filteredStore.getFilteredMessages().setPayloadArena(payloadArena);
+	}
+	
+	public PayloadArena getPayloadArena()
+	{
+		return super.getMessageList().getPayloadArena();
+	}
+	
+	/**
+	 * Sets the compressor for payloads of messages in this store (both the main and the filtered list).
+	 * 
+	 * @param payloadCompressor The compressor to use (or null to store payloads uncompressed)
+	 */
+	public void setPayloadCompressor(final PayloadCompressor payloadCompressor)
+	{
+		super.getMessageList().setPayloadCompressor(payloadCompressor);
+		filteredStore.getFilteredMessages().setPayloadCompressor(payloadCompressor);
+	}
+	
+	public PayloadCompressor getPayloadCompressor()
+	{
+		return super.getMessageList().getPayloadCompressor();
+	}
+	
+	/**
+	 * Sets the interner for sharing identical payloads of messages in this store (both the main and the filtered list).
+	 * 
+	 * @param payloadInterner The interner to use (or null for each message to keep its own payload)
+	 */
+	public void setPayloadInterner(final PayloadInterner payloadInterner)
+	{
+		super.getMessageList().setPayloadInterner(payloadInterner);
+		filteredStore.getFilteredMessages().setPayloadInterner(payloadInterner);
+	}
+	
+	public PayloadInterner getPayloadInterner()
+	{
+		return super.getMessageList().getPayloadInterner();
+	}
+	
+	/**
+	 * Gets the ratio between the original and the stored size of payloads in this store.
+	 * 
+	 * @return The compression ratio (1 if nothing is compressed)
+	 */
+	public double getCompressionRatio()
+	{
+		return super.getMessageList().getCompressionRatio();
+	}
+	
 	public void cleanUp()
 	{
-		this.getMessageStoreGarbageCollector().setRunning(false);
-		this.filteredStore.getMessageStoreGarbageCollector().setRunning(false);
+		// Old messages are removed inline, so there are no background threads to stop;
+		// just stop counting this store's messages towards the shared budget, free their payloads in the arena and interner, and drop its UI event queue
+		setMemoryBudget(super.getMessageList().getMemoryLimit(), null);
+		setPayloadArena(null);
+		setPayloadInterner(null);
+		uiEventQueue.remove(this);
 	}
 }
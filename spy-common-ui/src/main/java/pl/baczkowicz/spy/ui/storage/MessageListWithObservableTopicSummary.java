@@ -19,18 +19,105 @@
  */
 package pl.baczkowicz.spy.ui.storage;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.messages.MessageSizeListener;
 import pl.baczkowicz.spy.storage.MessageList;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 import pl.baczkowicz.spy.ui.storage.summary.ObservableTopicSummary;
 
 /**
  * Message list with observable topic summary.
+ * 
+ * The list also keeps a per-topic index of its messages (oldest first), so
+ * that the oldest message which can be removed without going below the
+ * minimum number of messages per topic can be found without walking the
+ * whole list. The index is guarded by the message list's lock.
+ * 
+ * The estimated memory used by the messages is tracked as well, so that the
+ * list can be kept within a memory budget of its own and a budget shared with
+ * other lists (e.g. across all connections). Parts of a message shared with
+ * other views of it (e.g. the payload of a message stored for both the
+ * connection and a subscription) are counted once towards the shared budget.
+ * Messages formatted after being stored report it, and their size is
+ * re-estimated before the next messages are collected.
+ * 
+ * Optionally, payloads of stored messages can be kept in an off-heap arena,
+ * with each list holding a reference to the payload while the message is
+ * stored. Payloads above a size threshold can also be compressed, and
+ * identical payloads can be shared between messages.
+ * 
+ * A list holding a subset of another list's messages (e.g. only the browsed
+ * topics) orders its messages by their arrival order in that source list, so
+ * that messages of a whole topic can be merged in or removed in one go.
  */
-public class MessageListWithObservableTopicSummary<T extends FormattedMessage> extends MessageList<T>
+public class MessageListWithObservableTopicSummary<T extends FormattedMessage> extends MessageList<T> implements MessageSizeListener
 {
 	private final ObservableTopicSummary<T> topicSummary;
 	
+	/** Indexed messages per topic. */
+	private final Map<String, TopicMessages<T>> topicIndex = new HashMap<>();
+	
+	/** Topics with more than the minimum number of messages, ordered by their oldest message. */
+	private final TreeSet<TopicMessages<T>> evictableTopics = new TreeSet<>();
+	
+	/** Number of messages per topic that should not be evicted. */
+	private int minMessagesPerTopic;
+	
+	/** Arrival order of indexed messages. */
+	private volatile long sequence;
+	
+	/** List this list holds a subset of (if any). */
+	private MessageListWithObservableTopicSummary<T> sourceList;
+	
+	/** Estimated number of bytes used by the stored messages. */
+	private volatile long memoryUsage;
+	
+	/** Memory limit for this list in bytes; 0 means no limit. */
+	private long memoryLimit;
+	
+	/** Optional memory budget shared with other lists. */
+	private MessageStoreMemoryBudget sharedMemoryBudget;
+	
+	/** Stored messages whose estimated size might have changed. */
+	private final Queue<T> resizedMessages = new ConcurrentLinkedQueue<>();
+	
+	/** Checks whether the messages of this list are on screen, e.g. browsed (if not set, they are assumed to be). */
+	private BooleanSupplier showingCheck;
+	
+	/** Optional off-heap arena for payloads of stored messages. */
+	private PayloadArena payloadArena;
+	
+	/** Optional compressor for payloads of stored messages. */
+	private PayloadCompressor payloadCompressor;
+	
+	/** Optional interner for sharing identical payloads of stored messages. */
+	private PayloadInterner payloadInterner;
+	
+	/** Total length of the stored payloads (before compression). */
+	private volatile long payloadBytes;
+	
+	/** Total length of the stored payloads as stored. */
+	private volatile long storedPayloadBytes;
+	
 	public MessageListWithObservableTopicSummary(final int preferredSize, final int maxSize, 
 			final String name, final FormatterDetails messageFormat, final int maxPayloadLength)
 	{
@@ -47,23 +134,843 @@ public class MessageListWithObservableTopicSummary<T extends FormattedMessage> e
 	
 	public T add(final T message)
 	{
-		final T removed = super.add(message);
+		synchronized (getMessages())
+		{
+			// A message added to a subset list has just been added to the source list
+			return add(message, sourceList != null ? sourceList.sequence - 1 : sequence++);
+		}
+	}
+	
+	/**
+	 * Adds the given message (the newest one) with its position in the arrival order.
+	 * 
+	 * @param message The message to add
+	 * @param messageSequence Position of the message in the arrival order
+	 * 
+	 * @return The message removed to make space (or null)
+	 */
+	T add(final T message, final long messageSequence)
+	{
+		synchronized (getMessages())
+		{
+			final T removed = super.add(message);
+			
+			if (removed != null)
+			{
+				topicSummary.decreaseCount(removed);
+				removeFromIndex(removed);
+			}
+			topicSummary.increaseCount(message);
+			addToIndex(message, messageSequence);
+			
+			return removed;
+		}
+	}
+	
+	/**
+	 * Gets the messages stored on the given topics, oldest first.
+	 * 
+	 * @param topics The topics to get the messages for
+	 * 
+	 * @return Messages with their position in the arrival order
+	 */
+	List<IndexedMessage<T>> getTopicMessages(final Collection<String> topics)
+	{
+		final List<IndexedMessage<T>> topicMessages = new ArrayList<>();
 		
-		if (removed != null)
+		synchronized (getMessages())
 		{
-			topicSummary.decreaseCount(removed);
+			for (final String topic : topics)
+			{
+				final TopicMessages<T> messages = topicIndex.get(topic);
+				
+				if (messages != null)
+				{
+					topicMessages.addAll(messages.messages);
+				}
+			}
 		}
-		topicSummary.increaseCount(message);
 		
-		return removed;
+		// Messages of each topic are already in order, so this is mostly merging
+		Collections.sort(topicMessages, SEQUENCE_COMPARATOR);
+		
+		return topicMessages;
+	}
+	
+	/**
+	 * Gets all topics with messages stored in this list.
+	 * 
+	 * @return Set of topics
+	 */
+	public Set<String> getTopics()
+	{
+		synchronized (getMessages())
+		{
+			return new HashSet<>(topicIndex.keySet());
+		}
+	}
+	
+	/**
+	 * Merges the given messages of the source list into this list, keeping the
+	 * source list's order. Messages on topics this list already holds newer
+	 * messages for are skipped, as they might have been added in the meantime.
+	 * 
+	 * @param sourceMessages Messages to merge, oldest first
+	 */
+	@SuppressWarnings("unchecked")
+	void mergeMessages(final List<IndexedMessage<T>> sourceMessages)
+	{
+		synchronized (getMessages())
+		{
+			final Object[] current = getMessages().toArray();
+			final int size = current.length;
+			
+			// Get the position of each stored message in the arrival order
+			final long[] sequences = new long[size];
+			final Map<String, Iterator<IndexedMessage<T>>> topicIterators = new HashMap<>();
+			for (int i = 0; i < size; i++)
+			{
+				final String topic = ((FormattedMessage) current[i]).getTopic();
+				Iterator<IndexedMessage<T>> iterator = topicIterators.get(topic);
+				
+				if (iterator == null)
+				{
+					iterator = topicIndex.get(topic).messages.descendingIterator();
+					topicIterators.put(topic, iterator);
+				}
+				
+				sequences[i] = iterator.next().sequence;
+			}
+			
+			// Index the new messages, newest first; topics can change their ordering key, so re-add them afterwards
+			evictableTopics.clear();			
+			final List<IndexedMessage<T>> added = new ArrayList<>();			
+			for (int i = sourceMessages.size() - 1; i >= 0; i--)
+			{
+				final IndexedMessage<T> sourceMessage = sourceMessages.get(i);
+				final T message = sourceMessage.message;
+				TopicMessages<T> topicMessages = topicIndex.get(message.getTopic());
+				
+				if (topicMessages == null)
+				{
+					topicMessages = new TopicMessages<T>();
+					topicIndex.put(message.getTopic(), topicMessages);
+				}
+				else if (topicMessages.size() > 0 && sourceMessage.sequence >= topicMessages.messages.peekFirst().sequence)
+				{
+					continue;
+				}
+				
+				final IndexedMessage<T> indexedMessage = storeMessage(message, sourceMessage.sequence);
+				topicMessages.messages.addFirst(indexedMessage);
+				topicSummary.increaseCount(message);
+				added.add(indexedMessage);
+			}
+			setMinMessagesPerTopic(minMessagesPerTopic);
+			
+			// Merge both lists, newest first
+			final List<T> merged = new ArrayList<>(size + added.size());
+			int currentIndex = 0;
+			int addedIndex = 0;
+			while (currentIndex < size || addedIndex < added.size())
+			{
+				if (addedIndex == added.size() || (currentIndex < size && sequences[currentIndex] > added.get(addedIndex).sequence))
+				{
+					merged.add((T) current[currentIndex++]);
+				}
+				else
+				{
+					merged.add(added.get(addedIndex++).message);
+				}
+			}
+			
+			setMessages(merged);
+		}
+	}
+	
+	/**
+	 * Removes all messages on the given topics.
+	 * 
+	 * @param topics The topics to remove
+	 */
+	@SuppressWarnings("unchecked")
+	void removeTopics(final Collection<String> topics)
+	{
+		final Set<String> removedTopics = new HashSet<>();
+		
+		synchronized (getMessages())
+		{
+			for (final String topic : topics)
+			{
+				final TopicMessages<T> topicMessages = topicIndex.remove(topic);
+				
+				if (topicMessages == null)
+				{
+					continue;
+				}
+				
+				evictableTopics.remove(topicMessages);
+				removedTopics.add(topic);
+				
+				for (final IndexedMessage<T> indexedMessage : topicMessages.messages)
+				{
+					topicSummary.decreaseCount(indexedMessage.message);
+					releaseMessage(indexedMessage);
+				}
+			}
+			
+			if (removedTopics.isEmpty())
+			{
+				return;
+			}
+			
+			final List<T> remaining = new ArrayList<>();
+			for (final Object message : getMessages().toArray())
+			{
+				if (!removedTopics.contains(((FormattedMessage) message).getTopic()))
+				{
+					remaining.add((T) message);
+				}
+			}
+			
+			setMessages(remaining);
+		}
 	}
 	
 	public T remove(final int index)
 	{
-		final T removed = super.remove(index);
+		synchronized (getMessages())
+		{
+			final T removed = super.remove(index);
+			
+			topicSummary.decreaseCount(removed);
+			removeFromIndex(removed);
+			
+			return removed;
+		}
+	}
+	
+	@Override
+	public void clear()
+	{
+		synchronized (getMessages())
+		{
+			for (final TopicMessages<T> topicMessages : topicIndex.values())
+			{
+				for (final IndexedMessage<T> indexedMessage : topicMessages.messages)
+				{
+					releaseMessage(indexedMessage);
+				}
+			}
+			
+			super.clear();
+			topicIndex.clear();
+			evictableTopics.clear();
+			resizedMessages.clear();
+			
+			memoryUsage = 0;
+			payloadBytes = 0;
+			storedPayloadBytes = 0;
+		}
+	}
+	
+	/**
+	 * Finds the oldest message that can be removed without the number of
+	 * messages on its topic going below the configured minimum.
+	 * 
+	 * @return Index of the message, or -1 if all topics are at their minimum
+	 */
+	public int indexOfOldestEvictable()
+	{
+		synchronized (getMessages())
+		{
+			if (evictableTopics.isEmpty())
+			{
+				return -1;
+			}
+			
+			// Only protected messages can be older, so this is normally found straight away
+			return indexOfMessage(evictableTopics.first().getOldest());
+		}
+	}
+	
+	/**
+	 * Gets the oldest message that can be removed without the number of
+	 * messages on its topic going below the configured minimum.
+	 * 
+	 * @return The message, or null if all topics are at their minimum
+	 */
+	public T getOldestEvictable()
+	{
+		synchronized (getMessages())
+		{
+			return evictableTopics.isEmpty() ? null : evictableTopics.first().getOldest();
+		}
+	}
+	
+	/**
+	 * Finds the given message, searching from the oldest end of the list.
+	 * 
+	 * @param message The message to find
+	 * 
+	 * @return Index of the message, or -1 if not stored
+	 */
+	public int indexOfMessage(final T message)
+	{
+		synchronized (getMessages())
+		{
+			final List<T> messages = getMessages();
+			for (int i = messages.size() - 1; i >= 0; i--)
+			{
+				if (messages.get(i) == message)
+				{
+					return i;
+				}
+			}
+			
+			return -1;
+		}
+	}
+	
+	/**
+	 * Sets the number of messages per topic that should not be evicted.
+	 * 
+	 * @param minMessagesPerTopic The minimum number of messages per topic
+	 */
+	public void setMinMessagesPerTopic(final int minMessagesPerTopic)
+	{
+		synchronized (getMessages())
+		{
+			this.minMessagesPerTopic = minMessagesPerTopic;
+			
+			evictableTopics.clear();
+			for (final TopicMessages<T> topicMessages : topicIndex.values())
+			{
+				if (topicMessages.size() > minMessagesPerTopic)
+				{
+					evictableTopics.add(topicMessages);
+				}
+			}
+		}
+	}
+	
+	public int getMinMessagesPerTopic()
+	{
+		return minMessagesPerTopic;
+	}
+	
+	/**
+	 * Sets the memory budget for this list.
+	 * 
+	 * @param memoryLimit Memory limit for this list in bytes (0 for no limit)
+	 * @param sharedMemoryBudget Budget shared with other lists (or null)
+	 */
+	public void setMemoryBudget(final long memoryLimit, final MessageStoreMemoryBudget sharedMemoryBudget)
+	{
+		synchronized (getMessages())
+		{
+			updateResizedMessages();
+			
+			// Move the current usage over to the new shared budget
+			if (this.sharedMemoryBudget != sharedMemoryBudget)
+			{
+				for (final TopicMessages<T> topicMessages : topicIndex.values())
+				{
+					for (final IndexedMessage<T> indexedMessage : topicMessages.messages)
+					{
+						if (this.sharedMemoryBudget != null)
+						{
+							this.sharedMemoryBudget.released(indexedMessage.size + indexedMessage.message.releaseSharedSize());
+						}
+						if (sharedMemoryBudget != null)
+						{
+							sharedMemoryBudget.allocated(indexedMessage.size + indexedMessage.message.retainSharedSize());
+						}
+					}
+				}
+			}
+			
+			this.memoryLimit = memoryLimit;
+			this.sharedMemoryBudget = sharedMemoryBudget;
+			
+			for (final TopicMessages<T> topicMessages : topicIndex.values())
+			{
+				for (final IndexedMessage<T> indexedMessage : topicMessages.messages)
+				{
+					trackSize(indexedMessage.message);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether this list uses more memory than its own limit allows.
+	 * The shared budget is for all lists sharing it, so it is checked (and
+	 * collected) by the budget itself.
+	 * 
+	 * @return True if the limit has been exceeded
+	 */
+	public boolean exceedingMemoryLimit()
+	{
+		synchronized (getMessages())
+		{
+			return memoryLimit > 0 && memoryUsage > memoryLimit;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public void messageSizeChanged(final FormattedMessage message)
+	{
+		// Can be called while the message is locked, so leave re-estimating until the list is collected
+		resizedMessages.add((T) message);
+	}
+	
+	/**
+	 * Re-estimates the size of stored messages reported as changed (e.g.
+	 * formatted after being stored) and updates the memory usage.
+	 */
+	public void updateResizedMessages()
+	{
+		if (resizedMessages.isEmpty())
+		{
+			return;
+		}
+		
+		synchronized (getMessages())
+		{
+			T message;
+			while ((message = resizedMessages.poll()) != null)
+			{
+				final TopicMessages<T> topicMessages = topicIndex.get(message.getTopic());
+				final IndexedMessage<T> indexedMessage = topicMessages != null ? topicMessages.find(message) : null;
+				
+				// Might have been removed in the meantime
+				if (indexedMessage == null)
+				{
+					continue;
+				}
+				
+				final long sharedSize = message.getEstimatedSharedSize();
+				final long size = message.getEstimatedSize() - sharedSize;
+				
+				memoryUsage = memoryUsage + (size + sharedSize) - (indexedMessage.size + indexedMessage.sharedSize);
+				if (sharedMemoryBudget != null)
+				{
+					sharedMemoryBudget.allocated(size - indexedMessage.size + message.updateSharedSize());
+				}
+				
+				indexedMessage.size = size;
+				indexedMessage.sharedSize = sharedSize;
+			}
+		}
+	}
+	
+	/**
+	 * Gets the estimated memory used by the stored messages.
+	 * 
+	 * @return Estimated size in bytes
+	 */
+	public long getMemoryUsage()
+	{
+		return memoryUsage;
+	}
+	
+	public long getMemoryLimit()
+	{
+		return memoryLimit;
+	}
+	
+	public MessageStoreMemoryBudget getSharedMemoryBudget()
+	{
+		return sharedMemoryBudget;
+	}
+	
+	/**
+	 * Sets the arena for payloads of stored messages. Messages already stored
+	 * on the heap are moved to the new arena. Payloads already in an arena are
+	 * not copied back - they stay there until their messages are no longer in
+	 * use. This is expected to be set up before messages are stored, as their
+	 * estimated sizes are not updated.
+	 * 
+	 * @param payloadArena The arena to use (or null to keep payloads on the heap)
+	 */
+	public void setPayloadArena(final PayloadArena payloadArena)
+	{
+		synchronized (getMessages())
+		{
+			for (final T message : getMessages())
+			{
+				if (this.payloadArena != null)
+				{
+					message.releaseFromArena();
+				}
+				if (payloadArena != null)
+				{
+					message.retainInArena(payloadArena);
+				}
+			}
+			
+			this.payloadArena = payloadArena;
+		}
+	}
+	
+	public PayloadArena getPayloadArena()
+	{
+		return payloadArena;
+	}
+	
+	/**
+	 * Sets the compressor for payloads of newly stored messages.
+	 * 
+	 * @param payloadCompressor The compressor to use (or null to store payloads uncompressed)
+	 */
+	public void setPayloadCompressor(final PayloadCompressor payloadCompressor)
+	{
+		this.payloadCompressor = payloadCompressor;
+	}
+	
+	public PayloadCompressor getPayloadCompressor()
+	{
+		return payloadCompressor;
+	}
+	
+	/**
+	 * Sets the interner for sharing identical payloads of stored messages.
+	 * References to the previous interner (if any) are released.
+	 * 
+	 * @param payloadInterner The interner to use (or null for each message to keep its own payload)
+	 */
+	public void setPayloadInterner(final PayloadInterner payloadInterner)
+	{
+		synchronized (getMessages())
+		{
+			for (final T message : getMessages())
+			{
+				if (this.payloadInterner != null)
+				{
+					message.releaseInternedPayload();
+				}
+				if (payloadInterner != null)
+				{
+					message.internPayload(payloadInterner);
+				}
+			}
+			
+			this.payloadInterner = payloadInterner;
+		}
+	}
+	
+	public PayloadInterner getPayloadInterner()
+	{
+		return payloadInterner;
+	}
+	
+	/**
+	 * Gets the ratio between the original and the stored size of all stored payloads.
+	 * 
+	 * @return The compression ratio (1 if nothing is compressed)
+	 */
+	public double getCompressionRatio()
+	{
+		synchronized (getMessages())
+		{
+			return storedPayloadBytes > 0 ? (double) payloadBytes / storedPayloadBytes : 1;
+		}
+	}
+	
+	public void setShowingCheck(final BooleanSupplier showingCheck)
+	{
+		this.showingCheck = showingCheck;
+	}
+	
+	/**
+	 * Checks whether the messages of this list are shown on screen, in which
+	 * case every message added or removed should be shown.
+	 * 
+	 * @return True if shown (or not known)
+	 */
+	public boolean isShowing()
+	{
+		return showingCheck == null || showingCheck.getAsBoolean();
+	}
+	
+	/**
+	 * Sets the list this list holds a subset of, so that messages are ordered as in that list.
+	 * 
+	 * @param sourceList The source list
+	 */
+	public void setSourceList(final MessageListWithObservableTopicSummary<T> sourceList)
+	{
+		this.sourceList = sourceList;
+	}
+	
+	private void addToIndex(final T message, final long messageSequence)
+	{
+		TopicMessages<T> topicMessages = topicIndex.get(message.getTopic());
+		
+		if (topicMessages == null)
+		{
+			topicMessages = new TopicMessages<T>();
+			topicIndex.put(message.getTopic(), topicMessages);
+		}
 		
-		topicSummary.decreaseCount(removed);
+		// Adding the newest message doesn't change the ordering of an already evictable topic
+		final boolean evictable = topicMessages.size() > minMessagesPerTopic;
+		topicMessages.add(storeMessage(message, messageSequence));
 		
-		return removed;
+		if (!evictable && topicMessages.size() > minMessagesPerTopic)
+		{
+			evictableTopics.add(topicMessages);
+		}
+	}
+	
+	private void removeFromIndex(final T message)
+	{
+		final TopicMessages<T> topicMessages = topicIndex.get(message.getTopic());
+		
+		if (topicMessages == null)
+		{
+			return;
+		}
+		
+		// Take the topic out before its oldest message (the ordering key) can change
+		if (topicMessages.size() > minMessagesPerTopic)
+		{
+			evictableTopics.remove(topicMessages);
+		}
+		
+		final IndexedMessage<T> removed = topicMessages.remove(message);
+		
+		if (removed != null)
+		{
+			releaseMessage(removed);
+		}
+		
+		if (topicMessages.size() == 0)
+		{
+			topicIndex.remove(message.getTopic());
+		}
+		else if (topicMessages.size() > minMessagesPerTopic)
+		{
+			evictableTopics.add(topicMessages);
+		}
+	}
+	
+	/**
+	 * Shares, compresses and/or moves to the arena the payload of a newly
+	 * stored message (if configured), and accounts for the memory it uses.
+	 * 
+	 * @param message The stored message
+	 * @param messageSequence Position of the message in the arrival order
+	 * 
+	 * @return The indexed message
+	 */
+	private IndexedMessage<T> storeMessage(final T message, final long messageSequence)
+	{
+		// Shared payloads are left uncompressed and on the heap, as there is only one copy of each
+		if (payloadInterner != null)
+		{
+			message.internPayload(payloadInterner);
+		}
+		
+		if (payloadCompressor != null)
+		{
+			message.compressPayload(payloadCompressor);
+		}
+		
+		if (payloadArena != null)
+		{
+			message.retainInArena(payloadArena);
+		}
+		
+		final long sharedSize = message.getEstimatedSharedSize();
+		final IndexedMessage<T> indexedMessage = new IndexedMessage<T>(message, messageSequence, message.getEstimatedSize() - sharedSize, sharedSize, 
+				message.getPayloadLength(), message.getStoredPayloadLength());
+		
+		memoryUsage = memoryUsage + indexedMessage.size + indexedMessage.sharedSize;
+		if (sharedMemoryBudget != null)
+		{
+			// Parts shared with other stored views of the message only count once
+			sharedMemoryBudget.allocated(indexedMessage.size + message.retainSharedSize());
+		}
+		trackSize(message);
+		
+		payloadBytes = payloadBytes + indexedMessage.payloadLength;
+		storedPayloadBytes = storedPayloadBytes + indexedMessage.storedPayloadLength;
+		
+		return indexedMessage;
+	}
+	
+	/**
+	 * Releases the memory (and the arena or interner reference, or the cached
+	 * decompressed payload) of a message no longer stored.
+	 * 
+	 * @param indexedMessage The removed message
+	 */
+	private void releaseMessage(final IndexedMessage<T> indexedMessage)
+	{
+		memoryUsage = memoryUsage - indexedMessage.size - indexedMessage.sharedSize;
+		if (sharedMemoryBudget != null)
+		{
+			sharedMemoryBudget.released(indexedMessage.size + indexedMessage.message.releaseSharedSize());
+		}
+		if (indexedMessage.message.getSizeListener() == this)
+		{
+			indexedMessage.message.setSizeListener(null);
+		}
+		
+		payloadBytes = payloadBytes - indexedMessage.payloadLength;
+		storedPayloadBytes = storedPayloadBytes - indexedMessage.storedPayloadLength;
+		
+		if (payloadArena != null)
+		{
+			indexedMessage.message.releaseFromArena();
+		}
+		
+		if (payloadInterner != null)
+		{
+			indexedMessage.message.releaseInternedPayload();
+		}
+		
+		if (payloadCompressor != null)
+		{
+			indexedMessage.message.evictDecompressedPayload();
+		}
+	}
+	
+	/**
+	 * Asks the message to report size changes (e.g. after formatting) to this
+	 * list, if this list has a memory budget.
+	 * 
+	 * @param message The stored message
+	 */
+	private void trackSize(final T message)
+	{
+		if (memoryLimit > 0 || sharedMemoryBudget != null)
+		{
+			message.setSizeListener(this);
+		}
+	}
+	
+	/** Orders indexed messages by their arrival. */
+	private static final Comparator<IndexedMessage<?>> SEQUENCE_COMPARATOR = new Comparator<IndexedMessage<?>>()
+	{
+		@Override
+		public int compare(final IndexedMessage<?> first, final IndexedMessage<?> second)
+		{
+			return Long.compare(first.sequence, second.sequence);
+		}
+	};
+	
+	/**
+	 * A stored message with its arrival order, estimated size and payload length (original and as stored).
+	 */
+	static class IndexedMessage<T extends FormattedMessage>
+	{
+		private final T message;
+		
+		private final long sequence;
+		
+		/** Estimated size of the message, excluding parts shared with other views of it. */
+		private long size;
+		
+		/** Estimated size of the parts shared with other views of the message. */
+		private long sharedSize;
+		
+		private final int payloadLength;
+		
+		private final int storedPayloadLength;
+		
+		IndexedMessage(final T message, final long sequence, final long size, final long sharedSize, final int payloadLength, final int storedPayloadLength)
+		{
+			this.message = message;
+			this.sequence = sequence;
+			this.size = size;
+			this.sharedSize = sharedSize;
+			this.payloadLength = payloadLength;
+			this.storedPayloadLength = storedPayloadLength;
+		}
+		
+		T getMessage()
+		{
+			return message;
+		}
+		
+		long getSequence()
+		{
+			return sequence;
+		}
+	}
+	
+	/**
+	 * Messages stored for a single topic, oldest first.
+	 */
+	private static class TopicMessages<T extends FormattedMessage> implements Comparable<TopicMessages<T>>
+	{
+		private final ArrayDeque<IndexedMessage<T>> messages = new ArrayDeque<>();
+		
+		void add(final IndexedMessage<T> message)
+		{
+			messages.addLast(message);
+		}
+		
+		IndexedMessage<T> remove(final T message)
+		{
+			// Messages are normally removed from either end (oldest evicted or newest deduplicated)
+			if (messages.peekFirst().message == message)
+			{
+				return messages.removeFirst();
+			}
+			else if (messages.peekLast().message == message)
+			{
+				return messages.removeLast();
+			}
+			
+			final Iterator<IndexedMessage<T>> iterator = messages.iterator();			
+			while (iterator.hasNext())
+			{
+				final IndexedMessage<T> indexedMessage = iterator.next();
+				if (indexedMessage.message == message)
+				{
+					iterator.remove();
+					return indexedMessage;
+				}
+			}
+			
+			return null;
+		}
+		
+		IndexedMessage<T> find(final T message)
+		{
+			// Messages re-estimated are mostly the latest ones
+			final Iterator<IndexedMessage<T>> iterator = messages.descendingIterator();			
+			while (iterator.hasNext())
+			{
+				final IndexedMessage<T> indexedMessage = iterator.next();
+				if (indexedMessage.message == message)
+				{
+					return indexedMessage;
+				}
+			}
+			
+			return null;
+		}
+		
+		T getOldest()
+		{
+			return messages.peekFirst().message;
+		}
+		
+		int size()
+		{
+			return messages.size();
+		}
+
+		@Override
+		public int compareTo(final TopicMessages<T> other)
+		{
+			return Long.compare(messages.peekFirst().sequence, other.messages.peekFirst().sequence);
+		}
 	}
 }
@@ -22,110 +22,183 @@ package pl.baczkowicz.spy.ui.storage;
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
 import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseRemovedMessageEvent;
-import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
-import pl.baczkowicz.spy.utils.ThreadingUtils;
 
 /**
  * This class is responsible for deleting old messages from memory, so we don't
  * use too much of it. This is particularly important when processing 100s or
  * 1000s messages per second.
+ * 
+ * Messages are removed inline, straight after new ones are added to the store,
+ * using the per-topic index of the message list to find the oldest message
+ * that can go without breaking the minimum number of messages per topic.
+ * 
+ * When the memory budget shared with other stores is exceeded, the oldest
+ * messages are removed across all of these stores (see MessageStoreMemoryBudget),
+ * not only from the store that has just received a message.
  */
-public class MessageStoreGarbageCollector<T extends FormattedMessage> implements Runnable
+public class MessageStoreGarbageCollector<T extends FormattedMessage>
 {
 	/** Stores events for the UI to be updated. */
 	protected final EventQueueManager<T> uiEventQueue;
 	
 	private MessageListWithObservableTopicSummary<T> messages;
 	
-	private int minMessagesPerTopic;
-
 	private boolean createTopicSummaryEvents;
 
 	private boolean createBrowseEvents;
 
 	private ManagedMessageStoreWithFiltering<T> store;
-
-	private boolean running;
 	
+	/** Collector for a list holding a subset of these messages (optional). */
+	private MessageStoreGarbageCollector<T> subsetCollector;
+
 	public MessageStoreGarbageCollector(final ManagedMessageStoreWithFiltering<T> store, final MessageListWithObservableTopicSummary<T> messages, 
 			final EventQueueManager<T> uiEventQueue, 
 			final int minMessages, final boolean createTopicSummaryEvents, final boolean createBrowseEvents)
 	{
 		this.messages = messages;
 		this.uiEventQueue = uiEventQueue;
-		this.minMessagesPerTopic = minMessages;
 		this.createTopicSummaryEvents = createTopicSummaryEvents;
 		this.createBrowseEvents = createBrowseEvents;
 		this.store = store;
+		
+		messages.setMinMessagesPerTopic(minMessages);
 	}
 	
-	public void setRunning(final boolean running)
-	{
-		this.running = running;
-	}
-	
-	private void checkAndRemove(boolean shouldRemove)
+	/**
+	 * Removes the oldest evictable messages until the list is back within its
+	 * preferred size and memory limit (or only the minimum number of messages
+	 * per topic is left), and then the oldest messages of all stores sharing
+	 * the memory budget until back within the budget.
+	 */
+	public void collect()
 	{
-		// logger.trace("[{}] Checking if can delete messages...", messages.getName());
-		for (int i = messages.getMessages().size() - 1; i >=0; i--)				
+		messages.updateResizedMessages();
+		
+		synchronized (messages.getMessages())
 		{
-			final T element = messages.getMessages().get(i);
-								
-			final int count = messages.getTopicSummary().getCountForTopic(element.getTopic());
-			if (count > minMessagesPerTopic)
-			{	
-				// Remove from the store
-				messages.remove(i);
-				shouldRemove = messages.exceedingPreferredSize();
-										
-				// Update topic summary and UI
-
-				// Remove events are for the normal store
-				if (createTopicSummaryEvents)
-				{
-					uiEventQueue.add(store, new TopicSummaryRemovedMessageEvent<T>(messages, element));
-				}
+			while (true)
+			{
+				final boolean exceedingMemoryLimit = messages.exceedingMemoryLimit();
 				
-				// Index update are for the filtered store
-				if (createBrowseEvents)
+				if (!exceedingMemoryLimit && !messages.exceedingPreferredSize())
 				{
-					uiEventQueue.add(store, new BrowseRemovedMessageEvent<T>(messages, element, i + 1));
+					break;
 				}
 				
-				if (!shouldRemove)
+				if (!evictOldest(exceedingMemoryLimit))
 				{
 					break;
 				}
-			}				
+			}
+		}
+		
+		// Done without holding the lock, as other stores' lists get locked
+		final MessageStoreMemoryBudget sharedMemoryBudget = messages.getSharedMemoryBudget();
+		if (sharedMemoryBudget != null)
+		{
+			sharedMemoryBudget.collect();
 		}
 	}
 	
-	@Override
-	public void run()
+	/**
+	 * Removes the oldest evictable message.
+	 * 
+	 * @param savingMemory Whether removed to save memory (rather than to keep the preferred size)
+	 * 
+	 * @return True if a message was removed, false if all topics are at their minimum
+	 */
+	boolean evictOldest(final boolean savingMemory)
 	{
-		running = true;
-		
-		ThreadingUtils.logThreadStarting("Message Store Garbage Collector for " + messages.getName());
-				
-		while (running)		
-		{			
-			if (ThreadingUtils.sleep(1000))			
+		synchronized (messages.getMessages())
+		{
+			final int index = messages.indexOfOldestEvictable();
+			
+			if (index < 0)
 			{
-				break;
+				return false;
 			}
 			
-			synchronized (messages.getMessages())
+			// Remove from the store
+			final T element = messages.remove(index);
+			
+			// A message evicted to save memory would otherwise stay on the subset list
+			if (savingMemory && subsetCollector != null)
 			{
-				boolean shouldRemove =  messages.exceedingPreferredSize();
-				
-				if (!shouldRemove)
-				{
-					continue;
-				}
-				
-				checkAndRemove(shouldRemove);
+				subsetCollector.remove(element);
+			}
+			
+			// Update topic summary and UI
+
+			// Remove events are for the normal store
+			if (createTopicSummaryEvents)
+			{
+				uiEventQueue.topicMessageRemoved(store, messages, element);
+			}
+			
+			// Index update are for the filtered store
+			if (createBrowseEvents)
+			{
+				uiEventQueue.add(store, new BrowseRemovedMessageEvent<T>(messages, element, index + 1));
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Gets the oldest message this collector can remove.
+	 * 
+	 * @return The message, or null if all topics are at their minimum
+	 */
+	T getOldestEvictable()
+	{
+		return messages.getOldestEvictable();
+	}
+	
+	MessageListWithObservableTopicSummary<T> getMessages()
+	{
+		return messages;
+	}
+	
+	/**
+	 * Removes the given message, if still stored.
+	 * 
+	 * @param message The message to remove
+	 */
+	public void remove(final T message)
+	{
+		synchronized (messages.getMessages())
+		{
+			final int index = messages.indexOfMessage(message);
+			
+			if (index < 0)
+			{
+				return;
+			}
+			
+			messages.remove(index);
+			
+			if (createTopicSummaryEvents)
+			{
+				uiEventQueue.topicMessageRemoved(store, messages, message);
+			}
+			
+			if (createBrowseEvents)
+			{
+				uiEventQueue.add(store, new BrowseRemovedMessageEvent<T>(messages, message, index + 1));
 			}
 		}
-		ThreadingUtils.logThreadEnding();
+	}
+	
+	/**
+	 * Sets the collector for a list holding a subset of these messages - any
+	 * messages evicted to save memory are removed from that list too.
+	 * 
+	 * @param subsetCollector The collector for the subset list
+	 */
+	public void setSubsetCollector(final MessageStoreGarbageCollector<T> subsetCollector)
+	{
+		this.subsetCollector = subsetCollector;
 	}
 }
@@ -0,0 +1,157 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.storage;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+import pl.baczkowicz.spy.storage.PayloadArena;
+
+/**
+ * Memory budget shared by a number of message stores, e.g. all stores across
+ * all connections. Stores report the estimated size of messages they add and
+ * remove. While the budget is exceeded, the oldest messages across all the
+ * stores are evicted - so that stores which don't receive anything any more
+ * get trimmed as well.
+ * 
+ * Stores count payloads kept in an off-heap arena by their length. If the
+ * arena is set, the rest of the memory it has allocated (space not yet used
+ * or freed by evicted messages) is counted as well.
+ */
+public class MessageStoreMemoryBudget
+{
+	public static final long BYTES_PER_MB = 1024 * 1024;
+	
+	/** Estimated number of bytes used by all stores sharing this budget. */
+	private final AtomicLong usage = new AtomicLong();
+	
+	/** Limit in bytes; 0 means no limit. */
+	private volatile long limit;
+	
+	/** Off-heap arena used by the stores (optional). */
+	private volatile PayloadArena payloadArena;
+	
+	/** Garbage collectors of the stores sharing this budget. */
+	private final Set<MessageStoreGarbageCollector<?>> collectors = new CopyOnWriteArraySet<>();
+	
+	public MessageStoreMemoryBudget(final long limit)
+	{
+		this.limit = limit;
+	}
+	
+	public void allocated(final long bytes)
+	{
+		usage.addAndGet(bytes);
+	}
+	
+	public void released(final long bytes)
+	{
+		usage.addAndGet(-bytes);
+	}
+	
+	public boolean isExceeded()
+	{
+		return limit > 0 && getUsage() > limit;
+	}
+	
+	/**
+	 * Gets the estimated memory used by all stores, including memory allocated but not used by the arena.
+	 * 
+	 * @return Estimated usage in bytes
+	 */
+	public long getUsage()
+	{
+		final PayloadArena arena = payloadArena;
+		
+		return usage.get() + (arena != null ? arena.getAllocatedBytes() - arena.getStoredBytes() : 0);
+	}
+	
+	/**
+	 * Adds the garbage collector of a store sharing this budget, so that its messages can be evicted.
+	 * 
+	 * @param collector The collector to add
+	 */
+	public void addCollector(final MessageStoreGarbageCollector<?> collector)
+	{
+		collectors.add(collector);
+	}
+	
+	public void removeCollector(final MessageStoreGarbageCollector<?> collector)
+	{
+		collectors.remove(collector);
+	}
+	
+	/**
+	 * Evicts the oldest messages across all stores sharing this budget, until
+	 * back within the limit (or no store has any messages it can evict).
+	 */
+	public void collect()
+	{
+		for (final MessageStoreGarbageCollector<?> collector : collectors)
+		{
+			collector.getMessages().updateResizedMessages();
+		}
+		
+		while (isExceeded())
+		{
+			MessageStoreGarbageCollector<?> oldestCollector = null;
+			long oldestDate = Long.MAX_VALUE;
+			
+			for (final MessageStoreGarbageCollector<?> collector : collectors)
+			{
+				final FormattedMessage oldest = collector.getOldestEvictable();
+				
+				if (oldest != null && oldest.getDate().getTime() < oldestDate)
+				{
+					oldestCollector = collector;
+					oldestDate = oldest.getDate().getTime();
+				}
+			}
+			
+			if (oldestCollector == null || !oldestCollector.evictOldest(true))
+			{
+				break;
+			}
+		}
+	}
+	
+	public PayloadArena getPayloadArena()
+	{
+		return payloadArena;
+	}
+	
+	public void setPayloadArena(final PayloadArena payloadArena)
+	{
+		this.payloadArena = payloadArena;
+	}
+	
+	public long getLimit()
+	{
+		return limit;
+	}
+	
+	public void setLimit(final long limit)
+	{
+		this.limit = limit;
+	}
+}
@@ -19,13 +19,23 @@
  */
 package pl.baczkowicz.spy.ui.storage.summary;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
 import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.formatting.MessageReformatter;
+import pl.baczkowicz.spy.formatting.MessageReformatter.ReformattingTask;
 import pl.baczkowicz.spy.messages.FormattedMessage;
 import pl.baczkowicz.spy.ui.properties.SubscriptionTopicSummaryProperties;
 
@@ -35,6 +45,15 @@ import pl.baczkowicz.spy.ui.properties.SubscriptionTopicSummaryProperties;
 public class ObservableTopicSummary<T extends FormattedMessage> extends TopicSummary<T>
 {
 	private final ObservableList<SubscriptionTopicSummaryProperties<T>> observableTopicSummaryList = FXCollections.observableArrayList();
+	
+	/** Checks whether the table showing this summary is on screen (if not set, it is assumed to be). */
+	private BooleanSupplier showingCheck;
+	
+	/** Gets the items currently on screen, to be re-formatted first (if not set, the list order is used). */
+	private Supplier<Collection<?>> visibleItems;
+	
+	/** Re-formats the summary rows in the background when the formatter changes. */
+	private final MessageReformatter reformatter = new MessageReformatter();
 
 	public ObservableTopicSummary(final String name, final int maxPayloadLength)
 	{
@@ -51,12 +70,26 @@ public class ObservableTopicSummary<T extends FormattedMessage> extends TopicSum
 	}
 	
 	public SubscriptionTopicSummaryProperties<T> addMessage(final T message)
+	{
+		return updateTopic(message.getTopic(), message, 1);
+	}
+	
+	/**
+	 * Applies a batch of changes to the given topic.
+	 * 
+	 * @param topic The topic to update
+	 * @param latest The latest message added (or null if none added)
+	 * @param countDelta Number of messages added less the number removed
+	 * 
+	 * @return The updated topic entry
+	 */
+	public SubscriptionTopicSummaryProperties<T> updateTopic(final String topic, final T latest, final int countDelta)
 	{
 		synchronized (topicToSummaryMapping)
 		{
 			final AtomicBoolean newAdded = new AtomicBoolean(false);
 
-			SubscriptionTopicSummaryProperties<T> updatedElement = super.addMessage(message, newAdded);
+			SubscriptionTopicSummaryProperties<T> updatedElement = super.updateTopic(topic, latest, countDelta, newAdded);
 			
 			if (newAdded.get())
 			{				
@@ -149,13 +182,74 @@ public class ObservableTopicSummary<T extends FormattedMessage> extends TopicSum
 		return observableTopicSummaryList;
 	}
 	
+	public void setShowingCheck(final BooleanSupplier showingCheck)
+	{
+		this.showingCheck = showingCheck;
+	}
+	
+	/**
+	 * Checks whether this summary is shown on screen, in which case all updates should be shown straight away.
+	 * 
+	 * @return True if shown (or not known)
+	 */
+	public boolean isShowing()
+	{
+		return showingCheck == null || showingCheck.getAsBoolean();
+	}
+	
+	public void setVisibleItems(final Supplier<Collection<?>> visibleItems)
+	{
+		this.visibleItems = visibleItems;
+	}
+	
+	/**
+	 * Sets the formatter and re-formats the latest message of each topic in
+	 * the background - rows on screen first. Rows are updated in batches on
+	 * the JavaFX thread. Changing the formatter again cancels a re-formatting
+	 * still in progress.
+	 * 
+	 * @param messageFormat The new formatter
+	 * @param formattingManager The formatting manager to use
+	 */
 	public void setFormatter(final FormatterDetails messageFormat, final FormattingManager formattingManager)
 	{
 		super.setFormatter(messageFormat);
 		
-		for (final SubscriptionTopicSummaryProperties<T> item : observableTopicSummaryList)
+		final List<SubscriptionTopicSummaryProperties<T>> items;
+		synchronized (topicToSummaryMapping)
+		{
+			items = new ArrayList<>(observableTopicSummaryList);
+		}
+		
+		if (visibleItems != null)
+		{
+			final Set<Object> visible = Collections.newSetFromMap(new IdentityHashMap<>());
+			visible.addAll(visibleItems.get());
+			
+			// Stable sort keeps the table order within both groups
+			items.sort((a, b) -> Boolean.compare(!visible.contains(a), !visible.contains(b)));
+		}
+		
+		reformatter.reformat(items, SubscriptionTopicSummaryProperties::getMqttContent, formattingManager, messageFormat, 
+				(task, batch) -> Platform.runLater(() -> updateFormattedRows(task, batch)));
+	}
+	
+	/**
+	 * Shows the re-formatted payloads of the given rows, unless the re-formatting has been cancelled in the meantime.
+	 * 
+	 * @param task The re-formatting task
+	 * @param batch Re-formatted rows
+	 */
+	private void updateFormattedRows(final ReformattingTask<SubscriptionTopicSummaryProperties<T>> task, 
+			final List<SubscriptionTopicSummaryProperties<T>> batch)
+	{
+		if (task.isCancelled())
+		{
+			return;
+		}
+		
+		for (final SubscriptionTopicSummaryProperties<T> item : batch)
 		{
-			formattingManager.formatMessage(item.getMqttContent(), messageFormat);
 			item.updateReceivedPayload(item.getMqttContent().getFormattedPayload());
 		}
 	}
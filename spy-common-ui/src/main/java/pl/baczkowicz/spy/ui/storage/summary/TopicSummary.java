@@ -81,21 +81,48 @@ public class TopicSummary<T extends FormattedMessage> extends TopicMessageCount
 	}
 	
 	public SubscriptionTopicSummaryProperties<T> addMessage(final T message, final AtomicBoolean newAdded)
+	{
+		return updateTopic(message.getTopic(), message, 1, newAdded);
+	}
+	
+	/**
+	 * Applies a batch of changes to the given topic.
+	 * 
+	 * @param topic The topic to update
+	 * @param latest The latest message added (or null if none added)
+	 * @param countDelta Number of messages added less the number removed
+	 * @param newAdded Set to true if a new topic entry has been created
+	 * 
+	 * @return The updated topic entry (or null if the topic doesn't exist and no message was added)
+	 */
+	public SubscriptionTopicSummaryProperties<T> updateTopic(final String topic, final T latest, final int countDelta, final AtomicBoolean newAdded)
 	{
 		synchronized (topicToSummaryMapping)
 		{
-			SubscriptionTopicSummaryProperties<T> item = topicToSummaryMapping.get(message.getTopic());
+			SubscriptionTopicSummaryProperties<T> item = topicToSummaryMapping.get(topic);
 	
 			if (item == null)
 			{
-				item = new SubscriptionTopicSummaryProperties<T>(false, 1, message, maxPayloadLength);
-				topicToSummaryMapping.put(message.getTopic(), item);
+				if (latest == null)
+				{
+					logger.error("[{}] Found empty value for topic {}", name, topic);
+					return null;
+				}
+				
+				item = new SubscriptionTopicSummaryProperties<T>(false, countDelta, latest, maxPayloadLength);
+				topicToSummaryMapping.put(topic, item);
 				newAdded.set(true);
 			}
 			else
 			{
-				item.setCount(item.countProperty().intValue() + 1);	
-				item.setMessage(message);				
+				if (countDelta != 0)
+				{
+					item.setCount(item.countProperty().intValue() + countDelta);
+				}
+				if (latest != null)
+				{
+					item.setMessage(latest);
+				}
 			}
 			
 			logger.trace("[{}] has {} messages", name, item.countProperty().intValue());
@@ -19,6 +19,13 @@
  */
 package pl.baczkowicz.spy.ui.utils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.HBox;
@@ -70,4 +77,58 @@ public class UiUtils
 			icons.getChildren().add(ImageUtils.createIcon("auth-none", 19));
 		}
 	}
+	
+	/**
+	 * Checks whether the given node is currently shown on screen, i.e. it
+	 * and all its parents are visible (e.g. not in an unselected tab) and in a showing window.
+	 * 
+	 * @param node The node to check
+	 * 
+	 * @return True if the node is showing
+	 */
+	public static boolean isShowing(final Node node)
+	{
+		if (node.getScene() == null || node.getScene().getWindow() == null || !node.getScene().getWindow().isShowing())
+		{
+			return false;
+		}
+		
+		for (Node current = node; current != null; current = current.getParent())
+		{
+			if (!current.isVisible())
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Gets the items of the given table that currently have rows on screen.
+	 * 
+	 * @param table The table to check
+	 * 
+	 * @return Items shown in the table's rows
+	 */
+	public static <S> Collection<S> getVisibleItems(final TableView<S> table)
+	{
+		final List<S> items = new ArrayList<>();
+		
+		for (final Node node : table.lookupAll(".table-row-cell"))
+		{
+			if (node instanceof TableRow && node.isVisible())
+			{
+				@SuppressWarnings("unchecked")
+				final TableRow<S> row = (TableRow<S>) node;
+				
+				if (!row.isEmpty() && row.getItem() != null)
+				{
+					items.add(row.getItem());
+				}
+			}
+		}
+		
+		return items;
+	}
 }
@@ -0,0 +1,240 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.events.queuable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.storage.BasicMessageStore;
+import pl.baczkowicz.spy.storage.MessageList;
+import pl.baczkowicz.spy.ui.events.queuable.ui.BrowseReceivedMessageEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.SpyUIEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryNewMessageEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryRemovedMessageEvent;
+import pl.baczkowicz.spy.ui.events.queuable.ui.TopicSummaryUpdateEvent;
+import pl.baczkowicz.spy.ui.storage.MessageListWithObservableTopicSummary;
+
+/**
+ * Tests for the EventQueueManager.
+ */
+public class EventQueueManagerTest
+{
+	private final MessageListWithObservableTopicSummary<FormattedMessage> list = 
+			new MessageListWithObservableTopicSummary<FormattedMessage>(100, 100, "test", null, 0);
+	
+	private final BasicMessageStore<FormattedMessage> store = new BasicMessageStore<FormattedMessage>(list);
+	
+	@Test
+	public void testTopicSummaryEventsCoalesced()
+	{
+		final EventQueueManager<FormattedMessage> queue = new EventQueueManager<FormattedMessage>();
+		
+		final FormattedMessage first = new FormattedMessage(1, "a");
+		final FormattedMessage second = new FormattedMessage(2, "a");
+		final FormattedMessage third = new FormattedMessage(3, "b");
+		
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, first, true));
+		queue.add(store, new BrowseReceivedMessageEvent<FormattedMessage>(list, first));
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, second, false));
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, third, false));
+		queue.add(store, new TopicSummaryRemovedMessageEvent<FormattedMessage>(list, first));
+		assertEquals(5, queue.getEventCount());
+		
+		final List<SpyUIEvent<FormattedMessage>> events = queue.getAndRemoveEvents();
+		assertEquals(0, queue.getEventCount());
+		assertEquals(3, events.size());
+		assertTrue(events.get(0) instanceof BrowseReceivedMessageEvent);
+		
+		final TopicSummaryUpdateEvent<FormattedMessage> topicA = (TopicSummaryUpdateEvent<FormattedMessage>) events.get(1);
+		assertEquals("a", topicA.getTopic());
+		assertSame(second, topicA.getLatest());
+		assertEquals(1, topicA.getCountDelta());
+		assertTrue(topicA.isShowTopic());
+		
+		final TopicSummaryUpdateEvent<FormattedMessage> topicB = (TopicSummaryUpdateEvent<FormattedMessage>) events.get(2);
+		assertSame(third, topicB.getLatest());
+		assertEquals(1, topicB.getCountDelta());
+	}
+	
+	@Test
+	public void testAddedAndRemovedEventsCancelOut()
+	{
+		final EventQueueManager<FormattedMessage> queue = new EventQueueManager<FormattedMessage>();
+		
+		final FormattedMessage old = new FormattedMessage(1, "a");
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, old, false));
+		queue.getAndRemoveEvents();
+		
+		final FormattedMessage latest = new FormattedMessage(2, "a");
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, latest, false));
+		queue.add(store, new TopicSummaryRemovedMessageEvent<FormattedMessage>(list, old));
+		queue.add(store, new TopicSummaryRemovedMessageEvent<FormattedMessage>(list, latest));
+		
+		// Only the latest message is left to update
+		final List<SpyUIEvent<FormattedMessage>> events = queue.getAndRemoveEvents();
+		assertEquals(1, events.size());
+		assertEquals(-1, ((TopicSummaryUpdateEvent<FormattedMessage>) events.get(0)).getCountDelta());
+		
+		// Only removals on a topic, which cancel out with earlier additions
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, latest, false));
+		queue.add(store, new TopicSummaryRemovedMessageEvent<FormattedMessage>(list, latest));
+		assertEquals(0, ((TopicSummaryUpdateEvent<FormattedMessage>) queue.getAndRemoveEvents().get(0)).getCountDelta());
+		
+		queue.add(store, new TopicSummaryRemovedMessageEvent<FormattedMessage>(list, null));
+		assertTrue(queue.getAndRemoveEvents().isEmpty());
+	}
+	
+	@Test
+	public void testEventsLimitedAndDroppedPerStore()
+	{
+		final EventQueueManager<FormattedMessage> queue = new EventQueueManager<FormattedMessage>();
+		final BasicMessageStore<FormattedMessage> otherStore = new BasicMessageStore<FormattedMessage>(list);
+		final FormattedMessage message = new FormattedMessage(1, "a");
+		
+		for (int i = 0; i < 10; i++)
+		{
+			queue.add(store, new BrowseReceivedMessageEvent<FormattedMessage>(list, message));
+		}
+		queue.add(otherStore, new BrowseReceivedMessageEvent<FormattedMessage>(list, message));
+		queue.add(store, new TopicSummaryNewMessageEvent<FormattedMessage>(list, message, false));
+		
+		// 3 from the first store, 1 from the other and the topic summary update
+		assertEquals(5, queue.getAndRemoveEvents(3).size());
+		assertEquals(7, queue.getEventCount());
+		
+		// Within the limit, so nothing to drop
+		assertTrue(queue.dropEvents(7).isEmpty());
+		
+		final Set<MessageList<FormattedMessage>> lists = queue.dropEvents(5);
+		assertEquals(1, lists.size());
+		assertSame(list, lists.iterator().next());
+		assertEquals(0, queue.getEventCount());
+		assertTrue(queue.getAndRemoveEvents().isEmpty());
+	}
+	
+	@Test
+	public void testEventsFromManyProducers() throws InterruptedException
+	{
+		final EventQueueManager<FormattedMessage> queue = new EventQueueManager<FormattedMessage>();
+		final FormattedMessage message = new FormattedMessage(1, "a");
+		final Thread[] producers = new Thread[4];
+		
+		for (int i = 0; i < producers.length; i++)
+		{
+			final BasicMessageStore<FormattedMessage> producerStore = i % 2 == 0 ? store : new BasicMessageStore<FormattedMessage>(list);
+			producers[i] = new Thread(new Runnable()
+			{				
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 10000; j++)
+					{
+						queue.add(producerStore, new BrowseReceivedMessageEvent<FormattedMessage>(list, message));
+					}
+				}
+			});
+			producers[i].start();
+		}
+		
+		// Take events while they are being added
+		int taken = 0;
+		while (taken < producers.length * 10000)
+		{
+			taken = taken + queue.getAndRemoveEvents().size();
+		}
+		
+		for (final Thread producer : producers)
+		{
+			producer.join();
+		}
+		
+		assertEquals(producers.length * 10000, taken);
+		assertEquals(0, queue.getEventCount());
+	}
+	
+	@Test
+	public void testTopicCountersFromManyProducers() throws InterruptedException
+	{
+		final EventQueueManager<FormattedMessage> queue = new EventQueueManager<FormattedMessage>();
+		final FormattedMessage[] messages = new FormattedMessage[10];
+		for (int i = 0; i < messages.length; i++)
+		{
+			messages[i] = new FormattedMessage(i, "topic/" + i);
+		}
+		
+		final Thread[] producers = new Thread[4];
+		
+		for (int i = 0; i < producers.length; i++)
+		{
+			producers[i] = new Thread(new Runnable()
+			{				
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 200000; j++)
+					{
+						queue.topicMessageAdded(store, list, messages[j % messages.length], false);
+						
+						if (j % 2 == 1)
+						{
+							queue.topicMessageRemoved(store, list, messages[j % messages.length]);
+						}
+					}
+				}
+			});
+			producers[i].start();
+		}
+		
+		// Take the counts while they are being updated
+		final Map<String, Integer> counts = new HashMap<>();
+		boolean producing = true;
+		while (producing || queue.getEventCount() > 0)
+		{
+			producing = false;
+			for (final Thread producer : producers)
+			{
+				producing = producing || producer.isAlive();
+			}
+			
+			for (final SpyUIEvent<FormattedMessage> event : queue.getAndRemoveEvents())
+			{
+				final TopicSummaryUpdateEvent<FormattedMessage> update = (TopicSummaryUpdateEvent<FormattedMessage>) event;
+				final Integer count = counts.get(update.getTopic());
+				counts.put(update.getTopic(), (count == null ? 0 : count) + update.getCountDelta());
+			}
+		}
+		
+		// Only messages on even topics are left
+		for (int i = 0; i < messages.length; i++)
+		{
+			assertEquals(i % 2 == 0 ? producers.length * 20000 : 0, counts.get("topic/" + i).intValue());
+		}
+		assertEquals(0, queue.getEventCount());
+	}
+}
@@ -0,0 +1,120 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.ui.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.ui.events.queuable.EventQueueManager;
+
+public class MessageStoreMemoryBudgetTest
+{
+	private final EventQueueManager<FormattedMessage> uiEventQueue = new EventQueueManager<FormattedMessage>();
+	
+	private final FormattingManager formattingManager = new FormattingManager(null);
+	
+	private ManagedMessageStoreWithFiltering<FormattedMessage> createStore(final String name, final MessageStoreMemoryBudget budget)
+	{
+		final ManagedMessageStoreWithFiltering<FormattedMessage> store = new ManagedMessageStoreWithFiltering<FormattedMessage>(
+				name, 1, 1000, 1000, uiEventQueue, formattingManager, 0);
+		store.setMemoryBudget(0, budget);
+		
+		return store;
+	}
+	
+	private static FormattedMessage createMessage(final String topic, final long time)
+	{
+		final FormattedMessage message = new FormattedMessage(time, topic, "payload", new Date(time));
+		message.setRawPayload("payload".getBytes());
+		
+		return message;
+	}
+	
+	@Test
+	public void testOldestMessagesEvictedAcrossStores()
+	{
+		final MessageStoreMemoryBudget budget = new MessageStoreMemoryBudget(0);
+		final ManagedMessageStoreWithFiltering<FormattedMessage> idleStore = createStore("idle", budget);
+		final ManagedMessageStoreWithFiltering<FormattedMessage> busyStore = createStore("busy", budget);
+		
+		for (int i = 0; i < 5; i++)
+		{
+			idleStore.messageReceived(createMessage("a", 1000 + i));
+		}
+		
+		// Enough for 10 messages
+		budget.setLimit(2 * budget.getUsage());
+		
+		// The idle store doesn't receive anything more, but holds the oldest messages
+		for (int i = 0; i < 7; i++)
+		{
+			busyStore.messageReceived(createMessage("b", 2000 + i));
+		}
+		
+		assertFalse(budget.isExceeded());
+		assertEquals(3, idleStore.getNonFilteredMessageList().getMessages().size());
+		assertEquals(7, busyStore.getNonFilteredMessageList().getMessages().size());
+		assertEquals(3, idleStore.getMessages().size());
+		
+		// Only the minimum number of messages per topic is kept
+		for (int i = 7; i < 20; i++)
+		{
+			busyStore.messageReceived(createMessage("b", 2000 + i));
+		}
+		
+		assertEquals(1, idleStore.getNonFilteredMessageList().getMessages().size());
+		assertEquals(9, busyStore.getNonFilteredMessageList().getMessages().size());
+		assertEquals(budget.getUsage(), idleStore.getMemoryUsage() + busyStore.getMemoryUsage());
+	}
+	
+	@Test
+	public void testMessagesFormattedAfterStoringCharged()
+	{
+		final MessageStoreMemoryBudget budget = new MessageStoreMemoryBudget(0);
+		final ManagedMessageStoreWithFiltering<FormattedMessage> store = createStore("test", budget);
+		
+		final FormattedMessage message = createMessage("a", 1000);
+		store.messageReceived(message);
+		final long usage = budget.getUsage();
+		assertEquals(usage, store.getMemoryUsage());
+		
+		final StringBuilder formatted = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+		{
+			formatted.append('x');
+		}
+		message.setFormattedPayload(formatted.toString());
+		message.notifySizeChanged();
+		
+		// Re-estimated when the store is next collected
+		assertEquals(usage, budget.getUsage());
+		store.getMessageStoreGarbageCollector().collect();
+		
+		assertTrue(budget.getUsage() - usage >= 2 * formatted.length());
+		assertEquals(budget.getUsage(), store.getMemoryUsage());
+	}
+}
@@ -0,0 +1,298 @@
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, v2.2.11 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.18 at 03:06:52 AM UTC 
+//
+
+
+package pl.baczkowicz.spy.common.generated;
+
+import java.io.Serializable;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlType;
+import org.jvnet.jaxb2_commons.lang.CopyStrategy;
+import org.jvnet.jaxb2_commons.lang.CopyTo;
+import org.jvnet.jaxb2_commons.lang.Equals;
+import org.jvnet.jaxb2_commons.lang.EqualsStrategy;
+import org.jvnet.jaxb2_commons.lang.HashCode;
+import org.jvnet.jaxb2_commons.lang.HashCodeStrategy;
+import org.jvnet.jaxb2_commons.lang.JAXBCopyStrategy;
+import org.jvnet.jaxb2_commons.lang.JAXBEqualsStrategy;
+import org.jvnet.jaxb2_commons.lang.JAXBHashCodeStrategy;
+import org.jvnet.jaxb2_commons.lang.JAXBToStringStrategy;
+import org.jvnet.jaxb2_commons.lang.ToString;
+import org.jvnet.jaxb2_commons.lang.ToStringStrategy;
+import org.jvnet.jaxb2_commons.locator.ObjectLocator;
+import org.jvnet.jaxb2_commons.locator.util.LocatorUtils;
+
+
+/**
+ * <p>Java class for IngestQueueSettings complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType name="IngestQueueSettings"&gt;
+ *   &lt;complexContent&gt;
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType"&gt;
+ *       &lt;attribute name="size" use="required" type="{http://www.w3.org/2001/XMLSchema}int" /&gt;
+ *       &lt;attribute name="overloadPolicy" type="{http://baczkowicz.pl/spy/common}OverloadPolicyEnum" default="DROP_OLDEST" /&gt;
+ *       &lt;attribute name="sampleRate" type="{http://www.w3.org/2001/XMLSchema}int" default="10" /&gt;
+ *     &lt;/restriction&gt;
+ *   &lt;/complexContent&gt;
+ * &lt;/complexType&gt;
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "IngestQueueSettings")
+public class IngestQueueSettings implements Serializable, Cloneable, CopyTo, Equals, HashCode, ToString
+{
+
+    private final static long serialVersionUID = 1L;
+    @XmlAttribute(name = "size", required = true)
+    protected int size;
+    @XmlAttribute(name = "overloadPolicy")
+    protected OverloadPolicyEnum overloadPolicy;
+    @XmlAttribute(name = "sampleRate")
+    protected Integer sampleRate;
+
+    /**
+     * Default no-arg constructor
+     * 
+     */
+    public IngestQueueSettings() {
+        super();
+    }
+
+    /**
+     * Fully-initialising value constructor
+     * 
+     */
+    public IngestQueueSettings(final int size, final OverloadPolicyEnum overloadPolicy, final Integer sampleRate) {
+        this.size = size;
+        this.overloadPolicy = overloadPolicy;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets the value of the size property.
+     * 
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the value of the size property.
+     * 
+     */
+    public void setSize(int value) {
+        this.size = value;
+    }
+
+    /**
+     * Gets the value of the overloadPolicy property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link OverloadPolicyEnum }
+     *     
+     */
+    public OverloadPolicyEnum getOverloadPolicy() {
+        if (overloadPolicy == null) {
+            return OverloadPolicyEnum.DROP_OLDEST;
+        } else {
+            return overloadPolicy;
+        }
+    }
+
+    /**
+     * Sets the value of the overloadPolicy property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link OverloadPolicyEnum }
+     *     
+     */
+    public void setOverloadPolicy(OverloadPolicyEnum value) {
+        this.overloadPolicy = value;
+    }
+
+    /**
+     * Gets the value of the sampleRate property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public int getSampleRate() {
+        if (sampleRate == null) {
+            return  10;
+        } else {
+            return sampleRate;
+        }
+    }
+
+    /**
+     * Sets the value of the sampleRate property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setSampleRate(Integer value) {
+        this.sampleRate = value;
+    }
+
+    public String toString() {
+        final ToStringStrategy strategy = JAXBToStringStrategy.INSTANCE;
+        final StringBuilder buffer = new StringBuilder();
+        append(null, buffer, strategy);
+        return buffer.toString();
+    }
+
+    public StringBuilder append(ObjectLocator locator, StringBuilder buffer, ToStringStrategy strategy) {
+        strategy.appendStart(locator, this, buffer);
+        appendFields(locator, buffer, strategy);
+        strategy.appendEnd(locator, this, buffer);
+        return buffer;
+    }
+
+    public StringBuilder appendFields(ObjectLocator locator, StringBuilder buffer, ToStringStrategy strategy) {
+        {
+            int theSize;
+            theSize = this.getSize();
+            strategy.appendField(locator, this, "size", buffer, theSize);
+        }
+        {
+            OverloadPolicyEnum theOverloadPolicy;
+            theOverloadPolicy = this.getOverloadPolicy();
+            strategy.appendField(locator, this, "overloadPolicy", buffer, theOverloadPolicy);
+        }
+        {
+            int theSampleRate;
+            theSampleRate = ((this.sampleRate!= null)?this.getSampleRate(): 0);
+            strategy.appendField(locator, this, "sampleRate", buffer, theSampleRate);
+        }
+        return buffer;
+    }
+
+    public boolean equals(ObjectLocator thisLocator, ObjectLocator thatLocator, Object object, EqualsStrategy strategy) {
+        if (!(object instanceof IngestQueueSettings)) {
+            return false;
+        }
+        if (this == object) {
+            return true;
+        }
+        final IngestQueueSettings that = ((IngestQueueSettings) object);
+        {
+            int lhsSize;
+            lhsSize = this.getSize();
+            int rhsSize;
+            rhsSize = that.getSize();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "size", lhsSize), LocatorUtils.property(thatLocator, "size", rhsSize), lhsSize, rhsSize)) {
+                return false;
+            }
+        }
+        {
+            OverloadPolicyEnum lhsOverloadPolicy;
+            lhsOverloadPolicy = this.getOverloadPolicy();
+            OverloadPolicyEnum rhsOverloadPolicy;
+            rhsOverloadPolicy = that.getOverloadPolicy();
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "overloadPolicy", lhsOverloadPolicy), LocatorUtils.property(thatLocator, "overloadPolicy", rhsOverloadPolicy), lhsOverloadPolicy, rhsOverloadPolicy)) {
+                return false;
+            }
+        }
+        {
+            int lhsSampleRate;
+            lhsSampleRate = ((this.sampleRate!= null)?this.getSampleRate(): 0);
+            int rhsSampleRate;
+            rhsSampleRate = ((that.sampleRate!= null)?that.getSampleRate(): 0);
+            if (!strategy.equals(LocatorUtils.property(thisLocator, "sampleRate", lhsSampleRate), LocatorUtils.property(thatLocator, "sampleRate", rhsSampleRate), lhsSampleRate, rhsSampleRate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean equals(Object object) {
+        final EqualsStrategy strategy = JAXBEqualsStrategy.INSTANCE;
+        return equals(null, null, object, strategy);
+    }
+
+    public int hashCode(ObjectLocator locator, HashCodeStrategy strategy) {
+        int currentHashCode = 1;
+        {
+            int theSize;
+            theSize = this.getSize();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "size", theSize), currentHashCode, theSize);
+        }
+        {
+            OverloadPolicyEnum theOverloadPolicy;
+            theOverloadPolicy = this.getOverloadPolicy();
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "overloadPolicy", theOverloadPolicy), currentHashCode, theOverloadPolicy);
+        }
+        {
+            int theSampleRate;
+            theSampleRate = ((this.sampleRate!= null)?this.getSampleRate(): 0);
+            currentHashCode = strategy.hashCode(LocatorUtils.property(locator, "sampleRate", theSampleRate), currentHashCode, theSampleRate);
+        }
+        return currentHashCode;
+    }
+
+    public int hashCode() {
+        final HashCodeStrategy strategy = JAXBHashCodeStrategy.INSTANCE;
+        return this.hashCode(null, strategy);
+    }
+
+    public Object clone() {
+        return copyTo(createNewInstance());
+    }
+
+    public Object copyTo(Object target) {
+        final CopyStrategy strategy = JAXBCopyStrategy.INSTANCE;
+        return copyTo(null, target, strategy);
+    }
+
+    public Object copyTo(ObjectLocator locator, Object target, CopyStrategy strategy) {
+        final Object draftCopy = ((target == null)?createNewInstance():target);
+        if (draftCopy instanceof IngestQueueSettings) {
+            final IngestQueueSettings copy = ((IngestQueueSettings) draftCopy);
+            {
+                int sourceSize;
+                sourceSize = this.getSize();
+                int copySize = strategy.copy(LocatorUtils.property(locator, "size", sourceSize), sourceSize);
+                copy.setSize(copySize);
+            }
+            if (this.overloadPolicy!= null) {
+                OverloadPolicyEnum sourceOverloadPolicy;
+                sourceOverloadPolicy = this.getOverloadPolicy();
+                OverloadPolicyEnum copyOverloadPolicy = ((OverloadPolicyEnum) strategy.copy(LocatorUtils.property(locator, "overloadPolicy", sourceOverloadPolicy), sourceOverloadPolicy));
+                copy.setOverloadPolicy(copyOverloadPolicy);
+            } else {
+                copy.overloadPolicy = null;
+            }
+            if (this.sampleRate!= null) {
+                int sourceSampleRate;
+                sourceSampleRate = ((this.sampleRate!= null)?this.getSampleRate(): 0);
+                int copySampleRate = strategy.copy(LocatorUtils.property(locator, "sampleRate", sourceSampleRate), sourceSampleRate);
+                copy.setSampleRate(copySampleRate);
+            } else {
+                copy.sampleRate = null;
+            }
+        }
+        return draftCopy;
+    }
+
+    public Object createNewInstance() {
+        return new IngestQueueSettings();
+    }
+
+}
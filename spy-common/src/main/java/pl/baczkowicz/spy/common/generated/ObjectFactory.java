@@ -68,6 +68,14 @@ public class ObjectFactory {
         return new ReconnectionSettings();
     }
 
+    /**
+     * Create an instance of {@link IngestQueueSettings }
+     * 
+     */
+    public IngestQueueSettings createIngestQueueSettings() {
+        return new IngestQueueSettings();
+    }
+
     /**
      * Create an instance of {@link UserCredentials }
      * 
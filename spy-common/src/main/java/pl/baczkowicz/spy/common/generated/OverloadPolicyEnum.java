@@ -0,0 +1,49 @@
+//
+// This file was generated by the JavaTM Architecture for XML Binding(JAXB) Reference Implementation, v2.2.11 
+// See <a href="http://java.sun.com/xml/jaxb">http://java.sun.com/xml/jaxb</a> 
+// Any modifications to this file will be lost upon recompilation of the source schema. 
+// Generated on: 2026.10.18 at 03:06:52 AM UTC 
+//
+
+
+package pl.baczkowicz.spy.common.generated;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Java class for OverloadPolicyEnum.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * <p>
+ * <pre>
+ * &lt;simpleType name="OverloadPolicyEnum"&gt;
+ *   &lt;restriction base="{http://www.w3.org/2001/XMLSchema}string"&gt;
+ *     &lt;enumeration value="DROP_OLDEST"/&gt;
+ *     &lt;enumeration value="DROP_NEWEST"/&gt;
+ *     &lt;enumeration value="SAMPLE"/&gt;
+ *     &lt;enumeration value="BLOCK"/&gt;
+ *   &lt;/restriction&gt;
+ * &lt;/simpleType&gt;
+ * </pre>
+ * 
+ */
+@XmlType(name = "OverloadPolicyEnum")
+@XmlEnum
+public enum OverloadPolicyEnum {
+
+    DROP_OLDEST,
+    DROP_NEWEST,
+    SAMPLE,
+    BLOCK;
+
+    public String value() {
+        return name();
+    }
+
+    public static OverloadPolicyEnum fromValue(String v) {
+        return valueOf(v);
+    }
+
+}
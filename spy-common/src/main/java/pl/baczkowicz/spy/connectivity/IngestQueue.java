@@ -0,0 +1,282 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.connectivity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.common.generated.IngestQueueSettings;
+import pl.baczkowicz.spy.common.generated.OverloadPolicyEnum;
+import pl.baczkowicz.spy.messages.IBaseMessage;
+
+/**
+ * Bounded queue sitting between the thread receiving messages from the broker
+ * and the thread processing them. When the queue is full, the configured
+ * overload policy decides which messages get shed. All dropped messages are
+ * counted per topic.
+ */
+public class IngestQueue<T extends IBaseMessage>
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(IngestQueue.class);
+	
+	/** Queue size used when nothing has been configured. */
+	public final static int DEFAULT_SIZE = 100000;
+	
+	/** Overload policy used when nothing has been configured. */
+	public final static OverloadPolicyEnum DEFAULT_OVERLOAD_POLICY = OverloadPolicyEnum.DROP_OLDEST;
+	
+	/** Sample rate used when nothing has been configured. */
+	public final static int DEFAULT_SAMPLE_RATE = 10;
+
+	/** The underlying queue, consumed by the processing thread. */
+	private final BlockingQueue<T> queue;
+	
+	/** What to do when the queue is full. */
+	private final OverloadPolicyEnum overloadPolicy;
+	
+	/** When sampling, one in that many messages is kept while the queue is full. */
+	private final int sampleRate;
+	
+	/** Notified about every dropped message (optional). */
+	private final Consumer<T> dropListener;
+	
+	/** Number of dropped messages per topic. */
+	private final Map<String, AtomicLong> droppedPerTopic = new ConcurrentHashMap<>();
+	
+	/** Total number of dropped messages. */
+	private final AtomicLong droppedCount = new AtomicLong();
+	
+	/** Number of messages that arrived while the queue was full - used for sampling. */
+	private final AtomicLong overloadedCount = new AtomicLong();
+	
+	/**
+	 * Creates an IngestQueue from the given settings.
+	 * 
+	 * @param settings Queue settings (null for defaults)
+	 * @param dropListener Notified about every dropped message (can be null)
+	 */
+	public IngestQueue(final IngestQueueSettings settings, final Consumer<T> dropListener)
+	{
+		this(settings != null ? settings.getSize() : DEFAULT_SIZE, 
+				settings != null ? settings.getOverloadPolicy() : DEFAULT_OVERLOAD_POLICY, 
+				settings != null ? settings.getSampleRate() : DEFAULT_SAMPLE_RATE, 
+				dropListener);
+	}
+	
+	/**
+	 * Creates an IngestQueue with the given parameters.
+	 * 
+	 * @param size Maximum number of queued messages
+	 * @param overloadPolicy What to do when the queue is full
+	 * @param sampleRate When sampling, one in that many messages is kept while the queue is full
+	 * @param dropListener Notified about every dropped message (can be null)
+	 */
+	public IngestQueue(final int size, final OverloadPolicyEnum overloadPolicy, final int sampleRate, final Consumer<T> dropListener)
+	{
+		this.queue = new ArrayBlockingQueue<T>(Math.max(1, size));
+		this.overloadPolicy = overloadPolicy != null ? overloadPolicy : DEFAULT_OVERLOAD_POLICY;
+		this.sampleRate = Math.max(1, sampleRate);
+		this.dropListener = dropListener;
+		
+		logger.debug("Created ingest queue of size {} with overload policy {}", size, this.overloadPolicy);
+	}
+	
+	/**
+	 * Adds a message to the queue, applying the overload policy if the queue is full.
+	 * 
+	 * @param message The message to add
+	 * 
+	 * @return True if the message has been queued
+	 */
+	public boolean add(final T message)
+	{
+		if (queue.offer(message))
+		{
+			return true;
+		}
+		
+		switch (overloadPolicy)
+		{
+			case BLOCK:
+				try
+				{
+					queue.put(message);
+					return true;
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					drop(message);
+					return false;
+				}
+				
+			case DROP_NEWEST:
+				drop(message);
+				return false;
+				
+			case SAMPLE:
+				if (overloadedCount.incrementAndGet() % sampleRate != 0)
+				{
+					drop(message);
+					return false;
+				}
+				return replaceOldest(message);
+				
+			case DROP_OLDEST:
+			default:
+				return replaceOldest(message);
+		}
+	}
+	
+	/**
+	 * Makes space for the given message by dropping the oldest queued messages.
+	 * 
+	 * @param message The message to add
+	 * 
+	 * @return True (the message always gets queued)
+	 */
+	private boolean replaceOldest(final T message)
+	{
+		while (!queue.offer(message))
+		{
+			final T oldest = queue.poll();
+			
+			// Could have been taken by the processing thread in the meantime
+			if (oldest != null)
+			{
+				drop(oldest);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Records the given message as dropped.
+	 * 
+	 * @param message The dropped message
+	 */
+	private void drop(final T message)
+	{
+		droppedCount.incrementAndGet();
+		
+		AtomicLong topicCount = droppedPerTopic.get(message.getTopic());
+		if (topicCount == null)
+		{
+			final AtomicLong newCount = new AtomicLong();
+			topicCount = droppedPerTopic.putIfAbsent(message.getTopic(), newCount);
+			if (topicCount == null)
+			{
+				topicCount = newCount;
+			}
+		}
+		topicCount.incrementAndGet();
+		
+		if (dropListener != null)
+		{
+			dropListener.accept(message);
+		}
+	}
+	
+	/**
+	 * Gets the underlying queue, to be consumed by the processing thread.
+	 * 
+	 * @return The underlying blocking queue
+	 */
+	public BlockingQueue<T> getQueue()
+	{
+		return queue;
+	}
+	
+	/**
+	 * Gets the number of messages awaiting processing.
+	 * 
+	 * @return Number of queued messages
+	 */
+	public int size()
+	{
+		return queue.size();
+	}
+	
+	/**
+	 * Gets the maximum number of queued messages.
+	 * 
+	 * @return The capacity of the queue
+	 */
+	public int getCapacity()
+	{
+		return queue.size() + queue.remainingCapacity();
+	}
+
+	/**
+	 * Gets the overload policy.
+	 * 
+	 * @return The overload policy
+	 */
+	public OverloadPolicyEnum getOverloadPolicy()
+	{
+		return overloadPolicy;
+	}
+	
+	/**
+	 * Gets the total number of dropped messages.
+	 * 
+	 * @return Number of dropped messages
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+	
+	/**
+	 * Gets a snapshot of the number of dropped messages per topic.
+	 * 
+	 * @return Topic to number of dropped messages mapping
+	 */
+	public Map<String, Long> getDroppedCountPerTopic()
+	{
+		final Map<String, Long> snapshot = new HashMap<>();
+		
+		for (final Map.Entry<String, AtomicLong> entry : droppedPerTopic.entrySet())
+		{
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Resets the number of dropped messages (e.g. when clearing the history).
+	 */
+	public void resetDroppedCount()
+	{
+		droppedPerTopic.clear();
+		droppedCount.set(0);
+	}
+}
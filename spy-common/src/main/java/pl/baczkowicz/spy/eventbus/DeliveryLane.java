@@ -0,0 +1,387 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.eventbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous, batched delivery of events to a single consumer. Events are
+ * put on a bounded queue, and all queued events are delivered to the
+ * consumer in one go, with a single task on the executor (e.g. one
+ * Platform.runLater for any number of events). When the queue is full, the
+ * overflow policy decides what happens with new events.
+ * 
+ * Queue depth and delivery latency are exposed for diagnostics.
+ */
+public class DeliveryLane<E>
+{
+	/** Logger. */
+	private static final Logger logger = LoggerFactory.getLogger(DeliveryLane.class);
+	
+	/**
+	 * What to do with a new event when the queue is full.
+	 */
+	public enum OverflowPolicy 
+	{
+		/** 
+		 * Replace the latest queued event of the same type and filter
+		 * (IFilterableEvent) - or the oldest event if there is none.
+		 */
+		COALESCE, 
+		
+		/** Drop the new event. */
+		DROP, 
+		
+		/** 
+		 * Block the publishing thread until there is space in the queue. Not
+		 * to be used when events might be published on the executor's thread.
+		 */
+		BLOCK
+	}
+	
+	private final String name;
+	
+	private final Consumer<? super List<E>> consumer;
+	
+	private final Executor executor;
+	
+	private final OverflowPolicy overflowPolicy;
+	
+	/** Queued events (circular buffer). */
+	private final Object[] events;
+	
+	/** When (in ns) each queued event was added. */
+	private final long[] times;
+	
+	/** Index of the oldest queued event. */
+	private int head;
+	
+	/** Number of queued events. */
+	private int size;
+	
+	/** Whether a delivery has been scheduled on the executor. */
+	private boolean scheduled;
+	
+	private boolean closed;
+	
+	private int maxQueueDepth;
+	
+	/** Time (in ns) the oldest event of the last batch waited for. */
+	private long lastLatency;
+	
+	/** The longest time (in ns) an event waited for. */
+	private long maxLatency;
+	
+	private long deliveredCount;
+	
+	private long droppedCount;
+	
+	private long coalescedCount;
+	
+	/**
+	 * Creates the delivery lane.
+	 * 
+	 * @param name Name of the lane (for diagnostics)
+	 * @param consumer The consumer of batches of events
+	 * @param executor The executor to deliver the events with
+	 * @param capacity Maximum number of queued events
+	 * @param overflowPolicy What to do when the queue is full
+	 */
+	public DeliveryLane(final String name, final Consumer<? super List<E>> consumer, final Executor executor, 
+			final int capacity, final OverflowPolicy overflowPolicy)
+	{
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		
+		this.name = name;
+		this.consumer = consumer;
+		this.executor = executor;
+		this.overflowPolicy = overflowPolicy;
+		this.events = new Object[capacity];
+		this.times = new long[capacity];
+	}
+	
+	/**
+	 * Queues the given event, and schedules a delivery if none is scheduled yet.
+	 * 
+	 * @param event The event to deliver
+	 */
+	public void offer(final E event)
+	{
+		final boolean schedule;
+		
+		synchronized (this)
+		{
+			if (closed)
+			{
+				return;
+			}
+			
+			if (size == events.length && !makeSpace(event))
+			{
+				return;
+			}
+			
+			final int index = (head + size) % events.length;
+			events[index] = event;
+			times[index] = System.nanoTime();
+			size++;
+			maxQueueDepth = Math.max(maxQueueDepth, size);
+			
+			schedule = !scheduled;
+			scheduled = true;
+		}
+		
+		if (schedule)
+		{
+			executor.execute(this::deliver);
+		}
+	}
+	
+	/**
+	 * Applies the overflow policy, when the queue is full.
+	 * 
+	 * @param event The new event
+	 * 
+	 * @return True if the new event should be added to the queue
+	 */
+	private boolean makeSpace(final E event)
+	{
+		switch (overflowPolicy)
+		{
+			case COALESCE:
+			{
+				final Object key = getCoalescingKey(event);
+				
+				for (int i = size - 1; i >= 0; i--)
+				{
+					final int index = (head + i) % events.length;
+					
+					if (events[index].getClass().equals(event.getClass()) && key.equals(getCoalescingKey(events[index])))
+					{
+						// Keep the time the replaced event was added, so that the latency covers it
+						events[index] = event;
+						coalescedCount++;
+						return false;
+					}
+				}
+				
+				removeOldest();
+				droppedCount++;
+				return true;
+			}
+			case BLOCK:
+			{
+				while (size == events.length && !closed)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						droppedCount++;
+						return false;
+					}
+				}
+				
+				return !closed;
+			}
+			default:
+			{
+				droppedCount++;
+				return false;
+			}
+		}
+	}
+	
+	private static Object getCoalescingKey(final Object event)
+	{
+		if (event instanceof IFilterableEvent && ((IFilterableEvent) event).getFilter() != null)
+		{
+			return ((IFilterableEvent) event).getFilter();
+		}
+		
+		return event.getClass();
+	}
+	
+	private void removeOldest()
+	{
+		events[head] = null;
+		head = (head + 1) % events.length;
+		size--;
+	}
+	
+	/**
+	 * Delivers all queued events to the consumer (run by the executor). Only
+	 * one delivery is scheduled at a time, so batches are delivered in order.
+	 */
+	@SuppressWarnings("unchecked")
+	private void deliver()
+	{
+		final List<E> batch;
+		
+		synchronized (this)
+		{
+			if (size == 0)
+			{
+				scheduled = false;
+				return;
+			}
+			
+			lastLatency = System.nanoTime() - times[head];
+			maxLatency = Math.max(maxLatency, lastLatency);
+			
+			batch = new ArrayList<>(size);
+			while (size > 0)
+			{
+				batch.add((E) events[head]);
+				removeOldest();
+			}
+			
+			deliveredCount = deliveredCount + batch.size();
+			
+			// Wake up any blocked publishers
+			notifyAll();
+		}
+		
+		try
+		{
+			consumer.accept(batch);
+		}
+		catch (final ClassCastException e)
+		{
+			logger.warn("Consumer {} can't accept events in lane {}", consumer, name, e);
+		}
+		finally
+		{
+			final boolean reschedule;
+			
+			synchronized (this)
+			{
+				// Events queued in the meantime get delivered with a new task, so that others can run on the executor first
+				reschedule = size > 0;
+				scheduled = reschedule;
+			}
+			
+			if (reschedule)
+			{
+				executor.execute(this::deliver);
+			}
+		}
+	}
+	
+	/**
+	 * Drops all queued events and stops accepting new ones.
+	 */
+	public synchronized void close()
+	{
+		closed = true;
+		
+		while (size > 0)
+		{
+			removeOldest();
+		}
+		
+		notifyAll();
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	public OverflowPolicy getOverflowPolicy()
+	{
+		return overflowPolicy;
+	}
+	
+	public int getCapacity()
+	{
+		return events.length;
+	}
+	
+	/**
+	 * Gets the number of events waiting to be delivered.
+	 * 
+	 * @return Current queue depth
+	 */
+	public synchronized int getQueueDepth()
+	{
+		return size;
+	}
+	
+	public synchronized int getMaxQueueDepth()
+	{
+		return maxQueueDepth;
+	}
+	
+	/**
+	 * Gets how long the oldest event of the last delivered batch waited for.
+	 * 
+	 * @return Latency in ms
+	 */
+	public synchronized long getLastLatency()
+	{
+		return lastLatency / 1000000;
+	}
+	
+	/**
+	 * Gets the longest time an event waited for delivery.
+	 * 
+	 * @return Latency in ms
+	 */
+	public synchronized long getMaxLatency()
+	{
+		return maxLatency / 1000000;
+	}
+	
+	public synchronized long getDeliveredCount()
+	{
+		return deliveredCount;
+	}
+	
+	public synchronized long getDroppedCount()
+	{
+		return droppedCount;
+	}
+	
+	public synchronized long getCoalescedCount()
+	{
+		return coalescedCount;
+	}
+	
+	@Override
+	public synchronized String toString()
+	{
+		return name + " [depth = " + size + "/" + events.length + ", max depth = " + maxQueueDepth 
+				+ ", latency = " + getLastLatency() + " ms, max latency = " + getMaxLatency() + " ms" 
+				+ ", delivered = " + deliveredCount + ", dropped = " + droppedCount + ", coalesced = " + coalescedCount + "]";
+	}
+}
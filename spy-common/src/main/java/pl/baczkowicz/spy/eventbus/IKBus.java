@@ -19,15 +19,20 @@
  */
 package pl.baczkowicz.spy.eventbus;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
+
 /**
  * This as an interface for an Event Bus called Spy Bus. 
  * 
  * Basic principle: decouple producers of events from their consumers.
  * 
- * TODO: Support for queueing and batching. Subscribing could be extended to support batch, etc
+ * Consumers with an executor get each event separately, unless subscribed with batching - in which case events are queued and
+ * delivered in batches.
  */
 public interface IKBus
 {
@@ -84,6 +89,31 @@ public interface IKBus
     <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor,
             final Object filter);
 
+    /**
+     * Subscribes a consumer method for batches of events of certain type (and optionally given filter object). Events are queued on a
+     * bounded delivery lane for that consumer, and all queued events are delivered at once using the executor.
+     *
+     * @param subscriber The subscriber who is interested in these events
+     * @param consumer The consumer method that is subscribing (one subscription per consumer method allowed)
+     * @param eventType Type of event the consumer is interested in
+     * @param executor The executor to use for asynchronous execution
+     * @param filter The filter object to perform filtering on (null = no filter)
+     * @param capacity Maximum number of events waiting for delivery
+     * @param overflowPolicy What to do with new events when the capacity has been reached
+     * @param <S> The type of the event.
+     * 
+     * @return The delivery lane created for the consumer (e.g. for diagnostics)
+     */
+    <S> DeliveryLane<S> subscribeWithBatching(final Object subscriber, final Consumer<? super List<S>> consumer, final Class<S> eventType, 
+            final Executor executor, final Object filter, final int capacity, final OverflowPolicy overflowPolicy);
+    
+    /**
+     * Gets all delivery lanes of consumers subscribed with batching.
+     * 
+     * @return Current delivery lanes
+     */
+    Collection<DeliveryLane<?>> getDeliveryLanes();
+
     /**
      * Unsubscribes the given subscriber.
      *
@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -31,133 +33,112 @@ import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
 
+/**
+ * Event bus implementation. Subscriptions are changed under a lock, and each
+ * change rebuilds an immutable dispatch table (event type to the matching
+ * subscriptions), which is then swapped in atomically. Publishing only reads
+ * the current dispatch table, so it doesn't lock (apart from the first event
+ * of a previously unseen type). Consumers subscribed with batching get
+ * events through their own delivery lanes.
+ */
 public class KBus implements IKBus
 {
     /** Logger. */
     private static final Logger logger = LoggerFactory.getLogger(KBus.class);
+    
+    /** No subscriptions - shared by all types without consumers. */
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
 
     /** Map of subscribers to the consumer methods for that subscriber. */
     private final Map<Object, Set<Consumer<?>>> subscribers = new HashMap<>();
 
-    /** Map of Consumers to filters. */
-    private final Map<Consumer<?>, Object> consumerFilters = new HashMap<>();
-
-    /** Map of Consumers to the class types. */
-    private final Map<Consumer<?>, Class<?>> consumerTypes = new HashMap<>();
+    /** Map of Consumers to their subscriptions (in the order of subscribing). Also used as the lock for all subscription changes. */
+    private final Map<Consumer<?>, Subscription> subscriptions = new LinkedHashMap<>();
 
-    /** Map of Class types to consumers.  This is used for performance reasons and is recalculated after a change. */
-    private final Map<Class<?>, Collection<Consumer<?>>> typeConsumers = new HashMap<>();
-    
-    /** Map of Class types to executors. This is used for asynchronous execution. */
-    private final Map<Consumer<?>, Executor> consumerExecutors = new HashMap<>();
+    /** Immutable map of Class types to matching subscriptions. Replaced (never modified) after a change. */
+    private volatile Map<Class<?>, Subscription[]> dispatchTable = new HashMap<>();
 	
-	private Collection<Consumer<?>> getConsumersForType(final Object event)
+	private Subscription[] getSubscriptionsForType(final Class<?> eventType)
 	{
-		Collection<Consumer<?>> matchedConsumers;
-		
-		// Try to get previously matched consumers
-		final Collection<Consumer<?>> previouslyMatchedConsumers = typeConsumers.get(event.getClass());
+		// Try to get previously matched subscriptions
+		final Subscription[] matchedSubscriptions = dispatchTable.get(eventType);
 		
-		// If none available, try to match
-		if (previouslyMatchedConsumers == null)
-		{		
-			matchedConsumers = matchConsumersForType(event.getClass());
-			
-			typeConsumers.put(event.getClass(), matchedConsumers);
-		}
-		else
+		if (matchedSubscriptions != null)
 		{
-			matchedConsumers = previouslyMatchedConsumers;
+			return matchedSubscriptions;
 		}
 		
-		return matchedConsumers;
+		// If none available, match and add them to a new copy of the dispatch table
+		synchronized (subscriptions)
+		{
+			final Map<Class<?>, Subscription[]> newDispatchTable = new HashMap<>(dispatchTable);
+			final Subscription[] newSubscriptions = matchSubscriptionsForType(eventType);
+			newDispatchTable.put(eventType, newSubscriptions);
+			dispatchTable = newDispatchTable;
+			
+			return newSubscriptions;
+		}
 	}
 	
-	private Collection<Consumer<?>> matchConsumersForType(final Class<?> eventType)
+	private Subscription[] matchSubscriptionsForType(final Class<?> eventType)
 	{
-		final Collection<Consumer<?>> matchedConsumers = new ArrayList<>();
+		final List<Subscription> matchedSubscriptions = new ArrayList<>();
 	
 		logger.trace("Matching consumers for type {}", eventType);
 		
-		synchronized (consumerTypes)
+		for (final Subscription subscription : subscriptions.values())
 		{
-			for (final Consumer<?> consumer : consumerTypes.keySet())
+			// Compares two Classes with each other (because of that couldn't use instanceof or isInstance)
+			if (subscription.eventType.isAssignableFrom(eventType))
 			{
-				final Class<?> consumerType = consumerTypes.get(consumer);
-				
-				// Compares two Classes with each other (because of that couldn't use instanceof or isInstance)
-				if (consumerType.isAssignableFrom(eventType))
-				{
-					matchedConsumers.add(consumer);
-				}
+				matchedSubscriptions.add(subscription);
 			}
 		}
 		
-		logger.trace("Matched {} consumers for type {}: {}", matchedConsumers.size(), eventType, matchedConsumers);
+		logger.trace("Matched {} consumers for type {}", matchedSubscriptions.size(), eventType);
 		
-		return matchedConsumers;
+		return matchedSubscriptions.isEmpty() ? NO_SUBSCRIPTIONS : matchedSubscriptions.toArray(new Subscription[matchedSubscriptions.size()]);
 	}
 
 	/**
-     * Publishes an event in a synchronous way.
+     * Publishes an event in a synchronous way (unless an executor has been specified for a consumer).
      */
-    @SuppressWarnings("unchecked")
 	@Override
     public void publish(final Object event)
     {
-        final Collection<Consumer<?>> matchedConsumers = getConsumersForType(event);
-
-        for (final Consumer<?> consumer : matchedConsumers)
+        for (final Subscription subscription : getSubscriptionsForType(event.getClass()))
         {
-            // No need to synchronise here, read-only
-            final Object filter = consumerFilters.get(consumer);
-
             try
             {
-                if (filter == null)
+                if (subscription.filter == null)
                 {
-                    notifyConsumer((Consumer<Object>) consumer, event);
+                    subscription.notifyConsumer(event);
                 }
-                else if (event instanceof IFilterableEvent && filter.equals(((IFilterableEvent) event).getFilter()))
+                else if (event instanceof IFilterableEvent && subscription.filter.equals(((IFilterableEvent) event).getFilter()))
                 {
-                    notifyConsumer((Consumer<Object>) consumer, event);
+                    subscription.notifyConsumer(event);
                 }
             }
             catch (final ClassCastException e)
             {
-                logger.warn("Consumer {} can't accept events of type = {}", consumer, event.getClass(), e);
+                logger.warn("Consumer {} can't accept events of type = {}", subscription.consumer, event.getClass(), e);
             }
         }
     }
-    
-    /**
-     * Notifies the consumer with the event. If an executor has been specified, it is used.
-     *
-     * @param consumer Consumer of the event
-     * @param event The event to notify
-     */
-    private void notifyConsumer(final Consumer<Object> consumer, final Object event)
-    {
-        final Executor executor = consumerExecutors.get(consumer);
-        
-        if (executor == null)
-        {
-            consumer.accept(event);
-        }
-        else
-        {
-            executor.execute(() -> { consumer.accept(event); });
-        }
-    }
 	
 	private void recalculateExistingMappings()
 	{
-		// Recalculate all existing eventType to consumer mappings
-		for (final Class<?> type : typeConsumers.keySet())
+		// Recalculate all existing eventType to consumer mappings, and swap them in at once
+		final Map<Class<?>, Subscription[]> newDispatchTable = new HashMap<>();
+		
+		for (final Class<?> type : dispatchTable.keySet())
 		{	
-			typeConsumers.put(type, matchConsumersForType(type));
+			newDispatchTable.put(type, matchSubscriptionsForType(type));
 		}
+		
+		dispatchTable = newDispatchTable;
 	}
 
     /**
@@ -190,33 +171,95 @@ public class KBus implements IKBus
     /**
      * {@inheritDoc}
      */
-    @Override
+    @SuppressWarnings("unchecked")
+	@Override
     public <S> void subscribe(final Object subscriber, final Consumer<? super S> consumer, final Class<S> eventType, final Executor executor,
             final Object filter)
     {
-        synchronized (consumerTypes)
+        synchronized (subscriptions)
+        {
+            addConsumer(subscriber, consumer);
+            addSubscription(new Subscription((Consumer<Object>) consumer, eventType, executor, filter, null));
+        }        
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <S> DeliveryLane<S> subscribeWithBatching(final Object subscriber, final Consumer<? super List<S>> consumer, final Class<S> eventType, 
+            final Executor executor, final Object filter, final int capacity, final OverflowPolicy overflowPolicy)
+    {
+        final DeliveryLane<S> lane = new DeliveryLane<S>(eventType.getSimpleName() + "@" + subscriber.getClass().getSimpleName(), 
+                consumer, executor, capacity, overflowPolicy);
+        
+        synchronized (subscriptions)
+        {
+            addConsumer(subscriber, consumer);
+            addSubscription(new Subscription((Consumer<Object>) consumer, eventType, null, filter, (DeliveryLane<Object>) lane));
+        }
+        
+        return lane;
+    }
+    
+    private void addConsumer(final Object subscriber, final Consumer<?> consumer)
+    {
+        Set<Consumer<?>> consumers = subscribers.get(subscriber);
+
+        if (consumers == null)
         {
-            Set<Consumer<?>> consumers = subscribers.get(subscriber);
+            consumers = new HashSet<>();
+            subscribers.put(subscriber, consumers);
+        }
+        consumers.add(consumer);
+    }
+    
+    private void addSubscription(final Subscription subscription)
+    {
+        removeSubscription(subscription.consumer);
+        subscriptions.put(subscription.consumer, subscription);
 
-            if (consumers == null)
+        recalculateExistingMappings();
+    }
+    
+    private void removeSubscription(final Consumer<?> consumer)
+    {
+        final Subscription removed = subscriptions.remove(consumer);
+        
+        if (removed != null && removed.lane != null)
+        {
+            removed.lane.close();
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Collection<DeliveryLane<?>> getDeliveryLanes()
+    {
+        final List<DeliveryLane<?>> lanes = new ArrayList<>();
+        
+        // Any snapshot of the dispatch table would miss types not published yet
+        synchronized (subscriptions)
+        {
+            for (final Subscription subscription : subscriptions.values())
             {
-                consumers = new HashSet<>();
-                subscribers.put(subscriber, consumers);
+                if (subscription.lane != null)
+                {
+                    lanes.add(subscription.lane);
+                }
             }
-            consumers.add(consumer);
-
-            consumerFilters.put(consumer, filter);
-            consumerTypes.put(consumer, eventType);
-            consumerExecutors.put(consumer, executor);
-
-            recalculateExistingMappings();
-        }        
+        }
+        
+        return lanes;
     }
 
 	@Override
 	public void unsubscribe(final Object subscriber)
 	{
-		synchronized (consumerTypes)
+		synchronized (subscriptions)
 		{
 			logger.trace("Trying to remove {} from subscribers", subscriber);
 			
@@ -226,8 +269,7 @@ public class KBus implements IKBus
 			{
 				for (final Consumer<?> consumer : removed)
 				{
-					consumerFilters.remove(consumer);		
-					consumerTypes.remove(consumer);				
+					removeSubscription(consumer);				
 				}
 				logger.trace("Removed consumers: {}", removed.size());
 			}
@@ -243,7 +285,7 @@ public class KBus implements IKBus
 	@Override
 	public void unsubscribeConsumer(final Object subscriber, final Consumer<?> consumer)
 	{
-		synchronized (consumerTypes)
+		synchronized (subscriptions)
 		{
 			logger.trace("Trying to remove {} owned by {}", consumer, subscriber);
 			
@@ -254,11 +296,8 @@ public class KBus implements IKBus
 				consumers.remove(consumer);
 			}
 			
-			logger.trace("Removing {} from filters; contains: {}", consumer, consumerFilters.containsKey(consumer));
-			consumerFilters.remove(consumer);
-						
-			logger.trace("Removing {} from types; contains: {}", consumer, consumerTypes.containsKey(consumer));
-			consumerTypes.remove(consumer);
+			logger.trace("Removing {} from subscriptions; contains: {}", consumer, subscriptions.containsKey(consumer));
+			removeSubscription(consumer);
 			
 			recalculateExistingMappings();
 		}
@@ -267,20 +306,25 @@ public class KBus implements IKBus
 	@Override
 	public void unsubscribeConsumer(final Object subscriber, final Class<?> eventType)
 	{
-		synchronized (consumerTypes)
+		synchronized (subscriptions)
 		{
 			logger.trace("Trying to remove consumer of type {} from {}", eventType, subscriber);
 						
 			final Collection<Consumer<?>> consumers = subscribers.get(subscriber);
 			
+			if (consumers == null)
+			{
+				return;
+			}
+			
 			Consumer<?> foundConsumer = null;
 			
 			// Find the consumer based on its type
-			for (final Consumer<?> consumer : consumerTypes.keySet())
+			for (final Subscription subscription : subscriptions.values())
 			{
-				if (consumerTypes.get(consumer).equals(eventType) && consumers.contains(consumer))
+				if (subscription.eventType.equals(eventType) && consumers.contains(subscription.consumer))
 				{
-					foundConsumer = consumer;
+					foundConsumer = subscription.consumer;
 					break;
 				}
 			}
@@ -291,4 +335,54 @@ public class KBus implements IKBus
 			}
 		}
 	}
+	
+	/**
+	 * Immutable details of a single consumer's subscription.
+	 */
+	private static class Subscription
+	{
+		private final Consumer<Object> consumer;
+		
+		private final Class<?> eventType;
+		
+		/** Executor for asynchronous execution (null = synchronous). */
+		private final Executor executor;
+		
+		/** Filter object (null = no filter). */
+		private final Object filter;
+		
+		/** Delivery lane for batched delivery (null = events delivered one by one). */
+		private final DeliveryLane<Object> lane;
+		
+		private Subscription(final Consumer<Object> consumer, final Class<?> eventType, final Executor executor, final Object filter, 
+				final DeliveryLane<Object> lane)
+		{
+			this.consumer = consumer;
+			this.eventType = eventType;
+			this.executor = executor;
+			this.filter = filter;
+			this.lane = lane;
+		}
+		
+	    /**
+	     * Notifies the consumer with the event. If a delivery lane or an executor has been specified, it is used.
+	     *
+	     * @param event The event to notify
+	     */
+	    private void notifyConsumer(final Object event)
+	    {
+	        if (lane != null)
+	        {
+	        	lane.offer(event);
+	        }
+	        else if (executor == null)
+	        {
+	            consumer.accept(event);
+	        }
+	        else
+	        {
+	            executor.execute(() -> { consumer.accept(event); });
+	        }
+	    }
+	}
 }
@@ -0,0 +1,263 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import pl.baczkowicz.spy.common.generated.ConversionMethod;
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Executable form of a function-based formatter, created by the FormatterCompiler.
+ * 
+ * The payload is passed through all stages as bytes and decoded into a string
+ * only at the end. Malformed UTF-8 is replaced on the way in and after decoding
+ * conversions, as it would be by a round trip through a string. Compiled formatters hold no per-message state,
+ * so they can be shared between threads.
+ */
+public class CompiledFormatter
+{
+	/** Charset used for converting between payload bytes and text. */
+	static final Charset CHARSET = Charset.forName(ConversionUtils.DEFAULT_CHARSET);
+	
+	/** The formatter this has been compiled from. */
+	private final FormatterDetails formatter;
+	
+	/** Conversion applied directly to the raw payload (only set for single-conversion formatters). */
+	private final ConversionMethod rawConversion;
+	
+	/** Stages to run, in order. */
+	private final Stage[] stages;
+
+	/**
+	 * Creates a compiled formatter.
+	 * 
+	 * @param formatter The source formatter
+	 * @param rawConversion Conversion to apply directly to the raw payload, or null
+	 * @param stages Stages to run
+	 */
+	CompiledFormatter(final FormatterDetails formatter, final ConversionMethod rawConversion, final List<Stage> stages)
+	{
+		this.formatter = formatter;
+		this.rawConversion = rawConversion;
+		this.stages = stages.toArray(new Stage[stages.size()]);
+	}
+	
+	/**
+	 * Formats the given payload. Equivalent to FormattingUtils.checkAndFormatText(formatter, payload).
+	 * 
+	 * @param payload The raw payload
+	 * 
+	 * @return The formatted text
+	 */
+	public String format(final byte[] payload)
+	{
+		if (rawConversion != null)
+		{
+			return FormattingUtils.convertText(rawConversion, payload);
+		}
+		
+		return run(payload);
+	}
+	
+	/**
+	 * Formats the given text. Equivalent to FormattingUtils.formatText(formatter, text, null).
+	 * 
+	 * @param text The text to format
+	 * 
+	 * @return The formatted text
+	 */
+	public String format(final String text)
+	{
+		if (rawConversion != null)
+		{
+			return FormattingUtils.convertText(rawConversion, text);
+		}
+		else if (stages.length == 0)
+		{
+			return text;
+		}
+		
+		return run(ConversionUtils.stringToArray(text));
+	}
+	
+	/**
+	 * Runs all stages on the given bytes.
+	 * 
+	 * @param payload The bytes to format
+	 * 
+	 * @return The formatted text
+	 */
+	private String run(final byte[] payload)
+	{
+		final Buffer buffer = new Buffer(wellFormed(payload));
+		
+		for (final Stage stage : stages)
+		{
+			stage.apply(buffer);
+		}
+		
+		return new String(buffer.data, buffer.from, buffer.to - buffer.from, CHARSET);
+	}
+	
+	/**
+	 * Makes sure the given bytes are well-formed UTF-8, replacing any malformed
+	 * sequences the same way decoding into a string would.
+	 * 
+	 * @param data The bytes to check
+	 * 
+	 * @return The same array if already well-formed, or a corrected copy
+	 */
+	static byte[] wellFormed(final byte[] data)
+	{
+		int i = 0;
+		while (i < data.length)
+		{
+			final int lead = data[i] & 0xFF;
+			
+			if (lead < 0x80)
+			{
+				i++;
+				continue;
+			}
+			
+			final int size;
+			int min = 0x80;
+			int max = 0xBF;
+			
+			if (lead >= 0xC2 && lead <= 0xDF)
+			{
+				size = 2;
+			}
+			else if (lead >= 0xE0 && lead <= 0xEF)
+			{
+				size = 3;
+				
+				// No overlong forms or surrogates
+				min = lead == 0xE0 ? 0xA0 : 0x80;
+				max = lead == 0xED ? 0x9F : 0xBF;
+			}
+			else if (lead >= 0xF0 && lead <= 0xF4)
+			{
+				size = 4;
+				
+				// No overlong forms or code points above U+10FFFF
+				min = lead == 0xF0 ? 0x90 : 0x80;
+				max = lead == 0xF4 ? 0x8F : 0xBF;
+			}
+			else
+			{
+				return ConversionUtils.stringToArray(ConversionUtils.arrayToString(data));
+			}
+			
+			if (i + size > data.length || (data[i + 1] & 0xFF) < min || (data[i + 1] & 0xFF) > max)
+			{
+				return ConversionUtils.stringToArray(ConversionUtils.arrayToString(data));
+			}
+			
+			for (int j = 2; j < size; j++)
+			{
+				if ((data[i + j] & 0xC0) != 0x80)
+				{
+					return ConversionUtils.stringToArray(ConversionUtils.arrayToString(data));
+				}
+			}
+			
+			i += size;
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * Gets the formatter this has been compiled from.
+	 * 
+	 * @return The formatter details
+	 */
+	public FormatterDetails getFormatter()
+	{
+		return formatter;
+	}
+	
+	/**
+	 * Gets the number of compiled stages.
+	 * 
+	 * @return Number of stages
+	 */
+	public int getStageCount()
+	{
+		return stages.length;
+	}
+	
+	/**
+	 * A single step of a compiled formatter.
+	 */
+	interface Stage
+	{
+		/**
+		 * Transforms the content of the given buffer.
+		 * 
+		 * @param buffer The buffer to modify
+		 */
+		void apply(final Buffer buffer);
+	}
+	
+	/**
+	 * The text being formatted, as a window onto a byte array. Stages either
+	 * narrow the window or swap the array for a new one.
+	 */
+	static final class Buffer
+	{
+		/** Current content. */
+		byte[] data;
+		
+		/** Start of the content (inclusive). */
+		int from;
+		
+		/** End of the content (exclusive). */
+		int to;
+		
+		/** Index of the matched start tag. */
+		int tagStart;
+		
+		/** Index of the matched value (just after the start tag). */
+		int valueStart;
+		
+		/** End of the matched value (index of the end tag). */
+		int valueEnd;
+		
+		/** End of the matched end tag. */
+		int tagEnd;
+		
+		Buffer(final byte[] data)
+		{
+			set(data);
+		}
+		
+		void set(final byte[] data)
+		{
+			this.data = data;
+			this.from = 0;
+			this.to = data.length;
+		}
+	}
+}
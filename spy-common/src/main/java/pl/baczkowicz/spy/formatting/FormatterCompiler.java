@@ -0,0 +1,676 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.common.generated.CharacterReplaceFormatterDetails;
+import pl.baczkowicz.spy.common.generated.ConversionMethod;
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.common.generated.FormatterFunction;
+import pl.baczkowicz.spy.common.generated.SubstringFormatterDetails;
+import pl.baczkowicz.spy.formatting.CompiledFormatter.Buffer;
+import pl.baczkowicz.spy.formatting.CompiledFormatter.Stage;
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Turns function-based formatters into compiled formatters.
+ * 
+ * Each formatter function becomes a specialised stage, with its tags, replacement
+ * values and character mappings encoded up front, so that formatting a message
+ * doesn't need to inspect the formatter details again. The output is the same as
+ * FormattingUtils.formatText.
+ */
+public class FormatterCompiler
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(FormatterCompiler.class);
+	
+	/** Largest character range mapped up front - bigger ones are replaced the same way as FormattingUtils does. */
+	private static final int MAX_MAPPED_CHARACTERS = 0x10000;
+	
+	/** Output of an invalid HEX conversion. */
+	private static final byte[] INVALID_HEX = ConversionUtils.stringToArray("[invalid hex]");
+	
+	/** Digits used for HEX encoding. */
+	private static final byte[] HEX_DIGITS = ConversionUtils.stringToArray("0123456789abcdef");
+
+	/**
+	 * Compiles the given formatter.
+	 * 
+	 * @param formatter The formatter details
+	 * 
+	 * @return The compiled formatter
+	 */
+	public static CompiledFormatter compile(final FormatterDetails formatter)
+	{
+		final List<FormatterFunction> functions = formatter.getFunction();
+		
+		// A single conversion works on the raw payload, as in FormattingUtils.formatText
+		if (functions.size() == 1 && functions.get(0).getConversion() != null)
+		{
+			return new CompiledFormatter(formatter, functions.get(0).getConversion().getFormat(), new ArrayList<Stage>());
+		}
+		
+		final List<Stage> stages = new ArrayList<>();
+		
+		for (final FormatterFunction function : functions)
+		{
+			if (function.getSubstringReplace() != null)
+			{
+				stages.add(new SubstringReplaceStage(function.getSubstringReplace(), 
+						toArray(function.getSubstringReplace().getReplaceWith())));
+			}
+			else if (function.getSubstringExtract() != null)
+			{
+				stages.add(new SubstringExtractStage(function.getSubstringExtract()));
+			}
+			else if (function.getSubstringConversion() != null)
+			{
+				stages.add(new SubstringConversionStage(function.getSubstringConversion(), 
+						function.getSubstringConversion().getFormat()));
+			}
+			else if (function.getConversion() != null)
+			{
+				stages.add(new ConversionStage(function.getConversion().getFormat()));
+			}
+			else if (function.getCharacterReplace() != null)
+			{
+				final Stage stage = createCharacterReplaceStage(function.getCharacterReplace());
+				
+				if (stage != null)
+				{
+					stages.add(stage);
+				}
+			}
+		}
+		
+		logger.debug("Compiled formatter {} into {} stage(s)", formatter.getName(), stages.size());
+		return new CompiledFormatter(formatter, null, stages);
+	}
+	
+	/**
+	 * Creates a stage for the given character replacement.
+	 * 
+	 * @param details The character replacement details
+	 * 
+	 * @return The stage, or null if there is nothing to replace
+	 */
+	private static Stage createCharacterReplaceStage(final CharacterReplaceFormatterDetails details)
+	{
+		final int from = details.getCharacterRangeFrom();
+		final int to = details.getCharacterRangeTo();
+		
+		if (from > to)
+		{
+			return null;
+		}
+		
+		// Surrogates can't be matched on UTF-8 bytes, and huge ranges aren't worth mapping
+		if (from < 0 || to > Character.MAX_CODE_POINT || to - from >= MAX_MAPPED_CHARACTERS 
+				|| (from <= Character.MAX_SURROGATE && to >= Character.MIN_SURROGATE))
+		{
+			return new TextStage(details);
+		}
+		
+		return new CharacterReplaceStage(from, to, mapCharacters(details));
+	}
+	
+	/**
+	 * Works out what each character in the range ends up as. FormattingUtils.replaceCharacters
+	 * replaces one character at a time, so characters produced for one replacement are
+	 * replaced again by the later ones - this applies all of them in one go.
+	 * 
+	 * @param details The character replacement details
+	 * 
+	 * @return Encoded replacement for each character in the range
+	 */
+	private static byte[][] mapCharacters(final CharacterReplaceFormatterDetails details)
+	{
+		final int from = details.getCharacterRangeFrom();
+		final int to = details.getCharacterRangeTo();
+		final String wrap = details.getWrapCharacter();
+		
+		final String[] replacements = new String[to - from + 1];
+		final byte[][] mapping = new byte[replacements.length][];
+		
+		for (int i = to; i >= from; i--)
+		{
+			final String converted = FormattingUtils.convertText(details.getFormat(), new String(Character.toChars(i)));
+			final String replacement = wrap != null ? wrap + converted + wrap : converted;
+			
+			// Characters replaced later in the sequence are already known
+			final StringBuilder sb = new StringBuilder();
+			for (int index = 0; index < replacement.length(); )
+			{
+				final int character = replacement.codePointAt(index);
+				
+				if (character > i && character <= to)
+				{
+					sb.append(replacements[character - from]);
+				}
+				else
+				{
+					sb.appendCodePoint(character);
+				}
+				
+				index += Character.charCount(character);
+			}
+			
+			replacements[i - from] = sb.toString();
+			mapping[i - from] = ConversionUtils.stringToArray(replacements[i - from]);
+		}
+		
+		return mapping;
+	}
+	
+	/**
+	 * Encodes the given string, treating null as empty.
+	 * 
+	 * @param text The text to encode
+	 * 
+	 * @return Encoded text
+	 */
+	private static byte[] toArray(final String text)
+	{
+		return text == null ? new byte[0] : ConversionUtils.stringToArray(text);
+	}
+	
+	/**
+	 * Finds the first occurrence of the pattern.
+	 * 
+	 * @param data The data to search
+	 * @param fromIndex Where to start searching
+	 * @param toIndex End of the data (exclusive)
+	 * @param pattern The pattern to find
+	 * @param patternFrom Start of the pattern
+	 * @param patternTo End of the pattern (exclusive)
+	 * 
+	 * @return Index of the pattern or -1 if not found
+	 */
+	static int indexOf(final byte[] data, final int fromIndex, final int toIndex, 
+			final byte[] pattern, final int patternFrom, final int patternTo)
+	{
+		final int length = patternTo - patternFrom;
+		
+		if (length == 0)
+		{
+			return fromIndex;
+		}
+		
+		final byte first = pattern[patternFrom];
+		final int last = toIndex - length;
+		
+		for (int i = fromIndex; i <= last; i++)
+		{
+			if (data[i] != first)
+			{
+				continue;
+			}
+			
+			int matched = 1;
+			while (matched < length && data[i + matched] == pattern[patternFrom + matched])
+			{
+				matched++;
+			}
+			
+			if (matched == length)
+			{
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	/**
+	 * Replaces all occurrences of the given pattern in the buffer, like String.replace.
+	 * 
+	 * @param buffer The buffer to modify
+	 * @param pattern The pattern to replace
+	 * @param patternFrom Start of the pattern
+	 * @param patternTo End of the pattern (exclusive)
+	 * @param replacement The replacement
+	 */
+	static void replaceAll(final Buffer buffer, final byte[] pattern, final int patternFrom, final int patternTo, final byte[] replacement)
+	{
+		final int length = patternTo - patternFrom;
+		
+		if (length == 0)
+		{
+			// String.replace inserts the replacement between all characters - leave it to String
+			final String text = new String(buffer.data, buffer.from, buffer.to - buffer.from, CompiledFormatter.CHARSET);
+			buffer.set(ConversionUtils.stringToArray(text.replace("", new String(replacement, CompiledFormatter.CHARSET))));
+			return;
+		}
+		
+		int matches = 0;
+		for (int i = indexOf(buffer.data, buffer.from, buffer.to, pattern, patternFrom, patternTo); i != -1; 
+				i = indexOf(buffer.data, i + length, buffer.to, pattern, patternFrom, patternTo))
+		{
+			matches++;
+		}
+		
+		if (matches == 0)
+		{
+			return;
+		}
+		
+		final byte[] output = new byte[buffer.to - buffer.from + matches * (replacement.length - length)];
+		int copied = buffer.from;
+		int written = 0;
+		
+		for (int i = indexOf(buffer.data, buffer.from, buffer.to, pattern, patternFrom, patternTo); i != -1; 
+				i = indexOf(buffer.data, i + length, buffer.to, pattern, patternFrom, patternTo))
+		{
+			System.arraycopy(buffer.data, copied, output, written, i - copied);
+			written += i - copied;
+			System.arraycopy(replacement, 0, output, written, replacement.length);
+			written += replacement.length;
+			copied = i + length;
+		}
+		
+		System.arraycopy(buffer.data, copied, output, written, buffer.to - copied);
+		buffer.set(output);
+	}
+	
+	/**
+	 * Converts the given bytes using the supplied method, like FormattingUtils.convertText.
+	 * 
+	 * @param method The conversion method
+	 * @param data The data to convert
+	 * @param from Start of the data
+	 * @param to End of the data (exclusive)
+	 * 
+	 * @return Converted data
+	 */
+	static byte[] convert(final ConversionMethod method, final byte[] data, final int from, final int to)
+	{
+		switch (method)
+		{
+			case HEX_ENCODE:
+			{
+				final byte[] output = new byte[(to - from) * 2];
+				for (int i = from; i < to; i++)
+				{
+					output[(i - from) * 2] = HEX_DIGITS[(data[i] >> 4) & 0x0F];
+					output[(i - from) * 2 + 1] = HEX_DIGITS[data[i] & 0x0F];
+				}
+				return output;
+			}
+			case HEX_DECODE:
+			{
+				if ((to - from) % 2 != 0)
+				{
+					return INVALID_HEX;
+				}
+				
+				final byte[] output = new byte[(to - from) / 2];
+				for (int i = from; i < to; i += 2)
+				{
+					final int high = hexDigit(data[i]);
+					final int low = hexDigit(data[i + 1]);
+					
+					if (high < 0 || low < 0)
+					{
+						return INVALID_HEX;
+					}
+					
+					output[(i - from) / 2] = (byte) ((high << 4) | low);
+				}
+				return CompiledFormatter.wellFormed(output);
+			}
+			case BASE_64_ENCODE:
+			{
+				return Base64.encodeBase64(Arrays.copyOfRange(data, from, to));
+			}
+			case BASE_64_DECODE:
+			{
+				return CompiledFormatter.wellFormed(Base64.decodeBase64(Arrays.copyOfRange(data, from, to)));
+			}
+			default:
+				return Arrays.copyOfRange(data, from, to);
+		}
+	}
+	
+	/**
+	 * Gets the value of the given HEX digit.
+	 * 
+	 * @param digit The digit (ASCII)
+	 * 
+	 * @return The value or -1 if not a HEX digit
+	 */
+	private static int hexDigit(final byte digit)
+	{
+		return digit < 0 ? -1 : Character.digit((char) digit, 16);
+	}
+	
+	/**
+	 * Base for the substring functions - finds the value between the start and end tags.
+	 */
+	private static abstract class SubstringStage implements Stage
+	{
+		/** Encoded start tag. */
+		protected final byte[] startTag;
+		
+		/** Encoded end tag. */
+		protected final byte[] endTag;
+		
+		/** Whether to keep the tags. */
+		protected final boolean keepTags;
+		
+		protected SubstringStage(final SubstringFormatterDetails details)
+		{
+			this.startTag = toArray(details.getStartTag());
+			this.endTag = toArray(details.getEndTag());
+			this.keepTags = details.isKeepTags();
+		}
+		
+		/**
+		 * Finds the tags and stores their positions in the buffer.
+		 * 
+		 * @param buffer The buffer to search
+		 * 
+		 * @return True if both tags have been found
+		 */
+		protected boolean find(final Buffer buffer)
+		{
+			final int tagStart = indexOf(buffer.data, buffer.from, buffer.to, startTag, 0, startTag.length);
+			
+			if (tagStart == -1)
+			{
+				return false;
+			}
+			
+			final int valueEnd = indexOf(buffer.data, tagStart, buffer.to, endTag, 0, endTag.length);
+			
+			if (valueEnd == -1 || valueEnd < tagStart + startTag.length)
+			{
+				return false;
+			}
+			
+			buffer.tagStart = tagStart;
+			buffer.valueStart = tagStart + startTag.length;
+			buffer.valueEnd = valueEnd;
+			buffer.tagEnd = valueEnd + endTag.length;
+			
+			return true;
+		}
+		
+		/**
+		 * Replaces the found value (or the value with its tags) with the given output.
+		 * 
+		 * @param buffer The buffer to modify
+		 * @param output The replacement
+		 */
+		protected void replace(final Buffer buffer, final byte[] output)
+		{
+			if (keepTags)
+			{
+				replaceAll(buffer, buffer.data, buffer.valueStart, buffer.valueEnd, output);
+			}
+			else
+			{
+				replaceAll(buffer, buffer.data, buffer.tagStart, buffer.tagEnd, output);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the tagged value with a fixed value.
+	 */
+	private static class SubstringReplaceStage extends SubstringStage
+	{
+		private final byte[] replaceWith;
+		
+		SubstringReplaceStage(final SubstringFormatterDetails details, final byte[] replaceWith)
+		{
+			super(details);
+			this.replaceWith = replaceWith;
+		}
+
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			if (find(buffer))
+			{
+				replace(buffer, replaceWith);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the tagged value with its converted form.
+	 */
+	private static class SubstringConversionStage extends SubstringStage
+	{
+		private final ConversionMethod method;
+		
+		SubstringConversionStage(final SubstringFormatterDetails details, final ConversionMethod method)
+		{
+			super(details);
+			this.method = method;
+		}
+
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			if (find(buffer))
+			{
+				replace(buffer, convert(method, buffer.data, buffer.valueStart, buffer.valueEnd));
+			}
+		}
+	}
+	
+	/**
+	 * Narrows the buffer down to the tagged value - no copying required.
+	 */
+	private static class SubstringExtractStage extends SubstringStage
+	{
+		SubstringExtractStage(final SubstringFormatterDetails details)
+		{
+			super(details);
+		}
+
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			if (find(buffer))
+			{
+				buffer.from = keepTags ? buffer.tagStart : buffer.valueStart;
+				buffer.to = keepTags ? buffer.tagEnd : buffer.valueEnd;
+			}
+		}
+	}
+	
+	/**
+	 * Converts the whole buffer.
+	 */
+	private static class ConversionStage implements Stage
+	{
+		private final ConversionMethod method;
+		
+		ConversionStage(final ConversionMethod method)
+		{
+			this.method = method;
+		}
+
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			if (method != ConversionMethod.PLAIN)
+			{
+				buffer.set(convert(method, buffer.data, buffer.from, buffer.to));
+			}
+		}
+	}
+	
+	/**
+	 * Replaces characters from the given range using a precomputed mapping.
+	 */
+	private static class CharacterReplaceStage implements Stage
+	{
+		private final int from;
+		
+		private final int to;
+		
+		private final byte[][] mapping;
+		
+		CharacterReplaceStage(final int from, final int to, final byte[][] mapping)
+		{
+			this.from = from;
+			this.to = to;
+			this.mapping = mapping;
+		}
+		
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			final byte[] data = buffer.data;
+			
+			// Work out the output size first
+			int length = 0;
+			boolean replaced = false;
+			for (int i = buffer.from; i < buffer.to; )
+			{
+				final int size = sequenceLength(data, i, buffer.to);
+				final int character = decode(data, i, size);
+				
+				if (character >= from && character <= to)
+				{
+					length += mapping[character - from].length;
+					replaced = true;
+				}
+				else
+				{
+					length += size;
+				}
+				
+				i += size;
+			}
+			
+			if (!replaced)
+			{
+				return;
+			}
+			
+			final byte[] output = new byte[length];
+			int written = 0;
+			for (int i = buffer.from; i < buffer.to; )
+			{
+				final int size = sequenceLength(data, i, buffer.to);
+				final int character = decode(data, i, size);
+				
+				if (character >= from && character <= to)
+				{
+					final byte[] replacement = mapping[character - from];
+					System.arraycopy(replacement, 0, output, written, replacement.length);
+					written += replacement.length;
+				}
+				else
+				{
+					System.arraycopy(data, i, output, written, size);
+					written += size;
+				}
+				
+				i += size;
+			}
+			
+			buffer.set(output);
+		}
+		
+		/**
+		 * Gets the length of the UTF-8 sequence starting at the given index.
+		 * 
+		 * @return Length of the sequence; 1 for malformed bytes
+		 */
+		private static int sequenceLength(final byte[] data, final int index, final int end)
+		{
+			final int lead = data[index] & 0xFF;
+			final int size = lead < 0x80 ? 1 : (lead & 0xE0) == 0xC0 ? 2 : (lead & 0xF0) == 0xE0 ? 3 : (lead & 0xF8) == 0xF0 ? 4 : 1;
+			
+			if (index + size > end)
+			{
+				return 1;
+			}
+			
+			for (int i = 1; i < size; i++)
+			{
+				if ((data[index + i] & 0xC0) != 0x80)
+				{
+					return 1;
+				}
+			}
+			
+			return size;
+		}
+		
+		/**
+		 * Decodes the UTF-8 sequence of the given length.
+		 * 
+		 * @return The code point, or -1 for malformed bytes
+		 */
+		private static int decode(final byte[] data, final int index, final int size)
+		{
+			final int lead = data[index] & 0xFF;
+			
+			switch (size)
+			{
+				case 2:
+					return ((lead & 0x1F) << 6) | (data[index + 1] & 0x3F);
+				case 3:
+					return ((lead & 0x0F) << 12) | ((data[index + 1] & 0x3F) << 6) | (data[index + 2] & 0x3F);
+				case 4:
+					return ((lead & 0x07) << 18) | ((data[index + 1] & 0x3F) << 12) 
+							| ((data[index + 2] & 0x3F) << 6) | (data[index + 3] & 0x3F);
+				default:
+					return lead < 0x80 ? lead : -1;
+			}
+		}
+	}
+	
+	/**
+	 * Falls back to FormattingUtils for character replacements that can't be mapped up front.
+	 */
+	private static class TextStage implements Stage
+	{
+		private final CharacterReplaceFormatterDetails details;
+		
+		TextStage(final CharacterReplaceFormatterDetails details)
+		{
+			this.details = details;
+		}
+
+		@Override
+		public void apply(final Buffer buffer)
+		{
+			final String text = new String(buffer.data, buffer.from, buffer.to - buffer.from, CompiledFormatter.CHARSET);
+			
+			buffer.set(ConversionUtils.stringToArray(FormattingUtils.replaceCharacters(details.getFormat(), text, 
+					details.getCharacterRangeFrom(), details.getCharacterRangeTo(), details.getWrapCharacter())));
+		}
+	}
+}
@@ -22,7 +22,11 @@ package pl.baczkowicz.spy.formatting;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
 
 import javax.script.ScriptException;
 
@@ -42,6 +46,19 @@ public class FormattingManager
 	
 	private ScriptBasedFormatter scriptFormatter;
 	
+	/** 
+	 * Function-based formatters, compiled on first use. Keyed by identity, so
+	 * that looking one up for every message doesn't hash the whole formatter;
+	 * copied on write, so that lookups don't need a lock.
+	 */
+	private volatile Map<FormatterDetails, CompiledFormatter> compiledFormatters = new IdentityHashMap<>();
+	
+	/** When received messages get formatted. */
+	private FormattingMode formattingMode = FormattingMode.SCRIPTS_ON_DEMAND;
+	
+	/** Native formatters available on the classpath, by formatter ID; loaded on first use. */
+	private static Map<String, NativeFormatter> nativeFormatters;
+	
 	public FormattingManager(final BaseScriptManager scriptManager)
 	{
 		this.scriptFormatter = new ScriptBasedFormatter(scriptManager);
@@ -54,6 +71,17 @@ public class FormattingManager
 			return;
 		}
 		
+		if (FormattingUtils.isNative(formatter))
+		{
+			return;
+		}
+		
+		if (!FormattingUtils.isScriptBased(formatter))
+		{
+			getCompiledFormatter(formatter);
+			return;
+		}
+		
 		try
 		{		
 			scriptFormatter.addFormatter(formatter);
@@ -64,31 +92,202 @@ public class FormattingManager
 		}
 	}
 	
+	/**
+	 * Formats a received message with the given formatter, or defers it until
+	 * the formatted content is needed, depending on the formatting mode.
+	 * 
+	 * @param message The received message
+	 * @param formatter The formatter to use
+	 */
+	public void formatReceivedMessage(final FormattedMessage message, final FormatterDetails formatter)
+	{
+		if (formatter != null && formattingMode.isDeferred(formatter))
+		{
+			message.deferFormatting(this, formatter);
+		}
+		else
+		{
+			formatMessage(message, formatter);
+		}
+	}
+	
+	/**
+	 * Formats the message with the given formatter, unless it has already been
+	 * formatted with it. Done while holding the message's lock, so that it
+	 * doesn't race with deferred formatting (see FormattedMessage).
+	 * 
+	 * @param message The message to format
+	 * @param formatter The formatter to use; null to clear formatting
+	 */
 	public void formatMessage(final FormattedMessage message, final FormatterDetails formatter)
 	{
-		if (formatter == null)
+		synchronized (message)
 		{
+			if (formatter == null)
+			{
+				// Fall back to the plain payload, decoded lazily
+				message.clearFormatting();
+			}		
+			else if (!formatter.equals(message.getLastUsedFormatter()) || message.isFormattingPending())
+			{
+				message.setLastUsedFormatter(formatter);
+				message.startFormatting();
+			
+				try
+				{
+					if (FormattingUtils.isNative(formatter))
+					{
+						formatMessageWithNativeFormatter(message, formatter);
+					}
+					else if (FormattingUtils.isScriptBased(formatter))
+					{
+						// logger.debug("Formatting using {}", formatter.getName());
+						message.setFormattedPayload(scriptFormatter.formatMessage(formatter, message));
+						message.setPrettyPayload(scriptFormatter.formatMessage(formatter, message, true));
+					}
+					else
+					{
+						// Use the raw payload to make sure any formatting/encoding that is applied is correct
+						final String formattedPayload = getCompiledFormatter(formatter).format(message.getRawPayload());
+						message.setFormattedPayload(formattedPayload);
+						message.setPrettyPayload(formattedPayload);
+					}
+				}
+				finally
+				{
+					// Only once both payloads are set
+					message.finishFormatting();
+				}
+			}
+			
+			// Formatted strings take memory too, and messages can be formatted long after being stored
+			message.notifySizeChanged();
+		}
+	}
+
+	private void formatMessageWithNativeFormatter(final FormattedMessage message, final FormatterDetails formatter)
+	{
+		final NativeFormatter nativeFormatter = getNativeFormatter(formatter);
+		
+		if (nativeFormatter == null)
+		{
+			logger.warn("Native formatter {} not available", formatter.getID());
 			message.setFormattedPayload(message.getPayload());
-		}		
-		else if (!formatter.equals(message.getLastUsedFormatter()))
+			message.setPrettyPayload(message.getPayload());
+		}
+		else
+		{
+			message.setFormattedPayload(nativeFormatter.format(message.getRawPayload()));
+			message.setPrettyPayload(nativeFormatter.formatPretty(message.getRawPayload()));
+		}
+	}
+	
+	/**
+	 * Gets the native formatter for the given formatter details.
+	 * 
+	 * @param formatter The formatter details
+	 * 
+	 * @return The native formatter, or null if not available
+	 */
+	public static NativeFormatter getNativeFormatter(final FormatterDetails formatter)
+	{
+		return getNativeFormatters().get(formatter.getID());
+	}
+	
+	/**
+	 * Gets the native formatters available on the classpath, loading them on first use.
+	 * 
+	 * @return Native formatters by formatter ID
+	 */
+	private static synchronized Map<String, NativeFormatter> getNativeFormatters()
+	{
+		if (nativeFormatters == null)
 		{
-			message.setLastUsedFormatter(formatter);
+			nativeFormatters = new LinkedHashMap<>();
 			
-			if (FormattingUtils.isScriptBased(formatter))
+			for (final NativeFormatter nativeFormatter : ServiceLoader.load(NativeFormatter.class))
 			{
-				// logger.debug("Formatting using {}", formatter.getName());
-				message.setFormattedPayload(scriptFormatter.formatMessage(formatter, message));
-				message.setPrettyPayload(scriptFormatter.formatMessage(formatter, message, true));
-			}
-			else
-			{
-				// Use the raw payload to make sure any formatting/encoding that is applied is correct
-				message.setFormattedPayload(FormattingUtils.checkAndFormatText(formatter, message.getRawPayload()));
-				message.setPrettyPayload(message.getFormattedPayload());
+				logger.debug("Found native formatter {}", nativeFormatter.getFormatterDetails().getID());
+				nativeFormatters.put(nativeFormatter.getFormatterDetails().getID(), nativeFormatter);
 			}
 		}
+		
+		return nativeFormatters;
+	}
+	
+	/**
+	 * Gets the compiled version of the given function-based formatter, compiling it if needed.
+	 * 
+	 * @param formatter The formatter details
+	 * 
+	 * @return The compiled formatter
+	 */
+	public CompiledFormatter getCompiledFormatter(final FormatterDetails formatter)
+	{
+		final CompiledFormatter compiled = compiledFormatters.get(formatter);
+		
+		return compiled != null ? compiled : compileFormatter(formatter);
+	}
+	
+	/**
+	 * Compiles the given formatter (unless done in the meantime) and stores it for future.
+	 * 
+	 * @param formatter The formatter details
+	 * 
+	 * @return The compiled formatter
+	 */
+	private synchronized CompiledFormatter compileFormatter(final FormatterDetails formatter)
+	{
+		CompiledFormatter compiled = compiledFormatters.get(formatter);
+		
+		if (compiled == null)
+		{
+			compiled = FormatterCompiler.compile(formatter);
+			
+			final Map<FormatterDetails, CompiledFormatter> updated = new IdentityHashMap<>(compiledFormatters);
+			updated.put(formatter, compiled);
+			compiledFormatters = updated;
+		}
+		
+		return compiled;
+	}
+	
+	/**
+	 * Drops all compiled formatters, so that they get recompiled on next use.
+	 * Needed when formatters have been edited in place.
+	 */
+	public synchronized void clearCompiledFormatters()
+	{
+		compiledFormatters = new IdentityHashMap<>();
 	}
 
+	public FormattingMode getFormattingMode()
+	{
+		return formattingMode;
+	}
+
+	public void setFormattingMode(final FormattingMode formattingMode)
+	{
+		this.formattingMode = formattingMode;
+	}
+
+	/**
+	 * Creates details of the native formatters available on the classpath.
+	 * 
+	 * @return List of native formatters
+	 */
+	public static List<FormatterDetails> createDefaultNativeFormatters()
+	{
+		final List<FormatterDetails> defaultNativeFormatters = new ArrayList<>();
+		
+		for (final NativeFormatter nativeFormatter : getNativeFormatters().values())
+		{
+			defaultNativeFormatters.add(nativeFormatter.getFormatterDetails());
+		}
+		
+		return defaultNativeFormatters;
+	}
+	
 	public static List<FormatterDetails> createDefaultScriptFormatters()
 	{
 		final List<FormatterDetails> defaultScriptFormatters = new ArrayList<>();
@@ -0,0 +1,57 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+
+/**
+ * When received messages get formatted.
+ */
+public enum FormattingMode
+{
+	/** Format each message as soon as it is received. */
+	ON_RECEIVE,
+	
+	/** Format messages only when their formatted content is first needed, e.g. to display or search them. */
+	ON_DEMAND,
+	
+	/** Format on demand when using script-based formatters, and on receive otherwise. */
+	SCRIPTS_ON_DEMAND;
+	
+	/**
+	 * Checks whether formatting with the given formatter should be deferred.
+	 * 
+	 * @param formatter The formatter to check
+	 * 
+	 * @return True if messages should be formatted on demand
+	 */
+	public boolean isDeferred(final FormatterDetails formatter)
+	{
+		switch (this)
+		{
+			case ON_DEMAND:
+				return true;
+			case SCRIPTS_ON_DEMAND:
+				return FormattingUtils.isScriptBased(formatter);
+			default:
+				return false;
+		}
+	}
+}
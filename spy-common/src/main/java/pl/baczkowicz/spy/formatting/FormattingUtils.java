@@ -65,6 +65,8 @@ public class FormattingUtils
 	
 	public static final String SCRIPT_PREFIX = "script";
 	
+	public static final String NATIVE_PREFIX = "native";
+	
 	/** Diagnostic logger. */
 	private final static Logger logger = LoggerFactory.getLogger(FormattingUtils.class);
 
@@ -475,6 +477,11 @@ public class FormattingUtils
 		return formatter.getID().startsWith(SCRIPT_PREFIX) || formatter.getID().startsWith(DEFAULT_PREFIX + SCRIPT_PREFIX);
 	}
 	
+	public static boolean isNative(final FormatterDetails formatter)
+	{
+		return formatter.getID().startsWith(DEFAULT_PREFIX + NATIVE_PREFIX);
+	}
+	
 	public static List<FormatterDetails> createBaseFormatters()
 	{
 		final List<FormatterDetails> baseFormatters = new ArrayList<>();
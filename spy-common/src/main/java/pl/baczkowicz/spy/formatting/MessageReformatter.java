@@ -0,0 +1,257 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+/**
+ * Re-formats messages in the background when the formatter changes.
+ * 
+ * Items are split into batches, which are picked up in order by a number of
+ * workers, so items at the start of the list (e.g. the ones on screen) are
+ * formatted first. Each finished batch is passed to a callback, e.g. to
+ * update the UI. Starting a new re-formatting cancels the previous one.
+ */
+public class MessageReformatter
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(MessageReformatter.class);
+	
+	/** Default number of items per batch. */
+	public static final int DEFAULT_BATCH_SIZE = 50;
+	
+	/** Worker pool shared by all reformatters created without an executor. */
+	private static ExecutorService sharedExecutor;
+	
+	/** Executor running the workers. */
+	private final Executor executor;
+	
+	/** Number of workers per re-formatting. */
+	private final int workers;
+	
+	/** Number of items per batch. */
+	private final int batchSize;
+	
+	/** The most recently started re-formatting. */
+	private ReformattingTask<?> currentTask;
+
+	/**
+	 * Creates a reformatter using the shared worker pool.
+	 */
+	public MessageReformatter()
+	{
+		this(getSharedExecutor(), Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Creates a reformatter.
+	 * 
+	 * @param executor Executor to run the workers on
+	 * @param workers Number of workers per re-formatting
+	 * @param batchSize Number of items per batch
+	 */
+	public MessageReformatter(final Executor executor, final int workers, final int batchSize)
+	{
+		this.executor = executor;
+		this.workers = Math.max(1, workers);
+		this.batchSize = Math.max(1, batchSize);
+	}
+	
+	/**
+	 * Gets the shared worker pool (created on first use).
+	 * 
+	 * @return The shared executor
+	 */
+	private static synchronized ExecutorService getSharedExecutor()
+	{
+		if (sharedExecutor == null)
+		{
+			final AtomicInteger threadCount = new AtomicInteger();
+			
+			sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> 
+			{
+				final Thread thread = new Thread(runnable, "Formatting worker " + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			});
+		}
+		
+		return sharedExecutor;
+	}
+	
+	/**
+	 * Starts re-formatting the messages of the given items, cancelling any
+	 * re-formatting still in progress.
+	 * 
+	 * @param items Items to re-format, most important first
+	 * @param messageGetter Gets the message of an item
+	 * @param formattingManager The formatting manager to use
+	 * @param formatter The new formatter
+	 * @param batchFormatted Called (on a worker thread) with the task and each batch of re-formatted items
+	 * 
+	 * @return The started task
+	 */
+	public synchronized <I> ReformattingTask<I> reformat(final List<I> items, final Function<I, ? extends FormattedMessage> messageGetter, 
+			final FormattingManager formattingManager, final FormatterDetails formatter, final BiConsumer<ReformattingTask<I>, List<I>> batchFormatted)
+	{
+		cancel();
+		
+		final ReformattingTask<I> task = new ReformattingTask<I>(items, messageGetter, formattingManager, formatter, batchFormatted, batchSize);
+		currentTask = task;
+		
+		final int batches = (items.size() + batchSize - 1) / batchSize;
+		for (int i = 0; i < Math.min(workers, batches); i++)
+		{
+			executor.execute(task);
+		}
+		
+		logger.debug("Re-formatting {} item(s) with {}", items.size(), formatter == null ? null : formatter.getName());
+		return task;
+	}
+	
+	/**
+	 * Cancels the re-formatting in progress, if any.
+	 */
+	public synchronized void cancel()
+	{
+		if (currentTask != null)
+		{
+			currentTask.cancel();
+			currentTask = null;
+		}
+	}
+	
+	/**
+	 * A single re-formatting, run by one or more workers.
+	 */
+	public static class ReformattingTask<I> implements Runnable
+	{
+		private final List<I> items;
+		
+		private final Function<I, ? extends FormattedMessage> messageGetter;
+		
+		private final FormattingManager formattingManager;
+		
+		private final FormatterDetails formatter;
+		
+		private final BiConsumer<ReformattingTask<I>, List<I>> batchFormatted;
+		
+		private final int batchSize;
+		
+		/** Start of the next batch to pick up. */
+		private final AtomicInteger nextBatch = new AtomicInteger();
+		
+		/** Number of items formatted so far. */
+		private final AtomicInteger formatted = new AtomicInteger();
+		
+		private volatile boolean cancelled;
+		
+		ReformattingTask(final List<I> items, final Function<I, ? extends FormattedMessage> messageGetter, final FormattingManager formattingManager, 
+				final FormatterDetails formatter, final BiConsumer<ReformattingTask<I>, List<I>> batchFormatted, final int batchSize)
+		{
+			this.items = items;
+			this.messageGetter = messageGetter;
+			this.formattingManager = formattingManager;
+			this.formatter = formatter;
+			this.batchFormatted = batchFormatted;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public void run()
+		{
+			int start;
+			while (!cancelled && (start = nextBatch.getAndAdd(batchSize)) < items.size())
+			{
+				final List<I> batch = items.subList(start, Math.min(start + batchSize, items.size()));
+				
+				for (final I item : batch)
+				{
+					final FormattedMessage message = messageGetter.apply(item);
+					
+					// Checked under the message's lock, as a newer re-formatting might have got to the message while waiting for it
+					synchronized (message)
+					{
+						if (cancelled)
+						{
+							return;
+						}
+						
+						formattingManager.formatMessage(message, formatter);
+					}
+				}
+				
+				formatted.addAndGet(batch.size());
+				
+				if (!cancelled)
+				{
+					batchFormatted.accept(this, batch);
+				}
+			}
+		}
+		
+		/**
+		 * Stops the workers after the messages they are currently formatting;
+		 * workers waiting for a message's lock leave the message as it is.
+		 */
+		public void cancel()
+		{
+			cancelled = true;
+		}
+		
+		public boolean isCancelled()
+		{
+			return cancelled;
+		}
+		
+		/**
+		 * Checks whether all items have been re-formatted.
+		 * 
+		 * @return True if finished
+		 */
+		public boolean isDone()
+		{
+			return formatted.get() == items.size();
+		}
+		
+		public int getFormattedCount()
+		{
+			return formatted.get();
+		}
+		
+		public FormatterDetails getFormatter()
+		{
+			return formatter;
+		}
+	}
+}
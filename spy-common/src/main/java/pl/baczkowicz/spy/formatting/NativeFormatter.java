@@ -0,0 +1,56 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+
+/**
+ * Formatter implemented in Java, made available as one of the default
+ * formatters. Implementations are discovered with the ServiceLoader, and need
+ * to be safe to use from multiple threads.
+ */
+public interface NativeFormatter
+{
+	/**
+	 * Gets the details of the formatter, as shown on the list of formatters.
+	 * The ID should start with the default and native prefixes.
+	 * 
+	 * @return The formatter details
+	 */
+	FormatterDetails getFormatterDetails();
+	
+	/**
+	 * Formats the given payload.
+	 * 
+	 * @param payload The raw payload
+	 * 
+	 * @return The formatted text
+	 */
+	String format(final byte[] payload);
+	
+	/**
+	 * Formats the given payload in a more readable way, e.g. with indentation.
+	 * 
+	 * @param payload The raw payload
+	 * 
+	 * @return The formatted text
+	 */
+	String formatPretty(final byte[] payload);
+}
@@ -0,0 +1,297 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import jdk.nashorn.api.scripting.JSObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.scripts.BaseScriptManager;
+import pl.baczkowicz.spy.scripts.Script;
+
+/**
+ * Runs a formatter script on multiple threads at the same time.
+ * 
+ * The script is compiled once and evaluated in a pool of separate contexts,
+ * each with its own globals. A thread formatting a message takes a context
+ * out of the pool for the duration of the call, and the message is passed
+ * to the format/pretty functions as an argument. For older scripts, which
+ * read it from the global "receivedMessage" variable, it is also set in the
+ * context being used.
+ */
+public class PooledScriptFormatter
+{
+	/** Diagnostic logger. */
+	private final static Logger logger = LoggerFactory.getLogger(PooledScriptFormatter.class);
+	
+	/** Variable under which Nashorn keeps its global object in plain bindings. */
+	private static final String NASHORN_GLOBAL = "nashorn.global";
+
+	/** The engine the script has been compiled with. */
+	private final ScriptEngine engine;
+	
+	/** The compiled script. */
+	private final CompiledScript compiledScript;
+	
+	/** Variables (e.g. logger) available to the script, copied into each context. */
+	private final Map<String, Object> variables = new HashMap<>();
+	
+	/** Contexts not in use. */
+	private final BlockingQueue<FormatterContext> idleContexts = new LinkedBlockingQueue<>();
+	
+	/** Number of contexts created so far. */
+	private final AtomicInteger createdContexts = new AtomicInteger();
+	
+	/** Maximum number of contexts. */
+	private final int maxContexts;
+	
+	/** Whether the script has a pretty function. */
+	private final boolean prettyAvailable;
+
+	/**
+	 * Compiles the given script and creates the first context.
+	 * 
+	 * @param script The formatter script (with its engine set up)
+	 * @param maxContexts Maximum number of contexts, i.e. threads formatting at the same time
+	 * 
+	 * @throws ScriptException Thrown when the script cannot be compiled or evaluated
+	 */
+	public PooledScriptFormatter(final Script script, final int maxContexts) throws ScriptException
+	{
+		this.engine = script.getScriptEngine();
+		this.maxContexts = Math.max(1, maxContexts);
+		
+		if (!(engine instanceof Compilable))
+		{
+			throw new ScriptException("Script engine doesn't support compilation");
+		}
+		
+		compiledScript = ((Compilable) engine).compile(script.getScriptContent());
+		
+		final Bindings engineVariables = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+		for (final String name : engineVariables.keySet())
+		{
+			if (!NASHORN_GLOBAL.equals(name) && !BaseScriptManager.RECEIVED_MESSAGE_PARAMETER.equals(name))
+			{
+				variables.put(name, engineVariables.get(name));
+			}
+		}
+		
+		// Report script errors straight away
+		final FormatterContext context = new FormatterContext();
+		createdContexts.incrementAndGet();
+		idleContexts.add(context);
+		
+		prettyAvailable = context.prettyFunction != null;
+	}
+	
+	/**
+	 * Formats the given message with the format function.
+	 * 
+	 * @param message The message to format
+	 * 
+	 * @return The formatted text
+	 * 
+	 * @throws NoSuchMethodException Thrown when the script has no format function
+	 * @throws ScriptException Thrown when the script fails
+	 */
+	public String format(final FormattedMessage message) throws NoSuchMethodException, ScriptException
+	{
+		return invoke(message, false);
+	}
+	
+	/**
+	 * Formats the given message with the pretty function.
+	 * 
+	 * @param message The message to format
+	 * 
+	 * @return The formatted text
+	 * 
+	 * @throws NoSuchMethodException Thrown when the script has no pretty function
+	 * @throws ScriptException Thrown when the script fails
+	 */
+	public String pretty(final FormattedMessage message) throws NoSuchMethodException, ScriptException
+	{
+		return invoke(message, true);
+	}
+	
+	public boolean isPrettyAvailable()
+	{
+		return prettyAvailable;
+	}
+	
+	/**
+	 * Gets the number of contexts created so far.
+	 * 
+	 * @return Number of contexts
+	 */
+	public int getContextCount()
+	{
+		return createdContexts.get();
+	}
+	
+	private String invoke(final FormattedMessage message, final boolean pretty) throws NoSuchMethodException, ScriptException
+	{
+		final FormatterContext context = acquire();
+		
+		try
+		{
+			return context.invoke(pretty ? context.prettyFunction : context.formatFunction, message, 
+					pretty ? ScriptBasedFormatter.PRETTY_FUNCTION_NAME : ScriptBasedFormatter.FORMAT_FUNCTION_NAME);
+		}
+		finally
+		{
+			idleContexts.add(context);
+		}
+	}
+	
+	/**
+	 * Takes an idle context, creating a new one if none is idle and the limit
+	 * hasn't been reached, or waiting for one otherwise.
+	 * 
+	 * @return The context to use
+	 * 
+	 * @throws ScriptException Thrown when a new context cannot be created
+	 */
+	private FormatterContext acquire() throws ScriptException
+	{
+		final FormatterContext idle = idleContexts.poll();
+		
+		if (idle != null)
+		{
+			return idle;
+		}
+		
+		if (createdContexts.incrementAndGet() <= maxContexts)
+		{
+			try
+			{
+				logger.debug("Creating formatter context {}", createdContexts.get());
+				return new FormatterContext();
+			}
+			catch (ScriptException | RuntimeException e)
+			{
+				createdContexts.decrementAndGet();
+				throw e;
+			}
+		}
+		
+		createdContexts.decrementAndGet();
+		
+		try
+		{
+			return idleContexts.take();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ScriptException("Interrupted while waiting for a formatter context");
+		}
+	}
+	
+	/**
+	 * The script evaluated in its own globals.
+	 */
+	private class FormatterContext
+	{
+		private final Bindings bindings;
+		
+		private final JSObject formatFunction;
+		
+		private final JSObject prettyFunction;
+		
+		FormatterContext() throws ScriptException
+		{
+			bindings = engine.createBindings();
+			bindings.putAll(variables);
+			
+			final ScriptContext context = new SimpleScriptContext();
+			context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+			context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+			
+			compiledScript.eval(context);
+			
+			formatFunction = getFunction(ScriptBasedFormatter.FORMAT_FUNCTION_NAME);
+			prettyFunction = getFunction(ScriptBasedFormatter.PRETTY_FUNCTION_NAME);
+			
+			// Run before / setup
+			final JSObject before = getFunction(BaseScriptManager.BEFORE_METHOD);
+			if (before != null)
+			{
+				try
+				{
+					before.call(null);
+				}
+				catch (RuntimeException e)
+				{
+					throw new ScriptException(e);
+				}
+			}
+		}
+		
+		private JSObject getFunction(final String name)
+		{
+			final Object value = bindings.get(name);
+			
+			return value instanceof JSObject && ((JSObject) value).isFunction() ? (JSObject) value : null;
+		}
+		
+		String invoke(final JSObject function, final FormattedMessage message, final String name) throws NoSuchMethodException, ScriptException
+		{
+			if (function == null)
+			{
+				throw new NoSuchMethodException(name);
+			}
+			
+			bindings.put(BaseScriptManager.RECEIVED_MESSAGE_PARAMETER, message);
+			
+			try
+			{
+				final Object result = function.call(null, message);
+				return result == null ? null : result.toString();
+			}
+			// Catch all - in case the script throws an undefined exception
+			catch (Exception e)
+			{
+				throw new ScriptException(e);
+			}
+			finally
+			{
+				bindings.remove(BaseScriptManager.RECEIVED_MESSAGE_PARAMETER);
+			}
+		}
+	}
+}
@@ -20,8 +20,8 @@
 
 package pl.baczkowicz.spy.formatting;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.script.ScriptException;
 
@@ -45,9 +45,15 @@ public class ScriptBasedFormatter
 	
 	private BaseScriptManager scriptManager;
 	
-	private Map<FormatterDetails, Script> formattingScripts = new HashMap<>();
+	private Map<FormatterDetails, Script> formattingScripts = new ConcurrentHashMap<>();
 	
-	private Map<FormatterDetails, Boolean> prettyFormattingAvailable = new HashMap<>();
+	private Map<FormatterDetails, Boolean> prettyFormattingAvailable = new ConcurrentHashMap<>();
+	
+	/** Compiled scripts, each with a pool of contexts for formatting on multiple threads. */
+	private Map<Script, PooledScriptFormatter> pooledFormatters = new ConcurrentHashMap<>();
+	
+	/** Maximum number of threads formatting with the same script at the same time. */
+	private final int maxContextsPerScript = Runtime.getRuntime().availableProcessors();
 		
 	public ScriptBasedFormatter(final BaseScriptManager scriptManager)
 	{
@@ -56,19 +62,30 @@ public class ScriptBasedFormatter
 
 	public Script getScript(final FormatterDetails formatter) throws ScriptException
 	{
-		Script script = formattingScripts.get(formatter);
+		final Script script = formattingScripts.get(formatter);
 		
-		if (script == null)
+		if (script != null)
 		{
-			addFormatter(formatter);
-			script = formattingScripts.get(formatter);
+			return script;
 		}
 		
-		return script;
+		// Only adding a missing script needs the lock (called for every message, so the lookup doesn't take it)
+		synchronized (this)
+		{
+			if (!formattingScripts.containsKey(formatter))
+			{
+				addFormatter(formatter);
+			}
+			
+			return formattingScripts.get(formatter);
+		}
 	}
 	
 	public void evaluate(final Script script)
 	{
+		// The script content might have changed - recompile on next use
+		pooledFormatters.remove(script);
+		
 		// Evaluate it
 		scriptManager.runScript(script, false);
 		
@@ -83,7 +100,7 @@ public class ScriptBasedFormatter
 		}
 	}
 	
-	public void addFormatter(final FormatterDetails formatter) throws ScriptException
+	public synchronized void addFormatter(final FormatterDetails formatter) throws ScriptException
 	{
 		final long start = TimeUtils.getMonotonicTime();					
 		
@@ -102,22 +119,43 @@ public class ScriptBasedFormatter
 		logger.debug("Adding formatter {} took {} ms", formatter.getName(), (end - start));
 	}
 	
-	private String formatMessageWithFunction(final FormatterDetails formatter, final FormattedMessage message, final String functionName) 
-			throws ScriptException, NoSuchMethodException
+	/**
+	 * Gets the pooled formatter for the given script, compiling it if needed.
+	 * 
+	 * @param script The formatter script
+	 * 
+	 * @return The pooled formatter
+	 * 
+	 * @throws ScriptException Thrown when the script cannot be compiled or evaluated
+	 */
+	private PooledScriptFormatter getPooledFormatter(final Script script) throws ScriptException
 	{
-		Script script = formattingScripts.get(formatter);
+		PooledScriptFormatter pooledFormatter = pooledFormatters.get(script);
 		
-		if (script == null)
+		if (pooledFormatter == null)
 		{
-			logger.debug("Formatting script not found");
-			addFormatter(formatter);
-			script = formattingScripts.get(formatter);
+			synchronized (script)
+			{
+				pooledFormatter = pooledFormatters.get(script);
+				
+				if (pooledFormatter == null)
+				{
+					pooledFormatter = new PooledScriptFormatter(script, maxContextsPerScript);
+					pooledFormatters.put(script, pooledFormatter);
+				}
+			}
 		}
 		
-		logger.trace("Setting variable {} on {} with {}", BaseScriptManager.RECEIVED_MESSAGE_PARAMETER, script, message);
-		scriptManager.setVariable(script, BaseScriptManager.RECEIVED_MESSAGE_PARAMETER, message);		
+		return pooledFormatter;
+	}
 	
-		return (String) scriptManager.invokeFunction(script, functionName);
+	private String formatMessageWithFunction(final FormatterDetails formatter, final FormattedMessage message, final boolean pretty) 
+			throws ScriptException, NoSuchMethodException
+	{
+		final PooledScriptFormatter pooledFormatter = getPooledFormatter(getScript(formatter));
+		
+		logger.trace("Formatting {} with {}", message, formatter.getName());
+		return pretty ? pooledFormatter.pretty(message) : pooledFormatter.format(message);
 	}
 	
 	public String formatMessage(final FormatterDetails formatter, final FormattedMessage message)
@@ -136,7 +174,7 @@ public class ScriptBasedFormatter
 //		
 //			final String functionName = FORMAT_FUNCTION_NAME;
 //			return (String) scriptManager.invokeFunction(script, functionName);
-			return formatMessageWithFunction(formatter, message, FORMAT_FUNCTION_NAME);
+			return formatMessageWithFunction(formatter, message, false);
 		}
 		catch (NoSuchMethodException | ScriptException e)
 		{
@@ -165,7 +203,7 @@ public class ScriptBasedFormatter
 //			
 //				final String functionName = PRETTY_FUNCTION_NAME;
 //				return (String) scriptManager.invokeFunction(script, functionName);
-				return formatMessageWithFunction(formatter, message, PRETTY_FUNCTION_NAME);
+				return formatMessageWithFunction(formatter, message, true);
 			}
 			catch (NoSuchMethodException e)
 			{
@@ -22,20 +22,47 @@ package pl.baczkowicz.spy.messages;
 import java.util.Date;
 
 import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.storage.PayloadArena;
+import pl.baczkowicz.spy.storage.PayloadCompressor;
+import pl.baczkowicz.spy.storage.PayloadInterner;
 
 /**
  * Represents a formatted message, e.g. received on a topic.
  */
 public class FormattedMessage extends BaseMessage
 {	
+	/** Approximate size of a message object (with its date and other small fields), excluding the payloads. */
+	private static final int MESSAGE_OVERHEAD = 128;
+	
+	/** Approximate size of an array header. */
+	private static final int ARRAY_OVERHEAD = 16;
+	
+	/** Approximate size of a string object, excluding its character array. */
+	private static final int STRING_OVERHEAD = 24;
+	
 	/** The first matching subscription. */ 
 	private String subscription;
 
 	private FormatterDetails lastUsedFormatter;
 	
+	/** Formatter to apply when the formatted payload is first needed (null if nothing pending). */
+	private volatile FormatterDetails pendingFormatter;
+	
+	/** Formatting manager to apply the pending formatter with. */
+	private FormattingManager pendingFormattingManager;
+	
+	/** Set while the formatted and pretty payloads are being replaced; readers then wait for the message's lock. */
+	private volatile boolean formatting;
+	
+	/** Formatted payload; when not set, the plain payload is used (computed on first access). */
 	private String formattedPayload;
 
+	/** Pretty payload; when not set, the formatted payload is used. */
 	private String prettyPayload;
+	
+	/** Notified when the estimated size might have changed, e.g. the store accounting for this message's memory (optional). */
+	private volatile MessageSizeListener sizeListener;
 
 	public FormattedMessage(final long id, final String topic)
 	{
@@ -64,7 +91,16 @@ public class FormattedMessage extends BaseMessage
 	
 	public String getFormattedPayload()
 	{
-		return formattedPayload;
+		if (isFormattingInProgress())
+		{
+			synchronized (this)
+			{
+				formatIfPending();
+				return formattedPayload != null ? formattedPayload : getPayload();
+			}
+		}
+		
+		return formattedPayload != null ? formattedPayload : getPayload();
 	}
 
 	public void setFormattedPayload(final String formattedPayload)
@@ -74,7 +110,120 @@ public class FormattedMessage extends BaseMessage
 
 	public void setLastUsedFormatter(final FormatterDetails formatter)
 	{
-		this.lastUsedFormatter = formatter;		
+		this.lastUsedFormatter = formatter;
+	}
+	
+	/**
+	 * Marks the formatted and pretty payloads as being replaced - to be
+	 * called while holding the message's lock. Until finishFormatting() is
+	 * called, readers wait for the lock rather than see a half-formatted
+	 * message.
+	 */
+	public void startFormatting()
+	{
+		this.formatting = true;
+	}
+	
+	/**
+	 * Marks formatting as complete, dropping any pending formatter - only
+	 * now that both payloads are set.
+	 */
+	public void finishFormatting()
+	{
+		this.pendingFormattingManager = null;
+		this.pendingFormatter = null;
+		this.formatting = false;
+	}
+	
+	/**
+	 * Defers formatting this message with the given formatter until its
+	 * formatted or pretty payload is first needed.
+	 * 
+	 * @param formattingManager The formatting manager to use
+	 * @param formatter The formatter to apply
+	 */
+	public void deferFormatting(final FormattingManager formattingManager, final FormatterDetails formatter)
+	{
+		if (formatter.equals(lastUsedFormatter))
+		{
+			return;
+		}
+		
+		this.pendingFormattingManager = formattingManager;
+		this.pendingFormatter = formatter;
+	}
+	
+	/**
+	 * Checks if formatting of this message has been deferred and not applied yet.
+	 * 
+	 * @return True if formatting is pending
+	 */
+	public boolean isFormattingPending()
+	{
+		return pendingFormatter != null;
+	}
+	
+	/**
+	 * Checks if the payloads can't be read without the message's lock, i.e.
+	 * formatting is either pending or in progress.
+	 * 
+	 * @return True if formatting is pending or in progress
+	 */
+	private boolean isFormattingInProgress()
+	{
+		return pendingFormatter != null || formatting;
+	}
+	
+	/**
+	 * Applies the deferred formatter, if any - to be called while holding the message's lock.
+	 */
+	private void formatIfPending()
+	{
+		// Holding the lock while formatting is in progress means this thread is the one formatting
+		if (formatting)
+		{
+			return;
+		}
+		
+		final FormatterDetails formatter = pendingFormatter;
+		final FormattingManager formattingManager = pendingFormattingManager;
+		
+		if (formatter != null && formattingManager != null)
+		{
+			formattingManager.formatMessage(this, formatter);
+		}
+	}
+	
+	/**
+	 * Clears the last used formatter and any cached formatted representations,
+	 * so that the plain payload is used until the message is formatted again.
+	 */
+	public void clearFormatting()
+	{
+		this.pendingFormatter = null;
+		this.pendingFormattingManager = null;
+		this.lastUsedFormatter = null;
+		this.formattedPayload = null;
+		this.prettyPayload = null;
+	}
+	
+	/**
+	 * Copies the subscription and the formatting state (without computing anything) from the given message.
+	 * 
+	 * @param message The message to copy from
+	 */
+	protected void copyFormatting(final FormattedMessage message)
+	{
+		// Not while the other message is being formatted
+		synchronized (message)
+		{
+			this.subscription = message.subscription;
+			this.lastUsedFormatter = message.lastUsedFormatter;
+			this.pendingFormattingManager = message.pendingFormattingManager;
+			this.pendingFormatter = message.pendingFormatter;
+			this.formattedPayload = message.formattedPayload;
+			this.prettyPayload = message.prettyPayload;
+		}
 	}
 
 	public void setPrettyPayload(final String prettyPayload)
@@ -84,6 +233,243 @@ public class FormattedMessage extends BaseMessage
 	
 	public String getPrettyPayload()
 	{
-		return prettyPayload;
+		if (isFormattingInProgress())
+		{
+			synchronized (this)
+			{
+				formatIfPending();
+				return prettyPayload != null ? prettyPayload : getFormattedPayload();
+			}
+		}
+		
+		return prettyPayload != null ? prettyPayload : getFormattedPayload();
+	}
+	
+	/**
+	 * Estimates the memory used by this message - the object itself, its
+	 * topic, raw and decoded payloads and their formatted and pretty copies.
+	 * 
+	 * @return Estimated size in bytes
+	 */
+	public long getEstimatedSize()
+	{
+		final String payload = getDecodedPayload();
+		
+		long size = MESSAGE_OVERHEAD + estimateSize(getTopic()) + estimateRawPayloadSize() + estimateSize(payload);
+		
+		// Formatted and pretty payloads are often the same string as the payload
+		if (formattedPayload != payload)
+		{
+			size = size + estimateSize(formattedPayload);
+		}
+		
+		if (prettyPayload != payload && prettyPayload != formattedPayload)
+		{
+			size = size + estimateSize(prettyPayload);
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * Estimates the memory used by parts of this message shared with other
+	 * views of the same message (e.g. the payload). These are included in
+	 * getEstimatedSize, but a store holding several views of the message can
+	 * count them once with retainSharedSize and releaseSharedSize. Nothing is
+	 * shared by default.
+	 * 
+	 * @return Estimated size in bytes
+	 */
+	public long getEstimatedSharedSize()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Takes a reference on the parts of this message shared with other views
+	 * of the same message.
+	 * 
+	 * @return Bytes to count for the shared parts - their estimated size for the first reference, 0 otherwise
+	 */
+	public long retainSharedSize()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Releases a reference taken with retainSharedSize.
+	 * 
+	 * @return Bytes no longer counted for the shared parts - what was counted when the last reference is released, 0 otherwise
+	 */
+	public long releaseSharedSize()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Re-estimates the size of the parts of this message shared with other
+	 * views of the same message (if a reference has been taken on them).
+	 * 
+	 * @return Change in bytes counted for the shared parts
+	 */
+	public long updateSharedSize()
+	{
+		return 0;
+	}
+	
+	public MessageSizeListener getSizeListener()
+	{
+		return sizeListener;
+	}
+
+	public void setSizeListener(final MessageSizeListener sizeListener)
+	{
+		this.sizeListener = sizeListener;
+	}
+	
+	/**
+	 * Lets the size listener (if any) know that the estimated size of this message might have changed.
+	 */
+	public void notifySizeChanged()
+	{
+		final MessageSizeListener listener = sizeListener;
+		
+		if (listener != null)
+		{
+			listener.messageSizeChanged(this);
+		}
+	}
+	
+	/**
+	 * Estimates the memory used by the raw payload.
+	 * 
+	 * @return Estimated size in bytes
+	 */
+	protected long estimateRawPayloadSize()
+	{
+		return estimateSize(getRawPayload());
+	}
+	
+	/**
+	 * Moves the payload of this message to the given off-heap arena (if not
+	 * there already) and takes a reference to it, dropping on-heap copies of
+	 * the payload. Messages keep their payload on the heap by default.
+	 * 
+	 * @param arena The arena to store the payload in
+	 */
+	public void retainInArena(final PayloadArena arena)
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Releases a reference to the payload taken with retainInArena. The
+	 * payload is removed from the arena when no references are left.
+	 */
+	public void releaseFromArena()
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Compresses the payload of this message with the given compressor (if
+	 * not compressed already), dropping on-heap copies of the payload.
+	 * Messages keep their payload uncompressed by default.
+	 * 
+	 * @param compressor The compressor to use
+	 */
+	public void compressPayload(final PayloadCompressor compressor)
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Removes the decompressed copy of the payload from the compressor's
+	 * cache (if there), e.g. when the message is no longer stored.
+	 */
+	public void evictDecompressedPayload()
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Replaces the payload of this message with the copy shared by all
+	 * messages with the same payload and takes a reference to it, dropping
+	 * on-heap copies of the payload. Messages keep their own payload by default.
+	 * 
+	 * @param interner The interner holding the shared payloads
+	 */
+	public void internPayload(final PayloadInterner interner)
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Releases a reference to the shared payload taken with internPayload.
+	 */
+	public void releaseInternedPayload()
+	{
+		// Not supported by default
+	}
+	
+	/**
+	 * Gets the length of the raw payload (without decompressing it).
+	 * 
+	 * @return Length in bytes
+	 */
+	public int getPayloadLength()
+	{
+		final byte[] payload = getRawPayload();
+		return payload == null ? 0 : payload.length;
+	}
+	
+	/**
+	 * Gets the length of the raw payload as stored, e.g. after compression.
+	 * 
+	 * @return Length in bytes
+	 */
+	public int getStoredPayloadLength()
+	{
+		return getPayloadLength();
+	}
+	
+	/**
+	 * Drops the formatted and pretty payloads if they are just copies of the
+	 * payload (or of each other), as they can be worked out from it.
+	 */
+	protected void dropPayloadCopies()
+	{
+		final String payload = getDecodedPayload();
+		
+		if (prettyPayload != null && prettyPayload.equals(formattedPayload != null ? formattedPayload : payload))
+		{
+			prettyPayload = null;
+		}
+		
+		if (formattedPayload != null && formattedPayload.equals(payload))
+		{
+			formattedPayload = null;
+		}
+	}
+	
+	/**
+	 * Gets the payload string already held by this message, without creating
+	 * one if it is not there yet.
+	 * 
+	 * @return The payload string, or null if not decoded
+	 */
+	protected String getDecodedPayload()
+	{
+		return getPayload();
+	}
+	
+	protected static long estimateSize(final String value)
+	{
+		return value == null ? 0 : STRING_OVERHEAD + ARRAY_OVERHEAD + 2 * value.length();
+	}
+	
+	protected static long estimateSize(final byte[] value)
+	{
+		return value == null ? 0 : ARRAY_OVERHEAD + value.length;
 	}
 }
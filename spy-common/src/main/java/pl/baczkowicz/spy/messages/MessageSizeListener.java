@@ -0,0 +1,36 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.messages;
+
+/**
+ * Notified when the estimated size of a message might have changed, e.g.
+ * when it gets formatted after being stored.
+ */
+public interface MessageSizeListener
+{
+	/**
+	 * Called when the estimated size of the given message might have changed.
+	 * This can be called while holding the message's lock, so implementations
+	 * are expected to only take note of the message, not to re-estimate its size.
+	 * 
+	 * @param message The message
+	 */
+	void messageSizeChanged(final FormattedMessage message);
+}
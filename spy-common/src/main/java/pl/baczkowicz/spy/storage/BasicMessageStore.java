@@ -65,6 +65,11 @@ public class BasicMessageStore<T> implements MessageStore<T>
 		return messageList.getMessages();
 	}
 	
+	public List<T> getMessagesSnapshot()
+	{
+		return messageList.getSnapshot();
+	}
+	
 	public MessageList<T> getMessageList()
 	{
 		return messageList;
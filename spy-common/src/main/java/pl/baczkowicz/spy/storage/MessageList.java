@@ -19,15 +19,13 @@
  */
 package pl.baczkowicz.spy.storage;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Class for storing received messages.
+ * Class for storing received messages (newest first), backed by a circular buffer.
  */
 public class MessageList<T>
 {
@@ -36,8 +34,12 @@ public class MessageList<T>
 	public static final int DEFAULT_MAX_SIZE = 5000;
 	
 	public static final int DEFAULT_MIN_MESSAGES_PER_TOPIC = 10;
+	
+	/** Initial capacity of the buffer - grows up to the max size as messages arrive. */
+	private static final int INITIAL_CAPACITY = 1024;
 
-	private final List<T> messages;
+	/** Stored messages, newest first. */
+	private final RingBufferList<T> messages;
 
 	private final int maxSize;
 
@@ -50,7 +52,7 @@ public class MessageList<T>
 		this.name = name;
 		this.preferredSize = preferredSize;
 		this.maxSize = maxSize;
-		this.messages = Collections.synchronizedList(new ArrayList<T>());
+		this.messages = new RingBufferList<T>(Math.min(Math.max(maxSize, 1), INITIAL_CAPACITY));
 	}
 	
 	public void clear()
@@ -117,6 +119,27 @@ public class MessageList<T>
 	{
 		return messages;
 	}
+	
+	/**
+	 * Replaces all stored messages, e.g. when merging other messages into the list.
+	 * 
+	 * @param newMessages The new messages (newest first)
+	 */
+	protected void setMessages(final List<T> newMessages)
+	{
+		messages.setElements(newMessages);
+	}
+	
+	/**
+	 * Gets a consistent copy of the stored messages (newest first), which can
+	 * be iterated without blocking new messages from being stored.
+	 * 
+	 * @return Unmodifiable snapshot of the messages
+	 */
+	public List<T> getSnapshot()
+	{
+		return messages.snapshot();
+	}
 
 	public int getPreferredSize()
 	{
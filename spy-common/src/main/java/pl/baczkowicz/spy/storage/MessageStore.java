@@ -35,6 +35,14 @@ public interface MessageStore<T>
 	 */
 	List<T> getMessages();
 	
+	/**
+	 * Gets a snapshot of all messages stored in the store, which can be
+	 * iterated without blocking new messages from being stored.
+	 * 
+	 * @return Unmodifiable list of messages
+	 */
+	List<T> getMessagesSnapshot();
+	
 	/**
 	 * Checks if browsing filters are enabled.
 	 * 
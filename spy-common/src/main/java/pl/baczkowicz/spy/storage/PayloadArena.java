@@ -0,0 +1,492 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Off-heap storage for message payloads. Payloads are copied into segments
+ * of direct byte buffers and referred to by a handle, so that large message
+ * stores don't keep their payloads on the heap.
+ * 
+ * Payloads are appended to the current segment, and a segment is recycled
+ * once all payloads stored in it have been released. Messages are mostly
+ * evicted oldest first, so this normally happens segment by segment. Some
+ * payloads can however stay for much longer (e.g. the last messages kept for
+ * slow topics) - once less than a quarter of a segment is still in use, these
+ * are moved to the current segment (updating their handles), so that a few
+ * long-lived payloads don't pin whole segments.
+ * 
+ * Payloads of evicted messages can be released once their owner is garbage
+ * collected, so that they can still be read (e.g. while displayed) without
+ * copying them back onto the heap.
+ */
+public class PayloadArena
+{
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+	
+	/** Maximum number of released segments kept for reuse. */
+	private static final int MAX_FREE_SEGMENTS = 2;
+	
+	/** Segments with less than 1/COMPACTION_RATIO of their space in use get compacted. */
+	private static final int COMPACTION_RATIO = 4;
+	
+	private static final int INITIAL_HANDLES = 1024;
+
+	private final int segmentSize;
+	
+	/** Segments by their ID; released segments leave a null slot for reuse. */
+	private final List<Segment> segments = new ArrayList<>();
+	
+	/** IDs of released segments. */
+	private final Deque<Integer> freeSegmentIds = new ArrayDeque<>();
+	
+	/** Buffers of released segments, kept for reuse. */
+	private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+	
+	/** Location (segment ID and offset) of the payload for each handle; -1 if released. */
+	private long[] locations = new long[INITIAL_HANDLES];
+	
+	/** Length of the payload for each handle. */
+	private int[] lengths = new int[INITIAL_HANDLES];
+	
+	/** Number of handles ever used. */
+	private int handleCount;
+	
+	/** Released handles, for reuse. */
+	private int[] freeHandles = new int[INITIAL_HANDLES];
+	
+	/** Number of released handles. */
+	private int freeHandleCount;
+	
+	/** Segment payloads are currently appended to. */
+	private Segment current;
+	
+	/** Number of payload bytes currently stored. */
+	private long storedBytes;
+	
+	/** Number of bytes in all allocated segments. */
+	private long allocatedBytes;
+	
+	/** Number of payload bytes moved to compact segments. */
+	private long compactedBytes;
+	
+	/** Owners of payloads to release once garbage collected. */
+	private final ReferenceQueue<Object> unreachableOwners = new ReferenceQueue<>();
+	
+	/** Payloads to release once their owners are garbage collected (keeps the references reachable). */
+	private final Set<DeferredRelease> deferredReleases = new HashSet<>();
+	
+	public PayloadArena()
+	{
+		this(DEFAULT_SEGMENT_SIZE);
+	}
+	
+	public PayloadArena(final int segmentSize)
+	{
+		this.segmentSize = segmentSize;
+	}
+	
+	/**
+	 * Copies the given payload into the arena.
+	 * 
+	 * @param payload The payload to store
+	 * 
+	 * @return Handle of the stored payload
+	 */
+	public synchronized long store(final byte[] payload)
+	{
+		releaseUnreachable();
+		
+		final int handle = allocateHandle();
+		
+		locations[handle] = append(handle, payload.length, payload, null, 0);
+		lengths[handle] = payload.length;
+		storedBytes = storedBytes + payload.length;
+		
+		return handle;
+	}
+	
+	/**
+	 * Copies a stored payload back onto the heap.
+	 * 
+	 * @param handle Handle of the payload
+	 * @param length Length of the payload
+	 * 
+	 * @return The payload
+	 */
+	public synchronized byte[] load(final long handle, final int length)
+	{
+		final long location = locations[(int) handle];
+		final ByteBuffer buffer = segments.get(getSegmentId(location)).buffer.duplicate();
+		final byte[] payload = new byte[length];
+		
+		buffer.position(getOffset(location));
+		buffer.get(payload);
+		
+		return payload;
+	}
+	
+	/**
+	 * Releases a stored payload. Its space is reclaimed once all other
+	 * payloads in the same segment are released, or moved elsewhere when the
+	 * segment gets compacted.
+	 * 
+	 * @param handle Handle of the payload
+	 * @param length Length of the payload
+	 */
+	public synchronized void release(final long handle, final int length)
+	{
+		final Segment segment = segments.get(getSegmentId(locations[(int) handle]));
+		segment.payloads--;
+		segment.usedBytes = segment.usedBytes - length;
+		storedBytes = storedBytes - length;
+		releaseHandle((int) handle);
+		
+		if (segment != current)
+		{
+			retireSegment(segment);
+		}
+		else if (segment.payloads == 0)
+		{
+			// Nothing else is stored in it, so start filling it again
+			segment.buffer.clear();
+			segment.handleCount = 0;
+		}
+	}
+	
+	/**
+	 * Releases a stored payload once the given owner is garbage collected.
+	 * Until then, the payload can still be loaded.
+	 * 
+	 * @param owner The object the payload is read through
+	 * @param handle Handle of the payload
+	 * @param length Length of the payload
+	 * 
+	 * @return The pending release, to cancel if the payload is retained again
+	 */
+	public synchronized DeferredRelease releaseWhenUnreachable(final Object owner, final long handle, final int length)
+	{
+		final DeferredRelease release = new DeferredRelease(owner, unreachableOwners, handle, length);
+		deferredReleases.add(release);
+		
+		return release;
+	}
+	
+	/**
+	 * Cancels a pending release of a payload.
+	 * 
+	 * @param release The pending release
+	 */
+	public synchronized void cancelRelease(final DeferredRelease release)
+	{
+		if (deferredReleases.remove(release))
+		{
+			release.clear();
+		}
+	}
+	
+	/**
+	 * Releases payloads whose owners have been garbage collected.
+	 */
+	private void releaseUnreachable()
+	{
+		Reference<?> reference;
+		
+		while ((reference = unreachableOwners.poll()) != null)
+		{
+			final DeferredRelease release = (DeferredRelease) reference;
+			
+			if (deferredReleases.remove(release))
+			{
+				release(release.handle, release.length);
+			}
+		}
+	}
+	
+	/**
+	 * Releases the given segment (no longer appended to) if nothing is stored
+	 * in it, or compacts it if it is mostly unused.
+	 * 
+	 * @param segment The segment to check
+	 */
+	private void retireSegment(final Segment segment)
+	{
+		if (segment.payloads == 0)
+		{
+			releaseSegment(segment);
+		}
+		else if (segment.buffer.capacity() == segmentSize && segment.usedBytes < segmentSize / COMPACTION_RATIO)
+		{
+			compact(segment);
+		}
+	}
+	
+	/**
+	 * Appends a payload to the current segment, allocating a new one if needed.
+	 * 
+	 * @param handle Handle of the payload
+	 * @param length Length of the payload
+	 * @param payload The payload to copy (or null if copying from a segment)
+	 * @param source Segment to copy the payload from (if payload is null)
+	 * @param sourceOffset Offset of the payload in the source segment
+	 * 
+	 * @return Location of the payload
+	 */
+	private long append(final int handle, final int length, final byte[] payload, final ByteBuffer source, final int sourceOffset)
+	{
+		// Compacting the previous segment can use up space in the new one, so check again
+		while (current == null || current.buffer.remaining() < length)
+		{
+			final Segment previous = current;
+			current = allocateSegment(length);
+			
+			if (previous != null)
+			{
+				retireSegment(previous);
+			}
+		}
+		
+		final int offset = current.buffer.position();
+		
+		if (payload != null)
+		{
+			current.buffer.put(payload);
+		}
+		else
+		{
+			final ByteBuffer copied = source.duplicate();
+			copied.limit(sourceOffset + length).position(sourceOffset);
+			current.buffer.put(copied);
+		}
+		
+		current.addHandle(handle);
+		current.payloads++;
+		current.usedBytes = current.usedBytes + length;
+		
+		return ((long) current.id << 32) | offset;
+	}
+	
+	/**
+	 * Moves payloads still stored in the given segment to the current one, and releases the segment.
+	 * 
+	 * @param segment The segment to compact
+	 */
+	private void compact(final Segment segment)
+	{
+		for (int i = 0; i < segment.handleCount; i++)
+		{
+			final int handle = segment.handles[i];
+			final long location = locations[handle];
+			
+			// Skip handles released since, or already moved (e.g. reused and listed twice)
+			if (location < 0 || getSegmentId(location) != segment.id)
+			{
+				continue;
+			}
+			
+			final int length = lengths[handle];
+			
+			locations[handle] = append(handle, length, null, segment.buffer, getOffset(location));
+			compactedBytes = compactedBytes + length;
+		}
+		
+		releaseSegment(segment);
+	}
+	
+	private int allocateHandle()
+	{
+		if (freeHandleCount > 0)
+		{
+			return freeHandles[--freeHandleCount];
+		}
+		
+		if (handleCount == locations.length)
+		{
+			locations = Arrays.copyOf(locations, handleCount * 2);
+			lengths = Arrays.copyOf(lengths, handleCount * 2);
+		}
+		
+		return handleCount++;
+	}
+	
+	private void releaseHandle(final int handle)
+	{
+		locations[handle] = -1;
+		
+		if (freeHandleCount == freeHandles.length)
+		{
+			freeHandles = Arrays.copyOf(freeHandles, freeHandleCount * 2);
+		}
+		
+		freeHandles[freeHandleCount++] = handle;
+	}
+	
+	private static int getSegmentId(final long location)
+	{
+		return (int) (location >>> 32);
+	}
+	
+	private static int getOffset(final long location)
+	{
+		return (int) location;
+	}
+	
+	private Segment allocateSegment(final int minSize)
+	{
+		ByteBuffer buffer = null;
+		
+		if (minSize <= segmentSize)
+		{
+			buffer = freeBuffers.poll();
+		}
+		if (buffer == null)
+		{
+			buffer = ByteBuffer.allocateDirect(Math.max(minSize, segmentSize));
+			allocatedBytes = allocatedBytes + buffer.capacity();
+		}
+		
+		final Integer freeId = freeSegmentIds.poll();
+		final int id = freeId != null ? freeId : segments.size();
+		final Segment segment = new Segment(id, buffer);
+		
+		if (freeId != null)
+		{
+			segments.set(id, segment);
+		}
+		else
+		{
+			segments.add(segment);
+		}
+		
+		return segment;
+	}
+	
+	private void releaseSegment(final Segment segment)
+	{
+		segments.set(segment.id, null);
+		freeSegmentIds.add(segment.id);
+		
+		// Oversized buffers are not reused - their memory is reclaimed when garbage collected
+		if (segment.buffer.capacity() == segmentSize && freeBuffers.size() < MAX_FREE_SEGMENTS)
+		{
+			segment.buffer.clear();
+			freeBuffers.add(segment.buffer);
+		}
+		else
+		{
+			allocatedBytes = allocatedBytes - segment.buffer.capacity();
+		}
+	}
+	
+	/**
+	 * Gets the number of payload bytes currently stored.
+	 * 
+	 * @return Number of bytes
+	 */
+	public synchronized long getStoredBytes()
+	{
+		releaseUnreachable();
+		return storedBytes;
+	}
+	
+	/**
+	 * Gets the amount of direct memory held by the arena (including segments kept for reuse).
+	 * 
+	 * @return Number of bytes
+	 */
+	public synchronized long getAllocatedBytes()
+	{
+		releaseUnreachable();
+		return allocatedBytes;
+	}
+	
+	/**
+	 * Gets the number of payload bytes moved so far to compact segments.
+	 * 
+	 * @return Number of bytes
+	 */
+	public synchronized long getCompactedBytes()
+	{
+		return compactedBytes;
+	}
+	
+	/**
+	 * A payload to release once its owner is garbage collected.
+	 */
+	public static final class DeferredRelease extends PhantomReference<Object>
+	{
+		private final long handle;
+		
+		private final int length;
+		
+		private DeferredRelease(final Object owner, final ReferenceQueue<Object> queue, final long handle, final int length)
+		{
+			super(owner, queue);
+			this.handle = handle;
+			this.length = length;
+		}
+	}
+	
+	/**
+	 * A direct buffer with the number of payloads still stored in it, and the
+	 * handles of all payloads appended to it (in order).
+	 */
+	private static class Segment
+	{
+		private final int id;
+		
+		private final ByteBuffer buffer;
+		
+		private int payloads;
+		
+		private int usedBytes;
+		
+		private int[] handles = new int[64];
+		
+		private int handleCount;
+		
+		private Segment(final int id, final ByteBuffer buffer)
+		{
+			this.id = id;
+			this.buffer = buffer;
+		}
+		
+		private void addHandle(final int handle)
+		{
+			if (handleCount == handles.length)
+			{
+				handles = Arrays.copyOf(handles, handleCount * 2);
+			}
+			
+			handles[handleCount++] = handle;
+		}
+	}
+}
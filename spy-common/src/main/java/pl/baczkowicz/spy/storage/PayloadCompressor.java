@@ -0,0 +1,199 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses stored payloads above a size threshold (using Deflate at its
+ * fastest level), and decompresses them when needed. The most recently
+ * decompressed payloads are cached, as the same few messages are usually
+ * displayed over and over again.
+ */
+public class PayloadCompressor
+{
+	private final static Logger logger = LoggerFactory.getLogger(PayloadCompressor.class);
+	
+	public static final int DEFAULT_CACHE_SIZE = 32;
+	
+	public static final int BYTES_PER_KB = 1024;
+	
+	/** Deflaters are expensive to create, so one is kept per thread. */
+	private static final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+	
+	/** Inflaters are expensive to create, so one is kept per thread. */
+	private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>()
+	{
+		@Override
+		protected Inflater initialValue()
+		{
+			return new Inflater();
+		}
+	};
+	
+	/** Minimum payload size to compress. */
+	private final int threshold;
+	
+	/** Recently decompressed payloads, in access order (guarded by itself). */
+	private final Map<Object, byte[]> cache;
+	
+	/**
+	 * Creates the compressor.
+	 * 
+	 * @param threshold Minimum size of payloads to compress (in bytes)
+	 */
+	public PayloadCompressor(final int threshold)
+	{
+		this(threshold, DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates the compressor.
+	 * 
+	 * @param threshold Minimum size of payloads to compress (in bytes)
+	 * @param cacheSize Number of decompressed payloads to cache
+	 */
+	public PayloadCompressor(final int threshold, final int cacheSize)
+	{
+		this.threshold = threshold;
+		this.cache = new LinkedHashMap<Object, byte[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -3411632931426262180L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Object, byte[]> eldest)
+			{
+				return size() > cacheSize;
+			}
+		};
+	}
+	
+	/**
+	 * Compresses the given payload if it is above the threshold.
+	 * 
+	 * @param payload The payload to compress
+	 * 
+	 * @return The compressed payload, or null if below the threshold or not worth compressing
+	 */
+	public byte[] compress(final byte[] payload)
+	{
+		if (payload.length < threshold)
+		{
+			return null;
+		}
+		
+		// Only keep the result if it saves at least an eighth of the payload
+		final byte[] output = new byte[payload.length - payload.length / 8];
+		final Deflater compressor = deflater.get();
+		
+		try
+		{
+			compressor.setInput(payload);
+			compressor.finish();
+			final int length = compressor.deflate(output);
+			
+			return compressor.finished() ? Arrays.copyOf(output, length) : null;
+		}
+		finally
+		{
+			compressor.reset();
+		}
+	}
+	
+	/**
+	 * Decompresses the given payload, using the cache if possible.
+	 * 
+	 * @param key Key identifying the payload in the cache
+	 * @param compressed The compressed payload
+	 * @param length Length of the original payload
+	 * 
+	 * @return The original payload (not to be modified, as it might be cached)
+	 */
+	public byte[] decompress(final Object key, final byte[] compressed, final int length)
+	{
+		synchronized (cache)
+		{
+			final byte[] payload = cache.get(key);
+			
+			if (payload != null)
+			{
+				return payload;
+			}
+		}
+		
+		final byte[] payload = new byte[length];
+		final Inflater decompressor = inflater.get();
+		
+		try
+		{
+			decompressor.setInput(compressed);
+			decompressor.inflate(payload);
+		}
+		catch (DataFormatException e)
+		{
+			// Only possible if the stored payload got corrupted
+			logger.error("Cannot decompress payload", e);
+		}
+		finally
+		{
+			decompressor.reset();
+		}
+		
+		synchronized (cache)
+		{
+			cache.put(key, payload);
+		}
+		
+		return payload;
+	}
+	
+	/**
+	 * Removes the given payload from the cache.
+	 * 
+	 * @param key Key identifying the payload in the cache
+	 */
+	public void evict(final Object key)
+	{
+		synchronized (cache)
+		{
+			cache.remove(key);
+		}
+	}
+	
+	public int getThreshold()
+	{
+		return threshold;
+	}
+}
@@ -0,0 +1,163 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a single copy of each distinct payload held by stored messages.
+ * Messages with identical payloads (e.g. repeated status updates or retained
+ * states) share the same array, which is kept here for as long as at least
+ * one message refers to it.
+ */
+public class PayloadInterner
+{
+	/** Distinct payloads (each entry is its own key). */
+	private final Map<InternedPayload, InternedPayload> payloads = new HashMap<>();
+	
+	/** Total length of the distinct payloads. */
+	private long distinctBytes;
+	
+	/** Total length of all interned payloads, counting each reference. */
+	private long referencedBytes;
+	
+	/**
+	 * Gets the shared copy of the given payload, taking a reference to it.
+	 * 
+	 * @param payload The payload to intern
+	 * 
+	 * @return The shared copy (the given array if seen for the first time)
+	 */
+	public synchronized byte[] intern(final byte[] payload)
+	{
+		final InternedPayload key = new InternedPayload(payload);
+		InternedPayload interned = payloads.get(key);
+		
+		if (interned == null)
+		{
+			interned = key;
+			payloads.put(interned, interned);
+			distinctBytes = distinctBytes + payload.length;
+		}
+		
+		interned.references++;
+		referencedBytes = referencedBytes + payload.length;
+		
+		return interned.payload;
+	}
+	
+	/**
+	 * Releases a reference to the given (shared) payload. The payload is
+	 * forgotten once no references are left.
+	 * 
+	 * @param payload The payload returned by intern
+	 */
+	public synchronized void release(final byte[] payload)
+	{
+		final InternedPayload interned = payloads.get(new InternedPayload(payload));
+		
+		if (interned == null)
+		{
+			return;
+		}
+		
+		referencedBytes = referencedBytes - payload.length;
+		
+		if (--interned.references == 0)
+		{
+			payloads.remove(interned);
+			distinctBytes = distinctBytes - payload.length;
+		}
+	}
+	
+	/**
+	 * Gets the number of payload bytes saved by sharing identical payloads.
+	 * 
+	 * @return Saved bytes
+	 */
+	public synchronized long getSavedBytes()
+	{
+		return referencedBytes - distinctBytes;
+	}
+	
+	/**
+	 * Gets the total length of the distinct payloads currently held.
+	 * 
+	 * @return Number of bytes
+	 */
+	public synchronized long getDistinctBytes()
+	{
+		return distinctBytes;
+	}
+	
+	/**
+	 * Gets the number of distinct payloads currently held.
+	 * 
+	 * @return Number of payloads
+	 */
+	public synchronized int getDistinctPayloads()
+	{
+		return payloads.size();
+	}
+	
+	/**
+	 * A payload with its hash (worked out once) and number of references.
+	 */
+	private static final class InternedPayload
+	{
+		private final byte[] payload;
+		
+		private final int hash;
+		
+		private int references;
+		
+		private InternedPayload(final byte[] payload)
+		{
+			this.payload = payload;
+			this.hash = Arrays.hashCode(payload);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(final Object object)
+		{
+			if (this == object)
+			{
+				return true;
+			}
+			
+			if (!(object instanceof InternedPayload))
+			{
+				return false;
+			}
+			
+			final InternedPayload other = (InternedPayload) object;
+			
+			return hash == other.hash && Arrays.equals(payload, other.payload);
+		}
+	}
+}
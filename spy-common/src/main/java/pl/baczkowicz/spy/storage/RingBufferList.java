@@ -0,0 +1,285 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List backed by a circular buffer, with index 0 being the first (newest)
+ * element. Adding or removing at either end takes constant time; inserting or
+ * removing in the middle shifts the shorter side only. The buffer grows when
+ * full, so callers are expected to remove the last element to keep a fixed size.
+ * 
+ * All methods are synchronized on the list itself - as with
+ * Collections.synchronizedList, iteration must be synchronized on the list by
+ * the caller. Alternatively, a snapshot can be taken and iterated without
+ * holding the lock.
+ * 
+ * @param <T> Type of the elements
+ */
+public class RingBufferList<T> extends AbstractList<T> implements RandomAccess
+{
+	/** Default initial capacity. */
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+	
+	/** The buffer. */
+	private Object[] elements;
+	
+	/** Position of the first element (index 0) in the buffer. */
+	private int head;
+	
+	/** Number of elements. */
+	private int size;
+	
+	/** Last snapshot taken; cleared on every change, so that it doesn't keep removed elements. */
+	private List<T> snapshot;
+	
+	/**
+	 * Creates a RingBufferList with the default initial capacity.
+	 */
+	public RingBufferList()
+	{
+		this(DEFAULT_INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Creates a RingBufferList with the given initial capacity.
+	 * 
+	 * @param initialCapacity The initial capacity of the buffer
+	 */
+	public RingBufferList(final int initialCapacity)
+	{
+		this.elements = new Object[Math.max(1, initialCapacity)];
+	}
+	
+	/**
+	 * Converts a list index into a position in the buffer.
+	 */
+	private int position(final int index)
+	{
+		final int position = head + index;
+		return position >= elements.length ? position - elements.length : position;
+	}
+	
+	private void checkIndex(final int index, final int limit)
+	{
+		if (index < 0 || index >= limit)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+	
+	/**
+	 * Doubles the capacity, moving the elements to the start of the new buffer.
+	 */
+	private void grow()
+	{
+		final Object[] newElements = new Object[elements.length * 2];
+		
+		final int firstPart = Math.min(size, elements.length - head);
+		System.arraycopy(elements, head, newElements, 0, firstPart);
+		System.arraycopy(elements, 0, newElements, firstPart, size - firstPart);
+		
+		elements = newElements;
+		head = 0;
+	}
+	
+	/**
+	 * Called on every change (including replacing an element).
+	 */
+	private void changed()
+	{
+		snapshot = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized T get(final int index)
+	{
+		checkIndex(index, size);
+		return (T) elements[position(index)];
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public synchronized T set(final int index, final T element)
+	{
+		checkIndex(index, size);
+		
+		final int position = position(index);
+		final T previous = (T) elements[position];
+		elements[position] = element;
+		changed();
+		
+		return previous;
+	}
+	
+	@Override
+	public synchronized int size()
+	{
+		return size;
+	}
+	
+	@Override
+	public synchronized void add(final int index, final T element)
+	{
+		checkIndex(index, size + 1);
+		
+		if (size == elements.length)
+		{
+			grow();
+		}
+		
+		if (index == 0)
+		{
+			head = (head == 0 ? elements.length : head) - 1;
+		}
+		else if (index < size)
+		{
+			// Shift the elements after the index towards the end
+			for (int i = size; i > index; i--)
+			{
+				elements[position(i)] = elements[position(i - 1)];
+			}
+		}
+		
+		elements[position(index)] = element;
+		size++;
+		modCount++;
+		changed();
+	}
+	
+	@Override
+	public synchronized T remove(final int index)
+	{
+		final T removed = get(index);
+		
+		if (index < size / 2)
+		{
+			// Shift the elements before the index towards the end
+			for (int i = index; i > 0; i--)
+			{
+				elements[position(i)] = elements[position(i - 1)];
+			}
+			
+			elements[head] = null;
+			head = head + 1 == elements.length ? 0 : head + 1;
+		}
+		else
+		{
+			// Shift the elements after the index towards the start
+			for (int i = index; i < size - 1; i++)
+			{
+				elements[position(i)] = elements[position(i + 1)];
+			}
+			
+			elements[position(size - 1)] = null;
+		}
+		
+		size--;
+		modCount++;
+		changed();
+		
+		return removed;
+	}
+	
+	@Override
+	public synchronized void clear()
+	{
+		for (int i = 0; i < size; i++)
+		{
+			elements[position(i)] = null;
+		}
+		
+		head = 0;
+		size = 0;
+		modCount++;
+		changed();
+	}
+	
+	/**
+	 * Replaces all elements with the given ones (in the same order).
+	 * 
+	 * @param newElements The new elements
+	 */
+	public synchronized void setElements(final List<? extends T> newElements)
+	{
+		final Object[] copy = newElements.toArray();
+		
+		if (copy.length > elements.length)
+		{
+			elements = copy;
+		}
+		else
+		{
+			System.arraycopy(copy, 0, elements, 0, copy.length);
+			Arrays.fill(elements, copy.length, elements.length, null);
+		}
+		
+		head = 0;
+		size = copy.length;
+		modCount++;
+		changed();
+	}
+	
+	@Override
+	public synchronized Object[] toArray()
+	{
+		final Object[] copy = new Object[size];
+		
+		final int firstPart = Math.min(size, elements.length - head);
+		System.arraycopy(elements, head, copy, 0, firstPart);
+		System.arraycopy(elements, 0, copy, firstPart, size - firstPart);
+		
+		return copy;
+	}
+	
+	/**
+	 * Gets an unmodifiable copy of the list, which can be iterated without
+	 * holding the lock. Taking it only copies the element references, and the
+	 * same snapshot is returned until the list changes.
+	 * 
+	 * @return The snapshot
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized List<T> snapshot()
+	{
+		if (snapshot == null)
+		{
+			snapshot = Collections.unmodifiableList(Arrays.asList((T[]) toArray()));
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Gets the current capacity of the buffer.
+	 * 
+	 * @return The capacity
+	 */
+	public synchronized int getCapacity()
+	{
+		return elements.length;
+	}
+}
@@ -0,0 +1,126 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.connectivity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.common.generated.OverloadPolicyEnum;
+import pl.baczkowicz.spy.messages.BaseMessage;
+
+public class IngestQueueTest
+{
+	@Test
+	public void testDropOldest()
+	{
+		final AtomicInteger dropped = new AtomicInteger();
+		final IngestQueue<BaseMessage> queue = new IngestQueue<>(10, OverloadPolicyEnum.DROP_OLDEST, 1, m -> dropped.incrementAndGet());
+		
+		for (int i = 0; i < 25; i++)
+		{
+			assertTrue(queue.add(new BaseMessage("topic/" + (i % 2), String.valueOf(i))));
+		}
+		
+		assertEquals(10, queue.size());
+		assertEquals(15, queue.getDroppedCount());
+		assertEquals(15, dropped.get());
+		assertEquals(Long.valueOf(8), queue.getDroppedCountPerTopic().get("topic/0"));
+		assertEquals(Long.valueOf(7), queue.getDroppedCountPerTopic().get("topic/1"));
+		
+		// The newest messages are retained
+		assertEquals("15", queue.getQueue().peek().getPayload());
+	}
+	
+	@Test
+	public void testDropNewest()
+	{
+		final IngestQueue<BaseMessage> queue = new IngestQueue<>(10, OverloadPolicyEnum.DROP_NEWEST, 1, null);
+		
+		for (int i = 0; i < 25; i++)
+		{
+			assertEquals(i < 10, queue.add(new BaseMessage("topic", String.valueOf(i))));
+		}
+		
+		assertEquals(10, queue.size());
+		assertEquals(15, queue.getDroppedCount());
+		
+		// The oldest messages are retained
+		assertEquals("0", queue.getQueue().peek().getPayload());
+		
+		queue.resetDroppedCount();
+		assertEquals(0, queue.getDroppedCount());
+		assertTrue(queue.getDroppedCountPerTopic().isEmpty());
+	}
+	
+	@Test
+	public void testSample()
+	{
+		final IngestQueue<BaseMessage> queue = new IngestQueue<>(10, OverloadPolicyEnum.SAMPLE, 5, null);
+		
+		for (int i = 0; i < 60; i++)
+		{
+			queue.add(new BaseMessage("topic", String.valueOf(i)));
+		}
+		
+		// 50 messages arrived while full - 1 in 5 displaced the oldest, the rest got dropped
+		assertEquals(10, queue.size());
+		assertEquals(50, queue.getDroppedCount());
+		assertEquals(Long.valueOf(50), queue.getDroppedCountPerTopic().get("topic"));
+	}
+	
+	@Test
+	public void testBlock() throws InterruptedException
+	{
+		final IngestQueue<BaseMessage> queue = new IngestQueue<>(1, OverloadPolicyEnum.BLOCK, 1, null);
+		assertTrue(queue.add(new BaseMessage("topic", "0")));
+		
+		final Thread consumer = new Thread(() -> 
+		{
+			try
+			{
+				Thread.sleep(100);
+				queue.getQueue().take();
+			}
+			catch (InterruptedException e)
+			{
+				// Ignore
+			}
+		});
+		consumer.start();
+		
+		// Blocks until the consumer takes the first message
+		assertTrue(queue.add(new BaseMessage("topic", "1")));
+		consumer.join();
+		
+		assertEquals(1, queue.size());
+		assertEquals(0, queue.getDroppedCount());
+		
+		// An interrupted producer drops the message
+		Thread.currentThread().interrupt();
+		assertFalse(queue.add(new BaseMessage("topic", "2")));
+		assertTrue(Thread.interrupted());
+		assertEquals(1, queue.getDroppedCount());
+	}
+}
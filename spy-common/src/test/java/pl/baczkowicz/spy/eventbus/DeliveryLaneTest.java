@@ -0,0 +1,171 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.eventbus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.eventbus.DeliveryLane.OverflowPolicy;
+import pl.baczkowicz.spy.eventbus.sample.SampleCountChangeEvent;
+import pl.baczkowicz.spy.eventbus.sample.SampleInfoChangeEvent;
+
+/**
+ * Tests for batched delivery of events with DeliveryLane.
+ */
+public class DeliveryLaneTest
+{
+	/** Executor running tasks only when asked to (like a busy UI thread). */
+	private final List<Runnable> tasks = new ArrayList<>();
+	
+	private final Executor executor = tasks::add;
+	
+	private final List<List<Object>> batches = new ArrayList<>();
+	
+	private void runTasks()
+	{
+		final List<Runnable> toRun = new ArrayList<>(tasks);
+		tasks.clear();
+		toRun.forEach(Runnable::run);
+	}
+	
+	@Test
+	public void testEventsDeliveredInBatches()
+	{
+		final IKBus eventBus = new KBus();
+		final DeliveryLane<SampleCountChangeEvent> lane = eventBus.subscribeWithBatching(this, 
+				(Consumer<List<SampleCountChangeEvent>>) batch -> batches.add(new ArrayList<Object>(batch)), 
+				SampleCountChangeEvent.class, executor, null, 100, OverflowPolicy.DROP);
+		
+		for (int i = 0; i < 10; i++)
+		{
+			eventBus.publish(new SampleCountChangeEvent("hello", i));
+		}
+		
+		// Only one task scheduled for all events
+		assertEquals(1, tasks.size());
+		assertEquals(10, lane.getQueueDepth());
+		
+		runTasks();
+		assertEquals(1, batches.size());
+		assertEquals(10, batches.get(0).size());
+		assertEquals(0, ((SampleCountChangeEvent) batches.get(0).get(0)).getCount());
+		assertEquals(0, lane.getQueueDepth());
+		assertEquals(10, lane.getDeliveredCount());
+		assertEquals(1, eventBus.getDeliveryLanes().size());
+		
+		// No events delivered after unsubscribing
+		eventBus.publish(new SampleCountChangeEvent("hello", 11));
+		eventBus.unsubscribe(this);
+		runTasks();
+		assertEquals(1, batches.size());
+		assertTrue(eventBus.getDeliveryLanes().isEmpty());
+	}
+	
+	@Test
+	public void testOverflowDropsNewEvents()
+	{
+		final DeliveryLane<Object> lane = new DeliveryLane<Object>("test", batch -> batches.add(new ArrayList<Object>(batch)), 
+				executor, 2, OverflowPolicy.DROP);
+		
+		lane.offer("first");
+		lane.offer("second");
+		lane.offer("third");
+		runTasks();
+		
+		assertEquals(2, batches.get(0).size());
+		assertEquals("second", batches.get(0).get(1));
+		assertEquals(1, lane.getDroppedCount());
+		assertEquals(2, lane.getMaxQueueDepth());
+	}
+	
+	@Test
+	public void testOverflowCoalescesByFilter()
+	{
+		final DeliveryLane<Object> lane = new DeliveryLane<Object>("test", batch -> batches.add(new ArrayList<Object>(batch)), 
+				executor, 3, OverflowPolicy.COALESCE);
+		
+		final SampleInfoChangeEvent a1 = new SampleInfoChangeEvent("a", 1);
+		a1.setFilter("a");
+		final SampleInfoChangeEvent b1 = new SampleInfoChangeEvent("b", 1);
+		b1.setFilter("b");
+		final SampleInfoChangeEvent a2 = new SampleInfoChangeEvent("a", 2);
+		a2.setFilter("a");
+		final SampleInfoChangeEvent a3 = new SampleInfoChangeEvent("a", 3);
+		a3.setFilter("a");
+		final SampleInfoChangeEvent c1 = new SampleInfoChangeEvent("c", 1);
+		c1.setFilter("c");
+		
+		lane.offer(a1);
+		lane.offer(b1);
+		lane.offer(a2);
+		
+		// Replaces the latest event for the same filter
+		lane.offer(a3);
+		
+		// Nothing to coalesce with - the oldest is dropped
+		lane.offer(c1);
+		runTasks();
+		
+		assertEquals(3, batches.get(0).size());
+		assertSame(b1, batches.get(0).get(0));
+		assertSame(a3, batches.get(0).get(1));
+		assertSame(c1, batches.get(0).get(2));
+		assertEquals(1, lane.getCoalescedCount());
+		assertEquals(1, lane.getDroppedCount());
+	}
+	
+	@Test
+	public void testOverflowBlocksPublisher() throws InterruptedException
+	{
+		final List<Object> received = new ArrayList<>();
+		final DeliveryLane<Object> lane = new DeliveryLane<Object>("test", 
+				batch -> { synchronized (received) { received.addAll(batch); } }, 
+				command -> new Thread(command).start(), 1, OverflowPolicy.BLOCK);
+		
+		for (int i = 0; i < 1000; i++)
+		{
+			lane.offer(i);
+		}
+		
+		while (lane.getDeliveredCount() < 1000)
+		{
+			Thread.sleep(1);
+		}
+		
+		// Nothing lost, and in order
+		synchronized (received)
+		{
+			assertEquals(1000, received.size());
+			for (int i = 0; i < 1000; i++)
+			{
+				assertEquals(i, received.get(i));
+			}
+		}
+		assertEquals(0, lane.getDroppedCount());
+	}
+}
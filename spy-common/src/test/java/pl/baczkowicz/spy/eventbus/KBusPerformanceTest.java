@@ -0,0 +1,151 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.eventbus;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.eventbus.sample.SampleCountChangeEvent;
+import pl.baczkowicz.spy.eventbus.sample.SampleInfoChangeEvent;
+
+/**
+ * Measures publishing events on the KBus, from one and many threads, and
+ * while subscriptions are being changed.
+ */
+public class KBusPerformanceTest
+{
+	private static final int EVENTS = 2000000;
+	
+	@Ignore
+	@Test
+	public void measurePublish() throws InterruptedException
+	{
+		final KBus eventBus = new KBus();
+		final LongAdder received = subscribe(eventBus);
+		
+		for (final int threads : new int[] {1, 2, 4, 8})
+		{
+			// Warm up, then measure
+			publish(eventBus, threads, EVENTS / 10, null);
+			
+			received.reset();
+			final long startTime = System.nanoTime();
+			publish(eventBus, threads, EVENTS, null);
+			final long totalTime = System.nanoTime() - startTime;
+			
+			System.out.println("[" + threads + " thread(s)] Publishing took " + (totalTime / 1000000) + " ms; avg = " 
+					+ (totalTime / EVENTS) + " ns per event; consumed " + received.sum());
+		}
+	}
+	
+	@Ignore
+	@Test
+	public void measurePublishWhileSubscribing() throws InterruptedException
+	{
+		final KBus eventBus = new KBus();
+		subscribe(eventBus);
+		
+		final AtomicBoolean publishing = new AtomicBoolean(true);
+		final LongAdder changes = new LongAdder();
+		final Thread subscribing = new Thread(new Runnable()
+		{			
+			@Override
+			public void run()
+			{
+				while (publishing.get())
+				{
+					final Object subscriber = new Object();
+					eventBus.subscribe(subscriber, (Consumer<SampleInfoChangeEvent>) event -> {}, SampleInfoChangeEvent.class);
+					eventBus.unsubscribe(subscriber);
+					changes.increment();
+				}
+			}
+		});
+		subscribing.start();
+		
+		final long startTime = System.nanoTime();
+		publish(eventBus, 4, EVENTS, publishing);
+		final long totalTime = System.nanoTime() - startTime;
+		subscribing.join();
+		
+		System.out.println("[4 threads] Publishing while subscribing took " + (totalTime / 1000000) + " ms; avg = " 
+				+ (totalTime / EVENTS) + " ns per event; subscription changes = " + changes.sum());
+	}
+	
+	/**
+	 * Subscribes a mix of consumers - with and without filters, for specific and generic types.
+	 */
+	private static LongAdder subscribe(final KBus eventBus)
+	{
+		final LongAdder received = new LongAdder();
+		
+		for (int i = 0; i < 10; i++)
+		{
+			final Object subscriber = new Object();
+			eventBus.subscribe(subscriber, (Consumer<SampleCountChangeEvent>) event -> received.increment(), SampleCountChangeEvent.class);
+			eventBus.subscribeWithFilterOnly(subscriber, (Consumer<FilterableEvent>) event -> received.increment(), FilterableEvent.class, "filter" + i);
+		}
+		eventBus.subscribe(new Object(), (Consumer<Object>) event -> received.increment(), Object.class);
+		
+		return received;
+	}
+	
+	/**
+	 * Publishes the given number of events, split between the given number of threads.
+	 */
+	private static void publish(final KBus eventBus, final int threads, final int events, final AtomicBoolean publishing) 
+			throws InterruptedException
+	{
+		final Thread[] publishers = new Thread[threads];
+		
+		for (int i = 0; i < threads; i++)
+		{
+			publishers[i] = new Thread(new Runnable()
+			{				
+				@Override
+				public void run()
+				{
+					final SampleCountChangeEvent event = new SampleCountChangeEvent("test", 1);
+					event.setFilter("filter1");
+					
+					for (int j = 0; j < events / threads; j++)
+					{
+						eventBus.publish(event);
+					}
+				}
+			});
+			publishers[i].start();
+		}
+		
+		for (final Thread publisher : publishers)
+		{
+			publisher.join();
+		}
+		
+		if (publishing != null)
+		{
+			publishing.set(false);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package pl.baczkowicz.spy.eventbus;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import junit.framework.TestCase;
@@ -99,4 +101,58 @@ public class KBusTest extends TestCase
 //		
 //		assertEquals(1, subscriber.getMessageCount());
 //	}
+	
+	@Test
+	public void testPublishWhileSubscribing() throws InterruptedException
+	{
+		final IKBus eventBus = new KBus();
+		final AtomicLong received = new AtomicLong();
+		eventBus.subscribe(this, (Consumer<SampleCountChangeEvent>) event -> received.incrementAndGet(), SampleCountChangeEvent.class);
+		
+		final AtomicBoolean publishing = new AtomicBoolean(true);
+		final Thread subscribing = new Thread(new Runnable()
+		{			
+			@Override
+			public void run()
+			{
+				// Keep changing subscriptions, for both existing and new event types
+				while (publishing.get())
+				{
+					final Object subscriber = new Object();
+					eventBus.subscribe(subscriber, (Consumer<Object>) event -> {}, Object.class);
+					eventBus.subscribe(subscriber, (Consumer<SampleInfoChangeEvent>) event -> {}, SampleInfoChangeEvent.class);
+					eventBus.unsubscribe(subscriber);
+				}
+			}
+		});
+		subscribing.start();
+		
+		final Thread[] publishers = new Thread[4];
+		for (int i = 0; i < publishers.length; i++)
+		{
+			publishers[i] = new Thread(new Runnable()
+			{				
+				@Override
+				public void run()
+				{
+					for (int j = 0; j < 50000; j++)
+					{
+						eventBus.publish(new SampleCountChangeEvent("hello", j));
+						eventBus.publish(new SampleInfoChangeEvent("hello", j));
+					}
+				}
+			});
+			publishers[i].start();
+		}
+		
+		for (final Thread publisher : publishers)
+		{
+			publisher.join();
+		}
+		publishing.set(false);
+		subscribing.join();
+		
+		// The stable subscription must have seen all events
+		assertEquals(publishers.length * 50000, received.get());
+	}
 }
@@ -0,0 +1,167 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.common.generated.CharacterReplaceFormatterDetails;
+import pl.baczkowicz.spy.common.generated.ConversionFormatterDetails;
+import pl.baczkowicz.spy.common.generated.ConversionMethod;
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.common.generated.FormatterFunction;
+import pl.baczkowicz.spy.common.generated.SubstringConversionFormatterDetails;
+import pl.baczkowicz.spy.common.generated.SubstringExtractFormatterDetails;
+import pl.baczkowicz.spy.common.generated.SubstringReplaceFormatterDetails;
+import pl.baczkowicz.spy.utils.ConversionUtils;
+
+/**
+ * Tests for the FormatterCompiler - compiled formatters must give the same output as FormattingUtils.
+ */
+public class FormatterCompilerTest
+{
+	private static final String[] PAYLOADS = new String[] {
+		"",
+		"plain text",
+		"<Body>R09PRA==</Body>",
+		"some other stuff <Body>R09PRA==</Body> and even more stuff",
+		"<Body>R09PRA==</Body> twice R09PRA== <Body>R09PRA==</Body>",
+		"<Body></Body>",
+		"<Body>7465737432</Body>",
+		"<Body>746573743</Body>",
+		"line 1\r\nline 2\ttabbed\u0000",
+		"zażółć gęślą jaźń <Body>xyz</Body> 😀",
+		"no closing <Body> tag"};
+	
+	private static FormatterDetails createFormatter(final FormatterFunction... functions)
+	{
+		final FormatterDetails formatter = new FormatterDetails();
+		formatter.setID("test");
+		formatter.setName("Test");
+		formatter.getFunction().addAll(Arrays.asList(functions));
+		return formatter;
+	}
+	
+	private static void assertSameOutput(final FormatterDetails formatter)
+	{
+		final CompiledFormatter compiled = FormatterCompiler.compile(formatter);
+		
+		for (final String payload : PAYLOADS)
+		{
+			assertEquals(payload, FormattingUtils.formatText(formatter, payload, null), compiled.format(payload));
+			assertEquals(payload, FormattingUtils.checkAndFormatText(formatter, ConversionUtils.stringToArray(payload)), 
+					compiled.format(ConversionUtils.stringToArray(payload)));
+		}
+	}
+	
+	@Test
+	public void testConversions()
+	{
+		for (final ConversionMethod method : ConversionMethod.values())
+		{
+			// Single conversion (applied to the raw payload)
+			assertSameOutput(FormattingUtils.createBasicFormatter("test", "Test", null, method));
+			
+			// Chained conversions
+			assertSameOutput(createFormatter(
+					new FormatterFunction(new ConversionFormatterDetails(method), null, null, null, null, null),
+					new FormatterFunction(new ConversionFormatterDetails(ConversionMethod.HEX_ENCODE), null, null, null, null, null)));
+		}
+	}
+	
+	@Test
+	public void testSubstringFunctions()
+	{
+		for (final boolean keepTags : new boolean[] {true, false})
+		{
+			for (final ConversionMethod method : ConversionMethod.values())
+			{
+				assertSameOutput(createFormatter(new FormatterFunction(null, 
+						new SubstringConversionFormatterDetails("<Body>", "</Body>", keepTags, method), null, null, null, null)));
+			}
+			
+			assertSameOutput(createFormatter(new FormatterFunction(null, null, 
+					new SubstringReplaceFormatterDetails("<Body>", "</Body>", keepTags, "GOOD"), null, null, null)));
+			
+			assertSameOutput(createFormatter(new FormatterFunction(null, null, null, 
+					new SubstringExtractFormatterDetails("<Body>", "</Body>", keepTags), null, null)));
+		}
+		
+		// Conversion followed by extraction
+		assertSameOutput(createFormatter(
+				new FormatterFunction(null, new SubstringConversionFormatterDetails("<Body>", "</Body>", true, ConversionMethod.BASE_64_DECODE), 
+						null, null, null, null),
+				new FormatterFunction(null, null, null, new SubstringExtractFormatterDetails("<Body>", "</Body>", false), null, null)));
+	}
+	
+	@Test
+	public void testCharacterReplacement()
+	{
+		// Control characters
+		assertSameOutput(createFormatter(new FormatterFunction(null, null, null, null, 
+				new CharacterReplaceFormatterDetails(ConversionMethod.HEX_ENCODE, 0, 31, "/"), null)));
+		
+		// Replacements contain characters replaced later in the range
+		assertSameOutput(createFormatter(new FormatterFunction(null, null, null, null, 
+				new CharacterReplaceFormatterDetails(ConversionMethod.HEX_ENCODE, 32, 127, null), null)));
+		assertSameOutput(createFormatter(new FormatterFunction(null, null, null, null, 
+				new CharacterReplaceFormatterDetails(ConversionMethod.BASE_64_ENCODE, 0, 0x17F, "|"), null)));
+		
+		// Range including surrogates
+		assertSameOutput(createFormatter(new FormatterFunction(null, null, null, null, 
+				new CharacterReplaceFormatterDetails(ConversionMethod.HEX_ENCODE, 0xD000, 0xE000, null), null)));
+	}
+	
+	@Test
+	public void testMalformedPayload()
+	{
+		final byte[] payload = new byte[] {'<', 'B', 'o', 'd', 'y', '>', (byte) 0xC3, 0x28, (byte) 0xFF, (byte) 0xED, (byte) 0xA0, (byte) 0x80, 
+				'<', '/', 'B', 'o', 'd', 'y', '>', (byte) 0xE2, (byte) 0x82};
+		
+		final FormatterDetails formatter = createFormatter(
+				new FormatterFunction(null, new SubstringConversionFormatterDetails("<Body>", "</Body>", false, ConversionMethod.HEX_ENCODE), 
+						null, null, null, null),
+				new FormatterFunction(null, null, null, null, 
+						new CharacterReplaceFormatterDetails(ConversionMethod.HEX_ENCODE, 0x28, 0xD7FF, null), null));
+		
+		assertEquals(FormattingUtils.checkAndFormatText(formatter, payload), FormatterCompiler.compile(formatter).format(payload));
+	}
+	
+	@Test
+	public void testCompiledFormatterCachedUntilCleared()
+	{
+		final FormattingManager formattingManager = new FormattingManager(null);
+		final FormatterDetails formatter = createFormatter(new FormatterFunction(null, null, 
+				new SubstringReplaceFormatterDetails("<Body>", "</Body>", true, "GOOD"), null, null, null));
+		
+		final CompiledFormatter compiled = formattingManager.getCompiledFormatter(formatter);
+		assertSame(compiled, formattingManager.getCompiledFormatter(formatter));
+		assertEquals("<Body>GOOD</Body>", compiled.format("<Body>BAD</Body>"));
+		
+		// Edited in place - the old compiled version is only dropped when cleared
+		formatter.getFunction().get(0).getSubstringReplace().setReplaceWith("BETTER");
+		formattingManager.clearCompiledFormatters();
+		assertEquals("<Body>BETTER</Body>", formattingManager.getCompiledFormatter(formatter).format("<Body>BAD</Body>"));
+	}
+}
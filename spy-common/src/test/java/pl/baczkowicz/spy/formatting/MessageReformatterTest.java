@@ -0,0 +1,146 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.common.generated.ConversionMethod;
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.formatting.MessageReformatter.ReformattingTask;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+
+/**
+ * Tests for the MessageReformatter.
+ */
+public class MessageReformatterTest
+{
+	private final FormatterDetails hexEncoder = FormattingUtils.createBasicFormatter("hex", "HEX encoder", null, ConversionMethod.HEX_ENCODE);
+	
+	private final FormattingManager formattingManager = new FormattingManager(null);
+	
+	private static List<FormattedMessage> createMessages(final int count)
+	{
+		final List<FormattedMessage> messages = new ArrayList<>();
+		
+		for (int i = 0; i < count; i++)
+		{
+			final FormattedMessage message = new FormattedMessage(i, "t" + i, "m" + i, new Date());
+			message.setRawPayload(message.getPayload().getBytes());
+			messages.add(message);
+		}
+		
+		return messages;
+	}
+	
+	@Test
+	public void testAllMessagesReformattedInBatches() throws InterruptedException
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final MessageReformatter reformatter = new MessageReformatter(executor, 4, 10);
+		final List<FormattedMessage> messages = createMessages(1005);
+		final List<FormattedMessage> updated = Collections.synchronizedList(new ArrayList<>());
+		
+		final ReformattingTask<FormattedMessage> task = reformatter.reformat(messages, message -> message, formattingManager, hexEncoder, 
+				(t, batch) -> updated.addAll(batch));
+		
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		
+		assertTrue(task.isDone());
+		assertEquals(messages.size(), updated.size());
+		for (final FormattedMessage message : messages)
+		{
+			assertEquals(hexEncoder, message.getLastUsedFormatter());
+		}
+		assertEquals("6d30", messages.get(0).getFormattedPayload());
+	}
+	
+	@Test
+	public void testNewerFormatterCancelsPrevious()
+	{
+		// Workers only run when asked to
+		final List<Runnable> workers = new ArrayList<>();
+		final MessageReformatter reformatter = new MessageReformatter(workers::add, 2, 10);
+		final List<FormattedMessage> messages = createMessages(100);
+		final List<FormatterDetails> batches = new ArrayList<>();
+		
+		final ReformattingTask<FormattedMessage> first = reformatter.reformat(messages, message -> message, formattingManager, hexEncoder, 
+				(t, batch) -> batches.add(t.getFormatter()));
+		final ReformattingTask<FormattedMessage> second = reformatter.reformat(messages, message -> message, formattingManager, null, 
+				(t, batch) -> batches.add(t.getFormatter()));
+		
+		assertTrue(first.isCancelled());
+		assertFalse(second.isCancelled());
+		assertEquals(4, workers.size());
+		
+		for (final Runnable worker : workers)
+		{
+			worker.run();
+		}
+		
+		assertEquals(0, first.getFormattedCount());
+		assertTrue(second.isDone());
+		assertEquals(10, batches.size());
+		assertFalse(batches.contains(hexEncoder));
+	}
+	
+	@Test
+	public void testCancelledWorkerDoesNotOverwriteNewerFormatting() throws InterruptedException
+	{
+		final List<Runnable> workers = new ArrayList<>();
+		final MessageReformatter reformatter = new MessageReformatter(workers::add, 1, 10);
+		final List<FormattedMessage> messages = createMessages(10);
+		final ReformattingTask<FormattedMessage> first = reformatter.reformat(messages, message -> message, formattingManager, hexEncoder, 
+				(t, batch) -> {});
+		final Thread firstWorker = new Thread(workers.get(0));
+		
+		synchronized (messages.get(0))
+		{
+			// The worker of the first re-formatting waits for the message...
+			firstWorker.start();
+			while (firstWorker.getState() != Thread.State.BLOCKED)
+			{
+				Thread.sleep(1);
+			}
+			
+			// ...while the formatter changes again
+			reformatter.reformat(messages, message -> message, formattingManager, null, (t, batch) -> {});
+			formattingManager.formatMessage(messages.get(0), null);
+		}
+		
+		firstWorker.join();
+		assertEquals(0, first.getFormattedCount());
+		assertNull(messages.get(0).getLastUsedFormatter());
+		assertEquals(messages.get(0).getPayload(), messages.get(0).getFormattedPayload());
+	}
+}
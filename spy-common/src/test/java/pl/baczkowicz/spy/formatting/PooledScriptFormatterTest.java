@@ -0,0 +1,127 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.formatting;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.eventbus.KBus;
+import pl.baczkowicz.spy.messages.FormattedMessage;
+import pl.baczkowicz.spy.scripts.BaseScriptManager;
+import pl.baczkowicz.spy.scripts.Script;
+
+/**
+ * Tests for the PooledScriptFormatter.
+ */
+public class PooledScriptFormatterTest
+{
+	private final BaseScriptManager scriptManager = new BaseScriptManager(new KBus(), Executors.newSingleThreadExecutor())
+	{
+		@Override
+		public void populateEngineVariables(final Script script)
+		{
+			// Nothing to add
+		}
+	};
+	
+	private static FormattedMessage createMessage(final int i)
+	{
+		return new FormattedMessage(i, "t" + i, "m" + i, new Date());
+	}
+	
+	private static void assertFormattedConcurrently(final PooledScriptFormatter formatter, final String prefix) throws Exception
+	{
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<Boolean>> results = new ArrayList<>();
+		
+		for (int t = 0; t < 8; t++)
+		{
+			results.add(executor.submit(new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call() throws Exception
+				{
+					for (int i = 0; i < 1000; i++)
+					{
+						if (!(prefix + "m" + i).equals(formatter.format(createMessage(i))))
+						{
+							return false;
+						}
+					}
+					return true;
+				}
+			}));
+		}
+		
+		for (final Future<Boolean> result : results)
+		{
+			assertTrue(result.get());
+		}
+		
+		executor.shutdown();
+		assertTrue(formatter.getContextCount() <= 4);
+	}
+	
+	@Test
+	public void testMessagePassedAsArgument() throws Exception
+	{
+		final Script script = scriptManager.addInlineScript("argument", 
+				"var prefix; function before() { prefix = 'x:'; } " 
+				+ "function format(message) { return prefix + message.getPayload(); } " 
+				+ "function pretty(message) { return 'pretty:' + message.getPayload(); }");
+		
+		final PooledScriptFormatter formatter = new PooledScriptFormatter(script, 4);
+		
+		assertTrue(formatter.isPrettyAvailable());
+		assertEquals("pretty:m1", formatter.pretty(createMessage(1)));
+		assertFormattedConcurrently(formatter, "x:");
+	}
+	
+	@Test
+	public void testMessageReadFromGlobalVariable() throws Exception
+	{
+		final Script script = scriptManager.addInlineScript("global", 
+				"function format() { return receivedMessage.getPayload(); }");
+		
+		final PooledScriptFormatter formatter = new PooledScriptFormatter(script, 4);
+		
+		assertFalse(formatter.isPrettyAvailable());
+		assertFormattedConcurrently(formatter, "");
+	}
+	
+	@Test(expected = NoSuchMethodException.class)
+	public void testMissingPrettyFunction() throws Exception
+	{
+		final Script script = scriptManager.addInlineScript("noPretty", "function format(message) { return ''; }");
+		
+		new PooledScriptFormatter(script, 1).pretty(createMessage(1));
+	}
+}
@@ -0,0 +1,153 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import pl.baczkowicz.spy.common.generated.ConversionMethod;
+import pl.baczkowicz.spy.common.generated.FormatterDetails;
+import pl.baczkowicz.spy.formatting.FormattingManager;
+import pl.baczkowicz.spy.formatting.FormattingMode;
+import pl.baczkowicz.spy.formatting.FormattingUtils;
+
+/**
+ * Tests for the FormattedMessage.
+ */
+public class FormattedMessageTest
+{
+	@Test
+	public void testEstimatedSizeGrowsWithPayload()
+	{
+		final FormattedMessage small = new FormattedMessage(1, "t1", "test", new Date());
+		final FormattedMessage large = new FormattedMessage(2, "t1", new String(new char[10000]), new Date());
+		
+		assertTrue(large.getEstimatedSize() - small.getEstimatedSize() >= 2 * (10000 - 4));
+	}
+	
+	@Test
+	public void testEstimatedSizeWithFormattedCopies()
+	{
+		final FormattedMessage message = new FormattedMessage(1, "t1", "test payload", new Date());
+		final long size = message.getEstimatedSize();
+		
+		// The same string as the payload is not counted twice
+		message.setFormattedPayload(message.getPayload());
+		message.setPrettyPayload(message.getPayload());
+		assertEquals(size, message.getEstimatedSize());
+		
+		// Formatted and pretty copies are
+		message.setFormattedPayload("TEST PAYLOAD");
+		message.setPrettyPayload("{ TEST PAYLOAD }");
+		assertTrue(message.getEstimatedSize() >= size + 2 * ("TEST PAYLOAD".length() + "{ TEST PAYLOAD }".length()));
+		
+		message.clearFormatting();
+		assertEquals(size, message.getEstimatedSize());
+	}
+	
+	@Test
+	public void testDeferredFormatting()
+	{
+		final FormatterDetails hexEncoder = FormattingUtils.createBasicFormatter("hex", "HEX encoder", null, ConversionMethod.HEX_ENCODE);
+		final FormattingManager formattingManager = new FormattingManager(null);
+		formattingManager.setFormattingMode(FormattingMode.ON_DEMAND);
+		
+		final FormattedMessage message = new FormattedMessage(1, "t1", "test", new Date());
+		message.setRawPayload("test".getBytes());
+		formattingManager.formatReceivedMessage(message, hexEncoder);
+		assertTrue(message.isFormattingPending());
+		assertNull(message.getLastUsedFormatter());
+		
+		// Formatted when first needed
+		assertEquals("74657374", message.getPrettyPayload());
+		assertFalse(message.isFormattingPending());
+		assertEquals(hexEncoder, message.getLastUsedFormatter());
+		
+		// Copies carry the pending formatter
+		final FormattedMessage deferred = new FormattedMessage(2, "t1", "test2", new Date());
+		deferred.setRawPayload("test2".getBytes());
+		formattingManager.formatReceivedMessage(deferred, hexEncoder);
+		final FormattedMessage copy = new FormattedMessage(2, "t1", "test2", new Date());
+		copy.setRawPayload("test2".getBytes());
+		copy.copyFormatting(deferred);
+		assertEquals("7465737432", copy.getFormattedPayload());
+		assertTrue(deferred.isFormattingPending());
+		
+		// Formatting on receive (function-based formatters by default)
+		formattingManager.setFormattingMode(FormattingMode.SCRIPTS_ON_DEMAND);
+		final FormattedMessage received = new FormattedMessage(3, "t1", "test", new Date());
+		received.setRawPayload("test".getBytes());
+		formattingManager.formatReceivedMessage(received, hexEncoder);
+		assertFalse(received.isFormattingPending());
+		assertEquals(hexEncoder, received.getLastUsedFormatter());
+		
+		// Clearing drops the pending formatter
+		deferred.clearFormatting();
+		assertEquals("test2", deferred.getFormattedPayload());
+	}
+	
+	@Test
+	public void testPayloadsReadOnlyOnceFormatted() throws InterruptedException
+	{
+		final FormattedMessage message = new FormattedMessage(1, "t1", "test", new Date());
+		final CountDownLatch started = new CountDownLatch(1);
+		
+		// A slow formatter (e.g. a script)
+		final Thread formatter = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				synchronized (message)
+				{
+					message.startFormatting();
+					started.countDown();
+					
+					try
+					{
+						Thread.sleep(100);
+					}
+					catch (InterruptedException e)
+					{
+						// Not expected
+					}
+					
+					message.setFormattedPayload("formatted");
+					message.setPrettyPayload("pretty");
+					message.finishFormatting();
+				}
+			}
+		});
+		formatter.start();
+		started.await();
+		
+		// Neither the plain payload nor a mix of the two
+		assertEquals("formatted", message.getFormattedPayload());
+		assertEquals("pretty", message.getPrettyPayload());
+		formatter.join();
+	}
+}
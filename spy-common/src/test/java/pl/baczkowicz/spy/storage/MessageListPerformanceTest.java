@@ -0,0 +1,177 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import pl.baczkowicz.spy.messages.BaseMessage;
+
+/**
+ * Measures adding messages to a full MessageList (each add evicting the oldest
+ * message), and how long adding takes while other threads scan the list.
+ */
+public class MessageListPerformanceTest
+{
+	@Ignore
+	@Test
+	public void compareAddAndEvict()
+	{
+		final BaseMessage message = new BaseMessage("test", "payload");
+		
+		for (final int capacity : new int[] {5000, 50000, 500000})
+		{
+			final int repeat = 200000;
+			
+			// Previous implementation - synchronized ArrayList with inserts at index 0
+			final List<BaseMessage> arrayList = Collections.synchronizedList(new ArrayList<BaseMessage>());
+			fill(arrayList, message, capacity);
+			
+			long startTime = System.nanoTime();
+			for (int i = 0; i < repeat; i++)
+			{
+				synchronized (arrayList)
+				{
+					arrayList.remove(arrayList.size() - 1);
+					arrayList.add(0, message);
+				}
+			}
+			long totalTime = System.nanoTime() - startTime;
+			System.out.println("[" + capacity + "] ArrayList took " + (totalTime / 1000000) + " ms; avg = " + (totalTime / repeat) + " ns");
+			
+			// Current implementation
+			final MessageList<BaseMessage> messageList = new MessageList<>(capacity, capacity, "test");
+			fill(messageList.getMessages(), message, capacity);
+			
+			startTime = System.nanoTime();
+			for (int i = 0; i < repeat; i++)
+			{
+				messageList.add(message);
+			}
+			totalTime = System.nanoTime() - startTime;
+			System.out.println("[" + capacity + "] MessageList took " + (totalTime / 1000000) + " ms; avg = " + (totalTime / repeat) + " ns");
+		}
+	}
+	
+	@Ignore
+	@Test
+	public void compareIngestLatencyDuringScans() throws InterruptedException
+	{
+		final int capacity = 100000;
+		final int readers = 2;
+		
+		for (final boolean useSnapshots : new boolean[] {false, true})
+		{
+			final MessageList<BaseMessage> messageList = new MessageList<>(capacity, capacity, "test");
+			fill(messageList.getMessages(), new BaseMessage("test", "payload"), capacity);
+			
+			final AtomicBoolean running = new AtomicBoolean(true);
+			final List<Thread> readerThreads = new ArrayList<>();
+			final long[] scans = new long[readers];
+			
+			for (int r = 0; r < readers; r++)
+			{
+				final int reader = r;
+				final Thread thread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						while (running.get())
+						{
+							// Simulates a search over all stored messages
+							if (useSnapshots)
+							{
+								scan(messageList.getSnapshot());
+							}
+							else
+							{
+								synchronized (messageList.getMessages())
+								{
+									scan(messageList.getMessages());
+								}
+							}
+							scans[reader]++;
+						}
+					}
+				});
+				readerThreads.add(thread);
+				thread.start();
+			}
+			
+			final int repeat = 200000;
+			long maxTime = 0;
+			
+			final long startTime = System.nanoTime();
+			for (int i = 0; i < repeat; i++)
+			{
+				final BaseMessage message = new BaseMessage("test/" + (i % 100), "payload " + i);
+				
+				final long addStartTime = System.nanoTime();
+				messageList.add(message);
+				maxTime = Math.max(maxTime, System.nanoTime() - addStartTime);
+			}
+			final long totalTime = System.nanoTime() - startTime;
+			
+			running.set(false);
+			for (final Thread thread : readerThreads)
+			{
+				thread.join();
+			}
+			
+			long totalScans = 0;
+			for (final long readerScans : scans)
+			{
+				totalScans = totalScans + readerScans;
+			}
+			
+			System.out.println("[" + capacity + "] " + (useSnapshots ? "Snapshots" : "Locked scans") + ": adding took " + (totalTime / 1000000) 
+					+ " ms; avg = " + (totalTime / repeat) + " ns; max = " + (maxTime / 1000) + " us; scans = " + totalScans);
+		}
+	}
+	
+	private static int scan(final List<BaseMessage> messages)
+	{
+		int matches = 0;
+		
+		for (final BaseMessage message : messages)
+		{
+			if (message.getPayload().contains("99"))
+			{
+				matches++;
+			}
+		}
+		
+		return matches;
+	}
+	
+	private static void fill(final List<BaseMessage> list, final BaseMessage message, final int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			list.add(0, message);
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the PayloadArena.
+ */
+public class PayloadArenaTest
+{
+	@Test
+	public void testStoreAndLoad()
+	{
+		final PayloadArena arena = new PayloadArena(16);
+		
+		final long first = arena.store("hello".getBytes());
+		final long second = arena.store("world!".getBytes());
+		final long empty = arena.store(new byte[0]);
+		
+		assertArrayEquals("hello".getBytes(), arena.load(first, 5));
+		assertArrayEquals("world!".getBytes(), arena.load(second, 6));
+		assertArrayEquals(new byte[0], arena.load(empty, 0));
+		assertEquals(11, arena.getStoredBytes());
+		
+		// Larger than a segment
+		final byte[] large = new byte[100];
+		large[99] = 1;
+		final long largeAddress = arena.store(large);
+		
+		assertArrayEquals(large, arena.load(largeAddress, 100));
+		assertArrayEquals("hello".getBytes(), arena.load(first, 5));
+		assertEquals(16 + 100, arena.getAllocatedBytes());
+	}
+	
+	@Test
+	public void testSegmentsRecycled()
+	{
+		final PayloadArena arena = new PayloadArena(16);
+		final byte[] payload = new byte[8];
+		final long[] addresses = new long[100];
+		
+		for (int i = 0; i < addresses.length; i++)
+		{
+			payload[0] = (byte) i;
+			addresses[i] = arena.store(payload);
+			
+			// Keep only the last few payloads, releasing the oldest first
+			if (i >= 4)
+			{
+				arena.release(addresses[i - 4], payload.length);
+			}
+		}
+		
+		for (int i = addresses.length - 4; i < addresses.length; i++)
+		{
+			assertEquals((byte) i, arena.load(addresses[i], payload.length)[0]);
+		}
+		
+		assertEquals(4 * payload.length, arena.getStoredBytes());
+		
+		// Three segments in use at most, plus up to two kept for reuse
+		assertTrue(arena.getAllocatedBytes() <= 5 * 16);
+		
+		for (int i = addresses.length - 4; i < addresses.length; i++)
+		{
+			arena.release(addresses[i], payload.length);
+		}
+		
+		assertEquals(0, arena.getStoredBytes());
+	}
+	
+	@Test
+	public void testLongLivedPayloadsCompacted()
+	{
+		final PayloadArena arena = new PayloadArena(64);
+		final byte[] payload = new byte[8];
+		final long[] handles = new long[1000];
+		
+		for (int i = 0; i < handles.length; i++)
+		{
+			payload[0] = (byte) i;
+			handles[i] = arena.store(payload);
+			
+			// Every 8th payload is kept (e.g. the last message on a slow topic)
+			if (i >= 1 && (i - 1) % 8 != 0)
+			{
+				arena.release(handles[i - 1], payload.length);
+			}
+		}
+		
+		for (int i = 0; i < handles.length - 1; i += 8)
+		{
+			assertEquals((byte) i, arena.load(handles[i], payload.length)[0]);
+		}
+		assertEquals((byte) 999, arena.load(handles[999], payload.length)[0]);
+		
+		// Without compaction, each kept payload would pin a whole segment
+		assertTrue(arena.getCompactedBytes() > 0);
+		assertTrue(arena.getAllocatedBytes() <= 4 * arena.getStoredBytes() + 3 * 64);
+	}
+	
+	@Test
+	public void testReleaseWhenUnreachable() throws InterruptedException
+	{
+		final PayloadArena arena = new PayloadArena(16);
+		Object owner = new Object();
+		
+		final long handle = arena.store("hello".getBytes());
+		arena.releaseWhenUnreachable(owner, handle, 5);
+		
+		// Still readable while the owner is in use
+		assertArrayEquals("hello".getBytes(), arena.load(handle, 5));
+		assertEquals(5, arena.getStoredBytes());
+		
+		// Retained again
+		final long retained = arena.store("world".getBytes());
+		arena.cancelRelease(arena.releaseWhenUnreachable(new Object(), retained, 5));
+		
+		owner = null;
+		for (int i = 0; i < 100 && arena.getStoredBytes() > 5; i++)
+		{
+			System.gc();
+			Thread.sleep(10);
+		}
+		
+		assertEquals(5, arena.getStoredBytes());
+		assertArrayEquals("world".getBytes(), arena.load(retained, 5));
+	}
+}
@@ -0,0 +1,94 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the PayloadCompressor.
+ */
+public class PayloadCompressorTest
+{
+	private static byte[] createJsonPayload(final int size)
+	{
+		final StringBuffer payload = new StringBuffer("[");
+		
+		for (int i = 0; payload.length() < size; i++)
+		{
+			payload.append("{\"sensor\":\"temperature\",\"index\":" + i + ",\"value\":21.5},");
+		}
+		
+		return payload.append("{}]").toString().getBytes();
+	}
+	
+	@Test
+	public void testCompressAndDecompress()
+	{
+		final PayloadCompressor compressor = new PayloadCompressor(1024);
+		final byte[] payload = createJsonPayload(10000);
+		
+		final byte[] compressed = compressor.compress(payload);
+		
+		assertNotNull(compressed);
+		assertTrue(compressed.length < payload.length / 4);
+		assertArrayEquals(payload, compressor.decompress("key", compressed, payload.length));
+	}
+	
+	@Test
+	public void testNotCompressedIfSmallOrRandom()
+	{
+		final PayloadCompressor compressor = new PayloadCompressor(1024);
+		
+		assertNull(compressor.compress(createJsonPayload(512)));
+		
+		final byte[] random = new byte[4096];
+		new Random(1).nextBytes(random);
+		assertNull(compressor.compress(random));
+	}
+	
+	@Test
+	public void testDecompressedPayloadsCached()
+	{
+		final PayloadCompressor compressor = new PayloadCompressor(1024, 2);
+		final byte[] payload = createJsonPayload(4096);
+		final byte[] compressed = compressor.compress(payload);
+		
+		final byte[] first = compressor.decompress("first", compressed, payload.length);
+		assertSame(first, compressor.decompress("first", compressed, payload.length));
+		
+		// Pushes the first payload out of the cache
+		compressor.decompress("second", compressed, payload.length);
+		compressor.decompress("third", compressed, payload.length);		
+		assertNotSame(first, compressor.decompress("first", compressed, payload.length));
+		
+		final byte[] third = compressor.decompress("third", compressed, payload.length);
+		compressor.evict("third");
+		assertNotSame(third, compressor.decompress("third", compressed, payload.length));
+	}
+}
@@ -0,0 +1,72 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests for the PayloadInterner.
+ */
+public class PayloadInternerTest
+{
+	@Test
+	public void testIdenticalPayloadsShared()
+	{
+		final PayloadInterner interner = new PayloadInterner();
+		
+		final byte[] first = "OK".getBytes();
+		final byte[] second = "OK".getBytes();
+		final byte[] other = "ERROR".getBytes();
+		
+		assertSame(first, interner.intern(first));
+		assertSame(first, interner.intern(second));
+		assertSame(other, interner.intern(other));
+		
+		assertEquals(2, interner.getDistinctPayloads());
+		assertEquals(7, interner.getDistinctBytes());
+		assertEquals(2, interner.getSavedBytes());
+	}
+	
+	@Test
+	public void testPayloadsForgottenWhenReleased()
+	{
+		final PayloadInterner interner = new PayloadInterner();
+		
+		final byte[] first = interner.intern("OK".getBytes());
+		interner.intern("OK".getBytes());
+		
+		interner.release(first);
+		assertEquals(1, interner.getDistinctPayloads());
+		assertEquals(0, interner.getSavedBytes());
+		
+		interner.release(first);
+		assertEquals(0, interner.getDistinctPayloads());
+		assertEquals(0, interner.getDistinctBytes());
+		
+		// A new copy becomes the shared one
+		final byte[] next = "OK".getBytes();
+		assertNotSame(first, interner.intern(next));
+		assertSame(next, interner.intern("OK".getBytes()));
+	}
+}
@@ -0,0 +1,118 @@
+/***********************************************************************************
+ * 
+ * Copyright (c) 2016 Kamil Baczkowicz
+ * 
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ *    
+ * The Eclipse Distribution License is available at
+ *   http://www.eclipse.org/org/documents/edl-v10.php.
+ *
+ * Contributors:
+ * 
+ *    Kamil Baczkowicz - initial API and implementation and/or initial documentation
+ *    
+ */
+package pl.baczkowicz.spy.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the RingBufferList.
+ */
+public class RingBufferListTest
+{
+	@Test
+	public void testNewestFirst()
+	{
+		final List<Integer> list = new RingBufferList<>(2);
+		
+		for (int i = 0; i < 5; i++)
+		{
+			list.add(0, i);
+		}
+		
+		assertEquals(Arrays.asList(4, 3, 2, 1, 0), list);
+		
+		assertEquals(Integer.valueOf(0), list.remove(4));
+		assertEquals(Integer.valueOf(4), list.remove(0));
+		assertEquals(Integer.valueOf(2), list.remove(1));
+		assertEquals(Arrays.asList(3, 1), list);
+		
+		list.clear();
+		assertEquals(0, list.size());
+	}
+	
+	@Test
+	public void testSnapshot()
+	{
+		final RingBufferList<Integer> list = new RingBufferList<>(2);
+		
+		for (int i = 0; i < 5; i++)
+		{
+			list.add(0, i);
+		}
+		
+		final List<Integer> snapshot = list.snapshot();
+		assertEquals(Arrays.asList(4, 3, 2, 1, 0), snapshot);
+		assertSame(snapshot, list.snapshot());
+		
+		list.add(0, 5);
+		list.remove(5);
+		list.set(0, 6);
+		
+		assertEquals(Arrays.asList(4, 3, 2, 1, 0), snapshot);
+		assertEquals(Arrays.asList(6, 4, 3, 2, 1), list.snapshot());
+	}
+	
+	@Test
+	public void testAgainstArrayList()
+	{
+		final Random random = new Random(1);
+		final List<Integer> expected = new ArrayList<>();
+		final RingBufferList<Integer> actual = new RingBufferList<>(4);
+		
+		for (int i = 0; i < 100000; i++)
+		{
+			final int operation = random.nextInt(10);
+			
+			if (operation < 5 || expected.isEmpty())
+			{
+				expected.add(0, i);
+				actual.add(0, i);
+			}
+			else if (operation < 7)
+			{
+				final int index = random.nextInt(expected.size() + 1);
+				expected.add(index, i);
+				actual.add(index, i);
+			}
+			else if (operation < 8)
+			{
+				final int index = random.nextInt(expected.size());
+				assertEquals(expected.set(index, i), actual.set(index, i));
+			}
+			else
+			{
+				final int index = random.nextInt(10) < 5 ? expected.size() - 1 : random.nextInt(expected.size());
+				assertEquals(expected.remove(index), actual.remove(index));
+			}
+			
+			assertEquals(expected.size(), actual.size());
+		}
+		
+		assertEquals(expected, actual);
+	}
+}